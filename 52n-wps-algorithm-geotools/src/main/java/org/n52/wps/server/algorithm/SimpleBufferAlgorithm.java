@@ -47,14 +47,12 @@
  */
 package org.n52.wps.server.algorithm;
 
-import java.util.Iterator;
 import java.util.UUID;
 
 import javax.xml.namespace.QName;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.geotools.feature.DefaultFeatureCollections;
 import org.geotools.feature.FeatureCollection;
 import org.n52.wps.io.GTHelper;
 import org.n52.wps.io.SchemaRepository;
@@ -71,12 +69,13 @@ import org.n52.wps.algorithm.annotation.ComplexDataOutput;
 import org.n52.wps.algorithm.annotation.LiteralDataInput;
 import org.n52.wps.algorithm.annotation.Execute;
 import org.n52.wps.server.AbstractAnnotatedAlgorithm;
+import org.n52.wps.server.algorithm.parallel.ParallelFeatureTransform;
+import org.n52.wps.server.algorithm.parallel.ResultFeatures;
 
 @Algorithm(version = "1.1.0")
 public class SimpleBufferAlgorithm extends AbstractAnnotatedAlgorithm {
 
     private static Logger LOGGER = LoggerFactory.getLogger(SimpleBufferAlgorithm.class);
-    private Double percentage;
 
     public SimpleBufferAlgorithm() {
         super();
@@ -103,48 +102,41 @@ public class SimpleBufferAlgorithm extends AbstractAnnotatedAlgorithm {
 
     @Execute
     public void runBuffer() {
-        //Collection resultColl = new ArrayList();
-        double i = 0;
-        int totalNumberOfFeatures = data.size();
-        String uuid = UUID.randomUUID().toString();
-        result = DefaultFeatureCollections.newCollection();
-        SimpleFeatureType featureType = null;
-        LOGGER.debug("");
-        for (Iterator ia = data.iterator(); ia.hasNext();) {
-            /**
-             * ******* How to publish percentage results ************
-             */
-            i = i + 1;
-            percentage = (i / totalNumberOfFeatures) * 100;
-            this.update(new Integer(percentage.intValue()));
-
-            /**
-             * ******************
-             */
-            SimpleFeature feature = (SimpleFeature) ia.next();
-            Geometry geometry = (Geometry) feature.getDefaultGeometry();
-            Geometry geometryBuffered = runBuffer(geometry, width);
-
-            if (i == 1) {
-                CoordinateReferenceSystem crs = feature.getFeatureType().getCoordinateReferenceSystem();
-                if (geometry.getUserData() instanceof CoordinateReferenceSystem) {
-                    crs = ((CoordinateReferenceSystem) geometry.getUserData());
-                }
-                featureType = GTHelper.createFeatureType(feature.getProperties(), geometryBuffered, uuid, crs);
-                QName qname = GTHelper.createGML3SchemaForFeatureType(featureType);
-                SchemaRepository.registerSchemaLocation(qname.getNamespaceURI(), qname.getLocalPart());
-
-            }
-
-            if (geometryBuffered != null) {
-                SimpleFeature createdFeature = (SimpleFeature) GTHelper.createFeature("ID" + new Double(i).intValue(), geometryBuffered, (SimpleFeatureType) featureType, feature.getProperties());
-                feature.setDefaultGeometry(geometryBuffered);
-                result.add(createdFeature);
-            } else {
-                LOGGER.warn("GeometryCollections are not supported, or result null. Original dataset will be returned");
-            }
-        }
-
+        final String uuid = UUID.randomUUID().toString();
+        final ResultFeatures features = new ResultFeatures(ResultFeatures.isStreaming(data));
+        // the buffers are computed in parallel, the progress is published once per percentage
+        ParallelFeatureTransform.transform(data,
+                new ParallelFeatureTransform.Operation<SimpleFeature, Geometry>() {
+                    public Geometry apply(int index, SimpleFeature feature) {
+                        return runBuffer((Geometry) feature.getDefaultGeometry(), width);
+                    }
+                }, new ParallelFeatureTransform.ResultHandler<Geometry>() {
+                    private SimpleFeatureType featureType;
+
+                    public void handle(int i, SimpleFeature feature, Geometry geometryBuffered) {
+                        Geometry geometry = (Geometry) feature.getDefaultGeometry();
+
+                        if (i == 0) {
+                            CoordinateReferenceSystem crs = feature.getFeatureType().getCoordinateReferenceSystem();
+                            if (geometry.getUserData() instanceof CoordinateReferenceSystem) {
+                                crs = ((CoordinateReferenceSystem) geometry.getUserData());
+                            }
+                            featureType = GTHelper.createFeatureType(feature.getProperties(), geometryBuffered, uuid, crs);
+                            QName qname = GTHelper.createGML3SchemaForFeatureType(featureType);
+                            SchemaRepository.registerSchemaLocation(qname.getNamespaceURI(), qname.getLocalPart());
+
+                        }
+
+                        if (geometryBuffered != null) {
+                            SimpleFeature createdFeature = (SimpleFeature) GTHelper.createFeature("ID" + (i + 1), geometryBuffered, featureType, feature.getProperties());
+                            feature.setDefaultGeometry(geometryBuffered);
+                            features.add(createdFeature);
+                        } else {
+                            LOGGER.warn("GeometryCollections are not supported, or result null. Original dataset will be returned");
+                        }
+                    }
+                }, this);
+        result = features.getCollection();
     }
 
     private Geometry runBuffer(Geometry a, double width) {
@@ -48,6 +48,7 @@
 package org.n52.wps.server.algorithm.convexhull;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -57,11 +58,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.geotools.feature.DefaultFeatureCollections;
 import org.geotools.feature.FeatureCollection;
-import org.geotools.feature.FeatureIterator;
 import org.n52.wps.io.GTHelper;
 import org.n52.wps.io.data.IData;
 import org.n52.wps.io.data.binding.complex.GTVectorDataBinding;
 import org.n52.wps.server.AbstractSelfDescribingAlgorithm;
+import org.n52.wps.server.algorithm.parallel.ParallelFeatureTransform;
 import org.opengis.feature.Feature;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
@@ -81,6 +82,8 @@ public class ConvexHullAlgorithm extends AbstractSelfDescribingAlgorithm {
 	Logger LOGGER = LoggerFactory.getLogger(ConvexHullAlgorithm.class);
 	private List<String> errors = new ArrayList<String>();
 
+	private static final int MAX_HULL_COORDINATES = 100000;
+
 	public List<String> getErrors() {
 		return errors;
 	}
@@ -113,40 +116,36 @@ public class ConvexHullAlgorithm extends AbstractSelfDescribingAlgorithm {
 		FeatureCollection featureCollection = ((GTVectorDataBinding) firstInputData)
 				.getPayload();
 
-		FeatureIterator iter = featureCollection.features();
-
-		List<Coordinate> coordinateList = new ArrayList<Coordinate>();
-		
-		int counter = 0;
-		
-		Geometry unifiedGeometry = null;
-		
-		while (iter.hasNext()) {
-			SimpleFeature  feature = (SimpleFeature) iter.next();
-
-			if (feature.getDefaultGeometry() == null) {
-				throw new NullPointerException(
-						"defaultGeometry is null in feature id: "
-								+ feature.getID());
-			}
-			
-			Geometry geom = (Geometry) feature.getDefaultGeometry();
-			
-			Coordinate[] coordinateArray = geom.getCoordinates();
-			for(Coordinate coordinate : coordinateArray){
-				coordinateList.add(coordinate);
-			}
-			
-		}	
+		// the hull of the feature hulls is the hull of all coordinates, but needs far less of them
+		final List<Coordinate> coordinateList = new ArrayList<Coordinate>();
+		ParallelFeatureTransform.transform(featureCollection,
+				new ParallelFeatureTransform.Operation<SimpleFeature, Coordinate[]>() {
+					public Coordinate[] apply(int index, SimpleFeature feature) {
+						if (feature.getDefaultGeometry() == null) {
+							throw new NullPointerException(
+									"defaultGeometry is null in feature id: "
+											+ feature.getID());
+						}
+						
+						Geometry geom = (Geometry) feature.getDefaultGeometry();
+						
+						return geom.convexHull().getCoordinates();
+					}
+				}, new ParallelFeatureTransform.ResultHandler<Coordinate[]>() {
+					public void handle(int index, SimpleFeature feature, Coordinate[] hull) {
+						for(Coordinate coordinate : hull){
+							coordinateList.add(coordinate);
+						}
+						// the features may be streamed, so the coordinates are reduced to their hull as they grow
+						if (coordinateList.size() > MAX_HULL_COORDINATES) {
+							Coordinate[] reduced = getConvexHull(coordinateList).getCoordinates();
+							coordinateList.clear();
+							coordinateList.addAll(Arrays.asList(reduced));
+						}
+					}
+				}, this);
 		
-		Coordinate[] coordinateArray = new Coordinate[coordinateList.size()];
-		
-		for(int i = 0; i<coordinateList.size(); i++){
-			coordinateArray[i] = coordinateList.get(i);
-		}
-		ConvexHull convexHull = new ConvexHull(coordinateArray, new GeometryFactory());		
-		
-		Geometry out = convexHull.getConvexHull();
+		Geometry out = getConvexHull(coordinateList);
 
 		Feature feature = createFeature(out, featureCollection.getSchema().getCoordinateReferenceSystem());
 		
@@ -161,6 +160,12 @@ public class ConvexHullAlgorithm extends AbstractSelfDescribingAlgorithm {
 		return result;
 	}
 	
+	private static Geometry getConvexHull(List<Coordinate> coordinateList) {
+		Coordinate[] coordinateArray = coordinateList.toArray(new Coordinate[coordinateList.size()]);
+		ConvexHull convexHull = new ConvexHull(coordinateArray, new GeometryFactory());
+		return convexHull.getConvexHull();
+	}
+
 	private Feature createFeature(Geometry geometry, CoordinateReferenceSystem crs) {
 		String uuid = UUID.randomUUID().toString();
 		SimpleFeatureType featureType = GTHelper.createFeatureType(geometry, uuid, crs);
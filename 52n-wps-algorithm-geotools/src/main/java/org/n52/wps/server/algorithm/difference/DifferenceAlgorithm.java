@@ -49,7 +49,6 @@ package org.n52.wps.server.algorithm.difference;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -58,18 +57,22 @@ import javax.xml.namespace.QName;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.geotools.feature.DefaultFeatureCollections;
 import org.geotools.feature.FeatureCollection;
 import org.n52.wps.io.GTHelper;
 import org.n52.wps.io.SchemaRepository;
 import org.n52.wps.io.data.IData;
 import org.n52.wps.io.data.binding.complex.GTVectorDataBinding;
 import org.n52.wps.server.AbstractSelfDescribingAlgorithm;
+import org.n52.wps.server.algorithm.overlay.OverlayEngine;
+import org.n52.wps.server.algorithm.overlay.SpatialPredicate;
+import org.n52.wps.server.algorithm.parallel.ParallelFeatureTransform;
+import org.n52.wps.server.algorithm.parallel.ResultFeatures;
 import org.opengis.feature.Feature;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 
 import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
 
 
 
@@ -114,61 +117,65 @@ public class DifferenceAlgorithm extends AbstractSelfDescribingAlgorithm {
 		FeatureCollection lineStrings = ((GTVectorDataBinding) secondInputData).getPayload();
 		
 		
-		System.out.println("****************************************************************");
-		System.out.println("difference algorithm started");
-		System.out.println("polygons size = " + polygons.size());
-		System.out.println("lineStrings size = " + lineStrings.size());
+		LOGGER.info("Computing the difference of {} polygons and {} features", polygons.size(), lineStrings.size());
 		
-		FeatureCollection featureCollection = DefaultFeatureCollections.newCollection();
-		
-		Iterator polygonIterator = polygons.iterator();
-		int j = 1;
-		
-		String uuid = UUID.randomUUID().toString();
-		while(polygonIterator.hasNext()){
-			SimpleFeature polygon = (SimpleFeature) polygonIterator.next();
-
-		
-			Iterator lineStringIterator = lineStrings.iterator();
-			int i = 1;
-			System.out.println("Polygon = " + j +"/"+ polygons.size());
-			SimpleFeatureType featureType = null; 
-			while(lineStringIterator.hasNext()){
-				SimpleFeature lineString = (SimpleFeature) lineStringIterator.next();
-				Geometry lineStringGeometry = null;
-				lineStringGeometry = (Geometry) lineString.getDefaultGeometry();
-				
-				try{	
-					Geometry polygonGeometry = (Geometry) polygon.getDefaultGeometry();
-					Geometry intersection = polygonGeometry.difference(lineStringGeometry);
-					if(i==1){
-						 featureType = GTHelper.createFeatureType(polygon.getProperties(), intersection, uuid, polygon.getFeatureType().getCoordinateReferenceSystem());
-						 QName qname = GTHelper.createGML3SchemaForFeatureType(featureType);
-						 SchemaRepository.registerSchemaLocation(qname.getNamespaceURI(), qname.getLocalPart());
+		// only the indexed layer is held in memory, the polygons are streamed if their input is
+		final OverlayEngine engine = new OverlayEngine(OverlayEngine.getGeometries(lineStrings, false));
+		final ResultFeatures features = new ResultFeatures(ResultFeatures.isStreaming(firstInputData));
+		final String uuid = UUID.randomUUID().toString();
+		// only the features intersecting a polygon change it, the others leave the polygon as it is
+		engine.overlay(polygons,
+				new OverlayEngine.Operation<Map<Integer, Geometry>>() {
+					public Map<Integer, Geometry> apply(int index, PreparedGeometry polygon, OverlayEngine engine) {
+						Map<Integer, Geometry> result = new HashMap<Integer, Geometry>();
+						if (polygon == null) {
+							return result;
+						}
+						for (int i : engine.query(polygon, SpatialPredicate.INTERSECTS)) {
+							try {
+								result.put(i, polygon.getGeometry().difference(engine.getGeometry(i)));
+							} catch (Exception e) {
+								LOGGER.warn("Could not subtract feature " + (i + 1) + " from polygon " + (index + 1), e);
+								result.put(i, null);
+							}
+						}
+						return result;
 					}
-					
-				
-					Feature resultFeature = GTHelper.createFeature(""+j+"_"+i, intersection,featureType, polygon.getProperties());
-					if(resultFeature!=null){
+				}, new ParallelFeatureTransform.ResultHandler<Map<Integer, Geometry>>() {
+					public void handle(int j, SimpleFeature polygon, Map<Integer, Geometry> changed) {
+						Geometry polygonGeometry = OverlayEngine.getGeometry(polygon, false);
+						if (polygonGeometry == null) {
+							return;
+						}
+						SimpleFeatureType featureType = null;
+						for (int i = 0; i < engine.size(); i++) {
+							Geometry difference = changed.containsKey(i) ? changed.get(i) : polygonGeometry;
+							if (difference == null || engine.getGeometry(i) == null) {
+								continue;
+							}
+							try{
+								if(featureType==null){
+									 featureType = GTHelper.createFeatureType(polygon.getProperties(), difference, uuid, polygon.getFeatureType().getCoordinateReferenceSystem());
+									 QName qname = GTHelper.createGML3SchemaForFeatureType(featureType);
+									 SchemaRepository.registerSchemaLocation(qname.getNamespaceURI(), qname.getLocalPart());
+								}
 								
-						featureCollection.add(resultFeature);
-						System.out.println("result feature added. resultCollection = " + featureCollection.size());
-					}
-				}catch(Exception e){
-						e.printStackTrace();
+								Feature resultFeature = GTHelper.createFeature("" + (j + 1) + "_" + (i + 1), difference, featureType, polygon.getProperties());
+								if(resultFeature!=null){
+									features.add((SimpleFeature) resultFeature);
+								}
+							}catch(Exception e){
+								LOGGER.warn("Could not create the difference feature " + (j + 1) + "_" + (i + 1), e);
+							}
+						}
 					}
-				
-				i++;
-			}
-			j++;
-			//if(featureCollection.size()>10){
-			//	break;
-			//}
-		}
+				}, this);
+		GTVectorDataBinding binding = features.toBinding();
+		LOGGER.debug("Difference result contains {} features", binding.getPayload().size());
 		
 		
 		HashMap<String,IData> resulthash = new HashMap<String,IData>();
-		resulthash.put("result", new GTVectorDataBinding(featureCollection));
+		resulthash.put("result", binding);
 		return resulthash;
 	}
 	
@@ -49,13 +49,12 @@ package org.n52.wps.server.algorithm.intersection;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.geotools.feature.DefaultFeatureCollections;
 import org.geotools.feature.FeatureCollection;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
@@ -64,6 +63,10 @@ import org.n52.wps.io.data.IData;
 import org.n52.wps.io.data.binding.complex.GTVectorDataBinding;
 import org.n52.wps.server.AbstractAlgorithm;
 import org.n52.wps.server.AbstractSelfDescribingAlgorithm;
+import org.n52.wps.server.algorithm.overlay.OverlayEngine;
+import org.n52.wps.server.algorithm.overlay.SpatialPredicate;
+import org.n52.wps.server.algorithm.parallel.ParallelFeatureTransform;
+import org.n52.wps.server.algorithm.parallel.ResultFeatures;
 import org.opengis.feature.Feature;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
@@ -72,6 +75,7 @@ import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.LineString;
 import com.vividsolutions.jts.geom.Point;
 import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
 
 
 
@@ -116,52 +120,44 @@ public class IntersectionAlgorithm extends AbstractSelfDescribingAlgorithm {
 		FeatureCollection lineStrings = ((GTVectorDataBinding) firstInputDataLS).getPayload();
 		
 		
-		System.out.println("****************************************************************");
-		System.out.println("intersection started");
-		System.out.println("polygons size = " + polygons.size());
-		System.out.println("lineStrings size = " + lineStrings.size());
+		LOGGER.info("Intersecting {} polygons with {} features", polygons.size(), lineStrings.size());
 		
-		FeatureCollection featureCollection = DefaultFeatureCollections.newCollection();
-		
-		Iterator polygonIterator = polygons.iterator();
-		int j = 1;
-		while(polygonIterator.hasNext()){
-			SimpleFeature polygon = (SimpleFeature) polygonIterator.next();
-			Iterator lineStringIterator = lineStrings.iterator();
-			int i = 1;
-			System.out.println("Polygon = " + j +"/"+ polygons.size());
-			while(lineStringIterator.hasNext()){
-				//System.out.println("Polygon = " + j + "LineString =" + i +"/"+lineStrings.size());
-				
-				SimpleFeature lineString = (SimpleFeature) lineStringIterator.next();
-				Geometry lineStringGeometry = null;
-				if(lineString.getDefaultGeometry()==null && lineString.getAttributeCount()>0 &&lineString.getAttribute(0) instanceof Geometry){
-					lineStringGeometry = (Geometry)lineString.getAttribute(0);
-				}else{
-					lineStringGeometry = (Geometry) lineString.getDefaultGeometry();
-				}
-				try{
-					Geometry polygonGeometry = (Geometry) polygon.getDefaultGeometry();
-					Geometry intersection = polygonGeometry.intersection(lineStringGeometry);
-					Feature resultFeature = createFeature(""+j+"_"+i, intersection, polygon);
-					if(resultFeature!=null){
-								
-						featureCollection.add(resultFeature);
-						System.out.println("result feature added. resultCollection = " + featureCollection.size());
+		// only the indexed layer is held in memory, the polygons are streamed if their input is
+		OverlayEngine engine = new OverlayEngine(OverlayEngine.getGeometries(lineStrings, true));
+		final ResultFeatures features = new ResultFeatures(ResultFeatures.isStreaming(firstInputData));
+		// the intersections are computed in parallel, the features are created in the order of the nested loop
+		engine.overlay(polygons,
+				new OverlayEngine.Operation<Map<Integer, Geometry>>() {
+					public Map<Integer, Geometry> apply(int index, PreparedGeometry polygon, OverlayEngine engine) {
+						Map<Integer, Geometry> result = new LinkedHashMap<Integer, Geometry>();
+						if (polygon == null) {
+							return result;
+						}
+						for (int i : engine.query(polygon, SpatialPredicate.INTERSECTS)) {
+							try {
+								result.put(i, polygon.getGeometry().intersection(engine.getGeometry(i)));
+							} catch (Exception e) {
+								LOGGER.warn("Could not intersect polygon " + (index + 1) + " with feature " + (i + 1), e);
+							}
+						}
+						return result;
 					}
-				}catch(Exception e){
-						e.printStackTrace();
+				}, new ParallelFeatureTransform.ResultHandler<Map<Integer, Geometry>>() {
+					public void handle(int j, SimpleFeature polygon, Map<Integer, Geometry> intersections) {
+						for (Map.Entry<Integer, Geometry> intersection : intersections.entrySet()) {
+							Feature resultFeature = createFeature("" + (j + 1) + "_" + (intersection.getKey() + 1), intersection.getValue(), polygon);
+							if(resultFeature!=null){
+								features.add((SimpleFeature) resultFeature);
+							}
+						}
 					}
-				
-				i++;
-			}
-			j++;
-			
-		}
+				}, this);
+		GTVectorDataBinding binding = features.toBinding();
+		LOGGER.debug("Intersection result contains {} features", binding.getPayload().size());
 		
 		
 		HashMap<String,IData> resulthash = new HashMap<String,IData>();
-		resulthash.put("intersection_result", new GTVectorDataBinding(featureCollection));
+		resulthash.put("intersection_result", binding);
 		return resulthash;
 	}
 	
@@ -0,0 +1,217 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * As an exception to the terms of the GPL, you may copy, modify,
+ * propagate, and distribute a work formed by combining 52°North WPS
+ * GeoTools Modules with the Eclipse Libraries, or a work derivative of
+ * such a combination, even if such copying, modification, propagation, or
+ * distribution would otherwise violate the terms of the GPL. Nothing in
+ * this exception exempts you from complying with the GPL in all respects
+ * for all of the code used other than the Eclipse Libraries. You may
+ * include this exception and its grant of permissions when you distribute
+ * 52°North WPS GeoTools Modules. Inclusion of this notice with such a
+ * distribution constitutes a grant of such permissions. If you do not wish
+ * to grant these permissions, remove this paragraph from your
+ * distribution. "52°North WPS GeoTools Modules" means the 52°North WPS
+ * modules using GeoTools functionality - software licensed under version 2
+ * or any later version of the GPL, or a work based on such software and
+ * licensed under the GPL. "Eclipse Libraries" means Eclipse Modeling
+ * Framework Project and XML Schema Definition software distributed by the
+ * Eclipse Foundation and licensed under the Eclipse Public License Version
+ * 1.0 ("EPL"), or a work based on such software and licensed under the EPL.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.algorithm.overlay;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.geotools.feature.FeatureCollection;
+import org.n52.wps.server.algorithm.parallel.ParallelFeatureTransform;
+import org.n52.wps.server.algorithm.parallel.ParallelFeatureTransform.ResultHandler;
+import org.n52.wps.server.observerpattern.ISubject;
+import org.opengis.feature.simple.SimpleFeature;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+import com.vividsolutions.jts.index.strtree.STRtree;
+
+/**
+ * Overlays two layers of geometries. The geometries of the indexed layer are
+ * kept in an STRtree, so that a geometry of the probing layer is only compared
+ * to the geometries whose envelopes intersect its envelope, using a prepared
+ * geometry for the predicates. The probing geometries are processed in
+ * parallel by the {@link ParallelFeatureTransform}. Only the indexed layer is
+ * held in memory, the features of the probing layer can be streamed (see
+ * {@link #overlay(FeatureCollection, Operation, ResultHandler, ISubject)}).
+ * 
+ * An engine can be used by several threads once it is created.
+ */
+public class OverlayEngine {
+
+	private final List<Geometry> indexed;
+
+	private final STRtree tree;
+
+	/**
+	 * @param indexed
+	 *            the geometries of the indexed layer, <code>null</code> and
+	 *            empty geometries never match
+	 */
+	public OverlayEngine(List<Geometry> indexed) {
+		this.indexed = new ArrayList<Geometry>(indexed);
+		tree = new STRtree();
+		for (int i = 0; i < this.indexed.size(); i++) {
+			Geometry geometry = this.indexed.get(i);
+			if (geometry != null && !geometry.isEmpty()) {
+				tree.insert(geometry.getEnvelopeInternal(), Integer.valueOf(i));
+			}
+		}
+		// the tree is built lazily by the first query, which must not happen concurrently
+		tree.build();
+	}
+
+	/**
+	 * @return the number of indexed geometries
+	 */
+	public int size() {
+		return indexed.size();
+	}
+
+	public Geometry getGeometry(int index) {
+		return indexed.get(index);
+	}
+
+	/**
+	 * @return the indexes of the indexed geometries the probe is in the given
+	 *         relation to, in ascending order
+	 */
+	public int[] query(PreparedGeometry probe, SpatialPredicate predicate) {
+		if (probe == null || probe.getGeometry().isEmpty()) {
+			return new int[0];
+		}
+		List<?> candidates = tree.query(probe.getGeometry().getEnvelopeInternal());
+		int[] matches = new int[candidates.size()];
+		int count = 0;
+		for (Object candidate : candidates) {
+			int index = ((Integer) candidate).intValue();
+			if (predicate.test(probe, indexed.get(index))) {
+				matches[count++] = index;
+			}
+		}
+		matches = Arrays.copyOf(matches, count);
+		Arrays.sort(matches);
+		return matches;
+	}
+
+	/**
+	 * Applies the operation to every probe in parallel.
+	 * 
+	 * @param probes
+	 *            the geometries of the probing layer, may contain
+	 *            <code>null</code>
+	 * @param subject
+	 *            receives the progress, may be <code>null</code>
+	 * @return the results of the operation in the order of the probes
+	 */
+	public <R> List<R> overlay(List<Geometry> probes, final Operation<R> operation, ISubject subject) {
+		return ParallelFeatureTransform.transform(probes, new ParallelFeatureTransform.Operation<Geometry, R>() {
+			public R apply(int index, Geometry probe) {
+				PreparedGeometry prepared = probe == null ? null : PreparedGeometryFactory.prepare(probe);
+				return operation.apply(index, prepared, OverlayEngine.this);
+			}
+		}, subject);
+	}
+
+	/**
+	 * Applies the operation to the geometry of every probing feature in
+	 * parallel, reading the features in chunks.
+	 * 
+	 * @param probes
+	 *            the features of the probing layer
+	 * @param handler
+	 *            receives the results in the order of the features
+	 * @param subject
+	 *            receives the progress, may be <code>null</code>
+	 */
+	public <R> void overlay(FeatureCollection<?, ?> probes, final Operation<R> operation, ResultHandler<R> handler,
+			ISubject subject) {
+		ParallelFeatureTransform.transform(probes, new ParallelFeatureTransform.Operation<SimpleFeature, R>() {
+			public R apply(int index, SimpleFeature feature) {
+				Geometry probe = getGeometry(feature, false);
+				PreparedGeometry prepared = probe == null ? null : PreparedGeometryFactory.prepare(probe);
+				return operation.apply(index, prepared, OverlayEngine.this);
+			}
+		}, handler, subject);
+	}
+
+	/**
+	 * Reads the geometries of a feature collection.
+	 * 
+	 * @param firstGeometryAttribute
+	 *            <code>true</code> to use the first attribute if a feature has
+	 *            no default geometry, but a geometry as first attribute
+	 */
+	public static List<Geometry> getGeometries(FeatureCollection<?, ?> collection, boolean firstGeometryAttribute) {
+		List<Geometry> geometries = new ArrayList<Geometry>();
+		for (SimpleFeature feature : ParallelFeatureTransform.getFeatures(collection)) {
+			geometries.add(getGeometry(feature, firstGeometryAttribute));
+		}
+		return geometries;
+	}
+
+	/**
+	 * @return the geometry of the feature, see
+	 *         {@link #getGeometries(FeatureCollection, boolean)}
+	 */
+	public static Geometry getGeometry(SimpleFeature feature, boolean firstGeometryAttribute) {
+		Object geometry = feature.getDefaultGeometry();
+		if (geometry == null && firstGeometryAttribute && feature.getAttributeCount() > 0) {
+			geometry = feature.getAttribute(0);
+		}
+		return geometry instanceof Geometry ? (Geometry) geometry : null;
+	}
+
+	/**
+	 * An operation on a geometry of the probing layer.
+	 */
+	public interface Operation<R> {
+
+		/**
+		 * @param index
+		 *            the index of the probe
+		 * @param probe
+		 *            the prepared probe, <code>null</code> if the probe has no
+		 *            geometry
+		 * @param engine
+		 *            the engine to query the indexed layer with
+		 */
+		R apply(int index, PreparedGeometry probe, OverlayEngine engine);
+	}
+}
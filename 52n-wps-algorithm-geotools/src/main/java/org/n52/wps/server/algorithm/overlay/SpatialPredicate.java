@@ -0,0 +1,119 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * As an exception to the terms of the GPL, you may copy, modify,
+ * propagate, and distribute a work formed by combining 52°North WPS
+ * GeoTools Modules with the Eclipse Libraries, or a work derivative of
+ * such a combination, even if such copying, modification, propagation, or
+ * distribution would otherwise violate the terms of the GPL. Nothing in
+ * this exception exempts you from complying with the GPL in all respects
+ * for all of the code used other than the Eclipse Libraries. You may
+ * include this exception and its grant of permissions when you distribute
+ * 52°North WPS GeoTools Modules. Inclusion of this notice with such a
+ * distribution constitutes a grant of such permissions. If you do not wish
+ * to grant these permissions, remove this paragraph from your
+ * distribution. "52°North WPS GeoTools Modules" means the 52°North WPS
+ * modules using GeoTools functionality - software licensed under version 2
+ * or any later version of the GPL, or a work based on such software and
+ * licensed under the GPL. "Eclipse Libraries" means Eclipse Modeling
+ * Framework Project and XML Schema Definition software distributed by the
+ * Eclipse Foundation and licensed under the Eclipse Public License Version
+ * 1.0 ("EPL"), or a work based on such software and licensed under the EPL.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.algorithm.overlay;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+
+/**
+ * The spatial predicates the {@link OverlayEngine} can evaluate. All of them
+ * imply intersecting envelopes, so candidates can be filtered by the index.
+ */
+public enum SpatialPredicate {
+
+	INTERSECTS {
+		@Override
+		public boolean test(PreparedGeometry probe, Geometry geometry) {
+			return probe.intersects(geometry);
+		}
+	},
+	CONTAINS {
+		@Override
+		public boolean test(PreparedGeometry probe, Geometry geometry) {
+			return probe.contains(geometry);
+		}
+	},
+	WITHIN {
+		@Override
+		public boolean test(PreparedGeometry probe, Geometry geometry) {
+			return probe.within(geometry);
+		}
+	},
+	COVERS {
+		@Override
+		public boolean test(PreparedGeometry probe, Geometry geometry) {
+			return probe.covers(geometry);
+		}
+	},
+	COVERED_BY {
+		@Override
+		public boolean test(PreparedGeometry probe, Geometry geometry) {
+			return probe.coveredBy(geometry);
+		}
+	},
+	OVERLAPS {
+		@Override
+		public boolean test(PreparedGeometry probe, Geometry geometry) {
+			return probe.overlaps(geometry);
+		}
+	},
+	TOUCHES {
+		@Override
+		public boolean test(PreparedGeometry probe, Geometry geometry) {
+			return probe.touches(geometry);
+		}
+	},
+	CROSSES {
+		@Override
+		public boolean test(PreparedGeometry probe, Geometry geometry) {
+			return probe.crosses(geometry);
+		}
+	},
+	EQUALS {
+		@Override
+		public boolean test(PreparedGeometry probe, Geometry geometry) {
+			return probe.getGeometry().equalsTopo(geometry);
+		}
+	};
+
+	/**
+	 * @return <code>true</code> if the probe and the geometry are in this
+	 *         relation
+	 */
+	public abstract boolean test(PreparedGeometry probe, Geometry geometry);
+}
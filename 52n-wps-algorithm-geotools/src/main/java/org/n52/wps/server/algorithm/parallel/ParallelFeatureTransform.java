@@ -0,0 +1,388 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * As an exception to the terms of the GPL, you may copy, modify,
+ * propagate, and distribute a work formed by combining 52°North WPS
+ * GeoTools Modules with the Eclipse Libraries, or a work derivative of
+ * such a combination, even if such copying, modification, propagation, or
+ * distribution would otherwise violate the terms of the GPL. Nothing in
+ * this exception exempts you from complying with the GPL in all respects
+ * for all of the code used other than the Eclipse Libraries. You may
+ * include this exception and its grant of permissions when you distribute
+ * 52°North WPS GeoTools Modules. Inclusion of this notice with such a
+ * distribution constitutes a grant of such permissions. If you do not wish
+ * to grant these permissions, remove this paragraph from your
+ * distribution. "52°North WPS GeoTools Modules" means the 52°North WPS
+ * modules using GeoTools functionality - software licensed under version 2
+ * or any later version of the GPL, or a work based on such software and
+ * licensed under the GPL. "Eclipse Libraries" means Eclipse Modeling
+ * Framework Project and XML Schema Definition software distributed by the
+ * Eclipse Foundation and licensed under the Eclipse Public License Version
+ * 1.0 ("EPL"), or a work based on such software and licensed under the EPL.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.algorithm.parallel;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.geotools.feature.FeatureCollection;
+import org.geotools.feature.FeatureIterator;
+import org.n52.wps.server.observerpattern.ISubject;
+import org.opengis.feature.simple.SimpleFeature;
+
+/**
+ * Applies an operation to every element of a list on a fork/join pool shared
+ * by the geotools algorithms. The list is split into chunks, the results are
+ * returned in the order of the elements, so that the features built from them
+ * keep their order and IDs.
+ * 
+ * The features of a collection are transformed without reading them into a
+ * list: the calling thread reads them in chunks, at most
+ * <code>CHUNKS_AHEAD_PER_THREAD</code> chunks per thread are computed ahead
+ * and the results are handed over in the order of the features as soon as
+ * their chunk is done (see
+ * {@link #transform(FeatureCollection, Operation, ResultHandler, ISubject)}).
+ * This keeps the memory bounded for collections streamed from disk.
+ * 
+ * The progress is published as an <code>Integer</code> percentage to the
+ * {@link ISubject} of the algorithm, each percentage once and always from the
+ * calling thread, as the observers of an algorithm are not thread safe.
+ * 
+ * The pool uses as many threads as there are processors, this can be lowered
+ * by the system property
+ * <code>org.n52.wps.server.algorithm.parallelism</code>.
+ */
+public class ParallelFeatureTransform {
+
+	private static final String KEY_PARALLELISM = "org.n52.wps.server.algorithm.parallelism";
+
+	// chunks per thread, so that expensive elements do not leave threads idle
+	private static final int CHUNKS_PER_THREAD = 8;
+
+	private static final int MIN_CHUNK_SIZE = 16;
+
+	private static final int STREAM_CHUNK_SIZE = 256;
+
+	private static final int CHUNKS_AHEAD_PER_THREAD = 2;
+
+	private static final long PROGRESS_INTERVAL_MILLIS = 200;
+
+	private static final ForkJoinPool POOL = new ForkJoinPool(Math.max(1,
+			Integer.getInteger(KEY_PARALLELISM, Runtime.getRuntime().availableProcessors())));
+
+	private ParallelFeatureTransform() {
+	}
+
+	/**
+	 * @return the pool to run the geometry operations of the algorithms on
+	 */
+	public static ForkJoinPool getPool() {
+		return POOL;
+	}
+
+	/**
+	 * Applies the operation to every element.
+	 * 
+	 * @param elements
+	 *            the elements, usually the features of a collection
+	 * @param operation
+	 *            the operation, has to be thread safe
+	 * @param subject
+	 *            receives the progress, may be <code>null</code>
+	 * @return the results in the order of the elements
+	 * @throws RuntimeException
+	 *             the first exception thrown by the operation
+	 */
+	public static <T, R> List<R> transform(List<T> elements, Operation<T, R> operation, ISubject subject) {
+		if (elements.isEmpty()) {
+			return Collections.emptyList();
+		}
+		Object[] results = new Object[elements.size()];
+		int chunkSize = Math.max(MIN_CHUNK_SIZE, elements.size() / (POOL.getParallelism() * CHUNKS_PER_THREAD));
+		Progress progress = new Progress();
+		ForkJoinTask<Void> task = POOL.submit(new TransformTask<T, R>(elements, operation, results, progress,
+				chunkSize, 0, elements.size()));
+
+		int published = await(task, progress, elements.size(), subject, -1);
+		publish(subject, 100, published);
+
+		@SuppressWarnings("unchecked")
+		List<R> list = (List<R>) Arrays.asList(results);
+		return list;
+	}
+
+	/**
+	 * Applies the operation to every feature of a collection, reading the
+	 * features in chunks instead of all at once.
+	 * 
+	 * @param collection
+	 *            the features, iterated once by the calling thread
+	 * @param operation
+	 *            the operation, has to be thread safe
+	 * @param handler
+	 *            receives the results in the order of the features, always
+	 *            from the calling thread
+	 * @param subject
+	 *            receives the progress, may be <code>null</code>
+	 * @throws RuntimeException
+	 *             the first exception thrown by the operation or the handler
+	 */
+	public static <R> void transform(FeatureCollection<?, ?> collection, Operation<SimpleFeature, R> operation,
+			ResultHandler<R> handler, ISubject subject) {
+		// only used for the progress, the features are not counted in advance
+		int total = collection.size();
+		int maxPending = POOL.getParallelism() * CHUNKS_AHEAD_PER_THREAD;
+		Deque<ChunkTask<R>> pending = new ArrayDeque<ChunkTask<R>>();
+		Progress progress = new Progress();
+		int published = -1;
+		int read = 0;
+		FeatureIterator<?> iterator = collection.features();
+		try {
+			while (true) {
+				while (pending.size() < maxPending && iterator.hasNext()) {
+					List<SimpleFeature> chunk = new ArrayList<SimpleFeature>(STREAM_CHUNK_SIZE);
+					while (chunk.size() < STREAM_CHUNK_SIZE && iterator.hasNext()) {
+						chunk.add((SimpleFeature) iterator.next());
+					}
+					ChunkTask<R> task = new ChunkTask<R>(chunk, read, operation, progress);
+					read += chunk.size();
+					pending.add(task);
+					POOL.execute(task);
+				}
+				ChunkTask<R> task = pending.poll();
+				if (task == null) {
+					break;
+				}
+				published = await(task, progress, Math.max(total, read), subject, published);
+				for (int i = 0; i < task.features.size(); i++) {
+					handler.handle(task.from + i, task.features.get(i), task.results.get(i));
+				}
+			}
+		} finally {
+			for (ChunkTask<R> task : pending) {
+				task.cancel(false);
+			}
+			iterator.close();
+		}
+		if (read > 0) {
+			publish(subject, 100, published);
+		}
+	}
+
+	/**
+	 * Waits for the task, publishing the progress meanwhile.
+	 * 
+	 * @return the percentage published last
+	 */
+	private static int await(ForkJoinTask<?> task, Progress progress, int total, ISubject subject, int published) {
+		while (true) {
+			try {
+				task.get(PROGRESS_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+				break;
+			} catch (TimeoutException e) {
+				published = publish(subject, Math.min(99, progress.done.get() * 100 / total), published);
+			} catch (InterruptedException e) {
+				task.cancel(true);
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while transforming the features", e);
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof Error) {
+					throw (Error) cause;
+				}
+				throw new IllegalStateException(cause);
+			}
+		}
+		if (progress.failure.get() != null) {
+			throw progress.failure.get();
+		}
+		return published;
+	}
+
+	/**
+	 * Reads the features of a collection, which can only be iterated by a
+	 * single thread. Only for collections which have to be held in memory
+	 * anyway, e.g. the indexed layer of an overlay, otherwise see
+	 * {@link #transform(FeatureCollection, Operation, ResultHandler, ISubject)}.
+	 */
+	public static List<SimpleFeature> getFeatures(FeatureCollection<?, ?> collection) {
+		List<SimpleFeature> features = new ArrayList<SimpleFeature>();
+		FeatureIterator<?> iterator = collection.features();
+		try {
+			while (iterator.hasNext()) {
+				features.add((SimpleFeature) iterator.next());
+			}
+		} finally {
+			iterator.close();
+		}
+		return features;
+	}
+
+	private static int publish(ISubject subject, int percentage, int published) {
+		// the percentage of a streamed collection may drop if it has more features than it reported
+		if (subject != null && percentage > published) {
+			subject.update(Integer.valueOf(percentage));
+		}
+		return Math.max(percentage, published);
+	}
+
+	private static class Progress {
+
+		private final AtomicInteger done = new AtomicInteger();
+
+		// the first exception of the operation, rethrown as it is instead of the copy made by the pool
+		private final AtomicReference<RuntimeException> failure = new AtomicReference<RuntimeException>();
+	}
+
+	/**
+	 * The operation applied to each element.
+	 */
+	public interface Operation<T, R> {
+
+		/**
+		 * @param index
+		 *            the index of the element
+		 */
+		R apply(int index, T element);
+	}
+
+	/**
+	 * Receives the results of the features of a collection.
+	 */
+	public interface ResultHandler<R> {
+
+		/**
+		 * @param index
+		 *            the index of the feature
+		 * @param result
+		 *            the result of the operation
+		 */
+		void handle(int index, SimpleFeature feature, R result);
+	}
+
+	private static class ChunkTask<R> extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final List<SimpleFeature> features;
+
+		private final int from;
+
+		private final Operation<SimpleFeature, R> operation;
+
+		private final Progress progress;
+
+		private final List<R> results;
+
+		ChunkTask(List<SimpleFeature> features, int from, Operation<SimpleFeature, R> operation, Progress progress) {
+			this.features = features;
+			this.from = from;
+			this.operation = operation;
+			this.progress = progress;
+			this.results = new ArrayList<R>(features.size());
+		}
+
+		@Override
+		protected void compute() {
+			if (progress.failure.get() != null) {
+				return;
+			}
+			try {
+				for (int i = 0; i < features.size(); i++) {
+					results.add(operation.apply(from + i, features.get(i)));
+				}
+			} catch (RuntimeException e) {
+				progress.failure.compareAndSet(null, e);
+			}
+			progress.done.addAndGet(features.size());
+		}
+	}
+
+	private static class TransformTask<T, R> extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final List<T> elements;
+
+		private final Operation<T, R> operation;
+
+		private final Object[] results;
+
+		private final Progress progress;
+
+		private final int chunkSize;
+
+		private final int from;
+
+		private final int to;
+
+		TransformTask(List<T> elements, Operation<T, R> operation, Object[] results, Progress progress,
+				int chunkSize, int from, int to) {
+			this.elements = elements;
+			this.operation = operation;
+			this.results = results;
+			this.progress = progress;
+			this.chunkSize = chunkSize;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (progress.failure.get() != null) {
+				return;
+			}
+			if (to - from <= chunkSize) {
+				try {
+					for (int i = from; i < to; i++) {
+						results[i] = operation.apply(i, elements.get(i));
+					}
+				} catch (RuntimeException e) {
+					progress.failure.compareAndSet(null, e);
+				}
+				progress.done.addAndGet(to - from);
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new TransformTask<T, R>(elements, operation, results, progress, chunkSize, from, middle),
+					new TransformTask<T, R>(elements, operation, results, progress, chunkSize, middle, to));
+		}
+	}
+}
@@ -0,0 +1,177 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * As an exception to the terms of the GPL, you may copy, modify,
+ * propagate, and distribute a work formed by combining 52°North WPS
+ * GeoTools Modules with the Eclipse Libraries, or a work derivative of
+ * such a combination, even if such copying, modification, propagation, or
+ * distribution would otherwise violate the terms of the GPL. Nothing in
+ * this exception exempts you from complying with the GPL in all respects
+ * for all of the code used other than the Eclipse Libraries. You may
+ * include this exception and its grant of permissions when you distribute
+ * 52°North WPS GeoTools Modules. Inclusion of this notice with such a
+ * distribution constitutes a grant of such permissions. If you do not wish
+ * to grant these permissions, remove this paragraph from your
+ * distribution. "52°North WPS GeoTools Modules" means the 52°North WPS
+ * modules using GeoTools functionality - software licensed under version 2
+ * or any later version of the GPL, or a work based on such software and
+ * licensed under the GPL. "Eclipse Libraries" means Eclipse Modeling
+ * Framework Project and XML Schema Definition software distributed by the
+ * Eclipse Foundation and licensed under the Eclipse Public License Version
+ * 1.0 ("EPL"), or a work based on such software and licensed under the EPL.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.algorithm.parallel;
+
+import java.io.IOException;
+
+import org.geotools.feature.DefaultFeatureCollections;
+import org.geotools.feature.FeatureCollection;
+import org.n52.wps.io.data.IData;
+import org.n52.wps.io.data.SpilledFeatureStore;
+import org.n52.wps.io.data.binding.complex.GTVectorDataBinding;
+import org.opengis.feature.simple.SimpleFeature;
+
+/**
+ * Collects the features of a result as they are computed. The features of a
+ * result computed from a streamed input are spilled to disk (see
+ * {@link SpilledFeatureStore}), so that neither the input nor the result is
+ * held in memory, the others are kept in memory.
+ * 
+ * A spilled result is restricted like its shapefile (see
+ * {@link SpilledFeatureStore}); a feature that cannot be spilled, e.g. as its
+ * geometry type differs from the one of the first feature, fails the
+ * execution rather than being left out of the result.
+ */
+public class ResultFeatures {
+
+	private final FeatureCollection memory;
+
+	private final SpilledFeatureStore spill;
+
+	/**
+	 * @param streaming
+	 *            <code>true</code> to spill the features to disk
+	 */
+	public ResultFeatures(boolean streaming) {
+		if (streaming) {
+			memory = null;
+			try {
+				spill = new SpilledFeatureStore();
+			} catch (IOException e) {
+				throw new RuntimeException("Could not create the spill of the result", e);
+			}
+		} else {
+			memory = DefaultFeatureCollections.newCollection();
+			spill = null;
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if the input is a streamed feature collection
+	 */
+	public static boolean isStreaming(IData input) {
+		return input instanceof GTVectorDataBinding && ((GTVectorDataBinding) input).isStreaming();
+	}
+
+	/**
+	 * @return <code>true</code> if the payload of an input is a streamed
+	 *         feature collection, for annotated algorithms which only receive
+	 *         the payload
+	 */
+	public static boolean isStreaming(FeatureCollection<?, ?> input) {
+		return SpilledFeatureStore.isSpilled(input);
+	}
+
+	public boolean isStreaming() {
+		return spill != null;
+	}
+
+	/**
+	 * Adds a feature.
+	 * 
+	 * @throws IllegalStateException
+	 *             if the feature cannot be spilled, e.g. as its geometry type
+	 *             differs from the one of the first feature; the spilled
+	 *             features are deleted
+	 */
+	@SuppressWarnings("unchecked")
+	public void add(SimpleFeature feature) {
+		if (spill == null) {
+			memory.add(feature);
+			return;
+		}
+		try {
+			spill.add(feature);
+		} catch (IOException e) {
+			throw failedToSpill(feature, e);
+		} catch (RuntimeException e) {
+			throw failedToSpill(feature, e);
+		}
+	}
+
+	private IllegalStateException failedToSpill(SimpleFeature feature, Exception cause) {
+		spill.dispose();
+		return new IllegalStateException("Could not spill result feature " + feature.getID() + " after "
+				+ spill.getCount() + " features (a streamed result keeps the geometry type of its first feature): "
+				+ cause.getMessage(), cause);
+	}
+
+	/**
+	 * Finishes the result.
+	 * 
+	 * @return the features, read from disk on each iteration if they were
+	 *         spilled
+	 */
+	public FeatureCollection<?, ?> getCollection() {
+		return toBinding().getPayload();
+	}
+
+	/**
+	 * Finishes the result.
+	 * 
+	 * @return the binding of the features, streaming if they were spilled
+	 */
+	public GTVectorDataBinding toBinding() {
+		if (spill == null) {
+			return new GTVectorDataBinding(memory);
+		}
+		FeatureCollection<?, ?> spilled;
+		try {
+			spilled = spill.close();
+		} catch (IOException e) {
+			spill.dispose();
+			throw new RuntimeException("Could not read the spilled result", e);
+		}
+		if (spilled == null) {
+			// no feature was added
+			spill.dispose();
+			return new GTVectorDataBinding(DefaultFeatureCollections.newCollection());
+		}
+		return new GTVectorDataBinding(spilled, spill);
+	}
+}
@@ -48,6 +48,7 @@
 package org.n52.wps.server.algorithm.raster;
 
 import java.awt.image.RenderedImage;
+import java.awt.image.renderable.ParameterBlock;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -61,6 +62,7 @@ import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.coverage.grid.GridCoverageFactory;
 import org.geotools.feature.FeatureCollection;
 import org.n52.wps.io.data.IData;
+import org.n52.wps.io.data.RasterTiling;
 import org.n52.wps.io.data.binding.complex.GTRasterDataBinding;
 import org.n52.wps.io.data.binding.complex.GTVectorDataBinding;
 import org.n52.wps.server.AbstractSelfDescribingAlgorithm;
@@ -121,10 +123,15 @@ public class AddRasterValues extends AbstractSelfDescribingAlgorithm{
 		GridCoverage2D gridCoverage2 = (GridCoverage2D) dataset2.getPayload();
 		RenderedImage image2 = gridCoverage2.getRenderedImage();
 		
-		RenderedOp resultImage = JAI.create("add",image1, image2);
+		// the sum is computed in tiles of the configured size while it is read,
+		// the next row of tiles in parallel
+		ParameterBlock parameters = new ParameterBlock();
+		parameters.addSource(image1);
+		parameters.addSource(image2);
+		RenderedOp resultImage = JAI.create("add", parameters, RasterTiling.getInstance().getOperationHints());
 		
 		GridCoverageFactory gcf = new GridCoverageFactory();
-        GridCoverage2D output =  gcf.create("result", resultImage, gridCoverage1.getEnvelope());
+        GridCoverage2D output =  gcf.create("result", RasterTiling.prefetchRows(resultImage), gridCoverage1.getEnvelope());
 
        
 		HashMap<String,IData> resulthash = new HashMap<String,IData>();
@@ -55,13 +55,14 @@ import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.geotools.feature.FeatureCollection;
-import org.geotools.feature.FeatureIterator;
 import org.geotools.feature.IllegalAttributeException;
 import org.n52.wps.io.data.IData;
 import org.n52.wps.io.data.binding.complex.GTVectorDataBinding;
 import org.n52.wps.io.data.binding.literal.LiteralDoubleBinding;
 import org.n52.wps.server.AbstractAlgorithm;
 import org.n52.wps.server.AbstractSelfDescribingAlgorithm;
+import org.n52.wps.server.algorithm.parallel.ParallelFeatureTransform;
+import org.n52.wps.server.algorithm.parallel.ResultFeatures;
 import org.opengis.feature.Feature;
 import org.opengis.feature.simple.SimpleFeature;
 
@@ -88,7 +89,6 @@ public class DouglasPeuckerAlgorithm extends AbstractSelfDescribingAlgorithm{
 		IData firstInputData = dataList.get(0);
 				
 		FeatureCollection featureCollection = ((GTVectorDataBinding) firstInputData).getPayload();
-		FeatureIterator iter = featureCollection.features();
 		
 		if( !inputData.containsKey("TOLERANCE")){
 			throw new RuntimeException("Error while allocating input parameters");
@@ -100,49 +100,57 @@ public class DouglasPeuckerAlgorithm extends AbstractSelfDescribingAlgorithm{
 		Double tolerance = ((LiteralDoubleBinding) widthDataList.get(0)).getPayload();
 		
 		
-		while(iter.hasNext()) {
-			SimpleFeature f = (SimpleFeature) iter.next();
-			if(f.getDefaultGeometry() == null) {
-				LOGGER.debug("defaultGeometry is null in feature id:" + f.getID());
-				throw new NullPointerException("defaultGeometry is null in feature id: " + f.getID());
-			}
-			Map<Object, Object> userData = f.getUserData();
-			
-			try{
-				Geometry in = (Geometry) f.getDefaultGeometry();
-				Geometry out = DouglasPeuckerSimplifier.simplify(in, tolerance);
-                /*
-                 * THIS PASSAGE WAS CONTRIBUTED BY GOBE HOBONA.
-                 *The simplification of MultiPolygons produces Polygon geometries. This becomes inconsistent with the original schema (which was of MultiPolygons).
-                 *To ensure that the output geometries match that of the original schema we add the Polygon(from the simplication) to a MultiPolygon object
-                 *
-                 *This is issue is known to affect MultiPolygon geometries only, other geometries need to be tested to ensure conformance with the original (input) schema
-                 */  
-                if(in.getGeometryType().equals("MultiPolygon") && out.getGeometryType().equals("Polygon"))
-                {                   
-                    MultiPolygon mp = (MultiPolygon)in;                                               
-                    Polygon[] p = {(Polygon)out};
-                    mp = new MultiPolygon(p,mp.getFactory());                   
-                    f.setDefaultGeometry(mp);
-                }
-                else if(in.getGeometryType().equals("MultiLineString") && out.getGeometryType().equals("LineString")) {
-                	MultiLineString ml = (MultiLineString)in;
-                	LineString[] l = {(LineString)out};
-                    ml = new MultiLineString(l,ml.getFactory());                   
-                    f.setDefaultGeometry(ml);
-                }
-                else {
-                	f.setDefaultGeometry(out);
-                }
-				Geometry g = (Geometry) f.getDefaultGeometry();
-				g.setUserData(userData);
-			}
-			catch(IllegalAttributeException e) {
-				throw new RuntimeException("geometrytype of result is not matching", e);
-			}
-		}
+		final double simplifyTolerance = tolerance;
+		// the features of a streamed input are read from disk, so the simplified ones have to be spilled again
+		final ResultFeatures spilled = ResultFeatures.isStreaming(firstInputData) ? new ResultFeatures(true) : null;
+		// the geometries are simplified in parallel and set in the order of the features
+		ParallelFeatureTransform.transform(featureCollection,
+				new ParallelFeatureTransform.Operation<SimpleFeature, Geometry>() {
+					public Geometry apply(int index, SimpleFeature f) {
+						if(f.getDefaultGeometry() == null) {
+							LOGGER.debug("defaultGeometry is null in feature id:" + f.getID());
+							throw new NullPointerException("defaultGeometry is null in feature id: " + f.getID());
+						}
+						Geometry in = (Geometry) f.getDefaultGeometry();
+						Geometry out = DouglasPeuckerSimplifier.simplify(in, simplifyTolerance);
+						/*
+						 * THIS PASSAGE WAS CONTRIBUTED BY GOBE HOBONA.
+						 *The simplification of MultiPolygons produces Polygon geometries. This becomes inconsistent with the original schema (which was of MultiPolygons).
+						 *To ensure that the output geometries match that of the original schema we add the Polygon(from the simplication) to a MultiPolygon object
+						 *
+						 *This is issue is known to affect MultiPolygon geometries only, other geometries need to be tested to ensure conformance with the original (input) schema
+						 */
+						if(in.getGeometryType().equals("MultiPolygon") && out.getGeometryType().equals("Polygon")) {
+							MultiPolygon mp = (MultiPolygon)in;
+							Polygon[] p = {(Polygon)out};
+							return new MultiPolygon(p,mp.getFactory());
+						}
+						else if(in.getGeometryType().equals("MultiLineString") && out.getGeometryType().equals("LineString")) {
+							MultiLineString ml = (MultiLineString)in;
+							LineString[] l = {(LineString)out};
+							return new MultiLineString(l,ml.getFactory());
+						}
+						return out;
+					}
+				}, new ParallelFeatureTransform.ResultHandler<Geometry>() {
+					public void handle(int i, SimpleFeature f, Geometry simplified) {
+						Map<Object, Object> userData = f.getUserData();
+						
+						try{
+							f.setDefaultGeometry(simplified);
+							Geometry g = (Geometry) f.getDefaultGeometry();
+							g.setUserData(userData);
+						}
+						catch(IllegalAttributeException e) {
+							throw new RuntimeException("geometrytype of result is not matching", e);
+						}
+						if(spilled != null) {
+							spilled.add(f);
+						}
+					}
+				}, this);
 		HashMap<String, IData> result = new HashMap<String, IData>();
-		result.put("SIMPLIFIED_FEATURES", new GTVectorDataBinding(featureCollection));
+		result.put("SIMPLIFIED_FEATURES", spilled != null ? spilled.toBinding() : new GTVectorDataBinding(featureCollection));
 		return result;
 	}
 
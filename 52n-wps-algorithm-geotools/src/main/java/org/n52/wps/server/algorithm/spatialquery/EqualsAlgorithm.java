@@ -60,6 +60,7 @@ import org.n52.wps.io.data.IData;
 import org.n52.wps.io.data.binding.complex.GTVectorDataBinding;
 import org.n52.wps.io.data.binding.literal.LiteralBooleanBinding;
 import org.n52.wps.server.AbstractSelfDescribingAlgorithm;
+import org.n52.wps.server.IResettableAlgorithm;
 import org.opengis.feature.simple.SimpleFeature;
 
 import com.vividsolutions.jts.geom.Geometry;
@@ -68,7 +69,7 @@ import com.vividsolutions.jts.geom.Geometry;
  * @author Benjamin Pross (bpross-52n) 
  *
  */
-public class EqualsAlgorithm extends AbstractSelfDescribingAlgorithm {
+public class EqualsAlgorithm extends AbstractSelfDescribingAlgorithm implements IResettableAlgorithm {
 
 	Logger LOGGER = LoggerFactory.getLogger(EqualsAlgorithm.class);
 	private final String inputID1 = "LAYER1";
@@ -80,6 +81,10 @@ public class EqualsAlgorithm extends AbstractSelfDescribingAlgorithm {
 		return errors;
 	}
 
+	public void reset() {
+		errors.clear();
+	}
+
 	public Class<GTVectorDataBinding> getInputDataType(String id) {
 		if (id.equalsIgnoreCase(inputID1) || id.equalsIgnoreCase(inputID2)) {
 			return GTVectorDataBinding.class;
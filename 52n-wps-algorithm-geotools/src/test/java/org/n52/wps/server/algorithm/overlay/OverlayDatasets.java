@@ -0,0 +1,139 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * As an exception to the terms of the GPL, you may copy, modify,
+ * propagate, and distribute a work formed by combining 52°North WPS
+ * GeoTools Modules with the Eclipse Libraries, or a work derivative of
+ * such a combination, even if such copying, modification, propagation, or
+ * distribution would otherwise violate the terms of the GPL. Nothing in
+ * this exception exempts you from complying with the GPL in all respects
+ * for all of the code used other than the Eclipse Libraries. You may
+ * include this exception and its grant of permissions when you distribute
+ * 52°North WPS GeoTools Modules. Inclusion of this notice with such a
+ * distribution constitutes a grant of such permissions. If you do not wish
+ * to grant these permissions, remove this paragraph from your
+ * distribution. "52°North WPS GeoTools Modules" means the 52°North WPS
+ * modules using GeoTools functionality - software licensed under version 2
+ * or any later version of the GPL, or a work based on such software and
+ * licensed under the GPL. "Eclipse Libraries" means Eclipse Modeling
+ * Framework Project and XML Schema Definition software distributed by the
+ * Eclipse Foundation and licensed under the Eclipse Public License Version
+ * 1.0 ("EPL"), or a work based on such software and licensed under the EPL.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.algorithm.overlay;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+
+/**
+ * Generates overlay datasets and benchmarks the {@link OverlayEngine} against
+ * the nested loop. Run <code>main</code> with the number of features per layer
+ * (default 20000).
+ */
+public class OverlayDatasets {
+
+	private static final GeometryFactory FACTORY = new GeometryFactory();
+
+	/**
+	 * @return <code>count</code> squares with random position and a size of up
+	 *         to <code>maxSize</code> within the square from 0,0 to
+	 *         <code>extent</code>,<code>extent</code>
+	 */
+	public static List<Geometry> randomSquares(long seed, int count, double extent, double maxSize) {
+		Random random = new Random(seed);
+		List<Geometry> squares = new ArrayList<Geometry>(count);
+		for (int i = 0; i < count; i++) {
+			double size = random.nextDouble() * maxSize;
+			double x = random.nextDouble() * (extent - size);
+			double y = random.nextDouble() * (extent - size);
+			squares.add(square(x, y, size));
+		}
+		return squares;
+	}
+
+	/**
+	 * @return a grid of <code>columns</code> x <code>columns</code> squares of
+	 *         the given size, row by row
+	 */
+	public static List<Geometry> grid(int columns, double size) {
+		List<Geometry> squares = new ArrayList<Geometry>(columns * columns);
+		for (int row = 0; row < columns; row++) {
+			for (int column = 0; column < columns; column++) {
+				squares.add(square(column * size, row * size, size));
+			}
+		}
+		return squares;
+	}
+
+	public static Geometry square(double x, double y, double size) {
+		return FACTORY.createPolygon(FACTORY.createLinearRing(new Coordinate[] { new Coordinate(x, y),
+				new Coordinate(x + size, y), new Coordinate(x + size, y + size), new Coordinate(x, y + size),
+				new Coordinate(x, y) }), null);
+	}
+
+	public static void main(String[] args) {
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		double extent = Math.sqrt(count) * 10;
+		List<Geometry> first = randomSquares(1, count, extent, 20);
+		List<Geometry> second = randomSquares(2, count, extent, 20);
+
+		long start = System.nanoTime();
+		OverlayEngine engine = new OverlayEngine(second);
+		List<int[]> matches = engine.overlay(first, new OverlayEngine.Operation<int[]>() {
+			public int[] apply(int index, PreparedGeometry probe, OverlayEngine engine) {
+				return engine.query(probe, SpatialPredicate.INTERSECTS);
+			}
+		}, null);
+		long indexed = System.nanoTime() - start;
+		long pairs = 0;
+		for (int[] match : matches) {
+			pairs += match.length;
+		}
+		System.out.println(count + " x " + count + " features, " + pairs + " intersecting pairs");
+		System.out.println("indexed: " + indexed / 1000000 + " ms");
+
+		// the nested loop is only timed for a sample of the probes
+		int sample = Math.min(count, 1000);
+		start = System.nanoTime();
+		for (int i = 0; i < sample; i++) {
+			PreparedGeometry probe = PreparedGeometryFactory.prepare(first.get(i));
+			for (Geometry geometry : second) {
+				probe.intersects(geometry);
+			}
+		}
+		long nested = (System.nanoTime() - start) / sample * count;
+		System.out.println("nested loop (extrapolated): " + nested / 1000000 + " ms");
+	}
+}
@@ -0,0 +1,144 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * As an exception to the terms of the GPL, you may copy, modify,
+ * propagate, and distribute a work formed by combining 52°North WPS
+ * GeoTools Modules with the Eclipse Libraries, or a work derivative of
+ * such a combination, even if such copying, modification, propagation, or
+ * distribution would otherwise violate the terms of the GPL. Nothing in
+ * this exception exempts you from complying with the GPL in all respects
+ * for all of the code used other than the Eclipse Libraries. You may
+ * include this exception and its grant of permissions when you distribute
+ * 52°North WPS GeoTools Modules. Inclusion of this notice with such a
+ * distribution constitutes a grant of such permissions. If you do not wish
+ * to grant these permissions, remove this paragraph from your
+ * distribution. "52°North WPS GeoTools Modules" means the 52°North WPS
+ * modules using GeoTools functionality - software licensed under version 2
+ * or any later version of the GPL, or a work based on such software and
+ * licensed under the GPL. "Eclipse Libraries" means Eclipse Modeling
+ * Framework Project and XML Schema Definition software distributed by the
+ * Eclipse Foundation and licensed under the Eclipse Public License Version
+ * 1.0 ("EPL"), or a work based on such software and licensed under the EPL.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.algorithm.overlay;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+
+public class OverlayEngineTest {
+
+	@Test
+	public void testQueryMatchesNestedLoop() {
+		List<Geometry> probes = OverlayDatasets.randomSquares(1, 300, 500, 40);
+		List<Geometry> indexed = OverlayDatasets.randomSquares(2, 300, 500, 40);
+		final OverlayEngine engine = new OverlayEngine(indexed);
+
+		for (final SpatialPredicate predicate : SpatialPredicate.values()) {
+			List<int[]> matches = engine.overlay(probes, new OverlayEngine.Operation<int[]>() {
+				public int[] apply(int index, PreparedGeometry probe, OverlayEngine engine) {
+					return engine.query(probe, predicate);
+				}
+			}, null);
+			assertEquals(probes.size(), matches.size());
+			for (int i = 0; i < probes.size(); i++) {
+				PreparedGeometry probe = PreparedGeometryFactory.prepare(probes.get(i));
+				List<Integer> expected = new ArrayList<Integer>();
+				for (int j = 0; j < indexed.size(); j++) {
+					if (predicate.test(probe, indexed.get(j))) {
+						expected.add(j);
+					}
+				}
+				assertArrayEquals(predicate + " of probe " + i, toArray(expected), matches.get(i));
+			}
+		}
+	}
+
+	@Test
+	public void testResultsAreInProbeOrder() {
+		List<Geometry> grid = OverlayDatasets.grid(20, 10);
+		OverlayEngine engine = new OverlayEngine(grid);
+		List<Integer> indexes = engine.overlay(grid, new OverlayEngine.Operation<Integer>() {
+			public Integer apply(int index, PreparedGeometry probe, OverlayEngine engine) {
+				return index;
+			}
+		}, null);
+		for (int i = 0; i < grid.size(); i++) {
+			assertEquals(Integer.valueOf(i), indexes.get(i));
+		}
+	}
+
+	@Test
+	public void testGridNeighbours() {
+		OverlayEngine engine = new OverlayEngine(OverlayDatasets.grid(3, 10));
+		// the center square touches all others
+		PreparedGeometry center = PreparedGeometryFactory.prepare(OverlayDatasets.square(10, 10, 10));
+		assertArrayEquals(new int[] { 0, 1, 2, 3, 5, 6, 7, 8 }, engine.query(center, SpatialPredicate.TOUCHES));
+		assertArrayEquals(new int[] { 4 }, engine.query(center, SpatialPredicate.EQUALS));
+		PreparedGeometry inner = PreparedGeometryFactory.prepare(OverlayDatasets.square(12, 12, 2));
+		assertArrayEquals(new int[] { 4 }, engine.query(inner, SpatialPredicate.WITHIN));
+	}
+
+	@Test
+	public void testMissingGeometries() {
+		List<Geometry> indexed = new ArrayList<Geometry>(OverlayDatasets.grid(2, 10));
+		indexed.add(1, null);
+		OverlayEngine engine = new OverlayEngine(indexed);
+		assertEquals(5, engine.size());
+		PreparedGeometry all = PreparedGeometryFactory.prepare(OverlayDatasets.square(0, 0, 20));
+		assertArrayEquals(new int[] { 0, 2, 3, 4 }, engine.query(all, SpatialPredicate.INTERSECTS));
+		assertEquals(0, engine.query(null, SpatialPredicate.INTERSECTS).length);
+
+		List<Boolean> probed = engine.overlay(Arrays.<Geometry> asList(null, OverlayDatasets.square(0, 0, 1)),
+				new OverlayEngine.Operation<Boolean>() {
+					public Boolean apply(int index, PreparedGeometry probe, OverlayEngine engine) {
+						return probe != null;
+					}
+				}, null);
+		assertEquals(Arrays.asList(false, true), probed);
+		assertTrue(engine.overlay(new ArrayList<Geometry>(), null, null).isEmpty());
+	}
+
+	private static int[] toArray(List<Integer> list) {
+		int[] array = new int[list.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = list.get(i);
+		}
+		return array;
+	}
+}
@@ -0,0 +1,241 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * As an exception to the terms of the GPL, you may copy, modify,
+ * propagate, and distribute a work formed by combining 52°North WPS
+ * GeoTools Modules with the Eclipse Libraries, or a work derivative of
+ * such a combination, even if such copying, modification, propagation, or
+ * distribution would otherwise violate the terms of the GPL. Nothing in
+ * this exception exempts you from complying with the GPL in all respects
+ * for all of the code used other than the Eclipse Libraries. You may
+ * include this exception and its grant of permissions when you distribute
+ * 52°North WPS GeoTools Modules. Inclusion of this notice with such a
+ * distribution constitutes a grant of such permissions. If you do not wish
+ * to grant these permissions, remove this paragraph from your
+ * distribution. "52°North WPS GeoTools Modules" means the 52°North WPS
+ * modules using GeoTools functionality - software licensed under version 2
+ * or any later version of the GPL, or a work based on such software and
+ * licensed under the GPL. "Eclipse Libraries" means Eclipse Modeling
+ * Framework Project and XML Schema Definition software distributed by the
+ * Eclipse Foundation and licensed under the Eclipse Public License Version
+ * 1.0 ("EPL"), or a work based on such software and licensed under the EPL.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.algorithm.parallel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.geotools.feature.DefaultFeatureCollections;
+import org.geotools.feature.FeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.junit.Test;
+import org.n52.wps.server.observerpattern.IObserver;
+import org.n52.wps.server.observerpattern.ISubject;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Point;
+
+public class ParallelFeatureTransformTest {
+
+	@Test
+	public void testResultsKeepTheOrder() {
+		List<Integer> elements = new ArrayList<Integer>();
+		for (int i = 0; i < 10000; i++) {
+			elements.add(i);
+		}
+		List<String> results = ParallelFeatureTransform.transform(elements,
+				new ParallelFeatureTransform.Operation<Integer, String>() {
+					public String apply(int index, Integer element) {
+						assertEquals(index, element.intValue());
+						return "ID" + (element + 1);
+					}
+				}, null);
+		assertEquals(elements.size(), results.size());
+		for (int i = 0; i < results.size(); i++) {
+			assertEquals("ID" + (i + 1), results.get(i));
+		}
+	}
+
+	@Test
+	public void testProgressIsPublishedOncePerPercentageByTheCallingThread() {
+		List<Integer> elements = Collections.nCopies(400, 0);
+		RecordingSubject subject = new RecordingSubject();
+		ParallelFeatureTransform.transform(elements, new ParallelFeatureTransform.Operation<Integer, Integer>() {
+			public Integer apply(int index, Integer element) {
+				try {
+					Thread.sleep(2);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return element;
+			}
+		}, subject);
+		assertTrue(subject.thread == Thread.currentThread());
+		assertEquals(Integer.valueOf(100), subject.states.get(subject.states.size() - 1));
+		for (int i = 1; i < subject.states.size(); i++) {
+			assertTrue(subject.states.toString(), subject.states.get(i - 1) < subject.states.get(i));
+		}
+	}
+
+	@Test
+	public void testExceptionOfTheOperationIsRethrown() {
+		final IllegalArgumentException failure = new IllegalArgumentException("feature 17");
+		try {
+			ParallelFeatureTransform.transform(Collections.nCopies(100, 0),
+					new ParallelFeatureTransform.Operation<Integer, Integer>() {
+						public Integer apply(int index, Integer element) {
+							if (index == 17) {
+								throw failure;
+							}
+							return element;
+						}
+					}, null);
+			fail("IllegalArgumentException expected");
+		} catch (IllegalArgumentException e) {
+			assertEquals(failure.getMessage(), e.getMessage());
+		}
+	}
+
+	@Test
+	public void testEmptyList() {
+		RecordingSubject subject = new RecordingSubject();
+		assertTrue(ParallelFeatureTransform.transform(new ArrayList<Integer>(),
+				new ParallelFeatureTransform.Operation<Integer, Integer>() {
+					public Integer apply(int index, Integer element) {
+						return element;
+					}
+				}, subject).isEmpty());
+		assertTrue(subject.states.isEmpty());
+		assertSame(ParallelFeatureTransform.getPool(), ParallelFeatureTransform.getPool());
+	}
+
+	@Test
+	public void testFeaturesAreStreamedInOrder() {
+		FeatureCollection<?, ?> collection = createPoints(5000);
+		final AtomicInteger maxApplied = new AtomicInteger(-1);
+		final List<Integer> handled = new ArrayList<Integer>();
+		RecordingSubject subject = new RecordingSubject();
+		ParallelFeatureTransform.transform(collection, new ParallelFeatureTransform.Operation<SimpleFeature, Double>() {
+			public Double apply(int index, SimpleFeature feature) {
+				int max;
+				while ((max = maxApplied.get()) < index && !maxApplied.compareAndSet(max, index)) {
+					// retry
+				}
+				return Double.valueOf(((Point) feature.getDefaultGeometry()).getX());
+			}
+		}, new ParallelFeatureTransform.ResultHandler<Double>() {
+			public void handle(int index, SimpleFeature feature, Double result) {
+				assertEquals(handled.size(), index);
+				assertEquals(index, result.intValue());
+				assertEquals(String.format("point.%05d", index), feature.getID());
+				// 2 chunks of 256 features per thread are read ahead at most
+				int ahead = ParallelFeatureTransform.getPool().getParallelism() * 2 * 256;
+				assertTrue(maxApplied.get() - index < ahead);
+				handled.add(index);
+			}
+		}, subject);
+		assertEquals(5000, handled.size());
+		assertEquals(Integer.valueOf(100), subject.states.get(subject.states.size() - 1));
+	}
+
+	@Test
+	public void testExceptionOfAStreamedOperationIsRethrown() {
+		final IllegalArgumentException failure = new IllegalArgumentException("feature 700");
+		try {
+			ParallelFeatureTransform.transform(createPoints(1000),
+					new ParallelFeatureTransform.Operation<SimpleFeature, Integer>() {
+						public Integer apply(int index, SimpleFeature feature) {
+							if (index == 700) {
+								throw failure;
+							}
+							return index;
+						}
+					}, new ParallelFeatureTransform.ResultHandler<Integer>() {
+						public void handle(int index, SimpleFeature feature, Integer result) {
+							assertTrue(index < 700);
+						}
+					}, null);
+			fail("IllegalArgumentException expected");
+		} catch (IllegalArgumentException e) {
+			assertEquals(failure.getMessage(), e.getMessage());
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static FeatureCollection<?, ?> createPoints(int count) {
+		SimpleFeatureTypeBuilder typeBuilder = new SimpleFeatureTypeBuilder();
+		typeBuilder.setName("point");
+		typeBuilder.add("the_geom", Point.class);
+		SimpleFeatureType type = typeBuilder.buildFeatureType();
+		GeometryFactory factory = new GeometryFactory();
+		FeatureCollection collection = DefaultFeatureCollections.newCollection();
+		for (int i = 0; i < count; i++) {
+			SimpleFeatureBuilder builder = new SimpleFeatureBuilder(type);
+			builder.add(factory.createPoint(new Coordinate(i, 0)));
+			// the features are iterated in the order of their IDs
+			collection.add(builder.buildFeature(String.format("point.%05d", i)));
+		}
+		return collection;
+	}
+
+	private static class RecordingSubject implements ISubject {
+
+		private final List<Integer> states = new ArrayList<Integer>();
+
+		private Thread thread;
+
+		public void addObserver(IObserver o) {
+		}
+
+		public void removeObserver(IObserver o) {
+		}
+
+		public Object getState() {
+			return states.isEmpty() ? null : states.get(states.size() - 1);
+		}
+
+		public void update(Object state) {
+			if (thread != null && thread != Thread.currentThread()) {
+				throw new IllegalStateException("Progress published by several threads");
+			}
+			thread = Thread.currentThread();
+			states.add((Integer) state);
+		}
+	}
+}
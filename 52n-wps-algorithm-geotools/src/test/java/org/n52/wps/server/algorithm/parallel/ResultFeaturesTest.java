@@ -0,0 +1,143 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * As an exception to the terms of the GPL, you may copy, modify,
+ * propagate, and distribute a work formed by combining 52°North WPS
+ * GeoTools Modules with the Eclipse Libraries, or a work derivative of
+ * such a combination, even if such copying, modification, propagation, or
+ * distribution would otherwise violate the terms of the GPL. Nothing in
+ * this exception exempts you from complying with the GPL in all respects
+ * for all of the code used other than the Eclipse Libraries. You may
+ * include this exception and its grant of permissions when you distribute
+ * 52°North WPS GeoTools Modules. Inclusion of this notice with such a
+ * distribution constitutes a grant of such permissions. If you do not wish
+ * to grant these permissions, remove this paragraph from your
+ * distribution. "52°North WPS GeoTools Modules" means the 52°North WPS
+ * modules using GeoTools functionality - software licensed under version 2
+ * or any later version of the GPL, or a work based on such software and
+ * licensed under the GPL. "Eclipse Libraries" means Eclipse Modeling
+ * Framework Project and XML Schema Definition software distributed by the
+ * Eclipse Foundation and licensed under the Eclipse Public License Version
+ * 1.0 ("EPL"), or a work based on such software and licensed under the EPL.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.algorithm.parallel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.geotools.feature.FeatureCollection;
+import org.geotools.feature.FeatureIterator;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.n52.wps.commons.WPSConfig;
+import org.n52.wps.io.data.binding.complex.GTVectorDataBinding;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+public class ResultFeaturesTest {
+
+	private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory();
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		WPSConfig.forceInitialization("../52n-wps-io/src/test/resources/org/n52/wps/io/test/datahandler/generator/wps_config.xml");
+	}
+
+	@Test
+	public void testStreamedResultIsReadFromTheSpill() {
+		ResultFeatures features = new ResultFeatures(true);
+		features.add(feature("ID1", point(0)));
+		features.add(feature("ID2", point(1)));
+		GTVectorDataBinding binding = features.toBinding();
+		assertTrue(binding.isStreaming());
+		assertTrue(ResultFeatures.isStreaming(binding));
+		assertTrue(ResultFeatures.isStreaming(binding.getPayload()));
+		assertEquals(2, count(binding.getPayload()));
+	}
+
+	@Test
+	public void testMixedGeometryTypesFailTheStreamedResult() {
+		ResultFeatures features = new ResultFeatures(true);
+		features.add(feature("ID1", point(0)));
+		SimpleFeature line = feature("ID2", GEOMETRY_FACTORY.createLineString(new Coordinate[] {
+				new Coordinate(0, 0), new Coordinate(1, 1) }));
+		try {
+			features.add(line);
+			fail("the line was left out of the streamed result");
+		} catch (IllegalStateException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("ID2"));
+		}
+	}
+
+	@Test
+	public void testMixedGeometryTypesAreKeptInMemory() {
+		ResultFeatures features = new ResultFeatures(false);
+		features.add(feature("ID1", point(0)));
+		features.add(feature("ID2", GEOMETRY_FACTORY.createLineString(new Coordinate[] {
+				new Coordinate(0, 0), new Coordinate(1, 1) })));
+		GTVectorDataBinding binding = features.toBinding();
+		assertFalse(binding.isStreaming());
+		assertFalse(ResultFeatures.isStreaming(binding.getPayload()));
+		assertEquals(2, count(binding.getPayload()));
+	}
+
+	private static Geometry point(int x) {
+		return GEOMETRY_FACTORY.createPoint(new Coordinate(x, 0));
+	}
+
+	private static SimpleFeature feature(String id, Geometry geometry) {
+		SimpleFeatureTypeBuilder typeBuilder = new SimpleFeatureTypeBuilder();
+		typeBuilder.setName("result");
+		typeBuilder.add("geometry", geometry.getClass());
+		typeBuilder.add("name", String.class);
+		SimpleFeatureType featureType = typeBuilder.buildFeatureType();
+		return SimpleFeatureBuilder.build(featureType, new Object[] { geometry, id }, id);
+	}
+
+	private static int count(FeatureCollection<?, ?> collection) {
+		int count = 0;
+		FeatureIterator<?> iterator = collection.features();
+		try {
+			while (iterator.hasNext()) {
+				iterator.next();
+				count++;
+			}
+		} finally {
+			iterator.close();
+		}
+		return count;
+	}
+}
@@ -34,6 +34,7 @@ import org.n52.wps.algorithm.annotation.ComplexDataOutput;
 import org.n52.wps.algorithm.annotation.Execute;
 import org.n52.wps.io.data.binding.complex.JTSGeometryBinding;
 import org.n52.wps.server.AbstractAnnotatedAlgorithm;
+import org.n52.wps.server.IResettableAlgorithm;
 
 import com.vividsolutions.jts.geom.Geometry;
 
@@ -43,7 +44,7 @@ import com.vividsolutions.jts.geom.Geometry;
  *
  */
 @Algorithm(version = "1.1.0")
-public class JTSConvexHullAlgorithm extends AbstractAnnotatedAlgorithm {
+public class JTSConvexHullAlgorithm extends AbstractAnnotatedAlgorithm implements IResettableAlgorithm {
 
     private Geometry result;
     private Geometry data;
@@ -62,4 +63,9 @@ public class JTSConvexHullAlgorithm extends AbstractAnnotatedAlgorithm {
     public void runAlgorithm() {
     	result = data.convexHull();
     }
+
+    public void reset() {
+        data = null;
+        result = null;
+    }
 }
\ No newline at end of file
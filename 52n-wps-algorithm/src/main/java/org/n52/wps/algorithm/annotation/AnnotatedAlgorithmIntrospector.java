@@ -24,10 +24,11 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import org.n52.wps.algorithm.annotation.AnnotationBinding.InputBinding;
 import org.n52.wps.algorithm.annotation.AnnotationBinding.OutputBinding;
 import org.n52.wps.algorithm.annotation.AnnotationBinding.ExecuteMethodBinding;
@@ -88,13 +89,17 @@ public class AnnotatedAlgorithmIntrospector {
         PROCESS_PARSER = new ExecuteAnnotationParser();
     }
     
-    private final static Map<Class<?>, AnnotatedAlgorithmIntrospector> INTROSPECTOR_MAP =
-            new HashMap<Class<?>, AnnotatedAlgorithmIntrospector>();
-    public static synchronized AnnotatedAlgorithmIntrospector getInstrospector(Class<?> algorithmClass) {
+    // read on every execution of an annotated algorithm, so lookups must not lock
+    private final static ConcurrentMap<Class<?>, AnnotatedAlgorithmIntrospector> INTROSPECTOR_MAP =
+            new ConcurrentHashMap<Class<?>, AnnotatedAlgorithmIntrospector>();
+    public static AnnotatedAlgorithmIntrospector getInstrospector(Class<?> algorithmClass) {
         AnnotatedAlgorithmIntrospector introspector = INTROSPECTOR_MAP.get(algorithmClass);
         if (introspector == null) {
             introspector = new AnnotatedAlgorithmIntrospector(algorithmClass);
-            INTROSPECTOR_MAP.put(algorithmClass, introspector);
+            AnnotatedAlgorithmIntrospector previous = INTROSPECTOR_MAP.putIfAbsent(algorithmClass, introspector);
+            if (previous != null) {
+                introspector = previous;
+            }
         }
         return introspector;
     }
@@ -16,6 +16,10 @@
  */
 package org.n52.wps.algorithm.annotation;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.WrongMethodTypeException;
 import java.lang.reflect.AccessibleObject;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
@@ -37,6 +41,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * Binds the annotated members of an algorithm class.
+ * 
+ * Members are accessed through {@link MethodHandle}s adapted to
+ * <code>Object</code> signatures, which are created once per binding and
+ * inlined by the JIT like direct calls. Setting the system property
+ * {@value #METHOD_HANDLES_PROPERTY} to <code>false</code> before an
+ * algorithm class is introspected makes its bindings use reflection
+ * instead, which is also used for members whose class is not accessible.
  *
  * @author tkunicki
  */
@@ -44,6 +56,13 @@ public abstract class AnnotationBinding<M extends AccessibleObject & Member> {
 
     private final static Logger LOGGER = LoggerFactory.getLogger(AnnotationBinding.class);
     
+    public final static String METHOD_HANDLES_PROPERTY = "org.n52.wps.algorithm.annotation.methodHandles";
+    
+    private final static MethodType EXECUTE_TYPE = MethodType.methodType(void.class, Object.class);
+    private final static MethodType SET_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+    private final static MethodType GET_TYPE = MethodType.methodType(Object.class, Object.class);
+    private final static MethodType CONSTRUCTOR_TYPE = MethodType.methodType(IData.class, Object.class);
+    
     private M member;
 
     public AnnotationBinding(M member) {
@@ -58,12 +77,54 @@ public abstract class AnnotationBinding<M extends AccessibleObject & Member> {
         return (getMember().getModifiers() & Modifier.PUBLIC) != 0;
     }
     
+    protected static boolean isMethodHandlesEnabled() {
+        return !"false".equalsIgnoreCase(System.getProperty(METHOD_HANDLES_PROPERTY));
+    }
+    
+    /**
+     * @return the handle of the member adapted to the given type or
+     *         <code>null</code> if method handles are disabled or the member
+     *         is not accessible, in which case reflection is used
+     */
+    private static MethodHandle unreflect(Member member, MethodType type) {
+        if (!isMethodHandlesEnabled()) {
+            return null;
+        }
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        try {
+            MethodHandle handle;
+            if (member instanceof Method) {
+                handle = lookup.unreflect((Method) member);
+            } else if (member instanceof Constructor) {
+                handle = lookup.unreflectConstructor((Constructor<?>) member);
+            } else if (type.returnType() == void.class) {
+                handle = lookup.unreflectSetter((Field) member);
+            } else {
+                handle = lookup.unreflectGetter((Field) member);
+            }
+            return handle.asType(type);
+        } catch (IllegalAccessException ex) {
+            LOGGER.debug("Using reflection to access {}: {}", member, ex.getMessage());
+        } catch (WrongMethodTypeException ex) {
+            LOGGER.debug("Using reflection to access {}: {}", member, ex.getMessage());
+        }
+        return null;
+    }
+    
+    // mirrors the unwrapping of an InvocationTargetException by the reflective path
+    private static RuntimeException invocationFailed(Throwable cause) {
+        return new RuntimeException(cause.getMessage(), cause);
+    }
+    
     public abstract boolean validate();
     
     public static class ExecuteMethodBinding extends AnnotationBinding<Method> {
 
+        private final MethodHandle handle;
+        
         public ExecuteMethodBinding(Method method) {
             super(method);
+            handle = unreflect(method, EXECUTE_TYPE);
         }
 
         @Override
@@ -85,6 +146,14 @@ public abstract class AnnotationBinding<M extends AccessibleObject & Member> {
         }
         
         public void execute(Object annotatedInstance) {
+            if (handle != null) {
+                try {
+                    handle.invokeExact(annotatedInstance);
+                } catch (Throwable t) {
+                    throw invocationFailed(t);
+                }
+                return;
+            }
             try {
                 getMember().invoke(annotatedInstance);
             }catch (IllegalAccessException ex) {
@@ -252,6 +321,8 @@ public abstract class AnnotationBinding<M extends AccessibleObject & Member> {
         
         private Constructor<? extends IData> bindingConstructor;
         
+        private volatile MethodHandle bindingConstructorHandle;
+        
         public OutputBinding(M member) {
             super(member);
         }
@@ -265,6 +336,14 @@ public abstract class AnnotationBinding<M extends AccessibleObject & Member> {
                 if (isTypeEnum()) {
                     outputValue = ((Enum<?>)outputValue).name();
                 }
+                MethodHandle handle = bindingConstructorHandle;
+                if (handle != null) {
+                    try {
+                        return (IData) handle.invokeExact(outputValue);
+                    } catch (Throwable t) {
+                        throw invocationFailed(t);
+                    }
+                }
                 return getConstructor().newInstance(outputValue);
             } catch (InstantiationException ex) {
                 throw new RuntimeException("Internal error processing outputs", ex);
@@ -290,6 +369,7 @@ public abstract class AnnotationBinding<M extends AccessibleObject & Member> {
                         Class<?> bindingPayloadClass = (Class<?>) bindingPayloadType;
                         if (bindingPayloadClass.isAssignableFrom(outputPayloadClass)) {
                             bindingConstructor = bindingClass.getConstructor(bindingPayloadClass);
+                            bindingConstructorHandle = unreflect(bindingConstructor, CONSTRUCTOR_TYPE);
                         }
                     }
                 }  catch (NoSuchMethodException e) {
@@ -302,8 +382,11 @@ public abstract class AnnotationBinding<M extends AccessibleObject & Member> {
 
     public static class InputFieldBinding<D extends InputDescriptor> extends InputBinding<Field, D> {
 
+        private final MethodHandle handle;
+        
         public InputFieldBinding(Field field) {
             super(field);
+            handle = unreflect(field, SET_TYPE);
         }
 
         @Override
@@ -330,6 +413,14 @@ public abstract class AnnotationBinding<M extends AccessibleObject & Member> {
         
         @Override
         public void set(Object annotatedObject, List<IData> boundInputList) {
+            if (handle != null) {
+                try {
+                    handle.invokeExact(annotatedObject, unbindInput(boundInputList));
+                } catch (Throwable t) {
+                    throw new RuntimeException("Internal error processing inputs", t);
+                }
+                return;
+            }
             try {
                 getMember().set(annotatedObject, unbindInput(boundInputList));
             } catch (IllegalArgumentException ex) {
@@ -342,8 +433,11 @@ public abstract class AnnotationBinding<M extends AccessibleObject & Member> {
 
     public static class InputMethodBinding<D extends InputDescriptor> extends InputBinding<Method, D> {
 
+        private final MethodHandle handle;
+        
         public InputMethodBinding(Method method) {
             super(method);
+            handle = method.getParameterTypes().length == 1 ? unreflect(method, SET_TYPE) : null;
         }
 
         @Override
@@ -371,6 +465,14 @@ public abstract class AnnotationBinding<M extends AccessibleObject & Member> {
         
         @Override
         public void set(Object annotatedObject, List<IData> boundInputList) {
+            if (handle != null) {
+                try {
+                    handle.invokeExact(annotatedObject, unbindInput(boundInputList));
+                } catch (Throwable t) {
+                    throw invocationFailed(t);
+                }
+                return;
+            }
             try {
                 getMember().invoke(annotatedObject, unbindInput(boundInputList));
             } catch (IllegalAccessException ex) {
@@ -386,8 +488,11 @@ public abstract class AnnotationBinding<M extends AccessibleObject & Member> {
 
     public static class OutputFieldBinding<D extends OutputDescriptor> extends OutputBinding<Field, D> {
 
+        private final MethodHandle handle;
+        
         public OutputFieldBinding(Field field) {
             super(field);
+            handle = unreflect(field, GET_TYPE);
         }
 
         @Override
@@ -411,6 +516,14 @@ public abstract class AnnotationBinding<M extends AccessibleObject & Member> {
         @Override
         public IData get(Object annotatedInstance) {
             Object value;
+            if (handle != null) {
+                try {
+                    value = handle.invokeExact(annotatedInstance);
+                } catch (Throwable t) {
+                    throw new RuntimeException("Internal error processing inputs", t);
+                }
+                return value == null ? null : bindOutputValue(value);
+            }
             try {
                 value = getMember().get(annotatedInstance);
             } catch (IllegalArgumentException ex) {
@@ -424,8 +537,11 @@ public abstract class AnnotationBinding<M extends AccessibleObject & Member> {
 
     public static class OutputMethodBinding<D extends OutputDescriptor> extends OutputBinding<Method, D> {
 
+        private final MethodHandle handle;
+        
         public OutputMethodBinding(Method method) {
             super(method);
+            handle = method.getParameterTypes().length == 0 ? unreflect(method, GET_TYPE) : null;
         }
 
         @Override
@@ -454,6 +570,14 @@ public abstract class AnnotationBinding<M extends AccessibleObject & Member> {
         @Override
         public IData get(Object annotatedInstance) {
             Object value;
+            if (handle != null) {
+                try {
+                    value = handle.invokeExact(annotatedInstance);
+                } catch (Throwable t) {
+                    throw invocationFailed(t);
+                }
+                return value == null ? null : bindOutputValue(value);
+            }
             try {
                 value = getMember().invoke(annotatedInstance);
             } catch (IllegalAccessException ex) {
@@ -0,0 +1,30 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wps.server;
+
+/**
+ * A repository that reuses the instances of {@link IResettableAlgorithm}s.
+ */
+public interface IPooledAlgorithmRepository extends IAlgorithmRepository {
+
+	/**
+	 * Returns an algorithm obtained by {@link #getAlgorithm(String)} after it
+	 * was executed successfully. The algorithm must not be used by the caller
+	 * afterwards.
+	 */
+	void releaseAlgorithm(String processID, IAlgorithm algorithm);
+}
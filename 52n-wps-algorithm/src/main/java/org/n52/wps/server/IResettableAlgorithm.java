@@ -0,0 +1,33 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wps.server;
+
+/**
+ * An algorithm whose instances may be reused for further executions. After
+ * an execution completed successfully, the instance is reset and kept by a
+ * repository supporting it (see {@link IPooledAlgorithmRepository}) instead
+ * of creating a new instance for the next execution. Stateless algorithms
+ * implement {@link #reset()} as a no-op.
+ */
+public interface IResettableAlgorithm extends IAlgorithm {
+
+	/**
+	 * Discards the state of the previous execution, i.e. its inputs, outputs
+	 * and errors.
+	 */
+	void reset();
+}
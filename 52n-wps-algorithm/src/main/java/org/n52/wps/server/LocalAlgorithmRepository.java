@@ -19,8 +19,10 @@ package org.n52.wps.server;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.opengis.wps.x100.ProcessDescriptionType;
 
@@ -34,18 +36,29 @@ import org.n52.wps.commons.WPSConfig;
 
 /**
  * A static repository to retrieve the available algorithms.
+ * 
+ * The class of an algorithm is loaded and its process description is
+ * validated once, further instances are created from the cached class.
+ * Instances of {@link IResettableAlgorithm}s are reused once they are
+ * released, the property <code>pool.maxIdle</code> of the repository limits
+ * the instances kept per algorithm (0 disables the reuse).
  * @author foerster
  *
  */
-public class LocalAlgorithmRepository implements ITransactionalAlgorithmRepository{
+public class LocalAlgorithmRepository implements ITransactionalAlgorithmRepository, IPooledAlgorithmRepository{
 	
 	private static Logger LOGGER = LoggerFactory.getLogger(LocalAlgorithmRepository.class);
+	private static final String PROPERTY_POOL_MAX_IDLE = "pool.maxIdle";
+	private static final int DEFAULT_POOL_MAX_IDLE = 8;
 	private Map<String, String> algorithmMap;
 	private Map<String, ProcessDescriptionType> processDescriptionMap;
+	private Map<String, AlgorithmClass> algorithmClassMap;
+	private int poolMaxIdle = DEFAULT_POOL_MAX_IDLE;
 	
 	public LocalAlgorithmRepository() {
-		algorithmMap = new HashMap<String, String>();
-		processDescriptionMap = new HashMap<String, ProcessDescriptionType>(); 
+		algorithmMap = new ConcurrentHashMap<String, String>();
+		processDescriptionMap = new ConcurrentHashMap<String, ProcessDescriptionType>(); 
+		algorithmClassMap = new ConcurrentHashMap<String, AlgorithmClass>();
 		
 		// check if the repository is active
 		if(WPSConfig.getInstance().isRepositoryActive(this.getClass().getCanonicalName())){
@@ -54,6 +67,12 @@ public class LocalAlgorithmRepository implements ITransactionalAlgorithmReposito
 				// check the name and active state
 				if(property.getName().equalsIgnoreCase("Algorithm") && property.getActive()){
 					addAlgorithm(property.getStringValue());
+				}else if(property.getName().equalsIgnoreCase(PROPERTY_POOL_MAX_IDLE) && property.getActive()){
+					try {
+						poolMaxIdle = Integer.parseInt(property.getStringValue().trim());
+					} catch (NumberFormatException e) {
+						LOGGER.warn("Invalid value of {}: {}", PROPERTY_POOL_MAX_IDLE, property.getStringValue());
+					}
 				}
 			}
 		} else {
@@ -88,24 +107,54 @@ public class LocalAlgorithmRepository implements ITransactionalAlgorithmReposito
 	}
 	
 	private IAlgorithm loadAlgorithm(String algorithmClassName) throws Exception {
+		AlgorithmClass cached = algorithmClassMap.get(algorithmClassName);
+		if(cached != null){
+			// the class was loaded and its description validated before
+			IAlgorithm pooled = cached.poll();
+			return pooled != null ? pooled : instantiate(cached.algorithmClass);
+		}
+		
         Class<?> algorithmClass = LocalAlgorithmRepository.class.getClassLoader().loadClass(algorithmClassName);
-        IAlgorithm algorithm = null;
+        IAlgorithm algorithm = instantiate(algorithmClass);
+		
+		if(!algorithm.processDescriptionIsValid()) {
+			LOGGER.warn("Algorithm description is not valid: " + algorithmClassName);
+			throw new Exception("Could not load algorithm " +algorithmClassName +". ProcessDescription Not Valid.");
+		}
+		algorithmClassMap.put(algorithmClassName, new AlgorithmClass(algorithmClass, poolMaxIdle));
+		return algorithm;
+	}
+
+	private static IAlgorithm instantiate(Class<?> algorithmClass) throws Exception {
         if (IAlgorithm.class.isAssignableFrom(algorithmClass)) {
-            algorithm = IAlgorithm.class.cast(algorithmClass.newInstance());
+            return IAlgorithm.class.cast(algorithmClass.newInstance());
         } else if (algorithmClass.isAnnotationPresent(Algorithm.class)) {
             // we have an annotated algorithm that doesn't implement IAlgorithm
             // wrap it in a proxy class
-            algorithm = new AbstractAnnotatedAlgorithm.Proxy(algorithmClass);
+            return new AbstractAnnotatedAlgorithm.Proxy(algorithmClass);
         }
         else {
-            throw new Exception("Could not load algorithm " + algorithmClassName + " does not implement IAlgorithm or have a Algorithm annotation.");
+            throw new Exception("Could not load algorithm " + algorithmClass.getName() + " does not implement IAlgorithm or have a Algorithm annotation.");
         }
-		
-		if(!algorithm.processDescriptionIsValid()) {
-			LOGGER.warn("Algorithm description is not valid: " + algorithmClassName);
-			throw new Exception("Could not load algorithm " +algorithmClassName +". ProcessDescription Not Valid.");
+	}
+
+	@Override
+	public void releaseAlgorithm(String processID, IAlgorithm algorithm) {
+		if(!(algorithm instanceof IResettableAlgorithm)){
+			return;
 		}
-		return algorithm;
+		AlgorithmClass cached = algorithmClassMap.get(processID);
+		if(cached == null || cached.algorithmClass != algorithm.getClass()){
+			// removed or replaced since the algorithm was obtained
+			return;
+		}
+		try {
+			((IResettableAlgorithm) algorithm).reset();
+		} catch (RuntimeException e) {
+			LOGGER.warn("Could not reset algorithm " + processID + ", the instance is discarded", e);
+			return;
+		}
+		cached.offer(algorithm);
 	}
 
 	public boolean addAlgorithm(Object processID) {
@@ -115,6 +164,8 @@ public class LocalAlgorithmRepository implements ITransactionalAlgorithmReposito
 		String algorithmClassName = (String) processID;
 				
 		algorithmMap.put(algorithmClassName, algorithmClassName);
+		algorithmClassMap.remove(algorithmClassName);
+		processDescriptionMap.remove(algorithmClassName);
 		LOGGER.info("Algorithm class registered: " + algorithmClassName);
 					
 			
@@ -130,6 +181,8 @@ public class LocalAlgorithmRepository implements ITransactionalAlgorithmReposito
 		String className = (String) processID;
 		if(algorithmMap.containsKey(className)){
 			algorithmMap.remove(className);
+			algorithmClassMap.remove(className);
+			processDescriptionMap.remove(className);
 			return true;
 		}
 		return false;
@@ -138,7 +191,9 @@ public class LocalAlgorithmRepository implements ITransactionalAlgorithmReposito
 	@Override
 	public ProcessDescriptionType getProcessDescription(String processID) {
 		if(!processDescriptionMap.containsKey(processID)){
-			processDescriptionMap.put(processID, getAlgorithm(processID).getDescription());
+			IAlgorithm algorithm = getAlgorithm(processID);
+			processDescriptionMap.put(processID, algorithm.getDescription());
+			releaseAlgorithm(processID, algorithm);
 		}
 		return processDescriptionMap.get(processID);
 	}
@@ -148,15 +203,40 @@ public class LocalAlgorithmRepository implements ITransactionalAlgorithmReposito
 		// TODO Auto-generated method stub
 		
     }
-		
-	
-	
-
-	
-
-	
-
-
 	
+	/**
+	 * The loaded class of an algorithm and its idle instances.
+	 */
+	private static class AlgorithmClass {
+		
+		private final Class<?> algorithmClass;
+		
+		private final int maxIdle;
+		
+		private final ConcurrentLinkedQueue<IAlgorithm> idle = new ConcurrentLinkedQueue<IAlgorithm>();
+		
+		private final AtomicInteger idleCount = new AtomicInteger();
+		
+		AlgorithmClass(Class<?> algorithmClass, int maxIdle) {
+			this.algorithmClass = algorithmClass;
+			this.maxIdle = maxIdle;
+		}
+		
+		IAlgorithm poll() {
+			IAlgorithm algorithm = idle.poll();
+			if(algorithm != null){
+				idleCount.decrementAndGet();
+			}
+			return algorithm;
+		}
+		
+		void offer(IAlgorithm algorithm) {
+			if(idleCount.incrementAndGet() > maxIdle){
+				idleCount.decrementAndGet();
+				return;
+			}
+			idle.offer(algorithm);
+		}
+	}
 
 }
@@ -0,0 +1,124 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wps.algorithm.annotation;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.n52.wps.io.data.IData;
+import org.n52.wps.io.data.binding.literal.LiteralDoubleBinding;
+import org.n52.wps.io.data.binding.literal.LiteralIntBinding;
+import org.n52.wps.server.AbstractAnnotatedAlgorithm;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the method handle and the reflective bindings by running a
+ * literal-only annotated algorithm. Every parameter combination is run in a
+ * forked JVM, as the bindings of an algorithm class are created once.
+ * 
+ * Run from the IDE or with
+ * <code>mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.n52.wps.algorithm.annotation.AnnotationBindingBenchmark</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnnotationBindingBenchmark {
+
+    @Param({"true", "false"})
+    public String methodHandles;
+
+    private AbstractAnnotatedAlgorithm algorithm;
+
+    private Map<String, List<IData>> inputs;
+
+    @Setup
+    public void setUp() {
+        System.setProperty(AnnotationBinding.METHOD_HANDLES_PROPERTY, methodHandles);
+        algorithm = new LiteralAlgorithm();
+        inputs = new HashMap<String, List<IData>>();
+        inputs.put("a", Arrays.<IData> asList(new LiteralDoubleBinding(2.5)));
+        inputs.put("b", Arrays.<IData> asList(new LiteralDoubleBinding(4.0)));
+        inputs.put("precision", Arrays.<IData> asList(new LiteralIntBinding(3)));
+    }
+
+    @Benchmark
+    public Map<String, IData> run() {
+        return algorithm.run(inputs);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(AnnotationBindingBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    @Algorithm(version = "1.0.0")
+    public static class LiteralAlgorithm extends AbstractAnnotatedAlgorithm {
+
+        private double a;
+
+        private double b;
+
+        @LiteralDataInput(identifier = "precision")
+        public int precision;
+
+        @LiteralDataOutput(identifier = "product")
+        public double product;
+
+        private double sum;
+
+        @LiteralDataInput(identifier = "a")
+        public void setA(double a) {
+            this.a = a;
+        }
+
+        @LiteralDataInput(identifier = "b")
+        public void setB(double b) {
+            this.b = b;
+        }
+
+        @LiteralDataOutput(identifier = "sum")
+        public double getSum() {
+            return sum;
+        }
+
+        @Execute
+        public void calculate() {
+            double scale = Math.pow(10, precision);
+            sum = Math.round((a + b) * scale) / scale;
+            product = Math.round(a * b * scale) / scale;
+        }
+    }
+}
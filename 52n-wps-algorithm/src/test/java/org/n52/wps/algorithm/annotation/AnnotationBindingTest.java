@@ -0,0 +1,118 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wps.algorithm.annotation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+import org.n52.wps.algorithm.annotation.AnnotationBinding.ExecuteMethodBinding;
+import org.n52.wps.algorithm.annotation.AnnotationBinding.InputFieldBinding;
+import org.n52.wps.algorithm.annotation.AnnotationBinding.InputMethodBinding;
+import org.n52.wps.algorithm.annotation.AnnotationBinding.OutputFieldBinding;
+import org.n52.wps.algorithm.annotation.AnnotationBinding.OutputMethodBinding;
+import org.n52.wps.algorithm.descriptor.LiteralDataInputDescriptor;
+import org.n52.wps.algorithm.descriptor.LiteralDataOutputDescriptor;
+import org.n52.wps.io.data.IData;
+import org.n52.wps.io.data.binding.literal.LiteralIntBinding;
+import org.n52.wps.io.data.binding.literal.LiteralStringBinding;
+
+/**
+ * Checks that the method handle and the reflective accessors of the bindings
+ * behave the same.
+ */
+public class AnnotationBindingTest {
+
+    public int count;
+
+    public String text;
+
+    public String result;
+
+    public void setText(String text) {
+        this.text = text;
+    }
+
+    public String getResult() {
+        return result;
+    }
+
+    public void execute() {
+        result = text + count;
+    }
+
+    public void executeFailing() {
+        throw new IllegalStateException("failed");
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty(AnnotationBinding.METHOD_HANDLES_PROPERTY);
+    }
+
+    @Test
+    public void testMethodHandles() throws Exception {
+        System.setProperty(AnnotationBinding.METHOD_HANDLES_PROPERTY, "true");
+        assertBindings();
+    }
+
+    @Test
+    public void testReflection() throws Exception {
+        System.setProperty(AnnotationBinding.METHOD_HANDLES_PROPERTY, "false");
+        assertBindings();
+    }
+
+    private void assertBindings() throws Exception {
+        InputFieldBinding countBinding = new InputFieldBinding(getClass().getField("count"));
+        countBinding.setDescriptor(LiteralDataInputDescriptor.intBuilder("count").build());
+        InputMethodBinding textBinding = new InputMethodBinding(getClass().getMethod("setText", String.class));
+        textBinding.setDescriptor(LiteralDataInputDescriptor.stringBuilder("text").build());
+        OutputMethodBinding resultBinding = new OutputMethodBinding(getClass().getMethod("getResult"));
+        resultBinding.setDescriptor(LiteralDataOutputDescriptor.stringBuilder("result").build());
+        OutputFieldBinding countOutputBinding = new OutputFieldBinding(getClass().getField("count"));
+        countOutputBinding.setDescriptor(LiteralDataOutputDescriptor.intBuilder("count").build());
+
+        countBinding.set(this, Collections.<IData> singletonList(new LiteralIntBinding(42)));
+        textBinding.set(this, Collections.<IData> singletonList(new LiteralStringBinding("answer")));
+        assertEquals(42, count);
+        assertEquals("answer", text);
+
+        assertNull(resultBinding.get(this));
+        new ExecuteMethodBinding(getClass().getMethod("execute")).execute(this);
+        IData output = resultBinding.get(this);
+        assertSame(LiteralStringBinding.class, output.getClass());
+        assertEquals("answer42", output.getPayload());
+        assertEquals(Integer.valueOf(42), countOutputBinding.get(this).getPayload());
+
+        textBinding.set(this, (List<IData>) null);
+        assertNull(text);
+
+        try {
+            new ExecuteMethodBinding(getClass().getMethod("executeFailing")).execute(this);
+            fail("RuntimeException expected");
+        } catch (RuntimeException e) {
+            assertEquals("failed", e.getMessage());
+            assertSame(IllegalStateException.class, e.getCause().getClass());
+        }
+    }
+}
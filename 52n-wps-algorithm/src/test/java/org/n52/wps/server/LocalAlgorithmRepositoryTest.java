@@ -0,0 +1,123 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wps.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+
+import org.apache.xmlbeans.XmlException;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.n52.test.mock.MockUtil;
+import org.n52.wps.algorithm.annotation.Algorithm;
+import org.n52.wps.algorithm.annotation.Execute;
+import org.n52.wps.algorithm.annotation.LiteralDataInput;
+import org.n52.wps.algorithm.annotation.LiteralDataOutput;
+
+public class LocalAlgorithmRepositoryTest {
+
+	private static final String RESETTABLE = ResettableAnnotatedAlgorithm.class.getName();
+
+	private static final String NOT_RESETTABLE = StringReverseAnnotatedAlgorithm.class.getName();
+
+	private LocalAlgorithmRepository repository;
+
+	@BeforeClass
+	public static void initConfig() throws XmlException, IOException {
+		MockUtil.getMockConfig();
+	}
+
+	@Before
+	public void setUp() {
+		repository = new LocalAlgorithmRepository();
+		repository.addAlgorithm(RESETTABLE);
+		repository.addAlgorithm(NOT_RESETTABLE);
+	}
+
+	@Test
+	public void testReleasedResettableAlgorithmIsReused() {
+		ResettableAnnotatedAlgorithm algorithm = (ResettableAnnotatedAlgorithm) repository.getAlgorithm(RESETTABLE);
+		algorithm.input = "used";
+		repository.releaseAlgorithm(RESETTABLE, algorithm);
+		assertEquals(1, algorithm.resets);
+		assertNull(algorithm.input);
+
+		assertSame(algorithm, repository.getAlgorithm(RESETTABLE));
+		assertNotSame(algorithm, repository.getAlgorithm(RESETTABLE));
+	}
+
+	@Test
+	public void testOtherAlgorithmsAreNotReused() {
+		IAlgorithm algorithm = repository.getAlgorithm(NOT_RESETTABLE);
+		repository.releaseAlgorithm(NOT_RESETTABLE, algorithm);
+		assertNotSame(algorithm, repository.getAlgorithm(NOT_RESETTABLE));
+	}
+
+	@Test
+	public void testReaddedAlgorithmIsNotReused() {
+		IAlgorithm algorithm = repository.getAlgorithm(RESETTABLE);
+		repository.removeAlgorithm(RESETTABLE);
+		repository.addAlgorithm(RESETTABLE);
+		repository.releaseAlgorithm(RESETTABLE, algorithm);
+		assertNotSame(algorithm, repository.getAlgorithm(RESETTABLE));
+	}
+
+	@Test
+	public void testProcessDescriptionIsCached() {
+		assertNotNull(repository.getProcessDescription(RESETTABLE));
+		assertSame(repository.getProcessDescription(RESETTABLE), repository.getProcessDescription(RESETTABLE));
+	}
+
+	@Algorithm(version = "0.1")
+	public static class ResettableAnnotatedAlgorithm extends AbstractAnnotatedAlgorithm implements
+			IResettableAlgorithm {
+
+		private String input;
+
+		private String output;
+
+		private int resets = 0;
+
+		@LiteralDataInput(identifier = "input")
+		public void setInput(String input) {
+			this.input = input;
+		}
+
+		@LiteralDataOutput(identifier = "output")
+		public String getOutput() {
+			return output;
+		}
+
+		@Execute
+		public void run() {
+			output = input;
+		}
+
+		public void reset() {
+			resets++;
+			input = null;
+			output = null;
+			getErrors().clear();
+		}
+	}
+}
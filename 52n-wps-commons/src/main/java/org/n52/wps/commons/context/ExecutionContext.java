@@ -16,6 +16,8 @@
  */
 package org.n52.wps.commons.context;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -25,8 +27,21 @@ import net.opengis.wps.x100.OutputDefinitionType;
 
 public class ExecutionContext {
 
+    /**
+     * Releases resources held for an execution when its context is disposed.
+     */
+    public interface DisposeListener {
+
+        void disposed(ExecutionContext context);
+    }
+
     private String tempFolderName;
+    private String processIdentifier;
     private List<OutputDefinitionType> outputDefinitionTypes;
+    private ScratchSpace scratchSpace;
+    private List<DisposeListener> disposeListeners = new ArrayList<DisposeListener>();
+    private boolean disposed;
+    private boolean shared;
 
     public ExecutionContext() {
         this(Arrays.asList(new OutputDefinitionType[0]));
@@ -37,14 +52,89 @@ public class ExecutionContext {
     }
 
     public ExecutionContext(List< ? extends OutputDefinitionType> outputs) {
+        this(null, outputs);
+    }
+
+    public ExecutionContext(String processIdentifier, List< ? extends OutputDefinitionType> outputs) {
         this.tempFolderName = UUID.randomUUID().toString();
+        this.processIdentifier = processIdentifier;
         this.outputDefinitionTypes = Collections.unmodifiableList(outputs != null ? outputs
                                                                                  : Arrays.asList(new OutputDefinitionType[0]));
     }
 
+    /**
+     * Creates the context used by threads that are not executing a request,
+     * see {@link ExecutionContextFactory#getDefault()}. It is never disposed,
+     * the old files of its scratch space are swept instead.
+     */
+    static ExecutionContext createShared() {
+        ExecutionContext context = new ExecutionContext();
+        context.shared = true;
+        return context;
+    }
+
+    /**
+     * @return the path of the directory of the {@link ScratchSpace}
+     */
     public String getTempDirectoryPath() {
+        try {
+            return getScratchSpace().getDirectory().getPath();
+        }
+        catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return the scratch space for the temporary files of the execution,
+     *         removed by {@link #dispose()}
+     */
+    public synchronized ScratchSpace getScratchSpace() {
+        if (scratchSpace == null) {
+            scratchSpace = shared ? ScratchSpaceManager.getInstance().createSharedScratchSpace(tempFolderName)
+                                  : ScratchSpaceManager.getInstance().createScratchSpace(tempFolderName, processIdentifier);
+        }
+        return scratchSpace;
+    }
+
+    /**
+     * @return the identifier of the executed process or <code>null</code>
+     */
+    public String getProcessIdentifier() {
+        return processIdentifier;
+    }
+
+    /**
+     * Registers a listener called by {@link #dispose()}, or right away if the
+     * context is already disposed.
+     */
+    public void addDisposeListener(DisposeListener listener) {
+        synchronized (this) {
+            if ( !disposed) {
+                disposeListeners.add(listener);
+                return;
+            }
+        }
+        listener.disposed(this);
+    }
 
-        return System.getProperty("java.io.tmpdir") + this.tempFolderName;
+    /**
+     * Removes the scratch space and notifies the dispose listeners. Called
+     * when the execution and the delivery of its outputs are completed.
+     */
+    public void dispose() {
+        List<DisposeListener> listeners;
+        synchronized (this) {
+            if (scratchSpace != null) {
+                scratchSpace.dispose();
+            }
+            disposed = true;
+            listeners = disposeListeners;
+            disposeListeners = new ArrayList<DisposeListener>();
+        }
+        for (DisposeListener listener : listeners) {
+            listener.disposed(this);
+        }
     }
 
     public List<OutputDefinitionType> getOutputs() {
@@ -44,7 +44,7 @@ public class ExecutionContextFactory {
 
     public synchronized static ExecutionContext getDefault() {
         if (defaultContext == null) {
-            defaultContext = new ExecutionContext();
+            defaultContext = ExecutionContext.createShared();
         }
         return defaultContext;
     }
@@ -0,0 +1,273 @@
+/**
+ * ﻿Copyright (C) 2006 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wps.commons.context;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A directory for the temporary files of a single execution. The directory
+ * is created when the first file is requested and is removed including all
+ * its content by {@link #dispose()}. The bytes written through the streams
+ * of {@link #openOutputStream(File)} are accounted as they are written, a
+ * write exceeding the quota fails. Files written by other means, e.g. by
+ * libraries writing to a given file name, are only accounted by the scan of
+ * {@link #dispose()} for the statistics.
+ *
+ * A scratch space that is shared and never disposed (the scratch space of the
+ * default execution context) is given a maximum age instead, files older than
+ * that are swept when new files are created.
+ */
+public class ScratchSpace {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ScratchSpace.class);
+
+    private static final String DEFAULT_PREFIX = "wps";
+
+    private final File directory;
+
+    private final long quota;
+
+    private final long maxAgeMillis;
+
+    private final ScratchSpaceStatistics statistics;
+
+    private final AtomicLong writtenBytes = new AtomicLong();
+
+    private long peakBytes = 0;
+
+    private long lastSweep = System.currentTimeMillis();
+
+    private volatile boolean quotaExceeded = false;
+
+    private boolean disposed = false;
+
+    /**
+     * @param directory
+     *        the directory, must not be used otherwise
+     * @param quota
+     *        the maximum bytes, 0 for no limit
+     */
+    public ScratchSpace(File directory, long quota) {
+        this(directory, quota, null);
+    }
+
+    ScratchSpace(File directory, long quota, ScratchSpaceStatistics statistics) {
+        this(directory, quota, 0, statistics);
+    }
+
+    /**
+     * @param maxAgeMillis
+     *        the age after which files are swept, 0 if they are only removed
+     *        by {@link #dispose()}
+     */
+    ScratchSpace(File directory, long quota, long maxAgeMillis, ScratchSpaceStatistics statistics) {
+        this.directory = directory;
+        this.quota = quota;
+        this.maxAgeMillis = maxAgeMillis;
+        this.statistics = statistics;
+    }
+
+    /**
+     * @return the directory, created if necessary
+     */
+    public synchronized File getDirectory() throws IOException {
+        if (disposed) {
+            throw new IOException("Scratch space " + directory + " is already disposed");
+        }
+        if ( !directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+            throw new IOException("Could not create scratch space " + directory);
+        }
+        return directory;
+    }
+
+    public synchronized File createTempFile(String prefix, String suffix) throws IOException {
+        checkQuota();
+        sweepIfDue();
+        return File.createTempFile(toPrefix(prefix), suffix, getDirectory());
+    }
+
+    public synchronized File createTempDirectory(String prefix) throws IOException {
+        checkQuota();
+        sweepIfDue();
+        File tempDirectory = File.createTempFile(toPrefix(prefix), "", getDirectory());
+        if ( !tempDirectory.delete() || !tempDirectory.mkdir()) {
+            throw new IOException("Could not create directory " + tempDirectory);
+        }
+        return tempDirectory;
+    }
+
+    /**
+     * Opens a file of this scratch space for writing. The bytes written are
+     * accounted against the quota, a write exceeding it fails with an
+     * {@link IOException}.
+     */
+    public OutputStream openOutputStream(File file) throws IOException {
+        checkQuota();
+        return new AccountingOutputStream(new FileOutputStream(file));
+    }
+
+    /**
+     * @throws IOException
+     *         if the bytes written to this scratch space exceeded the quota
+     */
+    public void checkQuota() throws IOException {
+        if (quotaExceeded) {
+            throw new IOException(String.format("Scratch space quota of %d bytes exceeded, %d bytes written", quota,
+                    writtenBytes.get()));
+        }
+    }
+
+    /**
+     * @return the bytes written through the streams of this scratch space
+     */
+    public long getUsedBytes() {
+        return writtenBytes.get();
+    }
+
+    /**
+     * @return the maximum of the bytes used that was observed
+     */
+    public synchronized long getPeakBytes() {
+        return Math.max(peakBytes, writtenBytes.get());
+    }
+
+    public long getQuota() {
+        return quota;
+    }
+
+    public synchronized boolean isDisposed() {
+        return disposed;
+    }
+
+    /**
+     * Deletes the directory and its content.
+     */
+    public synchronized void dispose() {
+        if (disposed) {
+            return;
+        }
+        // a single scan for the files that were not written through our streams
+        peakBytes = Math.max(getPeakBytes(), sizeOf(directory));
+        disposed = true;
+        if (directory.exists() && !delete(directory)) {
+            LOGGER.warn("Could not delete scratch space {} completely", directory);
+        }
+        if (statistics != null) {
+            statistics.onDisposed(peakBytes, quotaExceeded);
+        }
+        LOGGER.debug("Disposed scratch space {}, {} bytes used at most", directory, peakBytes);
+    }
+
+    /**
+     * Deletes the files and directories of this scratch space that were not
+     * modified within the maximum age.
+     *
+     * @return the number of entries deleted
+     */
+    synchronized int sweep(long now) {
+        lastSweep = now;
+        File[] children = directory.listFiles();
+        if (children == null) {
+            return 0;
+        }
+        int deleted = 0;
+        for (File child : children) {
+            if (now - child.lastModified() > maxAgeMillis && delete(child)) {
+                deleted++;
+            }
+        }
+        if (deleted > 0) {
+            LOGGER.debug("Swept {} entries older than {} ms from scratch space {}", deleted, maxAgeMillis, directory);
+        }
+        return deleted;
+    }
+
+    private void sweepIfDue() {
+        long now = System.currentTimeMillis();
+        if (maxAgeMillis > 0 && now - lastSweep > maxAgeMillis) {
+            sweep(now);
+        }
+    }
+
+    private void onWrite(int length) throws IOException {
+        checkQuota();
+        long written = writtenBytes.addAndGet(length);
+        if (quota > 0 && written > quota) {
+            writtenBytes.addAndGet( -length);
+            quotaExceeded = true;
+            throw new IOException(String.format("Scratch space quota of %d bytes exceeded writing %d more bytes, %d bytes written",
+                    quota, length, written - length));
+        }
+    }
+
+    private static String toPrefix(String prefix) {
+        // File.createTempFile requires at least three characters
+        return prefix == null || prefix.length() < 3 ? DEFAULT_PREFIX + (prefix == null ? "" : prefix) : prefix;
+    }
+
+    private static long sizeOf(File file) {
+        if (file.isFile()) {
+            return file.length();
+        }
+        long size = 0;
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                size += sizeOf(child);
+            }
+        }
+        return size;
+    }
+
+    private static boolean delete(File file) {
+        boolean deleted = true;
+        File[] children = file.isDirectory() ? file.listFiles() : null;
+        if (children != null) {
+            for (File child : children) {
+                deleted &= delete(child);
+            }
+        }
+        return file.delete() && deleted;
+    }
+
+    private class AccountingOutputStream extends FilterOutputStream {
+
+        AccountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            onWrite(1);
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            onWrite(len);
+            out.write(b, off, len);
+        }
+    }
+}
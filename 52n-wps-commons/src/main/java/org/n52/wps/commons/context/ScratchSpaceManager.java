@@ -0,0 +1,153 @@
+/**
+ * ﻿Copyright (C) 2006 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wps.commons.context;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.File;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.n52.wps.PropertyDocument.Property;
+import org.n52.wps.commons.PropertyUtil;
+import org.n52.wps.commons.WPSConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates the {@link ScratchSpace}s of executions and keeps their statistics
+ * per process. Configured using the following <code>Server</code> properties
+ * of the wps_config.xml (each can be overridden by a system property prefixed
+ * with <code>org.n52.wps.server.</code>):
+ * <ul>
+ * <li><code>scratch.directory</code>: the directory containing the scratch
+ * spaces, defaults to <code>wps-scratch</code> in the temporary directory</li>
+ * <li><code>scratch.quota</code>: the maximum bytes of a single scratch space,
+ * 0 for no limit</li>
+ * <li><code>scratch.shared.maxAge</code>: the ISO 8601 period after which the
+ * files in the scratch space of the default execution context, which is never
+ * disposed, are swept</li>
+ * </ul>
+ */
+public class ScratchSpaceManager {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ScratchSpaceManager.class);
+
+    private final static String KEY_SERVER_ROOT = "org.n52.wps.server";
+    private final static String KEY_DIRECTORY = "scratch.directory";
+    private final static String KEY_QUOTA = "scratch.quota";
+    private final static String KEY_SHARED_MAX_AGE = "scratch.shared.maxAge";
+
+    private final static String DEFAULT_DIRECTORY = "wps-scratch";
+    private final static long DEFAULT_QUOTA = 0;
+    private final static long DEFAULT_SHARED_MAX_AGE = TimeUnit.HOURS.toMillis(6);
+
+    private static ScratchSpaceManager instance;
+
+    public synchronized static ScratchSpaceManager getInstance() {
+        if (instance == null) {
+            instance = new ScratchSpaceManager(getServerProperties());
+            WPSConfig.getInstance().addPropertyChangeListener(WPSConfig.WPSCONFIG_PROPERTY_EVENT_NAME,
+                    new PropertyChangeListener() {
+                        public void propertyChange(PropertyChangeEvent event) {
+                            LOGGER.info("Received Property Change Event: {}", event.getPropertyName());
+                            reInitialize();
+                        }
+                    });
+        }
+        return instance;
+    }
+
+    private synchronized static void reInitialize() {
+        ScratchSpaceManager old = instance;
+        instance = new ScratchSpaceManager(getServerProperties());
+        // the statistics are kept
+        instance.statistics.putAll(old.statistics);
+    }
+
+    private static Property[] getServerProperties() {
+        return WPSConfig.getInstance().getWPSConfig().getServer().getPropertyArray();
+    }
+
+    private final File directory;
+
+    private final long quota;
+
+    private final long sharedMaxAge;
+
+    private final ConcurrentMap<String, ScratchSpaceStatistics> statistics = new ConcurrentHashMap<String, ScratchSpaceStatistics>();
+
+    ScratchSpaceManager(Property[] properties) {
+        PropertyUtil propertyUtil = new PropertyUtil(properties, KEY_SERVER_ROOT);
+        this.directory = new File(propertyUtil.extractString(KEY_DIRECTORY,
+                new File(System.getProperty("java.io.tmpdir"), DEFAULT_DIRECTORY).getPath()));
+        this.quota = Math.max(0, propertyUtil.extractLong(KEY_QUOTA, DEFAULT_QUOTA));
+        long configuredMaxAge = propertyUtil.extractPeriodAsMillis(KEY_SHARED_MAX_AGE, DEFAULT_SHARED_MAX_AGE);
+        this.sharedMaxAge = configuredMaxAge > 0 ? configuredMaxAge : DEFAULT_SHARED_MAX_AGE;
+        LOGGER.info("Scratch spaces in {}, quota {} bytes", directory, quota > 0 ? quota : "unlimited");
+    }
+
+    /**
+     * @param name
+     *        the name of the directory, unique for each execution
+     * @param processIdentifier
+     *        the process the statistics are kept for, may be <code>null</code>
+     */
+    public ScratchSpace createScratchSpace(String name, String processIdentifier) {
+        return new ScratchSpace(new File(directory, name), quota,
+                processIdentifier != null ? getStatistics(processIdentifier) : null);
+    }
+
+    /**
+     * Creates a scratch space shared by the threads that are not executing a
+     * request. It is not disposed, its files are swept after the configured
+     * maximum age and it has no quota.
+     */
+    public ScratchSpace createSharedScratchSpace(String name) {
+        return new ScratchSpace(new File(directory, name), 0, sharedMaxAge, null);
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public long getQuota() {
+        return quota;
+    }
+
+    /**
+     * @return the statistics by process identifier
+     */
+    public Map<String, ScratchSpaceStatistics> getStatistics() {
+        return Collections.unmodifiableMap(statistics);
+    }
+
+    public ScratchSpaceStatistics getStatistics(String processIdentifier) {
+        ScratchSpaceStatistics processStatistics = statistics.get(processIdentifier);
+        if (processStatistics == null) {
+            ScratchSpaceStatistics created = new ScratchSpaceStatistics(processIdentifier);
+            processStatistics = statistics.putIfAbsent(processIdentifier, created);
+            if (processStatistics == null) {
+                processStatistics = created;
+            }
+        }
+        return processStatistics;
+    }
+}
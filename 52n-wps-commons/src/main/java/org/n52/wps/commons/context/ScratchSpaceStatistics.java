@@ -0,0 +1,94 @@
+/**
+ * ﻿Copyright (C) 2006 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wps.commons.context;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the scratch spaces used by the executions of a single process.
+ */
+public class ScratchSpaceStatistics {
+
+    private final String processIdentifier;
+
+    private final AtomicLong executions = new AtomicLong();
+
+    private final AtomicLong totalBytes = new AtomicLong();
+
+    private final AtomicLong maxBytes = new AtomicLong();
+
+    private final AtomicLong quotaExceeded = new AtomicLong();
+
+    ScratchSpaceStatistics(String processIdentifier) {
+        this.processIdentifier = processIdentifier;
+    }
+
+    public String getProcessIdentifier() {
+        return processIdentifier;
+    }
+
+    /**
+     * @return the number of executions that completed
+     */
+    public long getExecutions() {
+        return executions.get();
+    }
+
+    /**
+     * @return the sum of the peak bytes of all executions
+     */
+    public long getTotalBytes() {
+        return totalBytes.get();
+    }
+
+    /**
+     * @return the peak bytes of the execution that used the most
+     */
+    public long getMaxBytes() {
+        return maxBytes.get();
+    }
+
+    public long getAverageBytes() {
+        long count = executions.get();
+        return count == 0 ? 0 : totalBytes.get() / count;
+    }
+
+    /**
+     * @return the number of executions that exceeded the quota
+     */
+    public long getQuotaExceeded() {
+        return quotaExceeded.get();
+    }
+
+    void onDisposed(long peakBytes, boolean exceeded) {
+        executions.incrementAndGet();
+        totalBytes.addAndGet(peakBytes);
+        long max;
+        do {
+            max = maxBytes.get();
+        } while (peakBytes > max && !maxBytes.compareAndSet(max, peakBytes));
+        if (exceeded) {
+            quotaExceeded.incrementAndGet();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return processIdentifier + "[executions=" + getExecutions() + ", averageBytes=" + getAverageBytes()
+                + ", maxBytes=" + getMaxBytes() + ", quotaExceeded=" + getQuotaExceeded() + "]";
+    }
+}
@@ -22,7 +22,9 @@ package org.n52.wps.commons.context;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -92,6 +94,28 @@ public class ExecutionContextTest {
         assertNotNull(ec.getOutputs());
         assertEquals(0, ec.getOutputs().size());
     }
-    
+
+    @Test
+    public void testDisposeListenersAreCalledOnce() {
+        final List<ExecutionContext> disposed = new ArrayList<ExecutionContext>();
+        ExecutionContext.DisposeListener listener = new ExecutionContext.DisposeListener() {
+            public void disposed(ExecutionContext context) {
+                disposed.add(context);
+            }
+        };
+
+        ExecutionContext ec = new ExecutionContext();
+        ec.addDisposeListener(listener);
+        assertEquals(0, disposed.size());
+        ec.dispose();
+        assertEquals(1, disposed.size());
+        assertSame(ec, disposed.get(0));
+        ec.dispose();
+        assertEquals(1, disposed.size());
+
+        // registered after the context was disposed
+        ec.addDisposeListener(listener);
+        assertEquals(2, disposed.size());
+    }
 
 }
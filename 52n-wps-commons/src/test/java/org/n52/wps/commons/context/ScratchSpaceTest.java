@@ -0,0 +1,156 @@
+/**
+ * ﻿Copyright (C) 2006 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wps.commons.context;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ScratchSpaceTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() {
+        directory = new File(System.getProperty("java.io.tmpdir"), "scratch-test-" + UUID.randomUUID());
+    }
+
+    @Test
+    public void testDirectoryIsCreatedLazily() throws IOException {
+        ScratchSpace scratchSpace = new ScratchSpace(directory, 0);
+        assertFalse(directory.exists());
+        File file = scratchSpace.createTempFile("x", ".tmp");
+        assertEquals(directory, file.getParentFile());
+        assertTrue(file.getName().endsWith(".tmp"));
+        scratchSpace.dispose();
+    }
+
+    @Test
+    public void testDisposeRemovesContent() throws IOException {
+        ScratchSpaceStatistics statistics = new ScratchSpaceStatistics("process");
+        ScratchSpace scratchSpace = new ScratchSpace(directory, 0, statistics);
+        File subDirectory = scratchSpace.createTempDirectory("unzipped");
+        write(scratchSpace, new File(subDirectory, "a.shp"), 100);
+        write(scratchSpace, scratchSpace.createTempFile("wps", ".tmp"), 50);
+        assertEquals(150, scratchSpace.getUsedBytes());
+
+        scratchSpace.dispose();
+        assertFalse(directory.exists());
+        assertTrue(scratchSpace.isDisposed());
+        assertEquals(1, statistics.getExecutions());
+        assertEquals(150, statistics.getMaxBytes());
+        assertEquals(0, statistics.getQuotaExceeded());
+
+        try {
+            scratchSpace.createTempFile("wps", ".tmp");
+            fail("file created in disposed scratch space");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testQuota() throws IOException {
+        ScratchSpaceStatistics statistics = new ScratchSpaceStatistics("process");
+        ScratchSpace scratchSpace = new ScratchSpace(directory, 100, statistics);
+        write(scratchSpace, scratchSpace.createTempFile("wps", ".tmp"), 60);
+        OutputStream outputStream = scratchSpace.openOutputStream(scratchSpace.createTempFile("wps", ".tmp"));
+        try {
+            outputStream.write(new byte[40]);
+            outputStream.write(0);
+            fail("quota not enforced while writing");
+        } catch (IOException e) {
+            // expected
+        } finally {
+            outputStream.close();
+        }
+        assertEquals(100, scratchSpace.getUsedBytes());
+        try {
+            scratchSpace.createTempFile("wps", ".tmp");
+            fail("quota not enforced");
+        } catch (IOException e) {
+            // expected
+        }
+        scratchSpace.dispose();
+        assertEquals(100, scratchSpace.getPeakBytes());
+        assertEquals(1, statistics.getQuotaExceeded());
+    }
+
+    @Test
+    public void testFilesWrittenOtherwiseAreAccountedWhenDisposed() throws IOException {
+        ScratchSpaceStatistics statistics = new ScratchSpaceStatistics("process");
+        ScratchSpace scratchSpace = new ScratchSpace(directory, 0, statistics);
+        write(scratchSpace, scratchSpace.createTempFile("wps", ".tmp"), 50);
+        FileOutputStream outputStream = new FileOutputStream(scratchSpace.createTempFile("wps", ".shp"));
+        try {
+            outputStream.write(new byte[80]);
+        } finally {
+            outputStream.close();
+        }
+        assertEquals(50, scratchSpace.getUsedBytes());
+        scratchSpace.dispose();
+        assertEquals(130, statistics.getMaxBytes());
+    }
+
+    @Test
+    public void testSharedScratchSpaceIsSwept() throws IOException {
+        ScratchSpace scratchSpace = new ScratchSpace(directory, 0, TimeUnit.HOURS.toMillis(1), null);
+        File old = scratchSpace.createTempFile("old", ".tmp");
+        File recent = scratchSpace.createTempDirectory("recent");
+        long now = System.currentTimeMillis();
+        assertTrue(old.setLastModified(now - TimeUnit.HOURS.toMillis(2)));
+
+        assertEquals(1, scratchSpace.sweep(now));
+        assertFalse(old.exists());
+        assertTrue(recent.exists());
+        assertEquals(1, scratchSpace.sweep(now + TimeUnit.HOURS.toMillis(2)));
+        assertFalse(recent.exists());
+        scratchSpace.dispose();
+    }
+
+    @Test
+    public void testStatistics() {
+        ScratchSpaceStatistics statistics = new ScratchSpaceStatistics("process");
+        statistics.onDisposed(100, false);
+        statistics.onDisposed(300, true);
+        assertEquals(2, statistics.getExecutions());
+        assertEquals(400, statistics.getTotalBytes());
+        assertEquals(200, statistics.getAverageBytes());
+        assertEquals(300, statistics.getMaxBytes());
+        assertEquals(1, statistics.getQuotaExceeded());
+    }
+
+    private static void write(ScratchSpace scratchSpace, File file, int length) throws IOException {
+        OutputStream outputStream = scratchSpace.openOutputStream(file);
+        try {
+            outputStream.write(new byte[length]);
+        } finally {
+            outputStream.close();
+        }
+    }
+}
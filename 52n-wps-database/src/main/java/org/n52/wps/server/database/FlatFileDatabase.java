@@ -36,11 +36,16 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.GZIPInputStream;
@@ -57,6 +62,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Joiner;
+import com.google.common.cache.CacheBuilder;
 
 /*
  * @author tkunicki (Thomas Kunicki, USGS)
@@ -100,6 +106,9 @@ public final class FlatFileDatabase implements IDatabase {
     private final static Pattern PATTERN_RESPONSE_TEMP = Pattern.compile("([\\d]+)\\." + SUFFIX_XML + "(:?\\."
             + SUFFIX_TEMP + ")?");
 
+    // response directories whose versions are cached, evicted ones are scanned again on their next access
+    private final static long MAX_CACHED_RESPONSE_VERSIONS = 10000;
+
     private static FlatFileDatabase instance;
 
     // This method is required by the DatabaseFactory, it is found using reflection
@@ -116,7 +125,9 @@ public final class FlatFileDatabase implements IDatabase {
 
     protected final boolean gzipComplexValues;
 
-    protected final Object storeResponseSerialNumberLock;
+    // latest and next response index per response directory, so that status
+    // lookups neither scan the directory nor contend with status updates
+    protected final ConcurrentMap<String, ResponseVersions> responseVersions;
 
     protected final boolean indentXML = true;
 
@@ -156,7 +167,8 @@ public final class FlatFileDatabase implements IDatabase {
 
         gzipComplexValues = propertyUtil.extractBoolean(KEY_DATABASE_COMPLEX_GZIP, DEFAULT_DATABASE_COMPLEX_GZIP);
 
-        storeResponseSerialNumberLock = new Object();
+        responseVersions = CacheBuilder.newBuilder().maximumSize(MAX_CACHED_RESPONSE_VERSIONS)
+                .<String, ResponseVersions> build().asMap();
     }
 
     @Override
@@ -252,14 +264,13 @@ public final class FlatFileDatabase implements IDatabase {
         // request is stored in response directory...
         File responseDirectory = generateResponseDirectory(id);
         if (responseDirectory.exists()) {
-            synchronized (storeResponseSerialNumberLock) {
-                requestAsFile = new File(responseDirectory, JOINER.join("request", SUFFIX_XML));
-                if ( !requestAsFile.exists()) {
-                    requestAsFile = new File(responseDirectory, JOINER.join("request", SUFFIX_PROPERTIES));
-                }
-                if ( !requestAsFile.exists()) {
-                    requestAsFile = null;
-                }
+            // the request is written once before any response, no locking required
+            requestAsFile = new File(responseDirectory, JOINER.join("request", SUFFIX_XML));
+            if ( !requestAsFile.exists()) {
+                requestAsFile = new File(responseDirectory, JOINER.join("request", SUFFIX_PROPERTIES));
+            }
+            if ( !requestAsFile.exists()) {
+                requestAsFile = null;
             }
         }
         return requestAsFile;
@@ -269,11 +280,9 @@ public final class FlatFileDatabase implements IDatabase {
     public File lookupResponseAsFile(String id) {
         File responseFile = null;
         // if response resolved to directory, this means the response is a status update
-        File responseDirectory = generateResponseDirectory(id);
-        if (responseDirectory.exists()) {
-            synchronized (storeResponseSerialNumberLock) {
-                return findLatestResponseFile(responseDirectory);
-            }
+        ResponseVersions versions = lookupResponseVersions(id);
+        if (versions != null) {
+            return findLatestResponseFile(generateResponseDirectory(id), versions);
         }
         else {
             String mimeType = getMimeTypeForStoreResponse(id);
@@ -354,31 +363,15 @@ public final class FlatFileDatabase implements IDatabase {
     public String storeResponse(String id, InputStream inputStream) {
 
         try {
-            File responseTempFile;
-            File responseFile;
-            synchronized (storeResponseSerialNumberLock) {
-                File responseDirectory = generateResponseDirectory(id);
-                responseDirectory.mkdir();
-                int responseIndex = findLatestResponseIndex(responseDirectory, true);
-                if (responseIndex < 0) {
-                    responseIndex = 0;
-                }
-                else {
-                    responseIndex++;
-                }
-                responseFile = generateResponseFile(responseDirectory, responseIndex);
-                responseTempFile = generateResponseTempFile(responseDirectory, responseIndex);
-                try {
-                    // create the file so that the reponse serial number is correctly
-                    // incremented if this method is called again for this reponse
-                    // before this reponse is completed.
-                    responseTempFile.createNewFile();
-                }
-                catch (IOException e) {
-                    throw new RuntimeException("Error storing response to {}", e);
-                }
-                LOGGER.debug("Creating temp file for {} as {}", id, responseTempFile.getPath());
-            }
+            File responseDirectory = generateResponseDirectory(id);
+            responseDirectory.mkdir();
+            ResponseVersions versions = lookupResponseVersions(id);
+            // reserving the index is atomic, concurrent updates of this response get
+            // distinct indices without locking
+            int responseIndex = versions.next.getAndIncrement();
+            File responseFile = generateResponseFile(responseDirectory, responseIndex);
+            File responseTempFile = generateResponseTempFile(responseDirectory, responseIndex);
+            LOGGER.debug("Creating temp file for {} as {}", id, responseTempFile.getPath());
             InputStream responseInputStream = null;
             OutputStream responseOutputStream = null;
             try {
@@ -394,10 +387,15 @@ public final class FlatFileDatabase implements IDatabase {
                 IOUtils.closeQuietly(responseOutputStream);
             }
 
-            synchronized (storeResponseSerialNumberLock) {
-                responseTempFile.renameTo(responseFile);
-                LOGGER.debug("Renamed temp file for {} to {}", id, responseFile.getPath());
+            // readers either see the prior response or the complete new one
+            moveAtomically(responseTempFile, responseFile);
+            versions.publish(responseIndex);
+            ResponseVersions current = responseVersions.get(id);
+            if (current != null && current != versions) {
+                // evicted and scanned again while this response was written
+                current.publish(responseIndex);
             }
+            LOGGER.debug("Renamed temp file for {} to {}", id, responseFile.getPath());
 
             return generateRetrieveResultURL(id);
 
@@ -444,12 +442,10 @@ public final class FlatFileDatabase implements IDatabase {
     @Override
     public long getContentLengthForStoreResponse(String id) {
 
-        File responseDirectory = generateResponseDirectory(id);
-        if (responseDirectory.exists()) {
-            synchronized (storeResponseSerialNumberLock) {
-                File responseFile = findLatestResponseFile(responseDirectory);
-                return responseFile.length();
-            }
+        ResponseVersions versions = lookupResponseVersions(id);
+        if (versions != null) {
+            File responseFile = findLatestResponseFile(generateResponseDirectory(id), versions);
+            return responseFile == null ? -1 : responseFile.length();
         }
         else {
             File contentLengthFile = generateComplexDataContentLengthFile(id);
@@ -480,9 +476,38 @@ public final class FlatFileDatabase implements IDatabase {
         return false;
     }
 
+    /**
+     * Returns the cached response versions of a response directory, the
+     * directory is only scanned on the first access (e.g. after a restart).
+     *
+     * @return the versions or <code>null</code> if the id does not denote a
+     *         response directory
+     */
+    private ResponseVersions lookupResponseVersions(String id) {
+        ResponseVersions versions = responseVersions.get(id);
+        if (versions == null) {
+            File responseDirectory = generateResponseDirectory(id);
+            if ( !responseDirectory.isDirectory()) {
+                return null;
+            }
+            ResponseVersions scanned = new ResponseVersions(
+                    findLatestResponseIndex(responseDirectory, false),
+                    findLatestResponseIndex(responseDirectory, true));
+            versions = responseVersions.putIfAbsent(id, scanned);
+            if (versions == null) {
+                versions = scanned;
+            }
+        }
+        return versions;
+    }
+
     private int findLatestResponseIndex(File responseDirectory, boolean includeTemp) {
         int responseIndex = Integer.MIN_VALUE;
-        for (File file : responseDirectory.listFiles()) {
+        File[] files = responseDirectory.listFiles();
+        if (files == null) {
+            return responseIndex;
+        }
+        for (File file : files) {
             Matcher matcher = includeTemp ? PATTERN_RESPONSE_TEMP.matcher(file.getName())
                                          : PATTERN_RESPONSE.matcher(file.getName());
             if (matcher.matches()) {
@@ -495,11 +520,20 @@ public final class FlatFileDatabase implements IDatabase {
         return responseIndex;
     }
 
-    private File findLatestResponseFile(File responseDirectory) {
-        int responseIndex = findLatestResponseIndex(responseDirectory, false);
+    private File findLatestResponseFile(File responseDirectory, ResponseVersions versions) {
+        int responseIndex = versions.latest.get();
         return responseIndex < 0 ? null : generateResponseFile(responseDirectory, responseIndex);
     }
 
+    private static void moveAtomically(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
     private File generateResponseFile(File responseDirectory, int index) {
         return new File(responseDirectory, JOINER.join(index, SUFFIX_XML));
     }
@@ -526,6 +560,28 @@ public final class FlatFileDatabase implements IDatabase {
         return new File(baseDirectory, JOINER.join(id, SUFFIX_CONTENT_LENGTH));
     }
 
+    protected static class ResponseVersions {
+
+        // index of the latest completely written response
+        final AtomicInteger latest;
+
+        // index reserved by the next response update
+        final AtomicInteger next;
+
+        ResponseVersions(int latestIndex, int latestTempIndex) {
+            latest = new AtomicInteger(latestIndex < 0 ? -1 : latestIndex);
+            next = new AtomicInteger(latestTempIndex < 0 ? 0 : latestTempIndex + 1);
+        }
+
+        void publish(int index) {
+            // updates may complete out of order, the highest index wins
+            int current = latest.get();
+            while (index > current && !latest.compareAndSet(current, index)) {
+                current = latest.get();
+            }
+        }
+    }
+
     private class WipeTimerTask extends TimerTask {
 
         public final long thresholdMillis;
@@ -556,6 +612,7 @@ public final class FlatFileDatabase implements IDatabase {
                         LOGGER.info("Deleting {}, last modified date is {}",
                                     file.getName(),
                                     iso8601DateFormat.format(new Date(lastModifiedMillis)));
+                        responseVersions.remove(file.getName());
                         delete(file);
                         if (file.exists()) {
                             LOGGER.warn("Deletion of {} failed", file.getName());
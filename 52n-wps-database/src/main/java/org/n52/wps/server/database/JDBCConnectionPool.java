@@ -0,0 +1,228 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.database;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A fixed size pool of JDBC connections. Connections are created lazily,
+ * either by a {@link DataSource} (e.g. looked up using JNDI) or by the
+ * {@link DriverManager}. Each pooled connection caches its prepared
+ * statements.
+ */
+public class JDBCConnectionPool {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(JDBCConnectionPool.class);
+
+    private final DataSource dataSource;
+
+    private final String connectionURL;
+
+    private final Properties connectionProperties;
+
+    private final Semaphore permits;
+
+    private final long timeoutMillis;
+
+    private final ConcurrentLinkedQueue<PooledConnection> idle = new ConcurrentLinkedQueue<PooledConnection>();
+
+    private volatile boolean closed = false;
+
+    public JDBCConnectionPool(DataSource dataSource, int maxConnections, long timeoutMillis) {
+        this(dataSource, null, null, maxConnections, timeoutMillis);
+    }
+
+    public JDBCConnectionPool(String connectionURL, Properties connectionProperties, int maxConnections,
+            long timeoutMillis) {
+        this(null, connectionURL, connectionProperties, maxConnections, timeoutMillis);
+    }
+
+    private JDBCConnectionPool(DataSource dataSource, String connectionURL, Properties connectionProperties,
+            int maxConnections, long timeoutMillis) {
+        this.dataSource = dataSource;
+        this.connectionURL = connectionURL;
+        this.connectionProperties = connectionProperties;
+        this.permits = new Semaphore(Math.max(1, maxConnections), true);
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Borrows a connection, waiting if all connections are in use. The
+     * connection has to be returned using
+     * {@link #release(PooledConnection, boolean)}.
+     *
+     * @return a connection with auto-commit disabled
+     * @throws SQLException
+     *             if no connection became available in time or creating a
+     *             connection failed
+     */
+    public PooledConnection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        try {
+            if ( !permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timeout waiting for a database connection");
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+        try {
+            PooledConnection connection = idle.poll();
+            if (connection == null) {
+                connection = new PooledConnection(createConnection());
+            }
+            return connection;
+        }
+        catch (SQLException e) {
+            permits.release();
+            throw e;
+        }
+        catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns a borrowed connection to the pool.
+     *
+     * @param connection
+     *            the connection
+     * @param broken
+     *            <code>true</code> if the connection failed and is to be
+     *            closed instead of being reused
+     */
+    public void release(PooledConnection connection, boolean broken) {
+        try {
+            if (broken || closed) {
+                connection.close();
+            }
+            else {
+                idle.offer(connection);
+            }
+        }
+        finally {
+            permits.release();
+        }
+        if (closed) {
+            // released after close()
+            closeIdleConnections();
+        }
+    }
+
+    /**
+     * Closes the idle connections, borrowed connections are closed when they
+     * are released.
+     */
+    public void close() {
+        closed = true;
+        closeIdleConnections();
+    }
+
+    private void closeIdleConnections() {
+        PooledConnection connection;
+        while ((connection = idle.poll()) != null) {
+            connection.close();
+        }
+    }
+
+    private Connection createConnection() throws SQLException {
+        Connection connection = dataSource != null ? dataSource.getConnection()
+                                                   : DriverManager.getConnection(connectionURL, connectionProperties);
+        connection.setAutoCommit(false);
+        LOGGER.debug("Created database connection");
+        return connection;
+    }
+
+    public static class PooledConnection {
+
+        private final Connection connection;
+
+        // only used by the thread that borrowed the connection
+        private final Map<String, PreparedStatement> statements = new HashMap<String, PreparedStatement>();
+
+        PooledConnection(Connection connection) {
+            this.connection = connection;
+        }
+
+        public Connection getConnection() {
+            return connection;
+        }
+
+        /**
+         * @return the cached statement of this connection for the SQL
+         */
+        public PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement statement = statements.get(sql);
+            if (statement == null) {
+                statement = connection.prepareStatement(sql);
+                statements.put(sql, statement);
+            }
+            else {
+                statement.clearParameters();
+            }
+            return statement;
+        }
+
+        void close() {
+            for (PreparedStatement statement : statements.values()) {
+                try {
+                    statement.close();
+                }
+                catch (SQLException e) {
+                    LOGGER.debug("Could not close prepared statement", e);
+                }
+            }
+            statements.clear();
+            try {
+                connection.close();
+            }
+            catch (SQLException e) {
+                LOGGER.debug("Could not close database connection", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,795 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.database;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import javax.sql.DataSource;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.commons.io.output.DeferredFileOutputStream;
+import org.n52.wps.ServerDocument.Server;
+import org.n52.wps.commons.PropertyUtil;
+import org.n52.wps.commons.WPSConfig;
+import org.n52.wps.server.database.JDBCConnectionPool.PooledConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * A JDBC database using a pool of connections, so that concurrent requests,
+ * status updates and result retrievals do not serialize on a single
+ * connection like the {@link AbstractDatabase} implementations. It uses the
+ * RESULTS table of {@link AbstractDatabase}.
+ * <ul>
+ * <li>Statements are prepared once per pooled connection.</li>
+ * <li>Requests and results are streamed into the database and
+ * {@link #lookupResponse(String)} returns a stream reading the row, which
+ * holds its connection until it is closed.</li>
+ * <li>Status updates are coalesced per job and written in batches; lookups
+ * see pending updates immediately.</li>
+ * </ul>
+ *
+ * The database is configured using the following <code>Database</code>
+ * properties of the wps_config.xml (each can be overridden by a system
+ * property prefixed with <code>org.n52.wps.server.database.</code>):
+ * <ul>
+ * <li><code>jndiName</code>: name of a container managed {@link DataSource}
+ * below <code>java:comp/env/jdbc/</code></li>
+ * <li><code>connectionURL</code>, <code>username</code>,
+ * <code>password</code>: used if no <code>jndiName</code> is set, defaults to an
+ * embedded Derby database at <code>databasePath</code>/<code>databaseName</code></li>
+ * <li><code>pool.size</code>: maximum number of connections</li>
+ * <li><code>pool.timeout</code>: ISO 8601 period to wait for a connection</li>
+ * <li><code>status.batchPeriod</code>: ISO 8601 period between batched status
+ * updates, 0 writes every update immediately</li>
+ * </ul>
+ */
+public class PooledJDBCDatabase implements IDatabase {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(PooledJDBCDatabase.class);
+
+    private final static String KEY_DATABASE_ROOT = "org.n52.wps.server.database";
+    private final static String KEY_JNDI_NAME = "jndiName";
+    private final static String KEY_CONNECTION_URL = "connectionURL";
+    private final static String KEY_USERNAME = "username";
+    private final static String KEY_PASSWORD = "password";
+    private final static String KEY_POOL_SIZE = "pool.size";
+    private final static String KEY_POOL_TIMEOUT = "pool.timeout";
+    private final static String KEY_STATUS_BATCH_PERIOD = "status.batchPeriod";
+
+    private final static int DEFAULT_POOL_SIZE = 10;
+    private final static long DEFAULT_POOL_TIMEOUT = 1000 * 30; // PT30S
+    private final static long DEFAULT_STATUS_BATCH_PERIOD = 250; // PT0.25S
+
+    private final static String SQL_SELECT_MIMETYPE = "SELECT RESPONSE_MIMETYPE FROM RESULTS WHERE REQUEST_ID = (?)";
+    private final static String SQL_DELETE = "DELETE FROM RESULTS WHERE REQUEST_ID = (?)";
+
+    // spooled to disk if the driver needs the length of a stream
+    private final static int SPOOL_THRESHOLD = 1024 * 1024;
+
+    // larger status updates are written directly instead of being kept for the next batch
+    private final static int MAX_BATCHED_UPDATE = SPOOL_THRESHOLD;
+
+    // responses known to be stored, their further status documents are batched
+    private final static long MAX_KNOWN_RESPONSES = 10000;
+
+    private static PooledJDBCDatabase instance;
+
+    // This method is required by the DatabaseFactory, it is found using reflection
+    public synchronized static IDatabase getInstance() {
+        if (instance == null) {
+            instance = new PooledJDBCDatabase();
+        }
+        return instance;
+    }
+
+    protected final String baseResultURL;
+
+    protected final JDBCConnectionPool pool;
+
+    // latest status update per job that is not written yet
+    protected final ConcurrentMap<String, byte[]> pendingUpdates = new ConcurrentHashMap<String, byte[]>();
+
+    protected final ScheduledExecutorService updateWriter;
+
+    protected final Set<String> storedResponses = Collections.newSetFromMap(CacheBuilder.newBuilder()
+            .maximumSize(MAX_KNOWN_RESPONSES).<String, Boolean> build().asMap());
+
+    protected PooledJDBCDatabase() {
+        this(getServer(), new PropertyUtil(getServer().getDatabase().getPropertyArray(), KEY_DATABASE_ROOT));
+    }
+
+    private PooledJDBCDatabase(Server server, PropertyUtil propertyUtil) {
+        this(createPool(propertyUtil), String.format("http://%s:%s/%s/RetrieveResultServlet?id=",
+                server.getHostname(), server.getHostport(), server.getWebappPath()),
+                propertyUtil.extractPeriodAsMillis(KEY_STATUS_BATCH_PERIOD, DEFAULT_STATUS_BATCH_PERIOD));
+    }
+
+    /**
+     * @param pool
+     *            the connections to use, closed on {@link #shutdown()}
+     * @param baseResultURL
+     *            the retrieve URL the response ids are appended to
+     * @param batchPeriod
+     *            milliseconds between two batches of status updates, 0 to
+     *            write each update directly
+     */
+    protected PooledJDBCDatabase(JDBCConnectionPool pool, String baseResultURL, long batchPeriod) {
+        this.pool = pool;
+        this.baseResultURL = baseResultURL;
+
+        createResultTable();
+
+        if (batchPeriod > 0) {
+            updateWriter = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                    .setNameFormat(getClass().getSimpleName() + " Status Writer").setDaemon(true).build());
+            updateWriter.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    writePendingUpdates();
+                }
+            }, batchPeriod, batchPeriod, TimeUnit.MILLISECONDS);
+        }
+        else {
+            updateWriter = null;
+        }
+    }
+
+    private static Server getServer() {
+        return WPSConfig.getInstance().getWPSConfig().getServer();
+    }
+
+    private static JDBCConnectionPool createPool(PropertyUtil propertyUtil) {
+        JDBCConnectionPool pool;
+        int poolSize = (int) propertyUtil.extractLong(KEY_POOL_SIZE, DEFAULT_POOL_SIZE);
+        long poolTimeout = propertyUtil.extractPeriodAsMillis(KEY_POOL_TIMEOUT, DEFAULT_POOL_TIMEOUT);
+        String jndiName = propertyUtil.extractString(KEY_JNDI_NAME, null);
+        if (jndiName != null && !jndiName.isEmpty()) {
+            try {
+                DataSource dataSource = (DataSource) new InitialContext().lookup("java:comp/env/jdbc/" + jndiName);
+                pool = new JDBCConnectionPool(dataSource, poolSize, poolTimeout);
+            }
+            catch (NamingException e) {
+                throw new RuntimeException("Could not look up the data source " + jndiName, e);
+            }
+        }
+        else {
+            String connectionURL = propertyUtil.extractString(KEY_CONNECTION_URL, null);
+            if (connectionURL == null || connectionURL.isEmpty()) {
+                connectionURL = "jdbc:derby:" + AbstractDatabase.getDatabasePath() + File.separator
+                        + databaseName() + ";create=true";
+            }
+            Properties properties = new Properties();
+            String username = propertyUtil.extractString(KEY_USERNAME, null);
+            if (username != null) {
+                properties.setProperty("user", username);
+                properties.setProperty("password", propertyUtil.extractString(KEY_PASSWORD, ""));
+            }
+            pool = new JDBCConnectionPool(connectionURL, properties, poolSize, poolTimeout);
+        }
+        LOGGER.info("Using {} pooled database connections", poolSize);
+        return pool;
+    }
+
+    private void createResultTable() {
+        PooledConnection connection = borrow();
+        boolean broken = true;
+        try {
+            DatabaseMetaData meta = connection.getConnection().getMetaData();
+            if ( !tableExists(meta, "RESULTS") && !tableExists(meta, "results")) {
+                LOGGER.info("Table RESULTS does not yet exist.");
+                // CLOB is not supported by Postgres
+                String creation = meta.getDatabaseProductName().toLowerCase().contains("postgres")
+                        ? PostgresDatabase.pgCreationString : AbstractDatabase.creationString;
+                Statement statement = connection.getConnection().createStatement();
+                try {
+                    statement.executeUpdate(creation);
+                }
+                finally {
+                    statement.close();
+                }
+                connection.getConnection().commit();
+            }
+            broken = false;
+        }
+        catch (SQLException e) {
+            throw new RuntimeException("Creating result table failed.", e);
+        }
+        finally {
+            pool.release(connection, broken);
+        }
+    }
+
+    private static boolean tableExists(DatabaseMetaData meta, String table) throws SQLException {
+        ResultSet tables = meta.getTables(null, null, table, new String[] {"TABLE"});
+        try {
+            return tables.next();
+        }
+        finally {
+            tables.close();
+        }
+    }
+
+    private PooledConnection borrow() {
+        try {
+            return pool.borrow();
+        }
+        catch (SQLException e) {
+            throw new RuntimeException("No database connection available", e);
+        }
+    }
+
+    @Override
+    public String getDatabaseName() {
+        return databaseName();
+    }
+
+    private static String databaseName() {
+        String dbName = AbstractDatabase.getDatabaseProperties(AbstractDatabase.PROPERTY_NAME_DATABASE_NAME);
+        return (dbName == null || dbName.equals("")) ? "wps" : dbName;
+    }
+
+    @Override
+    public String generateRetrieveResultURL(String id) {
+        return baseResultURL + id;
+    }
+
+    @Override
+    public void insertRequest(String id, InputStream inputStream, boolean xml) {
+        insertResultEntity(inputStream, "REQ_" + id, "ExecuteRequest", xml ? "text/xml" : "text/plain");
+    }
+
+    @Override
+    public String insertResponse(String id, InputStream inputStream) {
+        return insertResultEntity(inputStream, id, "ExecuteResponse", "text/xml");
+    }
+
+    @Override
+    public String storeComplexValue(String id, InputStream stream, String type, String mimeType) {
+        return insertResultEntity(stream, id, type, mimeType);
+    }
+
+    protected String insertResultEntity(InputStream stream, String id, String type, String mimeType) {
+        PooledConnection connection = borrow();
+        boolean broken = false;
+        try {
+            PreparedStatement insert = connection.prepare(AbstractDatabase.insertionString);
+            insert.setString(AbstractDatabase.INSERT_COLUMN_REQUEST_ID, id);
+            insert.setTimestamp(AbstractDatabase.INSERT_COLUMN_REQUEST_DATE, new Timestamp(System.currentTimeMillis()));
+            insert.setString(AbstractDatabase.INSERT_COLUMN_RESPONSE_TYPE, type);
+            insert.setString(AbstractDatabase.INSERT_COLUMN_MIME_TYPE, mimeType);
+            Spool spool = setStream(insert, AbstractDatabase.INSERT_COLUMN_RESPONSE, stream);
+            try {
+                insert.executeUpdate();
+                connection.getConnection().commit();
+            }
+            finally {
+                Spool.dispose(spool);
+            }
+        }
+        catch (SQLException e) {
+            broken = rollback(connection);
+            LOGGER.error("Could not insert Response into database: " + e.getMessage());
+        }
+        catch (IOException e) {
+            broken = rollback(connection);
+            LOGGER.error("Could not insert Response into database: " + e.getMessage());
+        }
+        finally {
+            IOUtils.closeQuietly(stream);
+            pool.release(connection, broken);
+        }
+        return generateRetrieveResultURL(id);
+    }
+
+    @Override
+    public void updateResponse(final String id, InputStream inputStream) {
+        if (updateWriter == null) {
+            writeUpdate(id, inputStream);
+            return;
+        }
+        byte[] head;
+        try {
+            head = IOUtils.toByteArray(new BoundedInputStream(inputStream, MAX_BATCHED_UPDATE + 1));
+        }
+        catch (IOException e) {
+            IOUtils.closeQuietly(inputStream);
+            LOGGER.error("Could not read Response for " + id + ": " + e.getMessage());
+            return;
+        }
+        if (head.length <= MAX_BATCHED_UPDATE) {
+            // status documents are small, keep the latest one until the next batch
+            IOUtils.closeQuietly(inputStream);
+            pendingUpdates.put(id, head);
+            return;
+        }
+        // written by the batch writer as well, so a running batch can not overwrite it
+        final InputStream document = new SequenceInputStream(new ByteArrayInputStream(head), inputStream);
+        try {
+            Future<?> write = updateWriter.submit(new Runnable() {
+                public void run() {
+                    pendingUpdates.remove(id);
+                    writeUpdate(id, document);
+                }
+            });
+            write.get();
+        }
+        catch (RejectedExecutionException e) {
+            // shut down, there are no more batches
+            pendingUpdates.remove(id);
+            writeUpdate(id, document);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.error("Interrupted while writing Response for " + id);
+        }
+        catch (ExecutionException e) {
+            LOGGER.error("Could not write Response for " + id + ": " + e.getCause().getMessage());
+        }
+    }
+
+    private void writeUpdate(String id, InputStream inputStream) {
+        PooledConnection connection = borrow();
+        boolean broken = false;
+        try {
+            PreparedStatement update = connection.prepare(AbstractDatabase.updateString);
+            update.setString(AbstractDatabase.UPDATE_COLUMN_REQUEST_ID, id);
+            Spool spool = setStream(update, AbstractDatabase.UPDATE_COLUMN_RESPONSE, inputStream);
+            try {
+                update.executeUpdate();
+                connection.getConnection().commit();
+            }
+            finally {
+                Spool.dispose(spool);
+            }
+        }
+        catch (SQLException e) {
+            broken = rollback(connection);
+            LOGGER.error("Could not update Response in database: " + e.getMessage());
+        }
+        catch (IOException e) {
+            broken = rollback(connection);
+            LOGGER.error("Could not update Response in database: " + e.getMessage());
+        }
+        finally {
+            IOUtils.closeQuietly(inputStream);
+            pool.release(connection, broken);
+        }
+    }
+
+    /**
+     * Writes the pending status updates in one batch. Updates are only removed
+     * from the pending ones once committed, so lookups never see an older
+     * status.
+     */
+    protected void writePendingUpdates() {
+        if (pendingUpdates.isEmpty()) {
+            return;
+        }
+        Map<String, byte[]> batch = new HashMap<String, byte[]>(pendingUpdates);
+        PooledConnection connection;
+        try {
+            connection = pool.borrow();
+        }
+        catch (SQLException e) {
+            LOGGER.warn("Could not write status updates: " + e.getMessage());
+            return;
+        }
+        boolean broken = false;
+        try {
+            PreparedStatement update = connection.prepare(AbstractDatabase.updateString);
+            for (Map.Entry<String, byte[]> entry : batch.entrySet()) {
+                update.setString(AbstractDatabase.UPDATE_COLUMN_REQUEST_ID, entry.getKey());
+                update.setAsciiStream(AbstractDatabase.UPDATE_COLUMN_RESPONSE,
+                        new ByteArrayInputStream(entry.getValue()), entry.getValue().length);
+                update.addBatch();
+            }
+            update.executeBatch();
+            connection.getConnection().commit();
+            for (Map.Entry<String, byte[]> entry : batch.entrySet()) {
+                // a newer update may have been queued in the meantime
+                pendingUpdates.remove(entry.getKey(), entry.getValue());
+            }
+            LOGGER.debug("Wrote {} status updates", batch.size());
+        }
+        catch (SQLException e) {
+            broken = rollback(connection);
+            LOGGER.error("Could not write status updates, retrying: " + e.getMessage());
+        }
+        finally {
+            pool.release(connection, broken);
+        }
+    }
+
+    /**
+     * Stores the first document of a response directly, later status documents
+     * of the same response are written in batches.
+     */
+    @Override
+    public String storeResponse(String id, InputStream inputStream) {
+        if (updateWriter != null && (storedResponses.contains(id) || pendingUpdates.containsKey(id))) {
+            updateResponse(id, inputStream);
+        }
+        else if (upsertResponse(id, inputStream)) {
+            storedResponses.add(id);
+        }
+        return generateRetrieveResultURL(id);
+    }
+
+    /**
+     * Updates the response, or inserts it if there is none yet, in one
+     * transaction. If another thread inserted the same id in the meantime the
+     * insert fails and the response is written as an update instead.
+     *
+     * @return <code>true</code> if the response was stored
+     */
+    private boolean upsertResponse(String id, InputStream inputStream) {
+        PooledConnection connection = borrow();
+        boolean broken = false;
+        Spool spool = null;
+        try {
+            // both statements may need the content
+            spool = Spool.of(inputStream);
+            for (int attempt = 0;; attempt++) {
+                try {
+                    PreparedStatement update = connection.prepare(AbstractDatabase.updateString);
+                    update.setString(AbstractDatabase.UPDATE_COLUMN_REQUEST_ID, id);
+                    update.setAsciiStream(AbstractDatabase.UPDATE_COLUMN_RESPONSE, spool.open(), spool.length());
+                    if (update.executeUpdate() == 0) {
+                        PreparedStatement insert = connection.prepare(AbstractDatabase.insertionString);
+                        insert.setString(AbstractDatabase.INSERT_COLUMN_REQUEST_ID, id);
+                        insert.setTimestamp(AbstractDatabase.INSERT_COLUMN_REQUEST_DATE,
+                                new Timestamp(System.currentTimeMillis()));
+                        insert.setString(AbstractDatabase.INSERT_COLUMN_RESPONSE_TYPE, "ExecuteResponse");
+                        insert.setString(AbstractDatabase.INSERT_COLUMN_MIME_TYPE, "text/xml");
+                        insert.setAsciiStream(AbstractDatabase.INSERT_COLUMN_RESPONSE, spool.open(), spool.length());
+                        insert.executeUpdate();
+                    }
+                    connection.getConnection().commit();
+                    return true;
+                }
+                catch (SQLException e) {
+                    if (attempt > 0 || !isDuplicateKey(e) || rollback(connection)) {
+                        throw e;
+                    }
+                    LOGGER.debug("Response {} was inserted concurrently, storing it as an update", id);
+                }
+            }
+        }
+        catch (SQLException e) {
+            broken = rollback(connection);
+            LOGGER.error("Could not store Response " + id + " in database: " + e.getMessage());
+        }
+        catch (IOException e) {
+            broken = rollback(connection);
+            LOGGER.error("Could not store Response " + id + " in database: " + e.getMessage());
+        }
+        finally {
+            Spool.dispose(spool);
+            IOUtils.closeQuietly(inputStream);
+            pool.release(connection, broken);
+        }
+        return false;
+    }
+
+    private static boolean isDuplicateKey(SQLException e) {
+        // integrity constraint violations are of SQL state class 23
+        return e instanceof SQLIntegrityConstraintViolationException
+                || (e.getSQLState() != null && e.getSQLState().startsWith("23"));
+    }
+
+    @Override
+    public InputStream lookupRequest(String id) {
+        return lookup("REQ_" + id);
+    }
+
+    @Override
+    public InputStream lookupResponse(String id) {
+        byte[] pending = pendingUpdates.get(id);
+        if (pending != null) {
+            return new ByteArrayInputStream(pending);
+        }
+        return lookup(id);
+    }
+
+    /**
+     * @return a stream reading the row, its connection is released when the
+     *         stream is closed
+     */
+    private InputStream lookup(String id) {
+        PooledConnection connection = borrow();
+        try {
+            PreparedStatement select = connection.prepare(AbstractDatabase.selectionString);
+            select.setString(1, id);
+            ResultSet result = select.executeQuery();
+            if ( !result.next()) {
+                result.close();
+                connection.getConnection().commit();
+                pool.release(connection, false);
+                LOGGER.warn("Query did not return a valid result.");
+                return null;
+            }
+            InputStream content = result.getAsciiStream(AbstractDatabase.SELECT_COLUMN_RESPONSE);
+            if (content == null) {
+                result.close();
+                connection.getConnection().commit();
+                pool.release(connection, false);
+                return null;
+            }
+            return new ResultInputStream(content, result, connection);
+        }
+        catch (SQLException e) {
+            pool.release(connection, rollback(connection));
+            LOGGER.error("SQLException with request_id: " + id + " and message: " + e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public String getMimeTypeForStoreResponse(String id) {
+        PooledConnection connection = borrow();
+        boolean broken = false;
+        try {
+            PreparedStatement select = connection.prepare(SQL_SELECT_MIMETYPE);
+            select.setString(1, id);
+            ResultSet result = select.executeQuery();
+            try {
+                return result.next() ? result.getString(1) : null;
+            }
+            finally {
+                result.close();
+                connection.getConnection().commit();
+            }
+        }
+        catch (SQLException e) {
+            broken = rollback(connection);
+            LOGGER.error("SQLException with request_id: " + id + " and message: " + e.getMessage());
+            return null;
+        }
+        finally {
+            pool.release(connection, broken);
+        }
+    }
+
+    @Override
+    public long getContentLengthForStoreResponse(String id) {
+        return -1;
+    }
+
+    @Override
+    public boolean deleteStoredResponse(String id) {
+        storedResponses.remove(id);
+        pendingUpdates.remove(id);
+        PooledConnection connection = borrow();
+        boolean broken = false;
+        try {
+            PreparedStatement delete = connection.prepare(SQL_DELETE);
+            delete.setString(1, id);
+            int deleted = delete.executeUpdate();
+            connection.getConnection().commit();
+            return deleted > 0;
+        }
+        catch (SQLException e) {
+            broken = rollback(connection);
+            LOGGER.error("Could not delete Response " + id + ": " + e.getMessage());
+            return false;
+        }
+        finally {
+            pool.release(connection, broken);
+        }
+    }
+
+    @Override
+    public File lookupRequestAsFile(String id) {
+        return null;
+    }
+
+    @Override
+    public File lookupResponseAsFile(String id) {
+        return null;
+    }
+
+    @Override
+    public void shutdown() {
+        synchronized (PooledJDBCDatabase.class) {
+            if (instance == this) {
+                instance = null;
+            }
+        }
+        if (updateWriter != null) {
+            updateWriter.shutdown();
+            try {
+                updateWriter.awaitTermination(10, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            writePendingUpdates();
+        }
+        pool.close();
+        LOGGER.info("Pooled database connections are closed");
+    }
+
+    /**
+     * Binds a stream of unknown length, spooling it if the driver requires the
+     * length.
+     *
+     * @return the spooled stream to dispose after the statement was executed
+     *         or <code>null</code>
+     */
+    private static Spool setStream(PreparedStatement statement, int column, InputStream stream)
+            throws SQLException, IOException {
+        try {
+            statement.setAsciiStream(column, stream);
+            return null;
+        }
+        catch (SQLException e) {
+            // SQLFeatureNotSupportedException, or 0A000 of older drivers
+            if ( !"0A000".equals(e.getSQLState())) {
+                throw e;
+            }
+        }
+        catch (AbstractMethodError e) {
+            // pre JDBC 4 driver
+        }
+        Spool spool = Spool.of(stream);
+        statement.setAsciiStream(column, spool.open(), spool.length());
+        return spool;
+    }
+
+    /**
+     * @return <code>true</code> if the connection is broken
+     */
+    private static boolean rollback(PooledConnection connection) {
+        try {
+            connection.getConnection().rollback();
+            return false;
+        }
+        catch (SQLException e) {
+            return true;
+        }
+    }
+
+    private static class Spool {
+
+        private final DeferredFileOutputStream output;
+
+        private final List<InputStream> inputs = new ArrayList<InputStream>();
+
+        private Spool(DeferredFileOutputStream output) {
+            this.output = output;
+        }
+
+        static Spool of(InputStream stream) throws IOException {
+            DeferredFileOutputStream output = new DeferredFileOutputStream(SPOOL_THRESHOLD, "wps-db", ".tmp", null);
+            try {
+                IOUtils.copyLarge(stream, output);
+            }
+            finally {
+                output.close();
+            }
+            return new Spool(output);
+        }
+
+        int length() {
+            return (int) output.getByteCount();
+        }
+
+        /**
+         * @return a new stream reading the spooled content from the start
+         */
+        InputStream open() throws IOException {
+            InputStream input = output.isInMemory() ? new ByteArrayInputStream(output.getData())
+                                                    : new FileInputStream(output.getFile());
+            inputs.add(input);
+            return input;
+        }
+
+        static void dispose(Spool spool) {
+            if (spool == null) {
+                return;
+            }
+            for (InputStream input : spool.inputs) {
+                IOUtils.closeQuietly(input);
+            }
+            if ( !spool.output.isInMemory() && !spool.output.getFile().delete()) {
+                spool.output.getFile().deleteOnExit();
+            }
+        }
+    }
+
+    private class ResultInputStream extends FilterInputStream {
+
+        private final ResultSet result;
+
+        private final PooledConnection connection;
+
+        private boolean closed = false;
+
+        ResultInputStream(InputStream content, ResultSet result, PooledConnection connection) {
+            super(content);
+            this.result = result;
+            this.connection = connection;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            boolean broken = false;
+            try {
+                super.close();
+                result.close();
+                connection.getConnection().commit();
+            }
+            catch (SQLException e) {
+                broken = rollback(connection);
+                LOGGER.debug("Could not close result", e);
+            }
+            finally {
+                pool.release(connection, broken);
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.n52.wps.server.database.JDBCConnectionPool.PooledConnection;
+
+public class PooledJDBCDatabaseTest {
+
+    private static final String BASE_URL = "http://localhost:8080/wps/RetrieveResultServlet?id=";
+
+    private File directory;
+
+    private JDBCConnectionPool pool;
+
+    private PooledJDBCDatabase database;
+
+    @BeforeClass
+    public static void loadDriver() throws ClassNotFoundException {
+        Class.forName("org.apache.derby.jdbc.EmbeddedDriver");
+    }
+
+    @Before
+    public void setUp() {
+        directory = new File(System.getProperty("java.io.tmpdir"), "wps-db-" + UUID.randomUUID());
+        pool = new JDBCConnectionPool("jdbc:derby:" + directory.getAbsolutePath() + ";create=true",
+                new Properties(), 2, TimeUnit.SECONDS.toMillis(10));
+        // batches are only written when the test asks for them
+        database = new PooledJDBCDatabase(pool, BASE_URL, TimeUnit.HOURS.toMillis(1));
+    }
+
+    @After
+    public void tearDown() {
+        database.shutdown();
+        try {
+            DriverManager.getConnection("jdbc:derby:" + directory.getAbsolutePath() + ";shutdown=true");
+        }
+        catch (SQLException e) {
+            // a successful shutdown is reported as an exception
+        }
+        FileUtils.deleteQuietly(directory);
+    }
+
+    @Test
+    public void testProgressUpdatesAreWrittenInOneBatch() throws Exception {
+        assertEquals(BASE_URL + "job", database.storeResponse("job", document("accepted")));
+        assertEquals("accepted", readStored("job"));
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(BASE_URL + "job", database.storeResponse("job", document("progress " + i)));
+        }
+        // nothing is written yet, but lookups see the latest update
+        assertEquals("accepted", readStored("job"));
+        assertEquals(1, database.pendingUpdates.size());
+        assertEquals("progress 9", read(database.lookupResponse("job")));
+
+        database.writePendingUpdates();
+        assertTrue(database.pendingUpdates.isEmpty());
+        assertEquals("progress 9", readStored("job"));
+        assertEquals("progress 9", read(database.lookupResponse("job")));
+    }
+
+    @Test
+    public void testResponsesAreBatchedPerId() throws Exception {
+        database.storeResponse("first", document("first accepted"));
+        database.storeResponse("second", document("second accepted"));
+        database.storeResponse("first", document("first succeeded"));
+        database.storeResponse("second", document("second succeeded"));
+        assertEquals(2, database.pendingUpdates.size());
+
+        database.writePendingUpdates();
+        assertEquals("first succeeded", readStored("first"));
+        assertEquals("second succeeded", readStored("second"));
+    }
+
+    @Test
+    public void testDeletedResponseIsStoredAgain() throws Exception {
+        database.storeResponse("job", document("accepted"));
+        assertTrue(database.deleteStoredResponse("job"));
+
+        database.storeResponse("job", document("accepted again"));
+        assertTrue(database.pendingUpdates.isEmpty());
+        assertEquals("accepted again", readStored("job"));
+    }
+
+    private static InputStream document(String content) throws IOException {
+        return new ByteArrayInputStream(content.getBytes("UTF-8"));
+    }
+
+    private static String read(InputStream stream) throws IOException {
+        try {
+            return IOUtils.toString(stream, "UTF-8");
+        }
+        finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * @return the response as it is stored in the table, ignoring pending
+     *         updates
+     */
+    private String readStored(String id) throws Exception {
+        PooledConnection connection = pool.borrow();
+        try {
+            PreparedStatement select = connection.prepare(AbstractDatabase.selectionString);
+            select.setString(1, id);
+            ResultSet result = select.executeQuery();
+            try {
+                assertTrue(result.next());
+                return read(result.getAsciiStream(AbstractDatabase.SELECT_COLUMN_RESPONSE));
+            }
+            finally {
+                result.close();
+                connection.getConnection().commit();
+            }
+        }
+        finally {
+            pool.release(connection, false);
+        }
+    }
+}
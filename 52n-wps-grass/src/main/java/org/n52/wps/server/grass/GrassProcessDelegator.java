@@ -54,6 +54,7 @@ import org.n52.wps.io.data.binding.literal.LiteralDoubleBinding;
 import org.n52.wps.io.data.binding.literal.LiteralFloatBinding;
 import org.n52.wps.io.data.binding.literal.LiteralIntBinding;
 import org.n52.wps.io.data.binding.literal.LiteralStringBinding;
+import org.n52.wps.server.ExceptionReport;
 import org.n52.wps.server.grass.io.GrassIOHandler;
 
 /**
@@ -183,7 +184,7 @@ public class GrassProcessDelegator extends GenericGrassAlgorithm{
 	}
 
 	@Override
-	public Map<String, IData> run(Map<String, List<IData>> inputData) {
+	public Map<String, IData> run(Map<String, List<IData>> inputData) throws ExceptionReport {
 
 		LOGGER.info("Executing GRASS process " + processID + ".");
 		
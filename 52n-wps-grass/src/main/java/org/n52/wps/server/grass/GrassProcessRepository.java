@@ -29,7 +29,9 @@
 package org.n52.wps.server.grass;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
@@ -40,7 +42,9 @@ import org.n52.wps.PropertyDocument.Property;
 import org.n52.wps.commons.WPSConfig;
 import org.n52.wps.server.IAlgorithm;
 import org.n52.wps.server.IAlgorithmRepository;
+import org.n52.wps.server.grass.io.GrassIOHandler;
 import org.n52.wps.server.grass.util.GRASSWPSConfigVariables;
+import org.n52.wps.server.grass.util.GrassLocationPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -61,6 +65,7 @@ public class GrassProcessRepository implements IAlgorithmRepository {
 	public static String grassModuleStarterHome;
 	public static String gisrcDir;
 	public static String addonPath;
+	public static GrassLocationPool locationPool;
 
 	public GrassProcessRepository() {
 		registeredProcesses = new HashMap<String, ProcessDescriptionType>();
@@ -83,6 +88,8 @@ public class GrassProcessRepository implements IAlgorithmRepository {
 			 * 		add all valid processes to WPSConfig
 			 */			
 			ArrayList<String> processList = new ArrayList<String>(propertyArray.length);
+			boolean useLocationPool = true;
+			String locationPoolEPSG = "";
 			
 			for (Property property : propertyArray) {
 				if (property.getName().equalsIgnoreCase(
@@ -107,6 +114,12 @@ public class GrassProcessRepository implements IAlgorithmRepository {
 				}else if (property.getName().equalsIgnoreCase(
 						GRASSWPSConfigVariables.Python_Path.toString())) {
 					pythonPath = property.getStringValue();
+				}else if (property.getName().equalsIgnoreCase(
+						GRASSWPSConfigVariables.Location_Pool.toString())) {
+					useLocationPool = Boolean.parseBoolean(property.getStringValue());
+				}else if (property.getName().equalsIgnoreCase(
+						GRASSWPSConfigVariables.Location_Pool_EPSG.toString())) {
+					locationPoolEPSG = property.getStringValue();
 				}else if(property.getName().equals("Algorithm")){
 					if(property.getActive()){
 						processList.add(property.getStringValue());
@@ -161,6 +174,18 @@ public class GrassProcessRepository implements IAlgorithmRepository {
 				}
 			}			
 			
+			if (useLocationPool) {
+				try {
+					locationPool = new GrassLocationPool(grassHome, gisrcDir, new GrassIOHandler().getEnvp());
+					locationPool.preload(Arrays.asList(locationPoolEPSG.split(",")));
+				} catch (IOException e) {
+					LOGGER.warn("Could not initialize the GRASS location pool, a location is created per execution", e);
+					locationPool = null;
+				}
+			} else {
+				locationPool = null;
+			}
+			
 			// initialize after properties are fetched
 			GrassProcessDescriptionCreator creator = new GrassProcessDescriptionCreator();
 
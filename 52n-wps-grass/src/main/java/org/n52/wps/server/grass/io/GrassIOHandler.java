@@ -28,17 +28,16 @@
  */
 package org.n52.wps.server.grass.io;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
 import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -50,9 +49,12 @@ import org.n52.wps.io.data.GenericFileDataWithGT;
 import org.n52.wps.io.data.GenericFileDataConstants;
 import org.n52.wps.io.data.IData;
 import org.n52.wps.io.data.binding.complex.GenericFileDataWithGTBinding;
+import org.n52.wps.server.ExceptionReport;
 import org.n52.wps.server.WebProcessingService;
 import org.n52.wps.server.grass.GrassProcessRepository;
-import org.n52.wps.server.grass.util.JavaProcessStreamReader;
+import org.n52.wps.server.grass.util.GrassLocationPool;
+import org.n52.wps.server.process.ProcessResult;
+import org.n52.wps.server.process.ProcessSupervisor;
 
 /**
  * @author Benjamin Pross (bpross-52n)
@@ -77,6 +79,7 @@ public class GrassIOHandler {
 	private String addonPath;	
 	private String[] envp;
 	private boolean isAddon;
+	private Map<IData, String> inputFiles;
 	private static Logger LOGGER = LoggerFactory.getLogger(GrassIOHandler.class);
 	
 	private final String logFilename = ".log";
@@ -99,7 +102,16 @@ public class GrassIOHandler {
 	public static final String MIMETYPE = "�mimetype�";
 	public static final String WORKDIR = "�workdir�";
 	public static final String OUTPUTDIR = "�outputdir�";	
+	public static final String LOCATION = "�location�";
+	public static final String LINK_INPUT = "�link_input�";
 	public static final String OS_Name = System.getProperty("os.name");
+	public static final String PROCESS_BACKEND = "grass";
+	
+	// formats GDAL/OGR read in place
+	private static final List<String> LINKABLE_MIME_TYPES = Arrays.asList(GenericFileDataConstants.MIME_TYPE_TIFF,
+			GenericFileDataConstants.MIME_TYPE_GEOTIFF, GenericFileDataConstants.MIME_TYPE_IMAGE_GEOTIFF,
+			GenericFileDataConstants.MIME_TYPE_ZIPPED_SHP, GenericFileDataConstants.MIME_TYPE_X_ERDAS_HFA,
+			GenericFileDataConstants.MIME_TYPE_HDF, GenericFileDataConstants.MIME_TYPE_NETCDF);
 	
 	public GrassIOHandler(){		
 		
@@ -131,8 +143,9 @@ public class GrassIOHandler {
 	 * @param outputMimeType the mimetype of the output
 	 * @param outputSchema the schema of the output
 	 * @return a GenericFileDataBinding containing the generated ouput
+	 * @throws ExceptionReport if the GRASS GIS process could not be started, e.g. as the server is busy
 	 */
-	public IData executeGrassProcess(String processID, Map<String, List<IData>> complexInputData, Map<String, List<IData>> literalInputData, String outputID, String outputMimeType, String outputSchema, boolean isAddon){
+	public IData executeGrassProcess(String processID, Map<String, List<IData>> complexInputData, Map<String, List<IData>> literalInputData, String outputID, String outputMimeType, String outputSchema, boolean isAddon) throws ExceptionReport{
 		
 		String outputFileName = "";
 		
@@ -140,26 +153,32 @@ public class GrassIOHandler {
 		
 		outputFileName = tmpDir + fileSeparator + "out" + UUID.randomUUID().toString().substring(0, 5) + "." + GenericFileDataConstants.mimeTypeFileTypeLUT().get(outputMimeType);
 		
-		boolean success = createInputTxt(processID, complexInputData, literalInputData, outputID, outputFileName, outputMimeType, outputSchema);
-		
-		if(!success){
-			inputTxtFilename = null;	
-			return null;
-		}
+		inputFiles = getInputFiles(complexInputData);
 		
-		//start grassmodulestarter.py 
-		executeGrassModuleStarter();
-		
-		File outputFile = new File(outputFileName);
-		
-		if(!outputFile.exists()){
-			inputTxtFilename = null;	
-			return null;
+		// run in a pooled location of the input CRS instead of creating a new one
+		GrassLocationPool.Lease location = null;
+		if(GrassProcessRepository.locationPool != null){
+			location = GrassProcessRepository.locationPool.acquire(getGeoreferencedFiles(complexInputData));
 		}
 		
-		//give back genericfiledatabinding with the outputfile created by grass
 		try {
 			
+			boolean success = createInputTxt(processID, complexInputData, literalInputData, outputID, outputFileName, outputMimeType, outputSchema, location);
+			
+			if(!success){
+				return null;
+			}
+			
+			//start grassmodulestarter.py 
+			executeGrassModuleStarter();
+			
+			File outputFile = new File(outputFileName);
+			
+			if(!outputFile.exists()){
+				return null;
+			}
+			
+			//give back genericfiledatabinding with the outputfile created by grass
 			GenericFileDataWithGT outputFileData = new GenericFileDataWithGT(outputFile, outputMimeType);
 			
 			GenericFileDataWithGTBinding outputData = new GenericFileDataWithGTBinding(outputFileData);	
@@ -171,10 +190,61 @@ public class GrassIOHandler {
 			
 			return null;
 		}finally{
+			if(location != null){
+				location.release();
+			}
 			inputTxtFilename = null;
+			inputFiles = null;
 		}		
 	}
 	
+	/**
+	 * Writes the complex inputs to disk once, the GrassModuleStarter and the
+	 * location pool read the same files.
+	 */
+	private Map<IData, String> getInputFiles(Map<String, List<IData>> complexInputData) {
+		
+		Map<IData, String> files = new IdentityHashMap<IData, String>();
+		
+		for (List<IData> dataList : complexInputData.values()) {
+			for (IData data : dataList) {
+				if(data instanceof GenericFileDataWithGTBinding){
+					files.put(data, ((GenericFileDataWithGTBinding)data).getPayload().getBaseFile(true).getAbsolutePath());
+				}
+			}
+		}
+		return files;
+	}
+	
+	private List<File> getGeoreferencedFiles(Map<String, List<IData>> complexInputData) {
+		
+		List<File> files = new ArrayList<File>();
+		
+		for (List<IData> dataList : complexInputData.values()) {
+			for (IData data : dataList) {
+				if(inputFiles.containsKey(data) && !((GenericFileDataWithGTBinding)data).getPayload().getMimeType().equals(GenericFileDataConstants.MIME_TYPE_PLAIN_TEXT)){
+					files.add(new File(inputFiles.get(data)));
+				}
+			}
+		}
+		return files;
+	}
+	
+	/**
+	 * @return true, if GRASS can read all complex inputs directly from their
+	 *         files (r.external/v.external) instead of importing them
+	 */
+	private boolean isLinkable() {
+		
+		for (IData data : inputFiles.keySet()) {
+			String mimetype = ((GenericFileDataWithGTBinding)data).getPayload().getMimeType();
+			if(!LINKABLE_MIME_TYPES.contains(mimetype)){
+				return false;
+			}
+		}
+		return !inputFiles.isEmpty();
+	}
+	
 	private String getCommand() {
 		
 		if(command == null){
@@ -186,7 +256,7 @@ public class GrassIOHandler {
 		return command;
 	}
 
-	private String[] getEnvp() {
+	public String[] getEnvp() {
 
 		if (envp == null) {
 
@@ -260,8 +330,8 @@ public class GrassIOHandler {
 				+ lineSeparator
 				+ " GISBASE=" + grassHome
 				+ lineSeparator + " GRASS_ADDON_PATH=" + GRASS_ADDON_PATH  + lineSeparator + " GRASS_VERSION=7.0.svn"
-				+ lineSeparator + " Module=" + PROCESS_IDENTIFIER + lineSeparator + " LOCATION="
-				+ lineSeparator + " LinkInput=FALSE" + lineSeparator + " IgnoreProjection=FALSE"
+				+ lineSeparator + " Module=" + PROCESS_IDENTIFIER + lineSeparator + " LOCATION=" + LOCATION
+				+ lineSeparator + " LinkInput=" + LINK_INPUT + lineSeparator + " IgnoreProjection=FALSE"
 				+ lineSeparator + " UseXYLocation=FALSE" + lineSeparator;
 		}
 		return grassBlock;
@@ -321,9 +391,11 @@ public class GrassIOHandler {
 	 *            name and path to the result of the GRASS-process
 	 * @param outputMimeType
 	 *            suggested mimetype of the result of the GRASS-process
+	 * @param location
+	 *            the pooled location to run in, null to create a new one
 	 * @return true, if everything worked, otherwise false
 	 */
-	private boolean createInputTxt(String processID, Map<String, List<IData>> complexInputData, Map<String, List<IData>> literalInputData, String outputID, String outputFileName, String outputMimeType, String outputSchema){
+	private boolean createInputTxt(String processID, Map<String, List<IData>> complexInputData, Map<String, List<IData>> literalInputData, String outputID, String outputFileName, String outputMimeType, String outputSchema, GrassLocationPool.Lease location){
 	
 		try {
 			
@@ -345,6 +417,12 @@ public class GrassIOHandler {
 			}else{				
 				tmpBlock  = tmpBlock.replace(GRASS_ADDON_PATH, ""); 			
 			}
+			if(location != null){
+				tmpBlock  = tmpBlock.replace(LOCATION, location.getLocation().getAbsolutePath());
+			}else{
+				tmpBlock  = tmpBlock.replace(LOCATION, "");
+			}
+			tmpBlock  = tmpBlock.replace(LINK_INPUT, isLinkable() ? "TRUE" : "FALSE");
 			
 			inputTxtWriter.write(tmpBlock);
 			inputTxtWriter.write(lineSeparator);
@@ -415,7 +493,7 @@ public class GrassIOHandler {
 					tmpBlock = tmpBlock.replace(SCHEMA, "");
 				}					
 
-				String filename = ((GenericFileDataWithGTBinding)data).getPayload().getBaseFile(true).getAbsolutePath();
+				String filename = inputFiles.get(data);
 				
 				tmpBlock = tmpBlock.replace(INPUT_IDENTIFIER, key);
 				tmpBlock = tmpBlock.replace(INPUT_PATH, filename);
@@ -527,53 +605,36 @@ public class GrassIOHandler {
 		}
 	}
 	
-	private void executeGrassModuleStarter() {
+	private void executeGrassModuleStarter() throws ExceptionReport {
 
 		try {
 
 			LOGGER.info("Executing GRASS module starter.");
 			
-			Runtime rt = Runtime.getRuntime();
-			
-			Process proc = rt.exec(getCommand(), getEnvp());
+			ProcessBuilder builder = new ProcessBuilder(ProcessSupervisor.tokenize(getCommand()));
 			
-	        PipedOutputStream pipedOut = new PipedOutputStream();
-	        
-	        PipedInputStream pipedIn = new PipedInputStream(pipedOut);  
-			
-			// attach error stream reader
-			JavaProcessStreamReader errorStreamReader = new JavaProcessStreamReader(proc
-					.getErrorStream(), "ERROR", pipedOut);
-
-			// attach output stream reader
-			JavaProcessStreamReader outputStreamReader = new JavaProcessStreamReader(proc
-					.getInputStream(), "OUTPUT");
-			
-			// start them
-			errorStreamReader.start();
-			outputStreamReader.start();
-			
-			//fetch errors if there are any
-			BufferedReader errorReader = new BufferedReader(new InputStreamReader(pipedIn));
-			
-			String line = errorReader.readLine();
-			
-			String errors = "";		
-			
-			while(line != null){			
-				
-				errors = errors.concat(line + lineSeparator);
-				
-				line = errorReader.readLine();
-			}			
+			// like Runtime.exec, the environment consists of the given variables only
+			Map<String, String> environment = builder.environment();
+			environment.clear();
+			for (String variable : getEnvp()) {
+				int separator = variable.indexOf('=');
+				environment.put(variable.substring(0, separator), variable.substring(separator + 1));
+			}
 			
+			ProcessResult result;
 			try {
-				proc.waitFor();
-			} catch (InterruptedException e1) {
-				LOGGER.error("Java proces was interrupted.", e1);
-			}finally{
-				proc.destroy();
+				result = ProcessSupervisor.getInstance().execute(PROCESS_BACKEND, builder);
+			} catch (ExceptionReport e) {
+				LOGGER.error("Could not execute the GRASS GIS process.", e);
+				throw e;
 			}
+			
+			if(result.isTimedOut()){
+				LOGGER.error("The GRASS GIS process exceeded its timeout.");
+				throw new RuntimeException("The GRASS GIS process was aborted after " + result.getDurationMillis() + " ms.");
+			}
+			
+			String errors = result.getErrorOutput();
 
 			if(!errors.equals("")){
 				String baseDir = WebProcessingService.BASE_DIR + File.separator + "GRASS_LOGS";
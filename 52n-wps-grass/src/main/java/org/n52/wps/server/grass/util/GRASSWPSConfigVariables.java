@@ -34,6 +34,6 @@ package org.n52.wps.server.grass.util;
  */
 public enum GRASSWPSConfigVariables {
 	
-	Python_Path,Addon_Dir,DONT_USE_PROCESSES,Grass_Home,TMP_Dir,ModuleStarter_Home,Python_Home,PROJ_SHARE_Dir,GISRC_Dir;
+	Python_Path,Addon_Dir,DONT_USE_PROCESSES,Grass_Home,TMP_Dir,ModuleStarter_Home,Python_Home,PROJ_SHARE_Dir,GISRC_Dir,Location_Pool,Location_Pool_EPSG;
 	
 }
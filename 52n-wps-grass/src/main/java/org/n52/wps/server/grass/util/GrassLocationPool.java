@@ -0,0 +1,321 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.grass.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.commons.io.FileUtils;
+import org.geotools.gce.geotiff.GeoTiffReader;
+import org.geotools.referencing.CRS;
+import org.n52.wps.server.ExceptionReport;
+import org.n52.wps.server.grass.io.GrassIOHandler;
+import org.n52.wps.server.process.ProcessResult;
+import org.n52.wps.server.process.ProcessSupervisor;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps GRASS locations, one per coordinate reference system, so that the
+ * GrassModuleStarter does not have to create and remove a location for every
+ * execution. A leased location is handed to the GrassModuleStarter, which
+ * runs the module in a temporary mapset of it; mapsets left behind by failed
+ * executions are removed as soon as no execution uses the location.
+ * 
+ * The locations are created with <code>g.proj</code> in the GISDBASE of the
+ * configured GISRC file and are named after their CRS, so they are reused
+ * after a restart as well.
+ */
+public class GrassLocationPool {
+
+	private static Logger LOGGER = LoggerFactory.getLogger(GrassLocationPool.class);
+
+	private static final String LOCATION_PREFIX = "wps_";
+
+	private static final String PERMANENT_MAPSET = "PERMANENT";
+
+	private static final String GISDBASE_KEY = "GISDBASE:";
+
+	private final File gisdbase;
+
+	private final String gProj;
+
+	private final String[] envp;
+
+	private final ConcurrentMap<String, Location> locations = new ConcurrentHashMap<String, Location>();
+
+	/**
+	 * @param grassHome
+	 *            the GISBASE
+	 * @param gisrc
+	 *            the GISRC file, its GISDBASE holds the locations
+	 * @param envp
+	 *            the environment of GRASS modules
+	 */
+	public GrassLocationPool(String grassHome, String gisrc, String[] envp) throws IOException {
+		this.gisdbase = readGisdbase(new File(gisrc));
+		String separator = System.getProperty("file.separator");
+		String gProj = grassHome + separator + "bin" + separator + "g.proj";
+		this.gProj = System.getProperty("os.name").startsWith("Windows") ? gProj + ".exe" : gProj;
+		List<String> environment = new ArrayList<String>(Arrays.asList(envp));
+		environment.add("GISRC=" + gisrc);
+		environment.add("GISBASE=" + grassHome);
+		this.envp = environment.toArray(new String[environment.size()]);
+
+		File[] existing = gisdbase.listFiles();
+		if (existing != null) {
+			for (File directory : existing) {
+				if (directory.getName().startsWith(LOCATION_PREFIX)
+						&& new File(directory, PERMANENT_MAPSET).isDirectory()) {
+					locations.put(directory.getName(), new Location(directory));
+				}
+			}
+		}
+		LOGGER.info("GRASS location pool in {} with {} existing locations", gisdbase, locations.size());
+	}
+
+	/**
+	 * Creates the locations of the given EPSG codes in advance.
+	 */
+	public void preload(Collection<String> epsgCodes) {
+		for (String code : epsgCodes) {
+			String epsg = code.trim().toUpperCase().replace("EPSG:", "");
+			if (epsg.isEmpty()) {
+				continue;
+			}
+			getLocation("EPSG_" + epsg).create("epsg=" + epsg);
+		}
+	}
+
+	/**
+	 * Leases the location matching the CRS of the inputs, creating it if
+	 * necessary.
+	 * 
+	 * @param inputs
+	 *            the georeferenced input files
+	 * @return <code>null</code> if the inputs have no common, known CRS or the
+	 *         location could not be created, the GrassModuleStarter has to
+	 *         create a location itself then
+	 */
+	public Lease acquire(Collection<File> inputs) {
+		String key = null;
+		File georeference = null;
+		for (File input : inputs) {
+			String inputKey = getCrsKey(input);
+			if (inputKey == null || (key != null && !key.equals(inputKey))) {
+				return null;
+			}
+			key = inputKey;
+			georeference = input;
+		}
+		if (key == null) {
+			return null;
+		}
+		Location location = getLocation(key);
+		if (!location.create("georef=" + georeference.getAbsolutePath())) {
+			return null;
+		}
+		location.lock.readLock().lock();
+		return new Lease(location);
+	}
+
+	private Location getLocation(String key) {
+		String name = LOCATION_PREFIX + key;
+		Location location = locations.get(name);
+		if (location == null) {
+			location = new Location(new File(gisdbase, name));
+			Location existing = locations.putIfAbsent(name, location);
+			if (existing != null) {
+				location = existing;
+			}
+		}
+		return location;
+	}
+
+	/**
+	 * @return the EPSG code or a digest of the WKT of the CRS of a GeoTIFF or
+	 *         shapefile, <code>null</code> for other files or if the CRS is
+	 *         unknown
+	 */
+	static String getCrsKey(File file) {
+		String name = file.getName().toLowerCase();
+		try {
+			CoordinateReferenceSystem crs = null;
+			if (name.endsWith(".shp")) {
+				File prj = new File(file.getParentFile(), file.getName().substring(0, name.length() - 4) + ".prj");
+				if (prj.exists()) {
+					crs = CRS.parseWKT(FileUtils.readFileToString(prj));
+				}
+			} else if (name.endsWith(".tif") || name.endsWith(".tiff")) {
+				GeoTiffReader reader = new GeoTiffReader(file);
+				try {
+					crs = reader.getCoordinateReferenceSystem();
+				} finally {
+					reader.dispose();
+				}
+			}
+			if (crs == null) {
+				return null;
+			}
+			Integer epsg = CRS.lookupEpsgCode(crs, false);
+			if (epsg != null) {
+				return "EPSG_" + epsg;
+			}
+			return "WKT_" + digest(crs.toWKT());
+		} catch (Exception e) {
+			LOGGER.debug("Could not determine the CRS of " + file, e);
+			return null;
+		}
+	}
+
+	private static String digest(String text) throws NoSuchAlgorithmException, IOException {
+		byte[] digest = MessageDigest.getInstance("SHA-1").digest(text.getBytes("UTF-8"));
+		StringBuilder hex = new StringBuilder();
+		for (int i = 0; i < 8; i++) {
+			hex.append(Character.forDigit((digest[i] >> 4) & 0xf, 16)).append(Character.forDigit(digest[i] & 0xf, 16));
+		}
+		return hex.toString();
+	}
+
+	private static File readGisdbase(File gisrc) throws IOException {
+		BufferedReader reader = new BufferedReader(new FileReader(gisrc));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith(GISDBASE_KEY)) {
+					return new File(line.substring(GISDBASE_KEY.length()).trim());
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		throw new IOException("No GISDBASE in " + gisrc);
+	}
+
+	/**
+	 * A location used by an execution, has to be released afterwards.
+	 */
+	public static class Lease {
+
+		private final Location location;
+
+		private boolean released = false;
+
+		private Lease(Location location) {
+			this.location = location;
+		}
+
+		public File getLocation() {
+			return location.directory;
+		}
+
+		public void release() {
+			if (!released) {
+				released = true;
+				location.lock.readLock().unlock();
+				location.removeMapsets();
+			}
+		}
+	}
+
+	private class Location {
+
+		private final File directory;
+
+		// executions hold the read lock, leftover mapsets are removed under the write lock
+		private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+		private volatile boolean created;
+
+		Location(File directory) {
+			this.directory = directory;
+			this.created = new File(directory, PERMANENT_MAPSET).isDirectory();
+		}
+
+		synchronized boolean create(String projection) {
+			if (created) {
+				return true;
+			}
+			LOGGER.info("Creating GRASS location {} ({})", directory, projection);
+			ProcessBuilder builder = new ProcessBuilder(gProj, "-c", projection, "location=" + directory.getName());
+			Map<String, String> environment = builder.environment();
+			environment.clear();
+			for (String variable : envp) {
+				int separator = variable.indexOf('=');
+				environment.put(variable.substring(0, separator), variable.substring(separator + 1));
+			}
+			try {
+				ProcessResult result = ProcessSupervisor.getInstance().execute(GrassIOHandler.PROCESS_BACKEND, builder);
+				created = new File(directory, PERMANENT_MAPSET).isDirectory();
+				if (!created) {
+					LOGGER.warn("Could not create GRASS location {}: {}", directory, result.getErrorOutput());
+				}
+			} catch (ExceptionReport e) {
+				LOGGER.warn("Could not create GRASS location " + directory, e);
+			} catch (IOException e) {
+				LOGGER.warn("Could not create GRASS location " + directory, e);
+			}
+			return created;
+		}
+
+		void removeMapsets() {
+			if (!lock.writeLock().tryLock()) {
+				// still in use
+				return;
+			}
+			try {
+				File[] mapsets = directory.listFiles();
+				if (mapsets == null) {
+					return;
+				}
+				for (File mapset : mapsets) {
+					if (mapset.isDirectory() && !mapset.getName().equals(PERMANENT_MAPSET)) {
+						LOGGER.debug("Removing mapset {}", mapset);
+						FileUtils.deleteQuietly(mapset);
+					}
+				}
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+	}
+}
@@ -0,0 +1,152 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.grass.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.n52.wps.server.grass.util.GrassLocationPool.Lease;
+
+public class GrassLocationPoolTest {
+
+	private static final String WGS84_WKT = "GEOGCS[\"WGS 84\", "
+			+ "DATUM[\"World Geodetic System 1984\", SPHEROID[\"WGS 84\", 6378137.0, 298.257223563, AUTHORITY[\"EPSG\",\"7030\"]], AUTHORITY[\"EPSG\",\"6326\"]], "
+			+ "PRIMEM[\"Greenwich\", 0.0, AUTHORITY[\"EPSG\",\"8901\"]], "
+			+ "UNIT[\"degree\", 0.017453292519943295], "
+			+ "AXIS[\"Geodetic longitude\", EAST], AXIS[\"Geodetic latitude\", NORTH], "
+			+ "AUTHORITY[\"EPSG\",\"4326\"]]";
+
+	// a datum without identifiers, which has no EPSG code
+	private static final String CUSTOM_WKT = "GEOGCS[\"Custom\", "
+			+ "DATUM[\"Custom datum\", SPHEROID[\"Custom spheroid\", 6378000.0, 300.0]], "
+			+ "PRIMEM[\"Greenwich\", 0.0], "
+			+ "UNIT[\"degree\", 0.017453292519943295], "
+			+ "AXIS[\"Geodetic longitude\", EAST], AXIS[\"Geodetic latitude\", NORTH]]";
+
+	private File directory;
+
+	private File gisdbase;
+
+	private GrassLocationPool pool;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = new File(System.getProperty("java.io.tmpdir"), "wps-grass-" + UUID.randomUUID());
+		gisdbase = new File(directory, "grassdata");
+		// an existing location, so that no g.proj is run
+		assertTrue(new File(gisdbase, "wps_EPSG_4326/PERMANENT").mkdirs());
+		File gisrc = new File(directory, "gisrc");
+		FileUtils.writeStringToFile(gisrc, "GISDBASE: " + gisdbase.getAbsolutePath() + "\nLOCATION_NAME: demo\n");
+		pool = new GrassLocationPool(new File(directory, "grass").getAbsolutePath(), gisrc.getAbsolutePath(), new String[0]);
+	}
+
+	@After
+	public void tearDown() {
+		FileUtils.deleteQuietly(directory);
+	}
+
+	@Test
+	public void testCrsKeyOfEpsgCode() throws IOException {
+		assertEquals("EPSG_4326", GrassLocationPool.getCrsKey(shapefile("epsg", WGS84_WKT)));
+	}
+
+	@Test
+	public void testCrsKeyOfWktDigest() throws IOException {
+		String key = GrassLocationPool.getCrsKey(shapefile("custom", CUSTOM_WKT));
+		assertNotNull(key);
+		assertTrue(key.matches("WKT_[0-9a-f]{16}"));
+		// the digest only depends on the CRS
+		assertEquals(key, GrassLocationPool.getCrsKey(shapefile("other", CUSTOM_WKT)));
+	}
+
+	@Test
+	public void testCrsKeyOfUnknownCrs() throws IOException {
+		File shp = new File(directory, "noprj.shp");
+		FileUtils.touch(shp);
+		assertNull(GrassLocationPool.getCrsKey(shp));
+		File text = new File(directory, "input.txt");
+		FileUtils.touch(text);
+		assertNull(GrassLocationPool.getCrsKey(text));
+		assertNull(GrassLocationPool.getCrsKey(shapefile("invalid", "GEOGCS[")));
+	}
+
+	@Test
+	public void testMixedCrsIsNotLeased() throws IOException {
+		File epsg = shapefile("epsg", WGS84_WKT);
+		assertNull(pool.acquire(Arrays.asList(epsg, shapefile("custom", CUSTOM_WKT))));
+		File text = new File(directory, "input.txt");
+		FileUtils.touch(text);
+		assertNull(pool.acquire(Arrays.asList(epsg, text)));
+		assertNull(pool.acquire(Collections.<File> emptyList()));
+	}
+
+	@Test
+	public void testMapsetsAreRemovedOnceNoLeaseIsHeld() throws IOException {
+		File input = shapefile("epsg", WGS84_WKT);
+		Lease first = pool.acquire(Collections.singletonList(input));
+		Lease second = pool.acquire(Collections.singletonList(input));
+		assertNotNull(first);
+		assertNotNull(second);
+		File location = new File(gisdbase, "wps_EPSG_4326");
+		assertEquals(location, first.getLocation());
+		File mapset = new File(location, "mapset_" + UUID.randomUUID());
+		assertTrue(mapset.mkdir());
+
+		first.release();
+		// still in use by the second lease
+		assertTrue(mapset.isDirectory());
+		// released only once
+		first.release();
+		assertTrue(mapset.isDirectory());
+
+		second.release();
+		assertFalse(mapset.exists());
+		assertTrue(new File(location, "PERMANENT").isDirectory());
+	}
+
+	private File shapefile(String name, String wkt) throws IOException {
+		File shp = new File(directory, name + ".shp");
+		FileUtils.touch(shp);
+		FileUtils.writeStringToFile(new File(directory, name + ".prj"), wkt);
+		return shp;
+	}
+}
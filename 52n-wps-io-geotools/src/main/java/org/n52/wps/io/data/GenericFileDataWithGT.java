@@ -191,8 +191,8 @@ public class GenericFileDataWithGT {
 
 		try {
 			GeotiffGenerator generator = new GeotiffGenerator();
-			primaryFile = File.createTempFile("primary", ".tif");//changed to .tif
-			FileOutputStream outputStream = new FileOutputStream(primaryFile);
+			primaryFile = org.n52.wps.io.IOUtils.createTempFile("primary", ".tif");//changed to .tif
+			OutputStream outputStream = org.n52.wps.io.IOUtils.openOutputStream(primaryFile);
 
 			InputStream is = generator.generateStream(new GTRasterDataBinding(payload), mimeType, null);
 			IOUtils.copy(is,outputStream);
@@ -212,8 +212,7 @@ public class GenericFileDataWithGT {
 		Transaction transaction = new DefaultTransaction("create");
 		FeatureStore<SimpleFeatureType, SimpleFeature> store = null;
 		String uuid = UUID.randomUUID().toString();
-		File shp = File.createTempFile("Shape_" + uuid, ".shp");
-		shp.deleteOnExit();
+		File shp = org.n52.wps.io.IOUtils.createTempFile("Shape_" + uuid, ".shp");
 		while (iterator.hasNext()) {
 			SimpleFeature sf = (SimpleFeature) iterator.next();
 			// create SimpleFeatureType
@@ -476,8 +475,8 @@ public class GenericFileDataWithGT {
 			if(fileExtension.equals("shp")){
 				extension = "zip";
 			}
-			primaryFile = File.createTempFile(UUID.randomUUID().toString(), "."+extension);
-			OutputStream out = new FileOutputStream(primaryFile);
+			primaryFile = org.n52.wps.io.IOUtils.createTempFile(UUID.randomUUID().toString(), "."+extension);
+			OutputStream out = org.n52.wps.io.IOUtils.openOutputStream(primaryFile);
 			byte buf[]=new byte[1024];
 			int len;
 			while((len=dataStream.read(buf))>0){
@@ -494,16 +493,14 @@ public class GenericFileDataWithGT {
 		}
 		if(unzipIfPossible && extension.contains("zip")){
 			try{
-			File tempFile1 = File.createTempFile(UUID.randomUUID().toString(),"");
-			File dir = new File(tempFile1.getParentFile()+"/"+UUID.randomUUID().toString());
-			dir.mkdir();
+			File dir = org.n52.wps.io.IOUtils.createTempDirectory(UUID.randomUUID().toString());
 			FileInputStream fis = new FileInputStream(primaryFile);
 			ZipInputStream zis = new ZipInputStream(fis);
 			ZipEntry entry;
 	        while((entry = zis.getNextEntry()) != null) {
 	            LOGGER.debug("Extracting: " +entry);
 	            // write the files to the disk
-	            FileOutputStream fos = new FileOutputStream(dir.getAbsoluteFile()+"/"+entry.getName());
+	            OutputStream fos = org.n52.wps.io.IOUtils.openOutputStream(new File(dir, entry.getName()));
 
 	            IOUtils.copy(zis, fos);
 
@@ -0,0 +1,388 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * As an exception to the terms of the GPL, you may copy, modify,
+ * propagate, and distribute a work formed by combining 52°North WPS
+ * GeoTools Modules with the Eclipse Libraries, or a work derivative of
+ * such a combination, even if such copying, modification, propagation, or
+ * distribution would otherwise violate the terms of the GPL. Nothing in
+ * this exception exempts you from complying with the GPL in all respects
+ * for all of the code used other than the Eclipse Libraries. You may
+ * include this exception and its grant of permissions when you distribute
+ * 52°North WPS GeoTools Modules. Inclusion of this notice with such a
+ * distribution constitutes a grant of such permissions. If you do not wish
+ * to grant these permissions, remove this paragraph from your
+ * distribution. "52°North WPS GeoTools Modules" means the 52°North WPS
+ * modules using GeoTools functionality - software licensed under version 2
+ * or any later version of the GPL, or a work based on such software and
+ * licensed under the GPL. "Eclipse Libraries" means Eclipse Modeling
+ * Framework Project and XML Schema Definition software distributed by the
+ * Eclipse Foundation and licensed under the Eclipse Public License Version
+ * 1.0 ("EPL"), or a work based on such software and licensed under the EPL.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.io.data;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.media.jai.ImageLayout;
+import javax.media.jai.JAI;
+import javax.media.jai.PlanarImage;
+import javax.media.jai.TileCache;
+import javax.media.jai.TileScheduler;
+
+import org.geotools.coverage.grid.io.AbstractGridFormat;
+import org.geotools.coverage.grid.io.imageio.GeoToolsWriteParams;
+import org.geotools.factory.Hints;
+import org.geotools.gce.geotiff.GeoTiffWriteParams;
+import org.n52.wps.PropertyDocument.Property;
+import org.n52.wps.commons.PropertyUtil;
+import org.n52.wps.commons.WPSConfig;
+import org.n52.wps.commons.context.ExecutionContext;
+import org.n52.wps.commons.context.ExecutionContextFactory;
+import org.opengis.parameter.GeneralParameterValue;
+import org.opengis.parameter.ParameterValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tiling of the rasters read, processed and written by the raster parsers,
+ * generators and algorithms, so that large rasters are never held on heap as
+ * a whole: GeoTIFFs are read tile by tile on demand, operations are computed
+ * per tile and the tiles are written one after the other.
+ * 
+ * Each execution computes its tiles in its own {@link TileCache}, so that
+ * concurrent executions do not evict each other's tiles. The cache is flushed
+ * when the {@link ExecutionContext} of the execution is disposed; calls
+ * without a context of their own share the cache of the default context. The
+ * capacity of the caches is reduced evenly while their total would exceed the
+ * configured limit. The tiles are computed on the JAI
+ * {@link TileScheduler}, the next row of tiles of an image wrapped by
+ * {@link #prefetchRows(RenderedImage)} in parallel while the current row is
+ * consumed.
+ * 
+ * The tiling is configured using the following <code>Server</code>
+ * properties of the wps_config.xml (they can be overridden by system
+ * properties prefixed with <code>org.n52.wps.server.</code>):
+ * <ul>
+ * <li><code>raster.tileSize</code>: width and height of the tiles read,
+ * computed and written (pixels, a multiple of 16)</li>
+ * <li><code>raster.tileCache.memoryCapacity</code>: bytes of the tile cache
+ * of an execution</li>
+ * <li><code>raster.tileCache.totalMemoryCapacity</code>: bytes of the tile
+ * caches of all executions</li>
+ * <li><code>raster.parallelism</code>: threads of the JAI tile scheduler</li>
+ * <li><code>raster.compression</code>: compression of written GeoTIFFs, e.g.
+ * <code>LZW</code> or <code>Deflate</code>, <code>none</code> writes them
+ * uncompressed</li>
+ * </ul>
+ */
+public class RasterTiling {
+
+	private static Logger LOGGER = LoggerFactory.getLogger(RasterTiling.class);
+
+	private final static String KEY_SERVER_ROOT = "org.n52.wps.server";
+	private final static String KEY_TILE_SIZE = "raster.tileSize";
+	private final static String KEY_TILE_CACHE_CAPACITY = "raster.tileCache.memoryCapacity";
+	private final static String KEY_TILE_CACHE_TOTAL_CAPACITY = "raster.tileCache.totalMemoryCapacity";
+	private final static String KEY_PARALLELISM = "raster.parallelism";
+	private final static String KEY_COMPRESSION = "raster.compression";
+
+	private final static long DEFAULT_TILE_SIZE = 512;
+	private final static long DEFAULT_TILE_CACHE_CAPACITY = 64 * 1024 * 1024;
+	private final static long DEFAULT_TILE_CACHE_TOTAL_CAPACITY = 256 * 1024 * 1024;
+	private final static String DEFAULT_COMPRESSION = "LZW";
+
+	private static final String NO_COMPRESSION = "none";
+
+	// the tile caches of the running executions, removed when their context is
+	// disposed (weak keys for contexts which are never disposed)
+	private static final Map<ExecutionContext, TileCache> TILE_CACHES = new WeakHashMap<ExecutionContext, TileCache>();
+
+	private static final ExecutionContext.DisposeListener RELEASE_TILE_CACHE = new ExecutionContext.DisposeListener() {
+		public void disposed(ExecutionContext context) {
+			releaseTileCache(context);
+		}
+	};
+
+	private static RasterTiling instance;
+
+	/**
+	 * @return the tiling of the current configuration
+	 */
+	public synchronized static RasterTiling getInstance() {
+		if (instance == null) {
+			instance = new RasterTiling(WPSConfig.getInstance().getWPSConfig().getServer().getPropertyArray());
+			instance.configureTileScheduler();
+			WPSConfig.getInstance().addPropertyChangeListener(WPSConfig.WPSCONFIG_PROPERTY_EVENT_NAME,
+					new PropertyChangeListener() {
+						public void propertyChange(PropertyChangeEvent event) {
+							LOGGER.info("Received Property Change Event: {}", event.getPropertyName());
+							reInitialize();
+						}
+					});
+		}
+		return instance;
+	}
+
+	private synchronized static void reInitialize() {
+		instance = new RasterTiling(WPSConfig.getInstance().getWPSConfig().getServer().getPropertyArray());
+		instance.configureTileScheduler();
+		instance.balanceTileCaches();
+	}
+
+	private final int tileSize;
+
+	private final long tileCacheCapacity;
+
+	private final long tileCacheTotalCapacity;
+
+	private final int parallelism;
+
+	private final String compression;
+
+	protected RasterTiling(Property[] properties) {
+		PropertyUtil propertyUtil = new PropertyUtil(properties, KEY_SERVER_ROOT);
+		// TIFF tiles have to be a multiple of 16
+		long size = propertyUtil.extractLong(KEY_TILE_SIZE, DEFAULT_TILE_SIZE);
+		tileSize = (int) Math.max(16, Math.min(8192, size / 16 * 16));
+		tileCacheCapacity = Math.max(0, propertyUtil.extractLong(KEY_TILE_CACHE_CAPACITY, DEFAULT_TILE_CACHE_CAPACITY));
+		tileCacheTotalCapacity = Math.max(0, propertyUtil.extractLong(KEY_TILE_CACHE_TOTAL_CAPACITY,
+				DEFAULT_TILE_CACHE_TOTAL_CAPACITY));
+		parallelism = (int) Math.max(1, propertyUtil.extractLong(KEY_PARALLELISM, Runtime.getRuntime().availableProcessors()));
+		compression = propertyUtil.extractString(KEY_COMPRESSION, DEFAULT_COMPRESSION);
+	}
+
+	public int getTileSize() {
+		return tileSize;
+	}
+
+	public long getTileCacheCapacity() {
+		return tileCacheCapacity;
+	}
+
+	public long getTileCacheTotalCapacity() {
+		return tileCacheTotalCapacity;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	public String getCompression() {
+		return compression;
+	}
+
+	/**
+	 * @return the tile cache of the current execution
+	 */
+	public TileCache getTileCache() {
+		ExecutionContext context = ExecutionContextFactory.getContext();
+		TileCache tileCache;
+		synchronized (TILE_CACHES) {
+			tileCache = TILE_CACHES.get(context);
+			if (tileCache != null) {
+				return tileCache;
+			}
+			tileCache = JAI.createTileCache(tileCacheCapacity);
+			TILE_CACHES.put(context, tileCache);
+			balanceTileCaches();
+			LOGGER.debug("Created a tile cache of {} bytes for process {}", tileCache.getMemoryCapacity(),
+					context.getProcessIdentifier());
+		}
+		context.addDisposeListener(RELEASE_TILE_CACHE);
+		return tileCache;
+	}
+
+	private static void releaseTileCache(ExecutionContext context) {
+		TileCache tileCache;
+		synchronized (TILE_CACHES) {
+			tileCache = TILE_CACHES.remove(context);
+		}
+		if (tileCache != null) {
+			tileCache.flush();
+			// the remaining executions may use the capacity released
+			getInstance().balanceTileCaches();
+		}
+	}
+
+	/**
+	 * Gives each execution the configured capacity, reduced evenly while the
+	 * caches of all executions would exceed the total capacity.
+	 */
+	private void balanceTileCaches() {
+		synchronized (TILE_CACHES) {
+			if (TILE_CACHES.isEmpty()) {
+				return;
+			}
+			long capacity = Math.min(tileCacheCapacity, tileCacheTotalCapacity / TILE_CACHES.size());
+			for (TileCache tileCache : TILE_CACHES.values()) {
+				if (tileCache.getMemoryCapacity() != capacity) {
+					tileCache.setMemoryCapacity(capacity);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the hints of a reader, caching the tiles in the cache of the
+	 *         current execution
+	 */
+	public Hints getReaderHints() {
+		Hints hints = new Hints(Hints.FORCE_LONGITUDE_FIRST_AXIS_ORDER, Boolean.TRUE);
+		hints.put(JAI.KEY_TILE_CACHE, getTileCache());
+		return hints;
+	}
+
+	/**
+	 * @return the hints of a JAI operation, computing tiles of the configured
+	 *         size in the cache of the current execution
+	 */
+	public Hints getOperationHints() {
+		ImageLayout layout = new ImageLayout();
+		layout.setTileWidth(tileSize);
+		layout.setTileHeight(tileSize);
+		Hints hints = new Hints(JAI.KEY_IMAGE_LAYOUT, layout);
+		hints.put(JAI.KEY_TILE_CACHE, getTileCache());
+		return hints;
+	}
+
+	/**
+	 * @return the parameters of a GeoTIFF reader reading the tiles on demand
+	 *         instead of the whole image
+	 */
+	public GeneralParameterValue[] getReadParameters() {
+		ParameterValue<Boolean> useImageRead = AbstractGridFormat.USE_JAI_IMAGEREAD.createValue();
+		useImageRead.setValue(Boolean.TRUE);
+		ParameterValue<String> tileSizeParameter = AbstractGridFormat.SUGGESTED_TILE_SIZE.createValue();
+		tileSizeParameter.setValue(tileSize + "," + tileSize);
+		return new GeneralParameterValue[] { useImageRead, tileSizeParameter };
+	}
+
+	/**
+	 * @return the parameters of a GeoTIFF writer writing tiled and compressed
+	 *         images
+	 */
+	public GeoTiffWriteParams getWriteParams() {
+		GeoTiffWriteParams writeParams = new GeoTiffWriteParams();
+		if (!NO_COMPRESSION.equalsIgnoreCase(compression)) {
+			writeParams.setCompressionMode(GeoTiffWriteParams.MODE_EXPLICIT);
+			writeParams.setCompressionType(compression);
+		}
+		writeParams.setTilingMode(GeoToolsWriteParams.MODE_EXPLICIT);
+		writeParams.setTiling(tileSize, tileSize);
+		return writeParams;
+	}
+
+	private void configureTileScheduler() {
+		TileScheduler scheduler = JAI.getDefaultInstance().getTileScheduler();
+		if (scheduler.getParallelism() != parallelism) {
+			scheduler.setParallelism(parallelism);
+			scheduler.setPrefetchParallelism(parallelism);
+			LOGGER.info("Computing tiles with {} threads", parallelism);
+		}
+	}
+
+	/**
+	 * Wraps an image, so that reading a row of its tiles computes the next row
+	 * in parallel on the JAI tile scheduler.
+	 * 
+	 * @return the wrapped image or the image itself if it is already wrapped
+	 *         or does not compute its tiles
+	 */
+	public static RenderedImage prefetchRows(RenderedImage image) {
+		if (image instanceof TileRowPrefetcher || !(image instanceof PlanarImage)) {
+			return image;
+		}
+		return new TileRowPrefetcher((PlanarImage) image);
+	}
+
+	private static class TileRowPrefetcher extends PlanarImage {
+
+		private final PlanarImage source;
+
+		// the last row of tiles queued for computation
+		private final AtomicInteger prefetchedRow;
+
+		TileRowPrefetcher(PlanarImage source) {
+			super(new ImageLayout(source), null, null);
+			this.source = source;
+			this.prefetchedRow = new AtomicInteger(source.getMinTileY() - 1);
+		}
+
+		@Override
+		public Raster getTile(int tileX, int tileY) {
+			prefetch(tileY);
+			return source.getTile(tileX, tileY);
+		}
+
+		@Override
+		public Raster getData(Rectangle rect) {
+			if (rect != null) {
+				prefetch(source.YToTileY(rect.y));
+			}
+			return source.getData(rect);
+		}
+
+		@Override
+		public Object getProperty(String name) {
+			return source.getProperty(name);
+		}
+
+		@Override
+		public String[] getPropertyNames() {
+			return source.getPropertyNames();
+		}
+
+		private void prefetch(int tileY) {
+			// the row read and the one after it
+			int last = Math.min(tileY + 1, source.getMaxTileY());
+			int prefetched = prefetchedRow.get();
+			while (prefetched < last) {
+				if (prefetchedRow.compareAndSet(prefetched, last)) {
+					for (int row = Math.max(prefetched + 1, tileY); row <= last; row++) {
+						Point[] tiles = new Point[source.getNumXTiles()];
+						for (int i = 0; i < tiles.length; i++) {
+							tiles[i] = new Point(source.getMinTileX() + i, row);
+						}
+						source.prefetchTiles(tiles);
+					}
+					return;
+				}
+				prefetched = prefetchedRow.get();
+			}
+		}
+	}
+}
@@ -0,0 +1,303 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * As an exception to the terms of the GPL, you may copy, modify,
+ * propagate, and distribute a work formed by combining 52°North WPS
+ * GeoTools Modules with the Eclipse Libraries, or a work derivative of
+ * such a combination, even if such copying, modification, propagation, or
+ * distribution would otherwise violate the terms of the GPL. Nothing in
+ * this exception exempts you from complying with the GPL in all respects
+ * for all of the code used other than the Eclipse Libraries. You may
+ * include this exception and its grant of permissions when you distribute
+ * 52°North WPS GeoTools Modules. Inclusion of this notice with such a
+ * distribution constitutes a grant of such permissions. If you do not wish
+ * to grant these permissions, remove this paragraph from your
+ * distribution. "52°North WPS GeoTools Modules" means the 52°North WPS
+ * modules using GeoTools functionality - software licensed under version 2
+ * or any later version of the GPL, or a work based on such software and
+ * licensed under the GPL. "Eclipse Libraries" means Eclipse Modeling
+ * Framework Project and XML Schema Definition software distributed by the
+ * Eclipse Foundation and licensed under the Eclipse Public License Version
+ * 1.0 ("EPL"), or a work based on such software and licensed under the EPL.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.io.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.geotools.data.FeatureWriter;
+import org.geotools.data.Transaction;
+import org.geotools.data.shapefile.ShapefileDataStore;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.feature.FeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.n52.wps.PropertyDocument.Property;
+import org.n52.wps.commons.PropertyUtil;
+import org.n52.wps.commons.WPSConfig;
+import org.n52.wps.io.IOUtils;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.MapMaker;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.MultiLineString;
+import com.vividsolutions.jts.geom.MultiPoint;
+import com.vividsolutions.jts.geom.MultiPolygon;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * Spills features to a shapefile in the scratch space of the execution, so
+ * that large vector inputs do not have to be held in memory. The features are
+ * written one by one by {@link #add(SimpleFeature)}, {@link #close()} returns
+ * a collection reading them from disk on every iteration.
+ * 
+ * The shapefile restricts the spilled features: they share the geometry type
+ * of the first feature, attribute names are cut to 10 characters, attributes
+ * other than strings, numbers, booleans and dates are spilled as strings,
+ * further geometry attributes and the feature IDs are dropped.
+ * 
+ * Inputs are streamed if they are larger than the <code>Server</code>
+ * property <code>vector.streaming.threshold</code> of the wps_config.xml
+ * (bytes, default 64 MiB, a negative value disables streaming; it can be
+ * overridden by a system property prefixed with
+ * <code>org.n52.wps.server.</code>).
+ */
+public class SpilledFeatureStore {
+
+	private static Logger LOGGER = LoggerFactory.getLogger(SpilledFeatureStore.class);
+
+	private final static String KEY_SERVER_ROOT = "org.n52.wps.server";
+	private final static String KEY_STREAMING_THRESHOLD = "vector.streaming.threshold";
+
+	private final static long DEFAULT_STREAMING_THRESHOLD = 64 * 1024 * 1024;
+
+	private static final int MAX_ATTRIBUTE_NAME_LENGTH = 10;
+
+	private static final String GEOMETRY_ATTRIBUTE = "the_geom";
+
+	// the collections returned by close(), weak identity keys
+	private static final Map<FeatureCollection<?, ?>, Boolean> SPILLED_COLLECTIONS = new MapMaker().weakKeys()
+			.makeMap();
+
+	private final File directory;
+
+	private ShapefileDataStore dataStore;
+
+	private FeatureWriter<SimpleFeatureType, SimpleFeature> writer;
+
+	// the source attributes spilled, in the order of the spilled attributes after the geometry
+	private final List<String> sourceAttributes = new ArrayList<String>();
+
+	private long count = 0;
+
+	public SpilledFeatureStore() throws IOException {
+		directory = IOUtils.createTempDirectory("spill");
+	}
+
+	/**
+	 * @param inputBytes
+	 *            the size of the encoded input
+	 * @return <code>true</code> if the input is to be streamed
+	 */
+	public static boolean isStreamed(long inputBytes) {
+		Property[] properties = WPSConfig.getInstance().getWPSConfig().getServer().getPropertyArray();
+		long threshold = new PropertyUtil(properties, KEY_SERVER_ROOT).extractLong(KEY_STREAMING_THRESHOLD,
+				DEFAULT_STREAMING_THRESHOLD);
+		return threshold >= 0 && inputBytes > threshold;
+	}
+
+	/**
+	 * @return <code>true</code> if the features of the collection are read
+	 *         from a spill, i.e. it was returned by {@link #close()}
+	 */
+	public static boolean isSpilled(FeatureCollection<?, ?> collection) {
+		return collection != null && SPILLED_COLLECTIONS.containsKey(collection);
+	}
+
+	/**
+	 * Writes a feature to disk. The schema is derived from the first feature.
+	 * 
+	 * @throws IOException
+	 *             if the feature cannot be written, e.g. as it has another
+	 *             geometry type than the first feature
+	 */
+	public void add(SimpleFeature feature) throws IOException {
+		Geometry geometry = getGeometry(feature);
+		if (writer == null) {
+			createSchema(feature, geometry);
+		}
+		SimpleFeature spilled = writer.next();
+		spilled.setAttribute(GEOMETRY_ATTRIBUTE, geometry);
+		for (int i = 0; i < sourceAttributes.size(); i++) {
+			Object value = feature.getAttribute(sourceAttributes.get(i));
+			Class<?> binding = spilled.getFeatureType().getDescriptor(i + 1).getType().getBinding();
+			if (value != null && binding == String.class && !(value instanceof String)) {
+				value = value.toString();
+			}
+			spilled.setAttribute(i + 1, value);
+		}
+		writer.write();
+		count++;
+	}
+
+	/**
+	 * Finishes writing.
+	 * 
+	 * @return the spilled features, read from disk on each iteration or
+	 *         <code>null</code> if no feature was added
+	 */
+	public SimpleFeatureCollection close() throws IOException {
+		if (writer == null) {
+			return null;
+		}
+		writer.close();
+		LOGGER.debug("Spilled {} features to {}", count, getShpFile());
+		SimpleFeatureCollection spilled = dataStore.getFeatureSource(dataStore.getTypeNames()[0]).getFeatures();
+		SPILLED_COLLECTIONS.put(spilled, Boolean.TRUE);
+		return spilled;
+	}
+
+	/**
+	 * @return the shapefile holding the spilled features
+	 */
+	public File getShpFile() {
+		return new File(directory, "spill.shp");
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Releases the store and deletes the spilled features. Otherwise they are
+	 * deleted with the scratch space of the execution.
+	 */
+	public void dispose() {
+		if (writer != null) {
+			try {
+				writer.close();
+			} catch (IOException e) {
+				LOGGER.debug("Could not close the spill writer", e);
+			}
+		}
+		if (dataStore != null) {
+			dataStore.dispose();
+		}
+		FileUtils.deleteQuietly(directory);
+	}
+
+	private void createSchema(SimpleFeature feature, Geometry geometry) throws IOException {
+		SimpleFeatureType sourceType = feature.getFeatureType();
+		SimpleFeatureTypeBuilder builder = new SimpleFeatureTypeBuilder();
+		builder.setName("spill");
+		builder.setCRS(sourceType.getCoordinateReferenceSystem());
+		builder.add(GEOMETRY_ATTRIBUTE, getShapefileGeometryType(geometry));
+		Set<String> names = new HashSet<String>();
+		names.add(GEOMETRY_ATTRIBUTE);
+		for (AttributeDescriptor descriptor : sourceType.getAttributeDescriptors()) {
+			Class<?> binding = descriptor.getType().getBinding();
+			if (Geometry.class.isAssignableFrom(binding)) {
+				continue;
+			}
+			builder.add(getUniqueName(descriptor.getLocalName(), names), getShapefileAttributeType(binding));
+			sourceAttributes.add(descriptor.getLocalName());
+		}
+		dataStore = new ShapefileDataStore(getShpFile().toURI().toURL());
+		dataStore.createSchema(builder.buildFeatureType());
+		if (sourceType.getCoordinateReferenceSystem() != null) {
+			dataStore.forceSchemaCRS(sourceType.getCoordinateReferenceSystem());
+		}
+		writer = dataStore.getFeatureWriterAppend(dataStore.getTypeNames()[0], Transaction.AUTO_COMMIT);
+	}
+
+	/**
+	 * @return the default geometry or, as the GML parsers do, the first
+	 *         geometry valued attribute
+	 */
+	private static Geometry getGeometry(SimpleFeature feature) {
+		if (feature.getDefaultGeometry() instanceof Geometry) {
+			return (Geometry) feature.getDefaultGeometry();
+		}
+		for (Object value : feature.getAttributes()) {
+			if (value instanceof Geometry) {
+				return (Geometry) value;
+			}
+		}
+		return null;
+	}
+
+	private static Class<?> getShapefileGeometryType(Geometry geometry) throws IOException {
+		if (geometry instanceof Point || geometry instanceof MultiPoint) {
+			return geometry.getClass();
+		}
+		if (geometry instanceof LineString || geometry instanceof MultiLineString) {
+			return MultiLineString.class;
+		}
+		if (geometry instanceof Polygon || geometry instanceof MultiPolygon) {
+			return MultiPolygon.class;
+		}
+		throw new IOException("Cannot spill features with geometries of type "
+				+ (geometry == null ? null : geometry.getGeometryType()));
+	}
+
+	private static Class<?> getShapefileAttributeType(Class<?> binding) {
+		if (binding == String.class || binding == Integer.class || binding == Long.class
+				|| binding == Short.class || binding == Byte.class || binding == Double.class
+				|| binding == Float.class || binding == BigDecimal.class || binding == BigInteger.class
+				|| binding == Boolean.class || Date.class.isAssignableFrom(binding)) {
+			return binding;
+		}
+		return String.class;
+	}
+
+	private static String getUniqueName(String name, Set<String> names) {
+		String unique = name.length() > MAX_ATTRIBUTE_NAME_LENGTH ? name.substring(0, MAX_ATTRIBUTE_NAME_LENGTH)
+				: name;
+		for (int i = 1; names.contains(unique.toLowerCase()); i++) {
+			String suffix = Integer.toString(i);
+			unique = name.substring(0, Math.min(name.length(), MAX_ATTRIBUTE_NAME_LENGTH - suffix.length()))
+					+ suffix;
+		}
+		names.add(unique.toLowerCase());
+		return unique;
+	}
+}
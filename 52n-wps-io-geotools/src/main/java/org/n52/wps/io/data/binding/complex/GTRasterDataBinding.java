@@ -50,23 +50,49 @@ package org.n52.wps.io.data.binding.complex;
 import java.io.IOException;
 
 import org.geotools.coverage.grid.GridCoverage2D;
-import org.n52.wps.io.data.IComplexData;
+import org.n52.wps.io.data.ICopyableData;
+import org.n52.wps.io.data.IScratchSpaceData;
 
-public class GTRasterDataBinding implements IComplexData {
+public class GTRasterDataBinding implements IScratchSpaceData, ICopyableData {
 	protected GridCoverage2D payload; 
 	
+	private final boolean backedByScratchSpace;
+	
 	public GTRasterDataBinding(GridCoverage2D coverage){
+		this(coverage, false);
+	}
+	
+	/**
+	 * @param backedByScratchSpace
+	 *            <code>true</code> if the tiles of the coverage are read on
+	 *            demand from a file in the scratch space of the execution
+	 */
+	public GTRasterDataBinding(GridCoverage2D coverage, boolean backedByScratchSpace){
 		this.payload = coverage;
+		this.backedByScratchSpace = backedByScratchSpace;
 	}
 	
 	public GridCoverage2D getPayload() {
 		return payload;
 	}
 
+	public boolean isBackedByScratchSpace() {
+		return backedByScratchSpace;
+	}
+
 	public Class getSupportedClass() {
 		return GridCoverage2D.class;
 	}
 
+	/**
+	 * Coverages are not changed in place, algorithms create new ones. The
+	 * copy shares the coverage but is a binding of its own, so disposing it
+	 * does not affect this binding.
+	 */
+	public GTRasterDataBinding copy() {
+		return new GTRasterDataBinding(payload, backedByScratchSpace);
+	}
+
 	private synchronized void writeObject(java.io.ObjectOutputStream oos) throws IOException
 	{
 		throw new RuntimeException("Serialization of 'GTRasterDataBinding' data type not implemented yet.");
@@ -52,21 +52,62 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
 
+import org.geotools.data.collection.ListFeatureCollection;
 import org.geotools.feature.FeatureCollection;
+import org.geotools.feature.FeatureIterator;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
 
 import org.n52.wps.io.data.GenericFileDataWithGT;
-import org.n52.wps.io.data.IComplexData;
+import org.n52.wps.io.data.ICopyableData;
+import org.n52.wps.io.data.IScratchSpaceData;
+import org.n52.wps.io.data.SpilledFeatureStore;
 import org.n52.wps.io.datahandler.generator.SimpleGMLGenerator;
 import org.n52.wps.io.datahandler.parser.SimpleGMLParser;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
 
-public class GTVectorDataBinding implements IComplexData{
+/**
+ * Binds a feature collection. A binding created with a
+ * {@link SpilledFeatureStore} is streaming: its features are kept on disk and
+ * read again on each iteration of the collection, so algorithms have to
+ * iterate it instead of holding all features, and changes of the iterated
+ * features are not kept. The spilled features are deleted with the scratch
+ * space of the execution, as the collection may also be returned as an output.
+ */
+public class GTVectorDataBinding implements IScratchSpaceData, ICopyableData{
 	
 	protected transient FeatureCollection<?, ?> featureCollection;	
 	
+	private transient SpilledFeatureStore spill;
+	
 	public GTVectorDataBinding(FeatureCollection<?, ?> payload) {
 		this.featureCollection = payload;
 	}
+	
+	/**
+	 * Creates a streaming binding.
+	 * 
+	 * @param payload
+	 *            the features read from the spill
+	 */
+	public GTVectorDataBinding(FeatureCollection<?, ?> payload, SpilledFeatureStore spill) {
+		this.featureCollection = payload;
+		this.spill = spill;
+	}
+	
+	/**
+	 * @return <code>true</code> if the features are read from disk
+	 */
+	public boolean isStreaming() {
+		return spill != null;
+	}
+
+	public boolean isBackedByScratchSpace() {
+		return isStreaming();
+	}
 
 	public Class<FeatureCollection> getSupportedClass() {
 		return FeatureCollection.class;
@@ -76,7 +117,36 @@ public class GTVectorDataBinding implements IComplexData{
 			return featureCollection;
 	}
 	
+	/**
+	 * Copies the features of an in-memory collection including their
+	 * geometries, algorithms may change them in place. A streaming binding
+	 * shares its spill, its features are read from disk on each iteration
+	 * anyway.
+	 */
+	public GTVectorDataBinding copy() {
+		if (isStreaming()) {
+			return new GTVectorDataBinding(featureCollection, spill);
+		}
+		if (!(featureCollection.getSchema() instanceof SimpleFeatureType)) {
+			throw new UnsupportedOperationException("Only collections of simple features can be copied");
+		}
+		List<SimpleFeature> features = new ArrayList<SimpleFeature>();
+		FeatureIterator<?> iterator = featureCollection.features();
+		try {
+			while (iterator.hasNext()) {
+				features.add(SimpleFeatureBuilder.deep((SimpleFeature) iterator.next()));
+			}
+		} finally {
+			iterator.close();
+		}
+		return new GTVectorDataBinding(new ListFeatureCollection((SimpleFeatureType) featureCollection.getSchema(),
+				features));
+	}
+	
 	public File getPayloadAsShpFile(){
+		if (spill != null) {
+			return spill.getShpFile();
+		}
 		try {
 			return GenericFileDataWithGT.getShpFile(featureCollection);
 		} catch (IOException e) {
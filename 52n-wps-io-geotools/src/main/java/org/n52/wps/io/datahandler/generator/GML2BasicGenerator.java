@@ -171,8 +171,7 @@ public class GML2BasicGenerator extends AbstractGenerator {
 	@Override
 	public InputStream generateStream(IData data, String mimeType, String schema) throws IOException {
 		
-		File tempFile = File.createTempFile("gml2", "xml");
-		finalizeFiles.add(tempFile);
+		File tempFile = createTempFile("gml2", "xml");
 		FileWriter fw = new FileWriter(tempFile);
 		write(data, fw);
 		fw.close();
@@ -49,22 +49,28 @@ package org.n52.wps.io.datahandler.generator;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.UUID;
 
 import javax.xml.namespace.QName;
 
+import org.apache.commons.io.output.CloseShieldOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.geotools.data.collection.ListFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.feature.FeatureCollection;
 import org.geotools.feature.FeatureIterator;
+import org.geotools.feature.collection.AbstractFeatureCollection;
+import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.gml3.ApplicationSchemaConfiguration;
 import org.geotools.gml3.GMLConfiguration;
 import org.geotools.xml.Configuration;
@@ -90,7 +96,9 @@ public class GML3BasicGenerator extends AbstractGenerator {
 	public void writeToStream(IData coll, OutputStream os) {
 		FeatureCollection<?,?> fc = ((GTVectorDataBinding)coll).getPayload();
 		
-		FeatureCollection<?,?> correctFeatureCollection = createCorrectFeatureCollection(fc);
+		// streamed features are retyped while they are encoded instead of being collected in memory
+		FeatureCollection<?,?> correctFeatureCollection = ((GTVectorDataBinding)coll).isStreaming()
+				? createStreamingFeatureCollection(fc) : createCorrectFeatureCollection(fc);
 		//get the namespace from the features to pass into the encoder        
         FeatureType schema = correctFeatureCollection.getSchema();
         String namespace = null;
@@ -136,8 +144,8 @@ public class GML3BasicGenerator extends AbstractGenerator {
 	@Override
 	public InputStream generateStream(final IData data, String mimeType, String schema) throws IOException {
 		String uuid = UUID.randomUUID().toString();
-		File file = File.createTempFile("gml3"+uuid, ".xml");
-		FileOutputStream outputStream = new FileOutputStream(file);
+		File file = createTempFile("gml3"+uuid, ".xml");
+		OutputStream outputStream = openOutputStream(file);
 		this.writeToStream(data, outputStream);
 		outputStream.flush();
 		outputStream.close();
@@ -150,6 +158,11 @@ public class GML3BasicGenerator extends AbstractGenerator {
 		
 	}
 
+	@Override
+	public void writeTo(IData data, OutputStream outputStream, String mimeType, String schema) throws IOException {
+		this.writeToStream(data, new CloseShieldOutputStream(outputStream));
+	}
+
 	private SimpleFeatureCollection createCorrectFeatureCollection(FeatureCollection<?,?> fc) {
 		
 		List<SimpleFeature> simpleFeatureList = new ArrayList<SimpleFeature>();
@@ -177,4 +190,101 @@ public class GML3BasicGenerator extends AbstractGenerator {
 		
 	}
 
+	private SimpleFeatureCollection createStreamingFeatureCollection(FeatureCollection<?,?> fc) {
+		SimpleFeatureType featureType = null;
+		FeatureIterator<?> iterator = fc.features();
+		try {
+			if(iterator.hasNext()){
+				SimpleFeature feature = (SimpleFeature) iterator.next();
+				featureType = GTHelper.createFeatureType(feature.getProperties(), (Geometry)feature.getDefaultGeometry(), UUID.randomUUID().toString(), feature.getFeatureType().getCoordinateReferenceSystem());
+				QName qname = GTHelper.createGML3SchemaForFeatureType(featureType);
+				SchemaRepository.registerSchemaLocation(qname.getNamespaceURI(), qname.getLocalPart());
+			}
+		} finally {
+			iterator.close();
+		}
+		if(featureType == null){
+			return createCorrectFeatureCollection(fc);
+		}
+		return new RetypingFeatureCollection(fc, featureType);
+	}
+
+	/**
+	 * Creates the features of the type registered for the encoding while the
+	 * collection is iterated, like {@link #createCorrectFeatureCollection}.
+	 */
+	private static class RetypingFeatureCollection extends AbstractFeatureCollection {
+
+		private final FeatureCollection<?,?> source;
+
+		private final SimpleFeatureType featureType;
+
+		private final Map<Iterator<SimpleFeature>, FeatureIterator<?>> openIterators = new IdentityHashMap<Iterator<SimpleFeature>, FeatureIterator<?>>();
+
+		RetypingFeatureCollection(FeatureCollection<?,?> source, SimpleFeatureType featureType) {
+			super(featureType);
+			this.source = source;
+			this.featureType = featureType;
+		}
+
+		@Override
+		protected Iterator<SimpleFeature> openIterator() {
+			final FeatureIterator<?> features = source.features();
+			Iterator<SimpleFeature> iterator = new Iterator<SimpleFeature>() {
+
+				private int i = 0;
+
+				private SimpleFeature next;
+
+				public boolean hasNext() {
+					// features without geometry are skipped
+					while(next == null && features.hasNext()){
+						SimpleFeature feature = (SimpleFeature) features.next();
+						next = (SimpleFeature) GTHelper.createFeature("ID"+i, (Geometry)feature.getDefaultGeometry(), featureType, feature.getProperties());
+						i++;
+					}
+					return next != null;
+				}
+
+				public SimpleFeature next() {
+					if(!hasNext()){
+						throw new NoSuchElementException();
+					}
+					SimpleFeature feature = next;
+					next = null;
+					return feature;
+				}
+
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+			};
+			synchronized (openIterators) {
+				openIterators.put(iterator, features);
+			}
+			return iterator;
+		}
+
+		@Override
+		protected void closeIterator(Iterator<SimpleFeature> close) {
+			FeatureIterator<?> features;
+			synchronized (openIterators) {
+				features = openIterators.remove(close);
+			}
+			if(features != null){
+				features.close();
+			}
+		}
+
+		@Override
+		public int size() {
+			return source.size();
+		}
+
+		@Override
+		public ReferencedEnvelope getBounds() {
+			return source.getBounds();
+		}
+	}
+
 }
@@ -67,6 +67,7 @@ import org.geotools.feature.FeatureCollection;
 import org.geotools.feature.FeatureIterator;
 import org.geotools.referencing.CRS;
 import org.n52.wps.io.GTHelper;
+import org.n52.wps.io.IOUtils;
 import org.n52.wps.io.SchemaRepository;
 import org.n52.wps.io.data.IData;
 import org.n52.wps.io.data.binding.complex.GTVectorDataBinding;
@@ -138,24 +139,21 @@ public class GTBinDirectorySHPGenerator {
 	 */
 	private File createShapefileDirectory(FeatureCollection collection, File parent)
 			throws IOException, IllegalAttributeException {
+		File shpBaseDirectory;
 		if (parent == null) {
-			File tempBaseFile = File.createTempFile("resolveDir", ".tmp");
-			tempBaseFile.deleteOnExit();
-			parent = tempBaseFile.getParentFile();
-		}
-
-		if (parent == null || !parent.isDirectory()) {
-			throw new IllegalStateException("Could not find temporary file directory.");
-		}		
-		
-		File shpBaseDirectory = new File(parent, UUID.randomUUID().toString());
-		
-		if (!shpBaseDirectory.mkdir()) {
-			throw new IllegalStateException("Could not create temporary shp directory.");
+			// removed with the scratch space of the execution
+			shpBaseDirectory = IOUtils.createTempDirectory("shp");
+		} else {
+			if (!parent.isDirectory()) {
+				throw new IllegalStateException("Could not find temporary file directory.");
+			}
+			shpBaseDirectory = new File(parent, UUID.randomUUID().toString());
+			if (!shpBaseDirectory.mkdir()) {
+				throw new IllegalStateException("Could not create temporary shp directory.");
+			}
 		}
 		
 		File tempSHPfile = File.createTempFile("shp", ".shp", shpBaseDirectory);
-		tempSHPfile.deleteOnExit();
 		DataStoreFactorySpi dataStoreFactory = new ShapefileDataStoreFactory();
 		Map<String, Serializable> params = new HashMap<String, Serializable>();
 		params.put("url", tempSHPfile.toURI().toURL());
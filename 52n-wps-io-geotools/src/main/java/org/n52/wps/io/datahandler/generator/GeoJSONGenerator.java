@@ -47,11 +47,13 @@
  */
 package org.n52.wps.io.datahandler.generator;
 
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 
+import org.apache.commons.io.output.CloseShieldOutputStream;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.geojson.feature.FeatureJSON;
 import org.geotools.geojson.geom.GeometryJSON;
@@ -78,32 +80,31 @@ public class GeoJSONGenerator extends AbstractGenerator {
 	public InputStream generateStream(IData data, String mimeType, String schema)
 			throws IOException {
 		
+		if(data instanceof JTSGeometryBinding || data instanceof GTVectorDataBinding){
+			return generateStreamFromTempFile(data, mimeType, schema);
+		}
+		
+		return null;
+	}
+	
+	@Override
+	public void writeTo(IData data, OutputStream outputStream, String mimeType, String schema)
+			throws IOException {
+		
+		Writer writer = new OutputStreamWriter(new CloseShieldOutputStream(outputStream), "UTF-8");
+		
 		if(data instanceof JTSGeometryBinding){
 			Geometry g = ((JTSGeometryBinding)data).getPayload();
 			
-			File tempFile = File.createTempFile("wps", "json");
-			finalizeFiles.add(tempFile); // mark for final delete
-			
-			 new GeometryJSON().write(g, tempFile);
-					
-			InputStream is = new FileInputStream(tempFile);
-			
-			return is;
+			new GeometryJSON().write(g, writer);
 		}else if(data instanceof GTVectorDataBinding){
 			
 			SimpleFeatureCollection f = (SimpleFeatureCollection)data.getPayload();
 			
-			File tempFile = File.createTempFile("wps", "json");
-			finalizeFiles.add(tempFile); // mark for final delete
-			
-			 new FeatureJSON().writeFeatureCollection(f, tempFile);
-					
-			InputStream is = new FileInputStream(tempFile);
-			
-			return is;
+			new FeatureJSON().writeFeatureCollection(f, writer);
 		}
 		
-		return null;
+		writer.close();
 	}
 
 }
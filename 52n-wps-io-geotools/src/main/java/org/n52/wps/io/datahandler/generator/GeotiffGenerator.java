@@ -47,6 +47,7 @@
  */
 package org.n52.wps.io.datahandler.generator;
 
+import java.awt.image.RenderedImage;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -54,17 +55,16 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.UUID;
 
-import javax.media.jai.JAI;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.coverage.grid.GridCoverageFactory;
 import org.geotools.coverage.grid.io.AbstractGridFormat;
-import org.geotools.coverage.grid.io.imageio.GeoToolsWriteParams;
 import org.geotools.gce.geotiff.GeoTiffFormat;
 import org.geotools.gce.geotiff.GeoTiffWriteParams;
 import org.geotools.gce.geotiff.GeoTiffWriter;
 import org.n52.wps.io.data.IData;
+import org.n52.wps.io.data.RasterTiling;
 import org.n52.wps.io.data.binding.complex.GTRasterDataBinding;
 import org.n52.wps.io.data.binding.complex.GeotiffBinding;
 import org.opengis.coverage.grid.GridCoverage;
@@ -88,10 +88,7 @@ public class GeotiffGenerator  extends AbstractGenerator {
 			
 			GridCoverage coverage = ((GTRasterDataBinding)data).getPayload();
 			GeoTiffWriter geoTiffWriter = null;
-			String tmpDirPath = System.getProperty("java.io.tmpdir");			
-			String fileName = tmpDirPath + File.separatorChar + "temp" + UUID.randomUUID() + ".tmp";
-			File outputFile = new File(fileName);
-			this.finalizeFiles.add(outputFile); // mark file for final delete
+			File outputFile = createTempFile("temp" + UUID.randomUUID(), ".tmp");
 			
 			try {
 				geoTiffWriter = new GeoTiffWriter(outputFile);
@@ -119,20 +116,13 @@ public class GeotiffGenerator  extends AbstractGenerator {
 	private void writeGeotiff(GeoTiffWriter geoTiffWriter, GridCoverage coverage){
 		GeoTiffFormat format = new GeoTiffFormat();
 		
-		GeoTiffWriteParams wp = new GeoTiffWriteParams();
+		RasterTiling tiling = RasterTiling.getInstance();
 		
-		wp.setCompressionMode(GeoTiffWriteParams.MODE_EXPLICIT);
-		wp.setCompressionType("LZW"); 
-		wp.setTilingMode(GeoToolsWriteParams.MODE_EXPLICIT);
-		int width = ((GridCoverage2D) coverage).getRenderedImage().getWidth();
-		int tileWidth = 1024;
-		if(width<2048){
-			tileWidth = new Double(Math.sqrt(width)).intValue();
-		}
-		wp.setTiling(tileWidth, tileWidth);
+		// written tile by tile, the next row of tiles is computed while the current one is written
+		GeoTiffWriteParams wp = tiling.getWriteParams();
 		ParameterValueGroup paramWrite = format.getWriteParameters();
 		paramWrite.parameter(AbstractGridFormat.GEOTOOLS_WRITE_PARAMS.getName().toString()).setValue(wp);
-		JAI.getDefaultInstance().getTileCache().setMemoryCapacity(256*1024*1024);
+		coverage = prefetchRows((GridCoverage2D) coverage);
 		
 		try {
 			geoTiffWriter.write(coverage, (GeneralParameterValue[])paramWrite.values().toArray(new
@@ -148,4 +138,14 @@ public class GeotiffGenerator  extends AbstractGenerator {
 		}
 	}
 	
+	private GridCoverage2D prefetchRows(GridCoverage2D coverage){
+		RenderedImage image = coverage.getRenderedImage();
+		RenderedImage prefetching = RasterTiling.prefetchRows(image);
+		if(prefetching == image){
+			return coverage;
+		}
+		return new GridCoverageFactory().create(coverage.getName(), prefetching, coverage.getGridGeometry(),
+				coverage.getSampleDimensions(), null, coverage.getProperties());
+	}
+	
 }
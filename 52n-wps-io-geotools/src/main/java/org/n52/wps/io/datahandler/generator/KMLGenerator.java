@@ -49,7 +49,6 @@ package org.n52.wps.io.datahandler.generator;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -83,9 +82,8 @@ public class KMLGenerator extends AbstractGenerator {
 		File tempFile = null;
 		InputStream stream = null;
 		try {
-			tempFile = File.createTempFile("kml", "xml");
-			this.finalizeFiles.add(tempFile);
-			FileOutputStream outputStream = new FileOutputStream(tempFile);
+			tempFile = createTempFile("kml", "xml");
+			OutputStream outputStream = openOutputStream(tempFile);
 			this.writeToStream(data, outputStream);
 			outputStream.flush();
 			outputStream.close();
@@ -50,7 +50,6 @@ package org.n52.wps.io.datahandler.generator;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -101,9 +100,8 @@ public class SimpleGMLGenerator extends AbstractGenerator {
 		InputStream stream = null;
 		
 		try {
-			tempFile = File.createTempFile("gml", "xml");
-			this.finalizeFiles.add(tempFile);
-			FileOutputStream outputStream = new FileOutputStream(tempFile);
+			tempFile = createTempFile("gml", "xml");
+			OutputStream outputStream = openOutputStream(tempFile);
 			this.writeToStream(data, outputStream);
 			outputStream.flush();
 			outputStream.close();
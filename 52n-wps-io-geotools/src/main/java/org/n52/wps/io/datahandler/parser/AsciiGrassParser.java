@@ -48,12 +48,12 @@
 package org.n52.wps.io.datahandler.parser;
 
 import java.io.BufferedInputStream;
-import java.io.BufferedWriter;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -104,16 +104,16 @@ public class AsciiGrassParser extends AbstractParser {
 
 		BufferedInputStream bis = new BufferedInputStream(inputStream);
 
-		File outputFile = File.createTempFile("temp" + inputStream.hashCode(), "tmp");
+		File outputFile = createTempFile("temp" + inputStream.hashCode(), "tmp");
 
-		BufferedWriter bw = new BufferedWriter(new FileWriter(outputFile));
+		OutputStream bos = new BufferedOutputStream(openOutputStream(outputFile));
 
 		int _byte;
 		while ((_byte = bis.read()) != -1) {
-			bw.write(_byte);
+			bos.write(_byte);
 		}
 
-		bw.close();
+		bos.close();
 
 		return outputFile;
 	}
@@ -49,9 +49,9 @@ package org.n52.wps.io.datahandler.parser;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -75,6 +75,7 @@ import org.geotools.gml2.GMLConfiguration;
 import org.geotools.gml3.ApplicationSchemaConfiguration;
 import org.geotools.xml.Configuration;
 import org.n52.wps.io.SchemaRepository;
+import org.n52.wps.io.data.SpilledFeatureStore;
 import org.n52.wps.io.data.binding.complex.GTVectorDataBinding;
 import org.opengis.feature.GeometryAttribute;
 import org.opengis.feature.simple.SimpleFeature;
@@ -104,12 +105,11 @@ public class GML2BasicParser extends AbstractParser {
 	public GTVectorDataBinding parse(InputStream stream, String mimeType,
 			String schema) {
 
-		FileOutputStream fos = null;
+		OutputStream fos = null;
 		try {
-			File tempFile = File.createTempFile(UUID.randomUUID().toString(),
+			File tempFile = createTempFile(UUID.randomUUID().toString(),
 					".gml2");
-			finalizeFiles.add(tempFile); // mark for final delete
-			fos = new FileOutputStream(tempFile);
+			fos = openOutputStream(tempFile);
 			int i = stream.read();
 			while (i != -1) {
 				fos.write(i);
@@ -133,6 +133,13 @@ public class GML2BasicParser extends AbstractParser {
 
 	public GTVectorDataBinding parseXML(File file) {
 		
+		if (SpilledFeatureStore.isStreamed(file.length())) {
+			GTVectorDataBinding streamed = GMLFeatureStreamer.stream(file, getConfiguration(file));
+			if (streamed != null) {
+				return streamed;
+			}
+		}
+		
 		SimpleFeatureCollection fc = parseSimpleFeatureCollection(file);
 		
 		GTVectorDataBinding data = new GTVectorDataBinding(fc);
@@ -141,23 +148,10 @@ public class GML2BasicParser extends AbstractParser {
 	}
 	
 	public SimpleFeatureCollection parseSimpleFeatureCollection(File file) {
-		QName schematypeTuple = determineFeatureTypeSchema(file);
-
-		Configuration configuration = null;
-
-		boolean shouldSetParserStrict = true;
+		Configuration configuration = getConfiguration(file);
 
-		String schemaLocation = schematypeTuple.getLocalPart();
-
-		if (schemaLocation != null && schematypeTuple.getNamespaceURI() != null) {
-			SchemaRepository.registerSchemaLocation(
-					schematypeTuple.getNamespaceURI(), schemaLocation);
-			configuration = new ApplicationSchemaConfiguration(
-					schematypeTuple.getNamespaceURI(), schemaLocation);
-		} else {
-			configuration = new GMLConfiguration();
-			shouldSetParserStrict = false;
-		}
+		// the parser is only strict for application schemas
+		boolean shouldSetParserStrict = !(configuration instanceof GMLConfiguration);
 
 		org.geotools.xml.Parser parser = new org.geotools.xml.Parser(
 				configuration);
@@ -263,6 +257,20 @@ public class GML2BasicParser extends AbstractParser {
 		}
 	}
 
+	private Configuration getConfiguration(File file) {
+		QName schematypeTuple = determineFeatureTypeSchema(file);
+
+		String schemaLocation = schematypeTuple.getLocalPart();
+
+		if (schemaLocation != null && schematypeTuple.getNamespaceURI() != null) {
+			SchemaRepository.registerSchemaLocation(
+					schematypeTuple.getNamespaceURI(), schemaLocation);
+			return new ApplicationSchemaConfiguration(
+					schematypeTuple.getNamespaceURI(), schemaLocation);
+		}
+		return new GMLConfiguration();
+	}
+
 	private QName determineFeatureTypeSchema(File file) {
 		try {
 			GML2Handler handler = new GML2Handler();
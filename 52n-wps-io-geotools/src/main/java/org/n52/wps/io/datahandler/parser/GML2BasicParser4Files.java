@@ -48,9 +48,9 @@
 package org.n52.wps.io.datahandler.parser;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.UUID;
 
 import org.slf4j.Logger;
@@ -75,11 +75,10 @@ public class GML2BasicParser4Files extends AbstractParser {
 	
 	public GenericFileDataWithGTBinding parse(InputStream stream, String mimeType, String schema) {
 		
-		FileOutputStream fos = null;
+		OutputStream fos = null;
 		try{
-			File tempFile = File.createTempFile(UUID.randomUUID().toString(), ".gml2");
-			finalizeFiles.add(tempFile); // mark for final delete
-			fos = new FileOutputStream(tempFile);
+			File tempFile = createTempFile(UUID.randomUUID().toString(), ".gml2");
+			fos = openOutputStream(tempFile);
 			int i = stream.read();
 			while(i != -1){
 				fos.write(i);
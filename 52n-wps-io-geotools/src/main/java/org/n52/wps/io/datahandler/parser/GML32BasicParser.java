@@ -49,9 +49,9 @@ package org.n52.wps.io.datahandler.parser;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -110,11 +110,10 @@ public class GML32BasicParser extends AbstractParser {
 	@Override
 	public GTVectorDataBinding parse(InputStream stream, String mimeType, String schema) {
 
-		FileOutputStream fos = null;
+		OutputStream fos = null;
 		try {
-			File tempFile = File.createTempFile("wps", "tmp");
-			finalizeFiles.add(tempFile); // mark for final delete
-			fos = new FileOutputStream(tempFile);
+			File tempFile = createTempFile("wps", "tmp");
+			fos = openOutputStream(tempFile);
 			int i = stream.read();
 			while (i != -1) {
 				fos.write(i);
@@ -49,9 +49,9 @@ package org.n52.wps.io.datahandler.parser;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -75,6 +75,7 @@ import org.geotools.gml3.ApplicationSchemaConfiguration;
 import org.geotools.gml3.GMLConfiguration;
 import org.geotools.xml.Configuration;
 import org.n52.wps.io.SchemaRepository;
+import org.n52.wps.io.data.SpilledFeatureStore;
 import org.n52.wps.io.data.binding.complex.GTVectorDataBinding;
 import org.opengis.feature.GeometryAttribute;
 import org.opengis.feature.Property;
@@ -105,11 +106,10 @@ public class GML3BasicParser extends AbstractParser {
 	@Override
 	public GTVectorDataBinding parse(InputStream stream, String mimeType, String schema) {
 
-		FileOutputStream fos = null;
+		OutputStream fos = null;
 		try{
-			File tempFile = File.createTempFile("wps", "tmp");
-			finalizeFiles.add(tempFile); // mark for final delete
-			fos = new FileOutputStream(tempFile);
+			File tempFile = createTempFile("wps", "tmp");
+			fos = openOutputStream(tempFile);
 			int i = stream.read();
 			while(i != -1){
 				fos.write(i);
@@ -132,6 +132,13 @@ public class GML3BasicParser extends AbstractParser {
 	
 	private GTVectorDataBinding parseXML(File file) {
 		
+		if (SpilledFeatureStore.isStreamed(file.length())) {
+			GTVectorDataBinding streamed = GMLFeatureStreamer.stream(file, getConfiguration(file));
+			if (streamed != null) {
+				return streamed;
+			}
+		}
+		
 		SimpleFeatureCollection fc = parseFeatureCollection(file);
 		
 		GTVectorDataBinding data = new GTVectorDataBinding(fc);
@@ -147,6 +154,18 @@ public class GML3BasicParser extends AbstractParser {
 	 * @return The parsed SimpleFeatureCollection
 	 */
 	public SimpleFeatureCollection parseFeatureCollection(File file){
+		Configuration configuration = getConfiguration(file);
+		
+		// the parser is only strict for application schemas
+		boolean shouldSetParserStrict = !(configuration instanceof GMLConfiguration);
+		
+		//parse		
+		SimpleFeatureCollection fc = parseFeatureCollection(file, configuration, shouldSetParserStrict);
+		
+		return fc;
+	}
+	
+	private Configuration getConfiguration(File file){
 		QName schematypeTuple = determineFeatureTypeSchema(file);
 		
 		boolean schemaLocationIsRelative = false;
@@ -156,7 +175,6 @@ public class GML3BasicParser extends AbstractParser {
 		
 		Configuration configuration = null;
 		
-		boolean shouldSetParserStrict = true;
 		if(schematypeTuple != null) {
 			
 			String schemaLocation =  schematypeTuple.getLocalPart();
@@ -167,26 +185,16 @@ public class GML3BasicParser extends AbstractParser {
 			
 			if(schemaLocation.equals("http://schemas.opengis.net/gml/3.1.1/base/gml.xsd")){
 				configuration = new GMLConfiguration();
-				shouldSetParserStrict = false;
 			}else{			
 				if(schemaLocation!= null && schematypeTuple.getNamespaceURI()!=null){
 					SchemaRepository.registerSchemaLocation(schematypeTuple.getNamespaceURI(), schemaLocation);
 					configuration =  new ApplicationSchemaConfiguration(schematypeTuple.getNamespaceURI(), schemaLocation);
 				}else{
 					configuration = new GMLConfiguration();
-					shouldSetParserStrict = false;
 				}
 			}
 		}
-		
-		org.geotools.xml.Parser parser = new org.geotools.xml.Parser(configuration);
-		
-		parser.setStrict(shouldSetParserStrict);
-		
-		//parse		
-		SimpleFeatureCollection fc = parseFeatureCollection(file, configuration, shouldSetParserStrict);
-		
-		return fc;
+		return configuration;
 	}
 	
 	/**
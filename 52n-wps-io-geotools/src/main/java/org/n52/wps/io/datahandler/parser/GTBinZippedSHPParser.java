@@ -49,9 +49,9 @@ package org.n52.wps.io.datahandler.parser;
 
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.UUID;
 
 import org.geotools.data.DataStore;
@@ -76,12 +76,9 @@ public class GTBinZippedSHPParser extends AbstractParser {
 	@Override
 	public GTVectorDataBinding parse(InputStream stream, String mimeType, String schema) {
 		try {
-			String fileName = "tempfile" + UUID.randomUUID() + ".zip";
-			String tmpDirPath = System.getProperty("java.io.tmpdir");
-			File tempFile = new File(tmpDirPath + File.separatorChar + fileName);
-			finalizeFiles.add(tempFile); // mark tempFile for final delete
+			File tempFile = createTempFile("tempfile" + UUID.randomUUID(), ".zip");
 			try {
-				FileOutputStream outputStream = new FileOutputStream(tempFile);
+				OutputStream outputStream = openOutputStream(tempFile);
 				byte buf[] = new byte[4096];
 				int len;
 				while ((len = stream.read(buf)) > 0) {
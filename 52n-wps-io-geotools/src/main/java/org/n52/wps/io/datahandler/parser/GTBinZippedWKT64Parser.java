@@ -49,10 +49,10 @@ package org.n52.wps.io.datahandler.parser;
 
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Reader;
 import java.util.ArrayList;
 import java.util.List;
@@ -103,12 +103,9 @@ public class GTBinZippedWKT64Parser extends AbstractParser {
 	public GTVectorDataBinding parse(InputStream stream, String mimeType, String schema) {
 		try {
 			
-			String fileName = "tempfile" + UUID.randomUUID() + ".zip";
-			String tmpDirPath = System.getProperty("java.io.tmpdir");
-			File tempFile = new File(tmpDirPath + File.separatorChar + fileName);
-			finalizeFiles.add(tempFile); // mark tempFile for final delete
+			File tempFile = createTempFile("tempfile" + UUID.randomUUID(), ".zip");
 			try {
-				FileOutputStream outputStream = new FileOutputStream(tempFile);
+				OutputStream outputStream = openOutputStream(tempFile);
 				byte buf[] = new byte[4096];
 				int len;
 				while ((len = stream.read(buf)) > 0) {
@@ -126,10 +123,8 @@ public class GTBinZippedWKT64Parser extends AbstractParser {
 				throw new RuntimeException(e);
 			}			
 			
-			finalizeFiles.add(tempFile); // mark for final delete
 			stream.close();
 			List<File> wktFiles = IOUtils.unzip(tempFile, "wkt");
-			finalizeFiles.addAll(wktFiles); // mark for final delete
 			
 			if (wktFiles == null || wktFiles.size() == 0) {
 				throw new RuntimeException(
@@ -48,19 +48,27 @@
 package org.n52.wps.io.datahandler.parser;
 
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.feature.FeatureCollection;
+import org.geotools.feature.FeatureIterator;
 import org.geotools.geojson.feature.FeatureJSON;
 import org.geotools.geojson.geom.GeometryJSON;
+import org.n52.wps.io.IOUtils;
 import org.n52.wps.io.data.IData;
+import org.n52.wps.io.data.SpilledFeatureStore;
 import org.n52.wps.io.data.binding.complex.GTVectorDataBinding;
 import org.n52.wps.io.data.binding.complex.JTSGeometryBinding;
 import org.opengis.feature.simple.SimpleFeature;
@@ -80,6 +88,9 @@ public class GeoJSONParser extends AbstractParser {
 
 	private static Logger LOGGER = LoggerFactory.getLogger(GeoJSONParser.class);
 
+	// the characters searched for the type of a streamed input
+	private static final int HEAD_LENGTH = 8192;
+
 	public GeoJSONParser() {
 		super();
 		supportedIDataTypes.add(JTSGeometryBinding.class);
@@ -89,27 +100,50 @@ public class GeoJSONParser extends AbstractParser {
 	@Override
 	public IData parse(InputStream input, String mimeType, String schema) {
 
-		String geojsonstring = "";
+		File file = null;
+		try {
+			file = createTempFile("geojson" + UUID.randomUUID(), ".json");
+			IOUtils.writeStreamToFile(input, "json", file);
+		} catch (IOException e) {
+			LOGGER.error("Exception while reading inputstream.", e);
+		} finally {
+			try {
+				input.close();
+			} catch (IOException e) {
+				LOGGER.error(e.getMessage(), e);
+			}
+		}
+		if (file == null) {
+			LOGGER.error("Could not parse inputstream, returning null.");
+			return null;
+		}
+
+		if (SpilledFeatureStore.isStreamed(file.length()) && isFeatureCollection(file)) {
+			GTVectorDataBinding streamed = stream(file);
+			if (streamed != null) {
+				return streamed;
+			}
+		}
+
+		StringBuilder geojsonbuilder = new StringBuilder();
 
 		String line = "";
 
-		BufferedReader breader = new BufferedReader(
-				new InputStreamReader(input));
+		BufferedReader breader = null;
 
 		try {
+			breader = new BufferedReader(new InputStreamReader(new FileInputStream(file)));
 			while ((line = breader.readLine()) != null) {
-				geojsonstring = geojsonstring.concat(line);
+				geojsonbuilder.append(line);
 			}
 		} catch (IOException e) {
 			LOGGER.error("Exception while reading inputstream.", e);
 		} finally {
-			try {
-				input.close();
-			} catch (IOException e) {
-				LOGGER.error(e.getMessage(), e);
-			}
+			org.apache.commons.io.IOUtils.closeQuietly(breader);
 		}
 
+		String geojsonstring = geojsonbuilder.toString();
+
 		if (geojsonstring.contains("FeatureCollection")) {
 
 			try {
@@ -172,4 +206,64 @@ public class GeoJSONParser extends AbstractParser {
 		return null;
 	}
 
+	/**
+	 * @return <code>true</code> if the head of the file declares a feature
+	 *         collection
+	 */
+	private boolean isFeatureCollection(File file) {
+		Reader reader = null;
+		try {
+			reader = new InputStreamReader(new FileInputStream(file));
+			char[] head = new char[HEAD_LENGTH];
+			int length = 0;
+			int read;
+			while (length < head.length && (read = reader.read(head, length, head.length - length)) != -1) {
+				length += read;
+			}
+			return new String(head, 0, length).contains("FeatureCollection");
+		} catch (IOException e) {
+			LOGGER.warn("Could not read the head of " + file, e);
+			return false;
+		} finally {
+			org.apache.commons.io.IOUtils.closeQuietly(reader);
+		}
+	}
+
+	/**
+	 * Streams the features to a {@link SpilledFeatureStore}, holding only one
+	 * feature in memory at a time.
+	 * 
+	 * @return the streaming binding or <code>null</code> if the collection
+	 *         has to be read in memory
+	 */
+	private GTVectorDataBinding stream(File file) {
+		SpilledFeatureStore spill = null;
+		InputStream input = null;
+		FeatureIterator<SimpleFeature> features = null;
+		try {
+			spill = new SpilledFeatureStore();
+			input = new FileInputStream(file);
+			features = new FeatureJSON().streamFeatureCollection(input);
+			while (features.hasNext()) {
+				spill.add(features.next());
+			}
+			SimpleFeatureCollection collection = spill.close();
+			if (collection != null) {
+				LOGGER.info("Streamed {} features of {} bytes of GeoJSON", spill.getCount(), file.length());
+				return new GTVectorDataBinding(collection, spill);
+			}
+		} catch (Exception e) {
+			LOGGER.warn("Could not stream the features of " + file + ", reading them in memory", e);
+		} finally {
+			if (features != null) {
+				features.close();
+			}
+			org.apache.commons.io.IOUtils.closeQuietly(input);
+		}
+		if (spill != null) {
+			spill.dispose();
+		}
+		return null;
+	}
+
 }
@@ -48,20 +48,16 @@
 package org.n52.wps.io.datahandler.parser;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.UUID;
-
-import javax.media.jai.JAI;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.data.DataSourceException;
-import org.geotools.factory.Hints;
 import org.geotools.gce.geotiff.GeoTiffReader;
+import org.n52.wps.io.IOUtils;
+import org.n52.wps.io.data.RasterTiling;
 import org.n52.wps.io.data.binding.complex.GTRasterDataBinding;
 
 public class GeotiffParser extends AbstractParser {
@@ -80,21 +76,8 @@ public class GeotiffParser extends AbstractParser {
 		File tempFile;
 		
 		try {
-            tempFile = File.createTempFile("tempfile" + UUID.randomUUID(),"tmp");
-            finalizeFiles.add(tempFile); // mark for final delete
-			FileOutputStream outputStream = new FileOutputStream(tempFile);
-			byte buf[] = new byte[4096];
-			int len;
-			while ((len = input.read(buf)) > 0) {
-				outputStream.write(buf, 0, len);
-			}
-			
-			outputStream.flush();
-			outputStream.close();
-			input.close();
-		} catch (FileNotFoundException e) {
-			LOGGER.error(e.getMessage(), e);
-			throw new RuntimeException(e);
+			// the tiles are read from the file on demand, it is kept in the scratch space of the execution
+			tempFile = IOUtils.writeStreamToFile(input, "tif");
 		} catch (IOException e1) {
 			LOGGER.error(e1.getMessage(), e1);
 			throw new RuntimeException(e1);
@@ -105,15 +88,12 @@ public class GeotiffParser extends AbstractParser {
 	}
 	
 	private GTRasterDataBinding parseTiff(File file){
-		JAI.getDefaultInstance().getTileCache().setMemoryCapacity(256*1024*1024);
-		
-		Hints hints = new Hints(Hints.FORCE_LONGITUDE_FIRST_AXIS_ORDER,
-				Boolean.TRUE);
+		RasterTiling tiling = RasterTiling.getInstance();
 		GeoTiffReader reader;
 		try {
-			reader = new GeoTiffReader(file, hints);
-			GridCoverage2D coverage = (GridCoverage2D) reader.read(null);
-			return new GTRasterDataBinding(coverage);
+			reader = new GeoTiffReader(file, tiling.getReaderHints());
+			GridCoverage2D coverage = (GridCoverage2D) reader.read(tiling.getReadParameters());
+			return new GTRasterDataBinding(coverage, true);
 		} catch (DataSourceException e) {
 			LOGGER.error(e.getMessage(), e);
 			throw new RuntimeException(e);
@@ -55,9 +55,9 @@ import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.geotools.coverage.grid.GridCoverage2D;
-import org.geotools.factory.Hints;
 import org.geotools.gce.geotiff.GeoTiffReader;
 import org.n52.wps.io.IOUtils;
+import org.n52.wps.io.data.RasterTiling;
 import org.n52.wps.io.data.binding.complex.GTRasterDataBinding;
 
 public class GeotiffZippedParser extends AbstractParser {
@@ -75,10 +75,8 @@ public class GeotiffZippedParser extends AbstractParser {
 		File zippedFile;
 		try {
 			zippedFile = IOUtils.writeStreamToFile(input, "zip");
-			finalizeFiles.add(zippedFile); // mark for final delete
 		
 			List<File> files = IOUtils.unzipAll(zippedFile);
-			finalizeFiles.addAll(files); // mark for final delete
 			
 			for(File file : files){
 				if(file.getName().toLowerCase().endsWith(".tif") || file.getName().toLowerCase().endsWith(".tiff")){
@@ -93,13 +91,13 @@ public class GeotiffZippedParser extends AbstractParser {
 	}
 	
 	private GTRasterDataBinding parseTiff(File file){
-		Hints hints = new Hints(Hints.FORCE_LONGITUDE_FIRST_AXIS_ORDER,
-				Boolean.TRUE);
+		RasterTiling tiling = RasterTiling.getInstance();
 		GeoTiffReader reader;
 		try {
-			reader = new GeoTiffReader(file, hints);
-			GridCoverage2D coverage = (GridCoverage2D) reader.read(null);
-			return new GTRasterDataBinding(coverage);
+			reader = new GeoTiffReader(file, tiling.getReaderHints());
+			GridCoverage2D coverage = (GridCoverage2D) reader.read(tiling.getReadParameters());
+			// the tiles are read from the file in the scratch space on demand
+			return new GTRasterDataBinding(coverage, true);
 		} catch (Exception e) {
 			LOGGER.error("Exception while trying to create GTRasterDataBinding out of tiff.", e);
 			throw new RuntimeException(e);
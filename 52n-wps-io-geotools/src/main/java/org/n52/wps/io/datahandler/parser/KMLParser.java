@@ -48,9 +48,9 @@
 package org.n52.wps.io.datahandler.parser;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.kml.KMLConfiguration;
@@ -72,11 +72,10 @@ public class KMLParser extends AbstractParser {
 	
 	public GTVectorDataBinding parse(InputStream stream, String mimeType, String schema) {
 		
-		FileOutputStream fos = null;
+		OutputStream fos = null;
 		try{
-			File tempFile = File.createTempFile("kml", "tmp");
-			finalizeFiles.add(tempFile); // mark for final delete
-			fos = new FileOutputStream(tempFile);
+			File tempFile = createTempFile("kml", "tmp");
+			fos = openOutputStream(tempFile);
 			int i = stream.read();
 			while(i != -1){
 				fos.write(i);
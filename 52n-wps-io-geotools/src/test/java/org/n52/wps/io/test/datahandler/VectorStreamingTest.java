@@ -0,0 +1,212 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * As an exception to the terms of the GPL, you may copy, modify,
+ * propagate, and distribute a work formed by combining 52°North WPS
+ * GeoTools Modules with the Eclipse Libraries, or a work derivative of
+ * such a combination, even if such copying, modification, propagation, or
+ * distribution would otherwise violate the terms of the GPL. Nothing in
+ * this exception exempts you from complying with the GPL in all respects
+ * for all of the code used other than the Eclipse Libraries. You may
+ * include this exception and its grant of permissions when you distribute
+ * 52°North WPS GeoTools Modules. Inclusion of this notice with such a
+ * distribution constitutes a grant of such permissions. If you do not wish
+ * to grant these permissions, remove this paragraph from your
+ * distribution. "52°North WPS GeoTools Modules" means the 52°North WPS
+ * modules using GeoTools functionality - software licensed under version 2
+ * or any later version of the GPL, or a work based on such software and
+ * licensed under the GPL. "Eclipse Libraries" means Eclipse Modeling
+ * Framework Project and XML Schema Definition software distributed by the
+ * Eclipse Foundation and licensed under the Eclipse Public License Version
+ * 1.0 ("EPL"), or a work based on such software and licensed under the EPL.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.io.test.datahandler;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.geotools.feature.FeatureIterator;
+import org.n52.wps.io.data.binding.complex.GTVectorDataBinding;
+import org.n52.wps.io.datahandler.generator.GML3BasicGenerator;
+import org.n52.wps.io.datahandler.parser.GML3BasicParser;
+import org.n52.wps.io.datahandler.parser.GeoJSONParser;
+import org.opengis.feature.simple.SimpleFeature;
+
+/**
+ * Test class for the streaming of vector inputs larger than the
+ * <code>vector.streaming.threshold</code>
+ */
+public class VectorStreamingTest extends AbstractTestCase<GML3BasicGenerator> {
+
+	private static final String KEY_STREAMING_THRESHOLD = "org.n52.wps.server.vector.streaming.threshold";
+
+	private static final int FEATURES = 1000;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		System.setProperty(KEY_STREAMING_THRESHOLD, "0");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		System.clearProperty(KEY_STREAMING_THRESHOLD);
+		super.tearDown();
+	}
+
+	@Override
+	protected void initializeDataHandler() {
+		dataHandler = new GML3BasicGenerator();
+	}
+
+	public void testStreamGeoJSONToGML3() throws IOException {
+
+		if(!isDataHandlerActive()){
+			return;
+		}
+
+		GeoJSONParser theParser = new GeoJSONParser();
+		InputStream in = new ByteArrayInputStream(createFeatureCollection().getBytes("UTF-8"));
+
+		GTVectorDataBinding theBinding = (GTVectorDataBinding) theParser.parse(in, theParser.getSupportedFormats()[0], null);
+		in.close();
+
+		assertTrue(theBinding.isStreaming());
+		assertTrue(theBinding.getPayloadAsShpFile().exists());
+		assertEquals(FEATURES, countFeatures(theBinding));
+		// the features are read from disk again on every iteration
+		assertEquals(FEATURES, countFeatures(theBinding));
+
+		InputStream resultStream = dataHandler.generateStream(theBinding, "text/xml; subtype=gml/3.1.1", "http://schemas.opengis.net/gml/3.1.1/base/feature.xsd");
+
+		GTVectorDataBinding parsedGeneratedBinding = new GML3BasicParser().parse(resultStream, "text/xml; subtype=gml/3.1.1", "http://schemas.opengis.net/gml/3.1.1/base/feature.xsd");
+		resultStream.close();
+
+		assertTrue(parsedGeneratedBinding.isStreaming());
+		assertEquals(FEATURES, countFeatures(parsedGeneratedBinding));
+	}
+
+	public void testParsedFeaturesAreNotHeldByTheBinding() throws IOException {
+
+		GeoJSONParser theParser = new GeoJSONParser();
+		InputStream in = new ByteArrayInputStream(createFeatureCollection().getBytes("UTF-8"));
+
+		GTVectorDataBinding theBinding = (GTVectorDataBinding) theParser.parse(in, theParser.getSupportedFormats()[0], null);
+		in.close();
+
+		assertTrue(theBinding.isStreaming());
+		List<WeakReference<SimpleFeature>> features = new ArrayList<WeakReference<SimpleFeature>>();
+		FeatureIterator<?> iterator = theBinding.getPayload().features();
+		try {
+			while(iterator.hasNext()){
+				features.add(new WeakReference<SimpleFeature>((SimpleFeature) iterator.next()));
+			}
+		} finally {
+			iterator.close();
+		}
+		assertEquals(FEATURES, features.size());
+
+		// an in-memory collection would keep every feature reachable from the binding
+		assertTrue("features are held by the binding", isCollected(features));
+		assertEquals(FEATURES, countFeatures(theBinding));
+	}
+
+	public void testSmallInputIsNotStreamed() throws IOException {
+
+		System.setProperty(KEY_STREAMING_THRESHOLD, "-1");
+
+		GeoJSONParser theParser = new GeoJSONParser();
+		InputStream in = new ByteArrayInputStream(createFeatureCollection().getBytes("UTF-8"));
+
+		GTVectorDataBinding theBinding = (GTVectorDataBinding) theParser.parse(in, theParser.getSupportedFormats()[0], null);
+		in.close();
+
+		assertFalse(theBinding.isStreaming());
+		assertEquals(FEATURES, countFeatures(theBinding));
+	}
+
+	private static int countFeatures(GTVectorDataBinding binding) {
+		int count = 0;
+		FeatureIterator<?> iterator = binding.getPayload().features();
+		try {
+			while(iterator.hasNext()){
+				SimpleFeature feature = (SimpleFeature) iterator.next();
+				assertNotNull(feature.getDefaultGeometry());
+				count++;
+			}
+		} finally {
+			iterator.close();
+		}
+		return count;
+	}
+
+	private static boolean isCollected(List<? extends WeakReference<?>> references) {
+		for (int attempt = 0; attempt < 50; attempt++) {
+			boolean collected = true;
+			for (WeakReference<?> reference : references) {
+				if(reference.get() != null){
+					collected = false;
+					break;
+				}
+			}
+			if(collected){
+				return true;
+			}
+			System.gc();
+			// allocate a little to give the collector a reason to run
+			byte[][] garbage = new byte[64][];
+			for (int i = 0; i < garbage.length; i++) {
+				garbage[i] = new byte[64 * 1024];
+			}
+			try {
+				Thread.sleep(20);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		return false;
+	}
+
+	private static String createFeatureCollection() {
+		StringBuilder featureCollection = new StringBuilder("{\"type\":\"FeatureCollection\",\"features\":[");
+		for (int i = 0; i < FEATURES; i++) {
+			if(i > 0){
+				featureCollection.append(',');
+			}
+			featureCollection.append("{\"type\":\"Feature\",\"geometry\":{\"type\":\"Point\",\"coordinates\":[")
+					.append(i % 360 - 180).append(',').append(i % 180 - 90)
+					.append("]},\"properties\":{\"name\":\"feature").append(i).append("\",\"value\":").append(i).append("}}");
+		}
+		return featureCollection.append("]}").toString();
+	}
+}
@@ -47,14 +47,34 @@
  */
 package org.n52.wps.io.test.datahandler.generator;
 
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
+import java.util.Arrays;
 
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.media.jai.TileCache;
+import javax.media.jai.TiledImage;
+
+import org.apache.commons.io.IOUtils;
+import org.n52.wps.commons.WPSConfig;
+import org.n52.wps.commons.context.ExecutionContext;
+import org.n52.wps.commons.context.ExecutionContextFactory;
+import org.n52.wps.io.data.RasterTiling;
 import org.n52.wps.io.data.binding.complex.GTRasterDataBinding;
 import org.n52.wps.io.datahandler.generator.GeotiffGenerator;
 import org.n52.wps.io.datahandler.parser.GeotiffParser;
@@ -62,6 +82,9 @@ import org.n52.wps.io.test.datahandler.AbstractTestCase;
 
 public class GeotiffGeneratorTest extends AbstractTestCase<GeotiffGenerator> {
 
+	private static final String KEY_TILE_SIZE = "org.n52.wps.server.raster.tileSize";
+	private static final String KEY_TILE_CACHE_TOTAL_CAPACITY = "org.n52.wps.server.raster.tileCache.totalMemoryCapacity";
+
 	public void testGenerator() {
 
 		if(!isDataHandlerActive()){
@@ -115,6 +138,129 @@ public class GeotiffGeneratorTest extends AbstractTestCase<GeotiffGenerator> {
 
 	}
 
+	public void testTiledGenerator() throws IOException {
+
+		if(!isDataHandlerActive()){
+			return;
+		}
+
+		System.setProperty(KEY_TILE_SIZE, "64");
+		// the tiling is only read again on a configuration change
+		WPSConfig.getInstance().firePropertyChange(WPSConfig.WPSCONFIG_PROPERTY_EVENT_NAME);
+		try {
+			GeotiffParser theParser = new GeotiffParser();
+			String mimetype = theParser.getSupportedFormats()[0];
+
+			GTRasterDataBinding theBinding = theParser.parse(new FileInputStream(getTestFile()), mimetype, null);
+			RenderedImage image = theBinding.getPayload().getRenderedImage();
+
+			File resultFile = File.createTempFile("tiled", ".tif");
+			resultFile.deleteOnExit();
+			InputStream resultStream = dataHandler.generateStream(theBinding, dataHandler.getSupportedFormats()[0], null);
+			FileOutputStream output = new FileOutputStream(resultFile);
+			try {
+				IOUtils.copy(resultStream, output);
+			} finally {
+				output.close();
+				resultStream.close();
+			}
+
+			ImageInputStream imageInput = ImageIO.createImageInputStream(resultFile);
+			try {
+				ImageReader reader = ImageIO.getImageReaders(imageInput).next();
+				reader.setInput(imageInput);
+				assertTrue(reader.isImageTiled(0));
+				assertEquals(64, reader.getTileWidth(0));
+				assertEquals(64, reader.getTileHeight(0));
+				reader.dispose();
+			} finally {
+				imageInput.close();
+			}
+
+			GTRasterDataBinding rasterBinding = theParser.parse(new FileInputStream(resultFile), mimetype, null);
+			Raster expected = image.getData();
+			Raster actual = rasterBinding.getPayload().getRenderedImage().getData();
+			assertEquals(expected.getWidth(), actual.getWidth());
+			assertEquals(expected.getHeight(), actual.getHeight());
+			assertTrue(Arrays.equals(expected.getPixels(0, 0, expected.getWidth(), expected.getHeight(), (double[]) null),
+					actual.getPixels(0, 0, actual.getWidth(), actual.getHeight(), (double[]) null)));
+		} finally {
+			System.clearProperty(KEY_TILE_SIZE);
+			WPSConfig.getInstance().firePropertyChange(WPSConfig.WPSCONFIG_PROPERTY_EVENT_NAME);
+		}
+	}
+
+	public void testPrefetchRows() {
+		BufferedImage bufferedImage = new BufferedImage(8, 8, BufferedImage.TYPE_BYTE_GRAY);
+		assertSame(bufferedImage, RasterTiling.prefetchRows(bufferedImage));
+
+		// 4 x 4 tiles of 4 x 4 pixels
+		SampleModel sampleModel = new PixelInterleavedSampleModel(DataBuffer.TYPE_BYTE, 4, 4, 1, 4, new int[] { 0 });
+		TiledImage tiledImage = new TiledImage(0, 0, 16, 16, 0, 0, sampleModel, null);
+		for (int x = 0; x < 16; x++) {
+			for (int y = 0; y < 16; y++) {
+				tiledImage.setSample(x, y, 0, x + y);
+			}
+		}
+		RenderedImage prefetching = RasterTiling.prefetchRows(tiledImage);
+		assertNotSame(tiledImage, prefetching);
+		assertSame(prefetching, RasterTiling.prefetchRows(prefetching));
+		assertEquals(tiledImage.getTileWidth(), prefetching.getTileWidth());
+		assertEquals(tiledImage.getNumYTiles(), prefetching.getNumYTiles());
+		for (int tileY = 0; tileY < prefetching.getNumYTiles(); tileY++) {
+			for (int tileX = 0; tileX < prefetching.getNumXTiles(); tileX++) {
+				assertSame(tiledImage.getTile(tileX, tileY), prefetching.getTile(tileX, tileY));
+			}
+		}
+		assertEquals(7, prefetching.getData(new Rectangle(3, 4, 2, 2)).getSample(3, 4, 0));
+	}
+
+	public void testTileCacheIsReleasedWithExecution() {
+		System.setProperty(KEY_TILE_CACHE_TOTAL_CAPACITY, "1048576");
+		WPSConfig.getInstance().firePropertyChange(WPSConfig.WPSCONFIG_PROPERTY_EVENT_NAME);
+		ExecutionContext first = new ExecutionContext();
+		ExecutionContext second = new ExecutionContext();
+		try {
+			RasterTiling tiling = RasterTiling.getInstance();
+			assertSame(tiling, RasterTiling.getInstance());
+
+			ExecutionContextFactory.registerContext(first);
+			TileCache firstCache = tiling.getTileCache();
+			assertSame(firstCache, tiling.getTileCache());
+
+			ExecutionContextFactory.registerContext(second);
+			TileCache secondCache = tiling.getTileCache();
+			assertNotSame(firstCache, secondCache);
+			// the executions share the total capacity
+			assertTrue(firstCache.getMemoryCapacity() <= 1048576 / 2);
+			assertTrue(secondCache.getMemoryCapacity() <= 1048576 / 2);
+
+			first.dispose();
+			ExecutionContextFactory.registerContext(first);
+			// a disposed execution does not keep a cache
+			assertNotSame(firstCache, tiling.getTileCache());
+			assertNotSame(tiling.getTileCache(), tiling.getTileCache());
+		} finally {
+			ExecutionContextFactory.unregisterContext();
+			first.dispose();
+			second.dispose();
+			System.clearProperty(KEY_TILE_CACHE_TOTAL_CAPACITY);
+			WPSConfig.getInstance().firePropertyChange(WPSConfig.WPSCONFIG_PROPERTY_EVENT_NAME);
+		}
+	}
+
+	private File getTestFile() {
+		String testFilePath = projectRoot
+				+ "/52n-wps-io-geotools/src/test/resources/6_UTM2GTIF.TIF";
+
+		try {
+			testFilePath = URLDecoder.decode(testFilePath, "UTF-8");
+		} catch (UnsupportedEncodingException e1) {
+			fail(e1.getMessage());
+		}
+		return new File(testFilePath);
+	}
+
 	@Override
 	protected void initializeDataHandler() {
 		dataHandler = new GeotiffGenerator();
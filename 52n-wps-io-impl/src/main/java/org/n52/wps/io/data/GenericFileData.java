@@ -212,8 +212,8 @@ public class GenericFileData {
 			if(fileExtension.equals("shp")){
 				extension = "zip";
 			}
-			primaryFile = File.createTempFile(UUID.randomUUID().toString(), "."+extension);
-			OutputStream out = new FileOutputStream(primaryFile);
+			primaryFile = org.n52.wps.io.IOUtils.createTempFile(UUID.randomUUID().toString(), "."+extension);
+			OutputStream out = org.n52.wps.io.IOUtils.openOutputStream(primaryFile);
 			byte buf[]=new byte[1024];
 			int len;
 			while((len=dataStream.read(buf))>0){
@@ -230,16 +230,14 @@ public class GenericFileData {
 		}
 		if(unzipIfPossible && extension.contains("zip")){
 			try{
-			File tempFile1 = File.createTempFile(UUID.randomUUID().toString(),"");
-			File dir = new File(tempFile1.getParentFile()+"/"+UUID.randomUUID().toString());
-			dir.mkdir();
+			File dir = org.n52.wps.io.IOUtils.createTempDirectory(UUID.randomUUID().toString());
 			FileInputStream fis = new FileInputStream(primaryFile);
 			ZipInputStream zis = new ZipInputStream(fis);
 			ZipEntry entry;
 	        while((entry = zis.getNextEntry()) != null) {
 	            LOGGER.debug("Extracting: " +entry);
 	            // write the files to the disk
-	            FileOutputStream fos = new FileOutputStream(dir.getAbsoluteFile()+"/"+entry.getName());
+	            OutputStream fos = org.n52.wps.io.IOUtils.openOutputStream(new File(dir, entry.getName()));
 
 	            IOUtils.copy(zis, fos);
 
@@ -28,7 +28,7 @@
  */
 package org.n52.wps.io.data.binding.complex;
 
-import org.n52.wps.io.data.IComplexData;
+import org.n52.wps.io.data.ICopyableData;
 
 import com.vividsolutions.jts.geom.Geometry;
 
@@ -37,7 +37,7 @@ import com.vividsolutions.jts.geom.Geometry;
  * @author Benjamin Pross
  *
  */
-public class JTSGeometryBinding implements IComplexData {
+public class JTSGeometryBinding implements ICopyableData {
 
 	/**
 	 * 
@@ -59,6 +59,11 @@ public class JTSGeometryBinding implements IComplexData {
 		return Geometry.class;
 	}
 
+	@Override
+	public JTSGeometryBinding copy() {
+		return new JTSGeometryBinding((Geometry) geom.clone());
+	}
+
 	@Override
 	public void dispose() {
 
@@ -30,7 +30,6 @@ package org.n52.wps.io.datahandler.generator;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -65,9 +64,8 @@ public class WCPSGenerator extends AbstractGenerator {
 		
 		List<byte[]> wcpsoutput = ((ArrayDataBinding)data).getPayload();
 		
-		File tempFile = File.createTempFile("wcps", ".bin");
-		this.finalizeFiles.add(tempFile);
-		FileOutputStream fos = new FileOutputStream(tempFile);
+		File tempFile = createTempFile("wcps", ".bin");
+		OutputStream fos = openOutputStream(tempFile);
 		
 		for (byte[] currentArray : wcpsoutput){
 			fos.write(currentArray);
@@ -16,6 +16,9 @@
  */
 package org.n52.wps.io;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -46,6 +49,22 @@ public abstract class AbstractIOHandler implements IOHandler {
 		this.supportedIDataTypes = new ArrayList<Class<?>>();
 	}
 	
+	/**
+	 * Creates a temporary file in the scratch space of the current execution.
+	 * The file is deleted when the execution is completed.
+	 */
+	protected File createTempFile(String prefix, String suffix) throws IOException {
+		return IOUtils.createTempFile(prefix, suffix);
+	}
+	
+	/**
+	 * Opens a file of the scratch space of the current execution for
+	 * writing, the bytes written are accounted against its quota.
+	 */
+	protected OutputStream openOutputStream(File file) throws IOException {
+		return IOUtils.openOutputStream(file);
+	}
+	
 	/**
 	 * Returns true if the given format is supported, else false.
 	 */ 
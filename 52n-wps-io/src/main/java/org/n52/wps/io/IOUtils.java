@@ -22,7 +22,6 @@ import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -38,6 +37,7 @@ import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.TransformerException;
 
 import org.apache.commons.codec.binary.Base64InputStream;
+import org.n52.wps.commons.context.ExecutionContextFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.apache.xpath.XPathAPI;
@@ -64,16 +64,39 @@ public class IOUtils {
 	
 	private static Logger LOGGER = LoggerFactory.getLogger(IOUtils.class);
 	
+	/**
+	 * Creates a temporary file in the scratch space of the current execution.
+	 * The file is deleted when the execution is completed.
+	 */
+	public static File createTempFile(String prefix, String suffix) throws IOException {
+		return ExecutionContextFactory.getContext().getScratchSpace().createTempFile(prefix, suffix);
+	}
+
+	/**
+	 * Creates a temporary directory in the scratch space of the current
+	 * execution. The directory is deleted when the execution is completed.
+	 */
+	public static File createTempDirectory(String prefix) throws IOException {
+		return ExecutionContextFactory.getContext().getScratchSpace().createTempDirectory(prefix);
+	}
+
+	/**
+	 * Opens a file of the scratch space of the current execution for writing.
+	 * The bytes written are accounted against the quota of the scratch space.
+	 */
+	public static OutputStream openOutputStream(File file) throws IOException {
+		return ExecutionContextFactory.getContext().getScratchSpace().openOutputStream(file);
+	}
+	
 	public static File writeBase64ToFile(InputStream input, String extension)
 			throws IOException {
 
-        File file = File.createTempFile(
+        File file = createTempFile(
                 "file" + UUID.randomUUID(),
-                "." + extension,
-                new File(System.getProperty("java.io.tmpdir")));
+                "." + extension);
         OutputStream outputStream = null;
         try {
-            outputStream = new FileOutputStream(file);
+            outputStream = openOutputStream(file);
             copyLarge(new Base64InputStream(input), outputStream);
         } finally {
             closeQuietly(outputStream);
@@ -84,13 +107,13 @@ public class IOUtils {
 	
 	public static File writeStreamToFile(InputStream inputStream, String extension)
 	throws IOException {
-		File file = File.createTempFile("file" + UUID.randomUUID(), "." + extension);
+		File file = createTempFile("file" + UUID.randomUUID(), "." + extension);
 		return writeStreamToFile(inputStream, extension, file);
 	}
 
 	public static File writeStreamToFile(InputStream inputStream,
 			String extension, File file) throws IOException {
-		FileOutputStream output = new FileOutputStream(file);
+		OutputStream output = openOutputStream(file);
 		
 		byte buf[]=new byte[1024];
 		int len;
@@ -132,9 +155,9 @@ public class IOUtils {
 	 *             if the zipping process fails.
 	 */
 	public static File zip(File... files) throws IOException {
-		File zip = File.createTempFile("zip" + UUID.randomUUID(), ".zip");
+		File zip = createTempFile("zip" + UUID.randomUUID(), ".zip");
 
-		ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip));
+		ZipOutputStream out = new ZipOutputStream(openOutputStream(zip));
 
 		byte[] buffer = new byte[4096];
 		for (File file : files) {
@@ -187,16 +210,13 @@ public class IOUtils {
 		ZipEntry entry;
 		File tempDir = directory;
 		if (tempDir == null || !directory.isDirectory()) {
-			tempDir = File.createTempFile("unzipped" + UUID.randomUUID(), "", new File(System
-					.getProperty("java.io.tmpdir")));
-			tempDir.delete();
-			tempDir.mkdir();
+			tempDir = createTempDirectory("unzipped" + UUID.randomUUID());
 		}
 		while ((entry = zipInputStream.getNextEntry()) != null) {
 			int count;
 			File entryFile = new File(tempDir, entry.getName());
 			entryFile.createNewFile();
-			FileOutputStream fos = new FileOutputStream(entryFile);
+			OutputStream fos = openOutputStream(entryFile);
 			BufferedOutputStream dest = new BufferedOutputStream(fos,
 					bufferLength);
 			while ((count = zipInputStream.read(buffer, 0, bufferLength)) != -1) {
@@ -225,15 +245,12 @@ public class IOUtils {
 		ZipInputStream zipInputStream = new ZipInputStream(
 				new BufferedInputStream(new FileInputStream(file)));
 		ZipEntry entry;
-		File tempDir = File.createTempFile("unzipped" + UUID.randomUUID(), "", new File(System
-				.getProperty("java.io.tmpdir")));
-		tempDir.delete();
-		tempDir.mkdir();
+		File tempDir = createTempDirectory("unzipped" + UUID.randomUUID());
 		while ((entry = zipInputStream.getNextEntry()) != null) {
 			int count;
 			File entryFile = new File(tempDir, entry.getName());
 			entryFile.createNewFile();
-			FileOutputStream fos = new FileOutputStream(entryFile);
+			OutputStream fos = openOutputStream(entryFile);
 			BufferedOutputStream dest = new BufferedOutputStream(fos,
 					bufferLength);
 			while ((count = zipInputStream.read(buffer, 0, bufferLength)) != -1) {
@@ -0,0 +1,53 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wps.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.n52.wps.io.data.IData;
+
+/**
+ * A generator that writes its output to a stream provided by the caller,
+ * instead of returning an <code>InputStream</code> that usually has to be
+ * backed by a temporary file.
+ */
+public interface IStreamingGenerator extends IGenerator {
+
+	/**
+	 * Writes the final output data produced by an IAlgorithm to the stream.
+	 * The stream is not closed.
+	 * 
+	 * @param data
+	 * @param outputStream
+	 * @param mimeType
+	 * @param schema
+	 */
+	public void writeTo(IData data, OutputStream outputStream, String mimeType, String schema) throws IOException;
+
+	/**
+	 * Writes the final output data produced by an IAlgorithm encoded in Base64
+	 * to the stream. The stream is not closed.
+	 * 
+	 * @param data
+	 * @param outputStream
+	 * @param mimeType
+	 * @param schema
+	 */
+	public void writeBase64To(IData data, OutputStream outputStream, String mimeType, String schema) throws IOException;
+
+}
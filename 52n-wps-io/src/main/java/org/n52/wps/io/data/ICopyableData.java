@@ -0,0 +1,33 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wps.io.data;
+
+/**
+ * Complex data that can be copied, so that an execution may modify or dispose
+ * its copy without affecting others, e.g. when the data is kept in a cache and
+ * handed to several executions.
+ */
+public interface ICopyableData extends IComplexData {
+
+	/**
+	 * @return a copy that can be modified and disposed independently of this
+	 *         data
+	 * @throws UnsupportedOperationException
+	 *             if this payload can not be copied
+	 */
+	ICopyableData copy();
+}
@@ -0,0 +1,31 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wps.io.data;
+
+/**
+ * Complex data that may read its payload from files in the scratch space of
+ * the execution it was created in. Such data is only valid during that
+ * execution and must not be shared with others, e.g. by a cache.
+ */
+public interface IScratchSpaceData extends IComplexData {
+
+	/**
+	 * @return <code>true</code> if the payload is backed by files in the
+	 *         scratch space of the execution
+	 */
+	boolean isBackedByScratchSpace();
+}
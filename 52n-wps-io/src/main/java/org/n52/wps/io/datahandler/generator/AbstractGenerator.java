@@ -16,32 +16,30 @@
  */
 package org.n52.wps.io.datahandler.generator;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.OutputStream;
 
 import org.apache.commons.codec.binary.Base64InputStream;
+import org.apache.commons.codec.binary.Base64OutputStream;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CloseShieldOutputStream;
 import org.n52.wps.FormatDocument.Format;
 import org.n52.wps.commons.WPSConfig;
 import org.n52.wps.io.AbstractIOHandler;
 import org.n52.wps.io.IGenerator;
 import org.n52.wps.io.IOHandler;
+import org.n52.wps.io.IStreamingGenerator;
 import org.n52.wps.io.data.IData;
 
 /**
  * @author Matthias Mueller, TU Dresden
  *
  */
-public abstract class AbstractGenerator extends AbstractIOHandler implements IGenerator {
-	
-	/**
-	 * A list of files that shall be deleted by destructor.
-	 * Convenience mechanism to delete temporary files that had
-	 * to be written during the generation procedure.
-	 */
-	protected List<File> finalizeFiles;
+public abstract class AbstractGenerator extends AbstractIOHandler implements IStreamingGenerator {
 	
 	public AbstractGenerator(){
 		super();
@@ -68,25 +66,50 @@ public abstract class AbstractGenerator extends AbstractIOHandler implements IGe
 				supportedEncodings.add(IOHandler.DEFAULT_ENCODING);
 			}			
 		}
-		
-		finalizeFiles = new ArrayList<File>();
 	}
 	
 	public InputStream generateBase64Stream(IData data, String mimeType, String schema) throws IOException {
 		return new Base64InputStream(generateStream(data, mimeType, schema), true);
 	}
-	
+
 	/**
-	 * Destructor deletes generated temporary files.
+	 * Copies the stream returned by {@link #generateStream(IData, String, String)}.
+	 * Generators that are able to write their output directly should override
+	 * this method.
 	 */
-	@Override
-	protected void finalize() throws Throwable {
-		
-		for (File currentFile : finalizeFiles){
-			currentFile.delete();
+	public void writeTo(IData data, OutputStream outputStream, String mimeType, String schema) throws IOException {
+		InputStream inputStream = generateStream(data, mimeType, schema);
+		if (inputStream == null) {
+			return;
 		}
-		
-		super.finalize();
+		try {
+			IOUtils.copy(inputStream, outputStream);
+		} finally {
+			inputStream.close();
+		}
+	}
+
+	public void writeBase64To(IData data, OutputStream outputStream, String mimeType, String schema) throws IOException {
+		Base64OutputStream base64 = new Base64OutputStream(new CloseShieldOutputStream(outputStream), true);
+		writeTo(data, base64, mimeType, schema);
+		// writes the final block, the output stream is kept open
+		base64.close();
+	}
+
+	/**
+	 * Writes the output of {@link #writeTo(IData, OutputStream, String, String)}
+	 * to a temporary file and returns its content. Allows generators that
+	 * override <code>writeTo</code> to implement <code>generateStream</code>.
+	 */
+	protected InputStream generateStreamFromTempFile(IData data, String mimeType, String schema) throws IOException {
+		File tempFile = createTempFile("wps", "tmp");
+		OutputStream outputStream = new BufferedOutputStream(openOutputStream(tempFile));
+		try {
+			writeTo(data, outputStream, mimeType, schema);
+		} finally {
+			outputStream.close();
+		}
+		return new FileInputStream(tempFile);
 	}
 
 }
@@ -33,6 +33,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import net.opengis.wps.x100.InputDescriptionType;
 import net.opengis.wps.x100.OutputDescriptionType;
@@ -53,10 +54,14 @@ import org.n52.wps.io.data.binding.literal.LiteralDoubleBinding;
 import org.n52.wps.io.data.binding.literal.LiteralFloatBinding;
 import org.n52.wps.io.data.binding.literal.LiteralIntBinding;
 import org.n52.wps.io.data.binding.literal.LiteralStringBinding;
+import org.n52.wps.server.ExceptionReport;
 import org.n52.wps.server.IAlgorithm;
+import org.n52.wps.server.process.ProcessSupervisor;
 
 public class MCProcessDelegator implements IAlgorithm {
 
+	private static final String PROCESS_BACKEND = "mc";
+
 	private final String identifier;
 	private List<String> errors;
 	private ProcessDescriptionType description = null;
@@ -184,8 +189,19 @@ public class MCProcessDelegator implements IAlgorithm {
 					+ identifier);
 		}
 
+		final AbstractProcessor supervisedProcessor = processor;
 		try {
-			processor.execute(0); // execute without any timeout
+			// the processor enforces the timeout of the backend itself, 0 means no timeout
+			ProcessSupervisor.getInstance().execute(PROCESS_BACKEND, new ProcessSupervisor.Execution<Void>() {
+				public Void execute(long timeoutMillis) throws IOException {
+					supervisedProcessor.execute(TimeUnit.MILLISECONDS.toSeconds(timeoutMillis + 999));
+					return null;
+				}
+			});
+		}
+		catch (ExceptionReport e) {
+			errors.add(e.getMessage());
+			throw new RuntimeException("Execution terminated with an error.");
 		}
 		catch (IllegalArgumentException e) {
 			errors.add(e.getMessage());
@@ -47,11 +47,14 @@ import org.n52.wps.io.data.GenericFileDataWithGT;
 import org.n52.wps.io.data.GenericFileDataConstants;
 import org.n52.wps.io.data.IData;
 import org.n52.wps.io.data.binding.complex.GenericFileDataWithGTBinding;
+import org.n52.wps.server.ExceptionReport;
 import org.n52.wps.server.IAlgorithm;
 import org.n52.wps.server.feed.movingcode.AlgorithmParameterType;
 import org.n52.wps.server.feed.movingcode.CommandLineParameter;
 import org.n52.wps.server.feed.movingcode.MovingCodeUtils;
 import org.n52.wps.server.feed.movingcode.MovingCodeObject;
+import org.n52.wps.server.process.ProcessResult;
+import org.n52.wps.server.process.ProcessSupervisor;
 
 /**
  * @author Matthias Mueller, TU Dresden
@@ -59,6 +62,7 @@ import org.n52.wps.server.feed.movingcode.MovingCodeObject;
  */
 public class PythonScriptDelegator implements IAlgorithm{
 	private static final String COMMAND = "cmd /c";
+	private static final String PROCESS_BACKEND = "python";
 	
 	private static Logger LOGGER = LoggerFactory.getLogger(PythonScriptDelegator.class);
 	
@@ -79,7 +83,7 @@ public class PythonScriptDelegator implements IAlgorithm{
 	}
 	
 	
-	public Map<String, IData> run(Map<String, List<IData>> inputData) {
+	public Map<String, IData> run(Map<String, List<IData>> inputData) throws ExceptionReport {
 		
 		String instanceExecutable = scriptWorkspace.getAbsolutePath() + mco.getAlgorithmURL().getPublicPath();
 		List<AlgorithmParameterType> params = mco.getParameters();
@@ -194,17 +198,28 @@ public class PythonScriptDelegator implements IAlgorithm{
 		return MovingCodeUtils.getOutputDataType(mco, id);
 	}
 	
-	private void executeScript(String command, File workspaceDir) //throws Exception
+	/**
+	 * @throws ExceptionReport
+	 *             if the command could not be started, e.g. as the server is
+	 *             busy
+	 */
+	private void executeScript(String command, File workspaceDir) throws ExceptionReport
 	{
 		try {
-			Process p = Runtime.getRuntime().exec(command, null, workspaceDir);
-			p.waitFor();
-			if (p.exitValue() == 0){
+			ProcessBuilder builder = new ProcessBuilder(ProcessSupervisor.tokenize(command));
+			builder.directory(workspaceDir);
+			ProcessResult result = ProcessSupervisor.getInstance().execute(PROCESS_BACKEND, builder);
+			if (result.isSuccessful()){
 				LOGGER.info("Successfull termination of command:\n" + command);
 			}
+			else if (result.isTimedOut()){
+				LOGGER.error("Command aborted after " + result.getDurationMillis() + " ms:\n" + command);
+				throw new IOException("Timeout exceeded");
+			}
 			else {
 				LOGGER.error("Abnormal termination of command:\n" + command);
-				LOGGER.error("Errorlevel / Exit Value: " + p.exitValue());
+				LOGGER.error("Errorlevel / Exit Value: " + result.getExitValue());
+				LOGGER.error("Error output:\n" + result.getErrorOutput());
 				throw new IOException();
 			}
 		}
@@ -212,10 +227,9 @@ public class PythonScriptDelegator implements IAlgorithm{
 			LOGGER.error("Error executing command:\n" + command);
 			e.printStackTrace();
 			//throw new Exception();
-		} catch (InterruptedException e) {
-			LOGGER.error("Execution interrupted! Command was:\n" + command);
-			e.printStackTrace();
-			//throw new Exception();
+		} catch (ExceptionReport e) {
+			LOGGER.error("Could not execute command:\n" + command, e);
+			throw e;
 		}
 	}
 	
@@ -30,9 +30,7 @@
 package org.n52.wps.server.r;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -44,8 +42,7 @@ import net.opengis.wps.x100.ProcessDescriptionType;
 import org.n52.wps.io.data.IData;
 import org.n52.wps.server.AbstractObservableAlgorithm;
 import org.n52.wps.server.ExceptionReport;
-import org.n52.wps.server.r.metadata.RAnnotationParser;
-import org.n52.wps.server.r.metadata.RProcessDescriptionCreator;
+import org.n52.wps.server.r.metadata.RScriptCache;
 import org.n52.wps.server.r.syntax.RAnnotation;
 import org.n52.wps.server.r.syntax.RAnnotationException;
 import org.n52.wps.server.r.syntax.RAnnotationType;
@@ -53,6 +50,7 @@ import org.n52.wps.server.r.util.RExecutor;
 import org.n52.wps.server.r.util.RLogger;
 import org.n52.wps.server.r.workspace.RIOHandler;
 import org.n52.wps.server.r.workspace.RSessionManager;
+import org.n52.wps.server.r.workspace.RSessionPool;
 import org.n52.wps.server.r.workspace.RWorkspaceManager;
 import org.rosuda.REngine.REXPMismatchException;
 import org.rosuda.REngine.Rserve.RserveException;
@@ -75,8 +73,6 @@ public class GenericRProcess extends AbstractObservableAlgorithm {
 
     private RIOHandler iohandler = new RIOHandler();
 
-    private RAnnotationParser parser;
-
     private File scriptFile = null;
 
     private boolean shutdownRServerAfterRun = false;
@@ -106,7 +102,6 @@ public class GenericRProcess extends AbstractObservableAlgorithm {
         this.config = R_Config.getInstance(); // call here because method is invoked by super constructor
 
         // Reading process information from script annotations:
-        InputStream rScriptStream = null;
         try {
             String wkn = getWellKnownName();
             log.debug("Loading file for {}", wkn);
@@ -122,18 +117,13 @@ public class GenericRProcess extends AbstractObservableAlgorithm {
                                           ExceptionReport.NO_APPLICABLE_CODE);
             }
 
-            rScriptStream = new FileInputStream(this.scriptFile);
-            if (this.parser == null)
-                this.parser = new RAnnotationParser(this.config); // prevent NullpointerException
-            this.annotations = this.parser.parseAnnotationsfromScript(rScriptStream);
-
-            // submits annotation with process informations to
-            // ProcessdescriptionCreator:
-            RProcessDescriptionCreator creator = new RProcessDescriptionCreator(this.config);
-            ProcessDescriptionType doc = creator.createDescribeProcessType(this.annotations,
-                                                                           wkn,
-                                                                           config.getScriptURL(wkn),
-                                                                           config.getSessionInfoURL());
+            // annotations and description are only created again if the script changed
+            RScriptCache cache = this.config.getScriptCache();
+            this.annotations = cache.getAnnotations(this.scriptFile);
+            ProcessDescriptionType doc = cache.getDescription(this.scriptFile,
+                                                              wkn,
+                                                              config.getScriptURL(wkn),
+                                                              config.getSessionInfoURL());
 
             log.debug("Created process description for {}:\n{}", wkn, doc.xmlText());
             return doc;
@@ -150,29 +140,28 @@ public class GenericRProcess extends AbstractObservableAlgorithm {
             log.error(e.getMessage(), e);
             throw new RuntimeException("Error creating process description: " + e.getMessage(), e);
         }
-        finally {
-            try {
-                if (rScriptStream != null)
-                    rScriptStream.close();
-            }
-            catch (IOException e) {
-                log.error("Error closing script stream.", e);
-            }
-        }
     }
 
     public Map<String, IData> run(Map<String, List<IData>> inputData) throws ExceptionReport {
         log.info("Running {} \n\tInput data: {}", this.toString(), Arrays.toString(inputData.entrySet().toArray()));
 
         FilteredRConnection rCon = null;
+        RSessionPool pool = shutdownRServerAfterRun ? null : config.getSessionPool();
+        RSessionPool.PooledSession pooledSession = null;
+        boolean reusable = false;
         try {
-            rCon = config.openRConnection();
+            if (pool != null) {
+                pooledSession = pool.borrow();
+                rCon = pooledSession.getConnection();
+            }
+            else
+                rCon = config.openRConnection();
             RLogger.logGenericRProcess(rCon,
                                        "Running algorithm with input "
                                                + Arrays.deepToString(inputData.entrySet().toArray()));
 
             RSessionManager session = new RSessionManager(rCon, config);
-            session.configureSession(getWellKnownName(), executor);
+            session.configureSession(getWellKnownName(), executor, pooledSession != null);
 
             RWorkspaceManager workspace = new RWorkspaceManager(rCon, this.iohandler, config);
             String originalWorkDir = workspace.prepareWorkspace(inputData, getWellKnownName());
@@ -206,10 +195,13 @@ public class GenericRProcess extends AbstractObservableAlgorithm {
                 workspace.saveImage("afterExecution");
             log.debug("RESULT: " + Arrays.toString(result.entrySet().toArray()));
 
-            session.cleanUp();
+            // a pooled session is reset by the pool, keeping the utility scripts
+            if (pooledSession == null)
+                session.cleanUp();
             workspace.cleanUpInR(originalWorkDir);
             workspace.cleanUpWithWPS();
 
+            reusable = true;
             return result;
         }
         catch (IOException e) {
@@ -237,7 +229,10 @@ public class GenericRProcess extends AbstractObservableAlgorithm {
             throw new ExceptionReport(message, "R", "R_Connection", e);
         }
         finally {
-            if (rCon != null) {
+            if (pooledSession != null) {
+                pool.release(pooledSession, reusable);
+            }
+            else if (rCon != null) {
                 if (shutdownRServerAfterRun) {
                     log.debug("Shutting down R completely...");
                     try {
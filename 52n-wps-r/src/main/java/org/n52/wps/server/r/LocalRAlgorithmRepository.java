@@ -29,11 +29,14 @@
 
 package org.n52.wps.server.r;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import net.opengis.wps.x100.ProcessDescriptionType;
 
@@ -41,10 +44,14 @@ import org.apache.xmlbeans.XmlError;
 import org.apache.xmlbeans.XmlOptions;
 import org.n52.wps.PropertyDocument.Property;
 import org.n52.wps.commons.WPSConfig;
+import org.n52.wps.server.ExceptionReport;
 import org.n52.wps.server.IAlgorithm;
 import org.n52.wps.server.ITransactionalAlgorithmRepository;
 import org.n52.wps.server.r.data.CustomDataTypeManager;
 import org.n52.wps.server.r.info.RProcessInfo;
+import org.n52.wps.server.r.syntax.RAnnotationException;
+import org.n52.wps.server.r.util.RScriptWatcher;
+import org.n52.wps.server.response.ResponseCache;
 import org.rosuda.REngine.Rserve.RConnection;
 import org.rosuda.REngine.Rserve.RserveException;
 import org.slf4j.Logger;
@@ -65,9 +72,12 @@ public class LocalRAlgorithmRepository implements ITransactionalAlgorithmReposit
 
     private R_Config rConfig;
 
+    private RScriptWatcher watcher;
+
     public LocalRAlgorithmRepository() {
         LOGGER.info("Initializing LocalRAlgorithmRepository");
-        this.algorithms = new HashMap<String, IAlgorithm>();
+        // algorithms of changed scripts are replaced by the script watcher thread
+        this.algorithms = new ConcurrentHashMap<String, IAlgorithm>();
         this.rConfig = R_Config.getInstance();
 
         // Check WPS Config properties:
@@ -81,6 +91,63 @@ public class LocalRAlgorithmRepository implements ITransactionalAlgorithmReposit
 
         // finally add all available algorithms from the R config
         addAllAlgorithms();
+
+        if (this.rConfig.getWatchScripts())
+            startWatcher();
+    }
+
+    private void startWatcher() {
+        try {
+            this.watcher = new RScriptWatcher(this.rConfig.getScriptDirFullPath(), new RScriptWatcher.Listener() {
+                @Override
+                public void scriptChanged(File script) {
+                    reloadAlgorithm(script);
+                }
+
+                @Override
+                public void scriptDeleted(File script) {
+                    rConfig.getScriptCache().remove(script);
+                    LOGGER.info("Script {} was deleted, its process is removed with the next configuration update",
+                                script);
+                }
+            });
+            this.watcher.start();
+        }
+        catch (IOException e) {
+            LOGGER.error("Could not watch the script directories, changed scripts are loaded on restart", e);
+        }
+    }
+
+    /**
+     * Parses a changed script again and replaces the algorithm of the script if it is registered.
+     */
+    private void reloadAlgorithm(File script) {
+        try {
+            if ( !this.rConfig.getScriptCache().refresh(script)) {
+                LOGGER.debug("Content of script {} did not change", script);
+                return;
+            }
+
+            String wkn = this.rConfig.getWKNForScriptFile(script.getAbsoluteFile());
+            if (wkn == null || !this.algorithms.containsKey(wkn)) {
+                LOGGER.info("Script {} is not registered, its process is added with the next configuration update",
+                            script);
+                return;
+            }
+
+            addAlgorithm(wkn);
+            ResponseCache.getInstance().invalidate();
+            LOGGER.info("Reloaded process {} from changed script {}", wkn, script);
+        }
+        catch (IOException e) {
+            LOGGER.error("Could not reload script {}", script, e);
+        }
+        catch (RAnnotationException e) {
+            LOGGER.error("Could not reload script {}", script, e);
+        }
+        catch (ExceptionReport e) {
+            LOGGER.error("Could not reload script {}", script, e);
+        }
     }
 
     /**
@@ -117,6 +184,8 @@ public class LocalRAlgorithmRepository implements ITransactionalAlgorithmReposit
         List<RProcessInfo> processInfoList = new ArrayList<RProcessInfo>();
         Property[] propertyArray = WPSConfig.getInstance().getPropertiesForRepositoryClass(this.getClass().getCanonicalName());
 
+        preloadScripts(propertyArray);
+
         for (Property property : propertyArray) {
             RProcessInfo processInfo = null;
             String algorithm_wkn = property.getStringValue();
@@ -172,6 +241,28 @@ public class LocalRAlgorithmRepository implements ITransactionalAlgorithmReposit
         RProcessInfo.setRProcessInfoList(processInfoList);
     }
 
+    /**
+     * Parses and describes the scripts of all active algorithms in parallel, so that loading them one after
+     * the other hits the script cache.
+     */
+    private void preloadScripts(Property[] propertyArray) {
+        Map<String, File> scripts = new HashMap<String, File>();
+        for (Property property : propertyArray) {
+            if ( !property.getName().equalsIgnoreCase(RWPSConfigVariables.ALGORITHM_PROPERTY_NAME.toString())
+                    || !property.getActive())
+                continue;
+
+            String wkn = property.getStringValue();
+            try {
+                scripts.put(wkn, this.rConfig.getScriptFileForWKN(wkn));
+            }
+            catch (ExceptionReport e) {
+                LOGGER.debug("Not preloading unavailable script of process {}", wkn);
+            }
+        }
+        this.rConfig.getScriptCache().preloadDescriptions(scripts);
+    }
+
     public boolean addAlgorithms(String[] algorithms) {
         for (String algorithmClassName : algorithms) {
             addAlgorithm(algorithmClassName);
@@ -286,6 +377,8 @@ public class LocalRAlgorithmRepository implements ITransactionalAlgorithmReposit
     @Override
     public void shutdown() {
         LOGGER.info("Shutting down ...");
+        if (this.watcher != null)
+            this.watcher.stop();
         this.algorithms.clear();
     }
 
@@ -88,6 +88,8 @@ public class RPropertyChangeManager implements PropertyChangeListener {
         LOGGER.info("received PropertyChangeEvent: " + evt.getPropertyName());
         updateRepositoryConfiguration();
         CustomDataTypeManager.getInstance().update();
+        // pooled sessions might use an outdated Rserve host or utility scripts
+        config.resetSessionPool();
         // deleteUnregisteredScripts();
         // TODO: How might processes be renamed?
 
@@ -283,6 +285,9 @@ public class RPropertyChangeManager implements PropertyChangeListener {
         File[] scripts = directory.listFiles(new RFileExtensionFilter());
         LOGGER.debug("Loading {} script files from {}: {}", scripts.length, directory, Arrays.toString(scripts));
 
+        // parse all scripts in parallel before they are registered one after the other
+        config.getScriptCache().preloadAnnotations(Arrays.asList(scripts));
+
         for (File scriptf : scripts) {
             try {
                 boolean registered = config.registerScript(scriptf);
@@ -31,7 +31,7 @@ package org.n52.wps.server.r;
 
 public enum RWPSConfigVariables {
 
-    SCRIPT_DIR, RESOURCE_DIR, ALGORITHM_PROPERTY_NAME, ENABLE_BATCH_START, RSERVE_HOST, RSERVE_PORT, RSERVE_USER, RSERVE_PASSWORD, R_DATATYPE_CONFIG, R_WORK_DIR_STRATEGY, R_WORK_DIR_NAME, R_CACHE_PROCESSES, R_SESSION_MEMORY_LIMIT;
+    SCRIPT_DIR, RESOURCE_DIR, ALGORITHM_PROPERTY_NAME, ENABLE_BATCH_START, RSERVE_HOST, RSERVE_PORT, RSERVE_USER, RSERVE_PASSWORD, R_DATATYPE_CONFIG, R_WORK_DIR_STRATEGY, R_WORK_DIR_NAME, R_CACHE_PROCESSES, R_SESSION_MEMORY_LIMIT, R_POOL_MAX_SESSIONS, R_POOL_MAX_USES, R_CACHE_DIR, R_WATCH_SCRIPTS;
 
     public String toString() {
         switch (this) {
@@ -61,6 +61,14 @@ public enum RWPSConfigVariables {
             return "R_cacheDescriptions";
         case R_SESSION_MEMORY_LIMIT:
             return "R_session_memoryLimit";
+        case R_POOL_MAX_SESSIONS:
+            return "R_pool_maxSessions";
+        case R_POOL_MAX_USES:
+            return "R_pool_maxUses";
+        case R_CACHE_DIR:
+            return "R_cacheDirectory";
+        case R_WATCH_SCRIPTS:
+            return "R_watchScripts";
         default:
             return "NO STRING REPRESENTATION DEFINED FOR ENUM CONSTANT!";
         }
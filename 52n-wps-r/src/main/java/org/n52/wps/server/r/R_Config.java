@@ -30,7 +30,6 @@
 package org.n52.wps.server.r;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.MalformedURLException;
@@ -44,13 +43,14 @@ import org.n52.wps.ServerDocument.Server;
 import org.n52.wps.commons.WPSConfig;
 import org.n52.wps.server.ExceptionReport;
 import org.n52.wps.server.WebProcessingService;
-import org.n52.wps.server.r.metadata.RAnnotationParser;
+import org.n52.wps.server.r.metadata.RScriptCache;
 import org.n52.wps.server.r.syntax.RAnnotation;
 import org.n52.wps.server.r.syntax.RAnnotationException;
 import org.n52.wps.server.r.syntax.RAnnotationType;
 import org.n52.wps.server.r.syntax.RAttribute;
 import org.n52.wps.server.r.util.RConnector;
 import org.n52.wps.server.r.util.RStarter;
+import org.n52.wps.server.r.workspace.RSessionPool;
 import org.rosuda.REngine.Rserve.RserveException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -79,6 +79,13 @@ public class R_Config {
 
     private static final boolean DEFAULT_ENABLEBATCHSTART = false;
 
+    /** sessions are not pooled by default, Rserve on Windows does not support parallel sessions */
+    private static final int DEFAULT_POOL_MAX_SESSIONS = 0;
+
+    private static final int DEFAULT_POOL_MAX_USES = 50;
+
+    private static final boolean DEFAULT_WATCH_SCRIPTS = true;
+
     private static final String DIR_DELIMITER = ";";
 
     /** R scripts with utility functions to pre-load */
@@ -90,8 +97,6 @@ public class R_Config {
 
     private RConnector connector;
 
-    private RAnnotationParser annotationParser;
-
     /** Maps current R-script files to identifiers **/
     private HashMap<File, String> fileToWknMap = new HashMap<File, String>();
 
@@ -103,6 +108,10 @@ public class R_Config {
 
     private RStarter starter;
 
+    private RSessionPool sessionPool;
+
+    private RScriptCache scriptCache;
+
     private R_Config() {
         this.starter = new RStarter();
         this.connector = new RConnector(starter);
@@ -121,8 +130,6 @@ public class R_Config {
         catch (Exception e) {
             LOGGER.error("Error getting full path of baseDir and configDir.", e);
         }
-
-        this.annotationParser = new RAnnotationParser(this);
     }
 
     public static R_Config getInstance() {
@@ -225,23 +232,16 @@ public class R_Config {
         return new URL(urlString);
     }
 
-    protected boolean registerScript(File file) throws RAnnotationException, ExceptionReport {
+    protected boolean registerScript(File file) throws RAnnotationException, ExceptionReport, IOException {
         boolean registered = false;
-        FileInputStream fis = null;
-        try {
-            fis = new FileInputStream(file);
-        }
-        catch (FileNotFoundException e) {
-            LOGGER.error("Could not create input stream for file {}", file);
-        }
 
         if (fileToWknMap.containsKey(file.getAbsoluteFile()))
             LOGGER.debug("File already registered, not doint it again: {}", file);
         else {
 
-            LOGGER.info("Registering script file {} from input {}", file, fis);
+            LOGGER.info("Registering script file {}", file);
 
-            List<RAnnotation> annotations = annotationParser.parseAnnotationsfromScript(fis);
+            List<RAnnotation> annotations = getScriptCache().getAnnotations(file);
             if (annotations.size() < 1) {
                 LOGGER.warn("Could not parse any annotations from file '{}'. Did not load the script.", file);
                 registered = false;
@@ -285,14 +285,6 @@ public class R_Config {
             }
         }
 
-        if (fis != null)
-            try {
-                fis.close();
-            }
-            catch (IOException e) {
-                LOGGER.error("Could not close input stream for file {}", file);
-            }
-
         return registered;
     }
 
@@ -370,15 +362,9 @@ public class R_Config {
     }
 
     public boolean isScriptValid(String wkn) {
-        FileInputStream fis = null;
-
         try {
             File file = getScriptFileForWKN(wkn);
-            // RAnnotationParser parser = new RAnnotationParser();
-            fis = new FileInputStream(file);
-            boolean valid = annotationParser.validateScript(fis, wkn);
-
-            return valid;
+            return getScriptCache().validateScript(file, wkn);
         }
         catch (IOException e) {
             LOGGER.error("Script file unavailable for process " + wkn + ".", e);
@@ -388,15 +374,6 @@ public class R_Config {
             LOGGER.error("Validation of process " + wkn + " failed.", e);
             return false;
         }
-        finally {
-            if (fis != null)
-                try {
-                    fis.close();
-                }
-                catch (IOException e) {
-                    LOGGER.error("Could not flose file input.", e);
-                }
-        }
     }
 
     public void killRserveOnWindows() {
@@ -418,6 +395,75 @@ public class R_Config {
                                                this.getRServePassword());
     }
 
+    /**
+     * @return the pool of warm R sessions, or <code>null</code> if {@link RWPSConfigVariables#R_POOL_MAX_SESSIONS}
+     *         is not positive and a new connection has to be opened for every run
+     */
+    public synchronized RSessionPool getSessionPool() {
+        if (this.sessionPool == null) {
+            int maxSessions = getIntConfigVariable(RWPSConfigVariables.R_POOL_MAX_SESSIONS, DEFAULT_POOL_MAX_SESSIONS);
+            if (maxSessions > 0)
+                this.sessionPool = new RSessionPool(this,
+                                                    maxSessions,
+                                                    getIntConfigVariable(RWPSConfigVariables.R_POOL_MAX_USES,
+                                                                         DEFAULT_POOL_MAX_USES));
+        }
+        return this.sessionPool;
+    }
+
+    /**
+     * Closes the session pool so that it is recreated with the current configuration on the next run.
+     */
+    public synchronized void resetSessionPool() {
+        if (this.sessionPool != null) {
+            this.sessionPool.close();
+            this.sessionPool = null;
+        }
+    }
+
+    /**
+     * @return the cache of script annotations and process descriptions, which are stored in the directory
+     *         {@link RWPSConfigVariables#R_CACHE_DIR} if it is set
+     */
+    public synchronized RScriptCache getScriptCache() {
+        if (this.scriptCache == null) {
+            File directory = null;
+            String path = getConfigVariable(RWPSConfigVariables.R_CACHE_DIR);
+            if (path != null && !path.trim().isEmpty()) {
+                directory = new File(path.trim());
+                if ( !directory.isAbsolute())
+                    directory = new File(WebProcessingService.BASE_DIR, path.trim());
+            }
+            this.scriptCache = new RScriptCache(this, directory);
+        }
+        return this.scriptCache;
+    }
+
+    /**
+     * @return <code>true</code> if the script directories are watched for changed scripts
+     */
+    public boolean getWatchScripts() {
+        String s = getConfigVariable(RWPSConfigVariables.R_WATCH_SCRIPTS);
+        if (s == null || s.trim().isEmpty())
+            return DEFAULT_WATCH_SCRIPTS;
+        return Boolean.parseBoolean(s.trim());
+    }
+
+    private int getIntConfigVariable(RWPSConfigVariables key, int defaultValue) {
+        String value = getConfigVariable(key);
+        if (value != null && !value.trim().isEmpty()) {
+            try {
+                return Integer.parseInt(value.trim());
+            }
+            catch (NumberFormatException e) {
+                LOGGER.warn("Config variable {} does not contain a parseble integer. Using default {}",
+                            key,
+                            defaultValue);
+            }
+        }
+        return defaultValue;
+    }
+
     public String getRServePassword() {
         return getConfigVariable(RWPSConfigVariables.RSERVE_PASSWORD);
     }
@@ -30,15 +30,12 @@
 package org.n52.wps.server.r.info;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
 import java.util.List;
 
 import org.n52.wps.server.ExceptionReport;
 import org.n52.wps.server.r.R_Config;
-import org.n52.wps.server.r.metadata.RAnnotationParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -60,28 +57,15 @@ public class RProcessInfo {
         this.wkn = wkn;
         this.config = config;
 
-        File scriptfile;
-        FileInputStream fis = null;
         try {
-            scriptfile = config.getScriptFileForWKN(wkn);
-            RAnnotationParser parser = new RAnnotationParser(this.config);
-            fis = new FileInputStream(scriptfile);
-            this.isValid = parser.validateScript(fis, wkn);
+            File scriptfile = config.getScriptFileForWKN(wkn);
+            this.isValid = config.getScriptCache().validateScript(scriptfile, wkn);
         }
         catch (Exception e) {
             LOGGER.error("Script validation failed. Last exception stored for the process information.", e);
             this.lastException = e;
             this.isValid = false;
         }
-        finally {
-            if (fis != null)
-                try {
-                    fis.close();
-                }
-                catch (IOException e) {
-                    LOGGER.error("Could not close file input stream of script file.", e);
-                }
-        }
     }
 
     public String getWkn() {
@@ -0,0 +1,455 @@
+/**
+ * ﻿Copyright (C) 2010 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+
+package org.n52.wps.server.r.metadata;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.opengis.wps.x100.ProcessDescriptionType;
+
+import org.apache.xmlbeans.XmlException;
+import org.apache.xmlbeans.XmlObject;
+import org.n52.wps.commons.WPSConfig;
+import org.n52.wps.server.ExceptionReport;
+import org.n52.wps.server.r.R_Config;
+import org.n52.wps.server.r.data.RDataTypeRegistry;
+import org.n52.wps.server.r.data.RTypeDefinition;
+import org.n52.wps.server.r.syntax.RAnnotation;
+import org.n52.wps.server.r.syntax.RAnnotationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches the annotations and process descriptions of R scripts by the SHA-1 hash of the script content, so
+ * that a script is only parsed again if it was changed.
+ * 
+ * Valid process descriptions are also stored in a directory, if one is configured, and survive restarts of
+ * the service. The key of a stored description covers everything it is created from: the script content,
+ * the process identifier, the URLs of the script, the session info and the resources, the custom data
+ * types, and the configured data handlers, which determine the supported formats.
+ */
+public class RScriptCache {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(RScriptCache.class);
+
+    private static final String DESCRIPTION_FILE_SUFFIX = ".xml";
+
+    private static final String VALIDATION_URL = "http://some.valid.url/";
+
+    private final R_Config config;
+
+    private final File directory;
+
+    private final ConcurrentMap<File, ScriptEntry> entries = new ConcurrentHashMap<File, ScriptEntry>();
+
+    private volatile DataHandlersFingerprint dataHandlers;
+
+    /**
+     * @param directory
+     *        the directory to store process descriptions in, or <code>null</code> to cache them in memory only
+     */
+    public RScriptCache(R_Config config, File directory) {
+        this.config = config;
+        this.directory = directory;
+
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            LOGGER.warn("Could not create the description cache directory {}", directory);
+        }
+        LOGGER.info("NEW {}", this);
+    }
+
+    /**
+     * @return the annotations of the script, which are parsed only if the script or the custom data types
+     *         changed since the last call
+     */
+    public List<RAnnotation> getAnnotations(File script) throws IOException, RAnnotationException {
+        return getEntry(script).annotations;
+    }
+
+    /**
+     * @return the process description of the script, which is only created if it is neither in memory nor
+     *         stored in the cache directory
+     */
+    public ProcessDescriptionType getDescription(File script, String wkn, URL scriptUrl, URL sessionInfoUrl) throws IOException,
+            RAnnotationException,
+            ExceptionReport {
+        return getDescription(getEntry(script), wkn, scriptUrl, sessionInfoUrl).document;
+    }
+
+    /**
+     * Validates a script like {@link RAnnotationParser#validateScript(InputStream, String)}, the result is
+     * cached with the description.
+     * 
+     * @throws ExceptionReport
+     *         if the created process description is not valid
+     */
+    public boolean validateScript(File script, String wkn) throws IOException, RAnnotationException, ExceptionReport {
+        URL url = new URL(VALIDATION_URL);
+        Description description = getDescription(getEntry(script), wkn, url, url);
+        if ( !description.valid)
+            throw new ExceptionReport("Invalid R algorithm. The process description created from the script is not valid.",
+                                      ExceptionReport.NO_APPLICABLE_CODE);
+        return true;
+    }
+
+    /**
+     * Parses the script again if its content changed.
+     * 
+     * @return <code>true</code> if the content of the script changed
+     */
+    public boolean refresh(File script) throws IOException, RAnnotationException {
+        ScriptEntry old = this.entries.get(script.getAbsoluteFile());
+        ScriptEntry current = getEntry(script);
+        return old == null || !old.hash.equals(current.hash);
+    }
+
+    public void remove(File script) {
+        this.entries.remove(script.getAbsoluteFile());
+    }
+
+    /**
+     * Parses the annotations of the given scripts in parallel.
+     */
+    public void preloadAnnotations(Collection<File> scripts) {
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+        for (final File script : scripts) {
+            tasks.add(new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    return getEntry(script);
+                }
+            });
+        }
+        runInParallel(tasks);
+    }
+
+    /**
+     * Parses, validates and describes the scripts of the given processes in parallel.
+     * 
+     * @param scripts
+     *        the script files by process identifier
+     */
+    public void preloadDescriptions(Map<String, File> scripts) {
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+        for (final Entry<String, File> script : scripts.entrySet()) {
+            tasks.add(new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    String wkn = script.getKey();
+                    validateScript(script.getValue(), wkn);
+                    return getDescription(script.getValue(),
+                                          wkn,
+                                          config.getScriptURL(wkn),
+                                          config.getSessionInfoURL());
+                }
+            });
+        }
+        runInParallel(tasks);
+    }
+
+    private static void runInParallel(List<Callable<Object>> tasks) {
+        if (tasks.isEmpty())
+            return;
+
+        long start = System.currentTimeMillis();
+        int threads = Math.min(tasks.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (Future<Object> future : executor.invokeAll(tasks)) {
+                try {
+                    future.get();
+                }
+                catch (ExecutionException e) {
+                    // the error is raised again when the script is loaded
+                    LOGGER.debug("Could not preload script", e.getCause());
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        LOGGER.info("Preloaded {} scripts with {} threads in {} ms",
+                    tasks.size(),
+                    threads,
+                    System.currentTimeMillis() - start);
+    }
+
+    private ScriptEntry getEntry(File script) throws IOException, RAnnotationException {
+        File file = script.getAbsoluteFile();
+        long lastModified = file.lastModified();
+        long length = file.length();
+        String dataTypes = getDataTypesFingerprint();
+
+        ScriptEntry entry = this.entries.get(file);
+        if (entry != null && entry.lastModified == lastModified && entry.length == length
+                && entry.dataTypes.equals(dataTypes))
+            return entry;
+
+        byte[] content = readFile(file);
+        String hash = sha1(content);
+        if (entry != null && entry.hash.equals(hash) && entry.dataTypes.equals(dataTypes)) {
+            entry = new ScriptEntry(hash, lastModified, length, dataTypes, entry.annotations, entry.descriptions);
+        }
+        else {
+            LOGGER.debug("Parsing annotations of script {} with hash {}", file, hash);
+            RAnnotationParser parser = new RAnnotationParser(this.config);
+            List<RAnnotation> annotations = parser.parseAnnotationsfromScript(new ByteArrayInputStream(content));
+            entry = new ScriptEntry(hash,
+                                    lastModified,
+                                    length,
+                                    dataTypes,
+                                    Collections.unmodifiableList(annotations),
+                                    new ConcurrentHashMap<String, Description>());
+        }
+        this.entries.put(file, entry);
+        return entry;
+    }
+
+    private Description getDescription(ScriptEntry entry, String wkn, URL scriptUrl, URL sessionInfoUrl) throws ExceptionReport,
+            RAnnotationException,
+            MalformedURLException {
+        String key = sha1(toBytes(entry.hash + "\n" + entry.dataTypes + "\n" + wkn + "\n" + scriptUrl + "\n"
+                + sessionInfoUrl + "\n" + this.config.getResourceDirURL() + "\n" + getDataHandlersFingerprint()));
+
+        Description description = entry.descriptions.get(key);
+        if (description != null)
+            return description;
+
+        description = load(key);
+        if (description == null) {
+            RProcessDescriptionCreator creator = new RProcessDescriptionCreator(this.config);
+            ProcessDescriptionType document = creator.createDescribeProcessType(entry.annotations,
+                                                                                wkn,
+                                                                                scriptUrl,
+                                                                                sessionInfoUrl);
+            description = new Description(document, document.validate());
+            if (description.valid)
+                store(key, document);
+        }
+
+        entry.descriptions.put(key, description);
+        return description;
+    }
+
+    private Description load(String key) {
+        if (this.directory == null)
+            return null;
+
+        File file = new File(this.directory, key + DESCRIPTION_FILE_SUFFIX);
+        if ( !file.isFile())
+            return null;
+
+        try {
+            // only valid descriptions are stored
+            return new Description(ProcessDescriptionType.Factory.parse(file), true);
+        }
+        catch (XmlException e) {
+            LOGGER.warn("Could not load cached description {}", file, e);
+        }
+        catch (IOException e) {
+            LOGGER.warn("Could not load cached description {}", file, e);
+        }
+        return null;
+    }
+
+    private void store(String key, ProcessDescriptionType document) {
+        if (this.directory == null)
+            return;
+
+        File file = new File(this.directory, key + DESCRIPTION_FILE_SUFFIX);
+        try {
+            // write to a temporary file first so that concurrent readers never see a partial description
+            File temp = File.createTempFile(key, ".tmp", this.directory);
+            document.save(temp);
+            if ( !temp.renameTo(file)) {
+                temp.delete();
+                LOGGER.debug("Could not store cached description {}", file);
+            }
+        }
+        catch (IOException e) {
+            LOGGER.warn("Could not store cached description {}", file, e);
+        }
+    }
+
+    private static String getDataTypesFingerprint() {
+        Map<String, String> types = new TreeMap<String, String>();
+        for (RTypeDefinition type : RDataTypeRegistry.getInstance().getCustomDataTypes())
+            types.put(type.getKey(), type.getProcessKey() + "," + type.getEncoding() + "," + type.getSchema() + ","
+                    + type.isComplex());
+        return types.toString();
+    }
+
+    /**
+     * @return the hash of the configured parsers and generators, which is only computed again if the
+     *         configuration was reloaded
+     */
+    private String getDataHandlersFingerprint() {
+        XmlObject current = WPSConfig.getInstance().getWPSConfig().getDatahandlers();
+        DataHandlersFingerprint fingerprint = this.dataHandlers;
+        if (fingerprint == null || fingerprint.dataHandlers != current) {
+            fingerprint = new DataHandlersFingerprint(current, sha1(toBytes(current.xmlText())));
+            this.dataHandlers = fingerprint;
+        }
+        return fingerprint.hash;
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] content = new byte[(int) file.length()];
+            int read = 0;
+            while (read < content.length) {
+                int n = in.read(content, read, content.length - read);
+                if (n < 0)
+                    break;
+                read += n;
+            }
+            if (read < content.length) {
+                byte[] truncated = new byte[read];
+                System.arraycopy(content, 0, truncated, 0, read);
+                return truncated;
+            }
+            return content;
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    private static byte[] toBytes(String s) {
+        try {
+            return s.getBytes("UTF-8");
+        }
+        catch (IOException e) {
+            // UTF-8 is supported by every Java platform
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String sha1(byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(content);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest)
+                hex.append(Character.forDigit( (b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            return hex.toString();
+        }
+        catch (NoSuchAlgorithmException e) {
+            // SHA-1 is supported by every Java platform
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("RScriptCache [directory = ").append(this.directory);
+        sb.append(", scripts = ").append(this.entries.size()).append("]");
+        return sb.toString();
+    }
+
+    private static class ScriptEntry {
+
+        final String hash;
+
+        final long lastModified;
+
+        final long length;
+
+        final String dataTypes;
+
+        final List<RAnnotation> annotations;
+
+        final ConcurrentMap<String, Description> descriptions;
+
+        ScriptEntry(String hash,
+                    long lastModified,
+                    long length,
+                    String dataTypes,
+                    List<RAnnotation> annotations,
+                    ConcurrentMap<String, Description> descriptions) {
+            this.hash = hash;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.dataTypes = dataTypes;
+            this.annotations = annotations;
+            this.descriptions = descriptions;
+        }
+    }
+
+    private static class DataHandlersFingerprint {
+
+        final XmlObject dataHandlers;
+
+        final String hash;
+
+        DataHandlersFingerprint(XmlObject dataHandlers, String hash) {
+            this.dataHandlers = dataHandlers;
+            this.hash = hash;
+        }
+    }
+
+    private static class Description {
+
+        final ProcessDescriptionType document;
+
+        final boolean valid;
+
+        Description(ProcessDescriptionType document, boolean valid) {
+            this.document = document;
+            this.valid = valid;
+        }
+    }
+
+}
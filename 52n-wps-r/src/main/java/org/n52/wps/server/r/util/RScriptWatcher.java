@@ -0,0 +1,141 @@
+/**
+ * ﻿Copyright (C) 2010 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+
+package org.n52.wps.server.r.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collection;
+
+import org.n52.wps.server.r.R_Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watches the script directories and notifies a listener about created, changed and deleted R scripts.
+ */
+public class RScriptWatcher implements Runnable {
+
+    public static interface Listener {
+
+        void scriptChanged(File script);
+
+        void scriptDeleted(File script);
+
+    }
+
+    private static Logger LOGGER = LoggerFactory.getLogger(RScriptWatcher.class);
+
+    private final WatchService watchService;
+
+    private final Listener listener;
+
+    private final Thread thread;
+
+    public RScriptWatcher(Collection<File> directories, Listener listener) throws IOException {
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.listener = listener;
+
+        for (File directory : directories) {
+            if ( !directory.isDirectory()) {
+                LOGGER.warn("Cannot watch script directory {}", directory);
+                continue;
+            }
+            directory.toPath().register(this.watchService,
+                                        StandardWatchEventKinds.ENTRY_CREATE,
+                                        StandardWatchEventKinds.ENTRY_MODIFY,
+                                        StandardWatchEventKinds.ENTRY_DELETE);
+            LOGGER.debug("Watching script directory {}", directory);
+        }
+
+        this.thread = new Thread(this, "wps4r-script-watcher");
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        this.thread.start();
+    }
+
+    public void stop() {
+        try {
+            this.watchService.close();
+        }
+        catch (IOException e) {
+            LOGGER.warn("Could not close watch service", e);
+        }
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = this.watchService.take();
+            }
+            catch (InterruptedException e) {
+                return;
+            }
+            catch (ClosedWatchServiceException e) {
+                return;
+            }
+
+            Path directory = (Path) key.watchable();
+            for (WatchEvent< ? > event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+                    continue;
+
+                File script = directory.resolve((Path) event.context()).toFile();
+                if ( !script.getName().endsWith(R_Config.SCRIPT_FILE_SUFFIX))
+                    continue;
+
+                LOGGER.debug("Script event {} for {}", event.kind(), script);
+                try {
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE)
+                        this.listener.scriptDeleted(script);
+                    else if (script.isFile())
+                        this.listener.scriptChanged(script);
+                }
+                catch (RuntimeException e) {
+                    LOGGER.error("Could not handle change of script {}", script, e);
+                }
+            }
+
+            if ( !key.reset())
+                LOGGER.warn("Script directory {} is not watched anymore", directory);
+        }
+    }
+
+}
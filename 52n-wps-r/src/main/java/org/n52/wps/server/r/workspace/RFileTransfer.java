@@ -0,0 +1,409 @@
+/**
+ * ﻿Copyright (C) 2010 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+
+package org.n52.wps.server.r.workspace;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.UUID;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.rosuda.REngine.REXPMismatchException;
+import org.rosuda.REngine.Rserve.RConnection;
+import org.rosuda.REngine.Rserve.RserveException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Moves files between the WPS and the R working directory.
+ * 
+ * If the R working directory is a local directory (which is probed once by creating a file locally and
+ * checking for it in R), files are linked or copied locally and outputs are used in place, so no bytes pass
+ * the Rserve connection. Only files in the scratch space of the execution are hard linked, other files like
+ * script resources are copied so that a script changing its files in place does not change the originals.
+ * Otherwise files are streamed in chunks of {@value #BUFFER_SIZE} bytes. Archives are
+ * unpacked in Java and shapefiles are transferred component by component with their final names, so no R
+ * calls are needed to unzip and rename inputs, and the R working directory is listed at most once for all
+ * outputs.
+ * 
+ * The time spent and the bytes moved are counted per phase, see {@link #toString()}.
+ */
+public class RFileTransfer {
+
+    private static Logger log = LoggerFactory.getLogger(RFileTransfer.class);
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private static final String PROBE_PREFIX = ".wps4r-probe-";
+
+    private final RConnection connection;
+
+    private final RWorkspace workspace;
+
+    private final File scratchDirectory;
+
+    private Boolean shared;
+
+    private String[] workDirListing;
+
+    private long probeNanos = 0;
+
+    private long uploadNanos = 0;
+
+    private long uploadBytes = 0;
+
+    private int uploadFiles = 0;
+
+    private long downloadNanos = 0;
+
+    private long downloadBytes = 0;
+
+    private int downloadFiles = 0;
+
+    private int linkedFiles = 0;
+
+    private int rCalls = 0;
+
+    /**
+     * @param workspace
+     *        the prepared workspace, or <code>null</code> if the R working directory is unknown so that all
+     *        files are streamed
+     */
+    public RFileTransfer(RConnection connection, RWorkspace workspace) {
+        this(connection, workspace, null);
+    }
+
+    /**
+     * @param workspace
+     *        the prepared workspace, or <code>null</code> if the R working directory is unknown so that all
+     *        files are streamed
+     * @param scratchDirectory
+     *        the scratch space directory of the execution, files in it may be hard linked to the R working
+     *        directory, or <code>null</code> if all files are copied
+     */
+    public RFileTransfer(RConnection connection, RWorkspace workspace, File scratchDirectory) {
+        this.connection = connection;
+        this.workspace = workspace;
+        this.scratchDirectory = scratchDirectory;
+    }
+
+    /**
+     * @return <code>true</code> if the R working directory can be accessed directly by the WPS
+     */
+    public boolean isSharedFilesystem() {
+        if (this.shared == null) {
+            long start = System.nanoTime();
+            this.shared = Boolean.valueOf(probe());
+            this.probeNanos += System.nanoTime() - start;
+            log.debug("R working directory {} is shared with the WPS: {}", getPath(), this.shared);
+        }
+        return this.shared.booleanValue();
+    }
+
+    boolean probe() {
+        if (this.workspace == null || getPath() == null || !this.workspace.isWpsWorkDirIsRWorkDir())
+            return false;
+
+        File directory = new File(getPath());
+        if ( !directory.isDirectory())
+            return false;
+
+        File marker = new File(directory, PROBE_PREFIX + UUID.randomUUID());
+        try {
+            if ( !marker.createNewFile())
+                return false;
+            this.rCalls++;
+            return this.connection.eval("file.exists(\"" + rPath(marker) + "\")").asInteger() == 1;
+        }
+        catch (IOException e) {
+            log.debug("Could not create probe file {}", marker, e);
+            return false;
+        }
+        catch (RserveException e) {
+            log.debug("Could not probe for file {} in R", marker, e);
+            return false;
+        }
+        catch (REXPMismatchException e) {
+            log.debug("Could not probe for file {} in R", marker, e);
+            return false;
+        }
+        finally {
+            marker.delete();
+        }
+    }
+
+    /**
+     * @return a new random file name with the given extension
+     */
+    public static String createFileName(String extension) {
+        String name = UUID.randomUUID().toString();
+        return extension == null || extension.isEmpty() ? name : name + "." + extension;
+    }
+
+    /**
+     * Writes the stream to a file in the R working directory, the stream is not closed.
+     * 
+     * @param name
+     *        the name of the file, relative to the R working directory
+     */
+    public void upload(InputStream in, String name) throws IOException {
+        long start = System.nanoTime();
+        OutputStream out = isSharedFilesystem() ? new FileOutputStream(resolve(name)) : this.connection.createFile(name);
+        try {
+            this.uploadBytes += copy(in, out);
+        }
+        finally {
+            out.close();
+            this.uploadNanos += System.nanoTime() - start;
+        }
+        this.uploadFiles++;
+    }
+
+    /**
+     * Copies a file to the R working directory. A file in the scratch space of the execution is hard linked
+     * if possible on a shared filesystem.
+     */
+    public void upload(File source, String name) throws IOException {
+        if (isSharedFilesystem() && isScratchFile(source)) {
+            long start = System.nanoTime();
+            File target = resolve(name);
+            try {
+                Files.createLink(target.toPath(), source.toPath());
+                this.linkedFiles++;
+                this.uploadFiles++;
+                return;
+            }
+            catch (IOException e) {
+                log.debug("Could not link {} to {}, copying it: {}", source, target, e.getMessage());
+            }
+            catch (UnsupportedOperationException e) {
+                log.debug("Could not link {} to {}, copying it: {}", source, target, e.getMessage());
+            }
+            finally {
+                this.uploadNanos += System.nanoTime() - start;
+            }
+        }
+
+        InputStream in = new FileInputStream(source);
+        try {
+            upload(in, name);
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Uploads a stream which might contain a zip archive. The entries of an archive are stored with the
+     * given base name and their own extension, like the <code>unzipRename</code> utility function of R does.
+     * 
+     * @return the name of the uploaded file or of the file with the given extension, relative to the R
+     *         working directory
+     */
+    public String uploadUnzipped(InputStream in, String extension) throws IOException {
+        String baseName = UUID.randomUUID().toString();
+        String fileName = baseName + "." + extension;
+
+        BufferedInputStream buffered = new BufferedInputStream(in, BUFFER_SIZE);
+        if ( !isZip(buffered)) {
+            upload(buffered, fileName);
+            return fileName;
+        }
+
+        ZipInputStream zip = new ZipInputStream(buffered);
+        ZipEntry entry;
+        while ( (entry = zip.getNextEntry()) != null) {
+            if (entry.isDirectory())
+                continue;
+            String entryName = new File(entry.getName()).getName();
+            int dot = entryName.lastIndexOf('.');
+            String suffix = dot < 0 ? "" : entryName.substring(dot);
+            upload(zip, baseName + suffix);
+        }
+        return fileName;
+    }
+
+    /**
+     * @return <code>true</code> if the file is in the scratch space of the execution, so that no other
+     *         execution uses it
+     */
+    private boolean isScratchFile(File file) throws IOException {
+        if (this.scratchDirectory == null)
+            return false;
+        String directory = this.scratchDirectory.getCanonicalPath() + File.separator;
+        return file.getCanonicalPath().startsWith(directory);
+    }
+
+    private static boolean isZip(BufferedInputStream in) throws IOException {
+        in.mark(4);
+        byte[] header = new byte[4];
+        int read = 0;
+        while (read < header.length) {
+            int n = in.read(header, read, header.length - read);
+            if (n < 0)
+                break;
+            read += n;
+        }
+        in.reset();
+        return read == 4 && header[0] == 'P' && header[1] == 'K' && header[2] == 3 && header[3] == 4;
+    }
+
+    /**
+     * Creates a directory in the R working directory.
+     */
+    public void createDirectory(String name) throws IOException {
+        if (name.equals(RWorkspace.ROOT))
+            return;
+
+        if (isSharedFilesystem()) {
+            File directory = resolve(name);
+            if ( !directory.isDirectory() && !directory.mkdirs())
+                throw new IOException("Could not create directory " + directory);
+            return;
+        }
+
+        try {
+            this.rCalls++;
+            this.workspace.createDirectory(name, this.connection);
+        }
+        catch (RserveException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Provides a file of the R working directory to the WPS.
+     * 
+     * @param name
+     *        the name of the file, relative to the R working directory
+     * @param wpsWorkDir
+     *        the directory the file is streamed to if the filesystem is not shared
+     * @return the file in the R working directory or the streamed copy
+     */
+    public File download(String name, String wpsWorkDir) throws IOException {
+        if (isSharedFilesystem())
+            return resolve(name);
+
+        File destination = new File(wpsWorkDir);
+        if ( !destination.exists())
+            destination.mkdirs();
+        File target = new File(destination, new File(name).getName());
+
+        long start = System.nanoTime();
+        InputStream in = this.connection.openFile(name);
+        try {
+            OutputStream out = new FileOutputStream(target);
+            try {
+                this.downloadBytes += copy(in, out);
+            }
+            finally {
+                out.close();
+            }
+        }
+        finally {
+            in.close();
+            this.downloadNanos += System.nanoTime() - start;
+        }
+        this.downloadFiles++;
+        return target;
+    }
+
+    /**
+     * @return the files in the R working directory, which are listed once, i.e. after the script was run
+     */
+    public String[] listWorkDir() throws RserveException, REXPMismatchException {
+        if (this.workDirListing == null) {
+            if (isSharedFilesystem()) {
+                String[] files = new File(getPath()).list();
+                this.workDirListing = files == null ? new String[0] : files;
+            }
+            else {
+                this.rCalls++;
+                this.workDirListing = this.connection.eval("dir()").asStrings();
+            }
+        }
+        return this.workDirListing;
+    }
+
+    private File resolve(String name) {
+        File file = new File(name);
+        return file.isAbsolute() ? file : new File(getPath(), name);
+    }
+
+    private String getPath() {
+        return this.workspace == null ? null : this.workspace.getPath();
+    }
+
+    private static String rPath(File file) {
+        return file.getAbsolutePath().replace("\\", "/");
+    }
+
+    private static long copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long count = 0;
+        int n;
+        while ( (n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+            count += n;
+        }
+        out.flush();
+        return count;
+    }
+
+    public long getUploadBytes() {
+        return this.uploadBytes;
+    }
+
+    public long getDownloadBytes() {
+        return this.downloadBytes;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("RFileTransfer [shared = ").append(this.shared);
+        sb.append(", probe = ").append(this.probeNanos / 1000000).append(" ms");
+        sb.append(", upload = ").append(this.uploadFiles).append(" files (").append(this.linkedFiles);
+        sb.append(" linked), ").append(this.uploadBytes).append(" bytes, ");
+        sb.append(this.uploadNanos / 1000000).append(" ms");
+        sb.append(", download = ").append(this.downloadFiles).append(" files, ").append(this.downloadBytes);
+        sb.append(" bytes, ").append(this.downloadNanos / 1000000).append(" ms");
+        sb.append(", R calls = ").append(this.rCalls);
+        sb.append("]");
+        return sb.toString();
+    }
+
+}
@@ -31,8 +31,6 @@ package org.n52.wps.server.r.workspace;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Constructor;
@@ -41,7 +39,6 @@ import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
-import org.n52.wps.io.IOUtils;
 import org.n52.wps.io.data.GenericFileData;
 import org.n52.wps.io.data.GenericFileDataConstants;
 import org.n52.wps.io.data.GenericFileDataWithGT;
@@ -73,8 +70,6 @@ import org.n52.wps.server.r.syntax.RAttribute;
 import org.rosuda.REngine.REXP;
 import org.rosuda.REngine.REXPMismatchException;
 import org.rosuda.REngine.Rserve.RConnection;
-import org.rosuda.REngine.Rserve.RFileInputStream;
-import org.rosuda.REngine.Rserve.RFileOutputStream;
 import org.rosuda.REngine.Rserve.RserveException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -120,6 +115,8 @@ public class RIOHandler {
 
     private static Logger log = LoggerFactory.getLogger(RIOHandler.class);
 
+    private static final String[] SHAPEFILE_EXTENSIONS = new String[] {"shp", "shx", "dbf", "prj"};
+
     private RInputFilter filter;
 
     public RIOHandler() {
@@ -207,6 +204,18 @@ public class RIOHandler {
             REXPMismatchException,
             RAnnotationException,
             ExceptionReport {
+        return parseInput(input, new RFileTransfer(connection, null));
+    }
+
+    /**
+     * parses iData values to string representations which can be evaluated by Rserve, files are moved to the
+     * R working directory with the given transfer
+     */
+    public String parseInput(List<IData> input, RFileTransfer transfer) throws IOException,
+            RserveException,
+            REXPMismatchException,
+            RAnnotationException,
+            ExceptionReport {
 
         String result = null;
         // building an R - vector of input entries containing more than one
@@ -219,11 +228,11 @@ public class RIOHandler {
             for (int i = 0; i < input.size() - 1; i++) {
                 if (input.get(i).equals(null))
                     continue;
-                result += parseInput(input.subList(i, i + 1), connection);
+                result += parseInput(input.subList(i, i + 1), transfer);
                 result += ", ";
             }
             // parsing last element separately to vecor:
-            result += parseInput(input.subList(input.size() - 1, input.size()), connection);
+            result += parseInput(input.subList(input.size() - 1, input.size()), transfer);
             result += ")";
         }
 
@@ -239,20 +248,29 @@ public class RIOHandler {
 
             InputStream is = value.getDataStream();
             String ext = value.getFileExtension();
-            result = streamFromWPSToRserve(connection, is, ext);
-            is.close();
+            try {
+                // archives are unzipped and renamed like the R function unzipRename() does
+                result = transfer.uploadUnzipped(is, ext);
+            }
+            finally {
+                is.close();
+            }
 
-            return result;
+            return "\"" + result + "\"";
         }
 
         if (ivalue instanceof GTRasterDataBinding) {
             GeotiffGenerator tiffGen = new GeotiffGenerator();
             InputStream is = tiffGen.generateStream(ivalue, GenericFileDataConstants.MIME_TYPE_GEOTIFF, "base64");
-            // String ext = value.getFileExtension();
-            result = streamFromWPSToRserve(connection, is, "tiff");
-            is.close();
+            result = RFileTransfer.createFileName("tiff");
+            try {
+                transfer.upload(is, result);
+            }
+            finally {
+                is.close();
+            }
 
-            return result;
+            return "\"" + result + "\"";
         }
 
         if (ivalue instanceof GTVectorDataBinding) {
@@ -261,19 +279,17 @@ public class RIOHandler {
 
             String path = shp.getAbsolutePath();
             String baseName = path.substring(0, path.length() - ".shp".length());
-            File shx = new File(baseName + ".shx");
-            File dbf = new File(baseName + ".dbf");
-            File prj = new File(baseName + ".prj");
-
-            File shpZip = IOUtils.zip(shp, shx, dbf, prj);
-
-            InputStream is = new FileInputStream(shpZip);
-            String ext = "shp";
-            result = streamFromWPSToRserve(connection, is, ext);
 
-            is.close();
+            // the components are transferred with a common random name instead of a zip archive
+            String randomName = UUID.randomUUID().toString();
+            for (String ext : SHAPEFILE_EXTENSIONS) {
+                File component = new File(baseName + "." + ext);
+                if (component.exists())
+                    transfer.upload(component, randomName + "." + ext);
+            }
+            result = randomName + ".shp";
 
-            return result;
+            return "\"" + result + "\"";
         }
 
         // if nothing was supported:
@@ -326,9 +342,24 @@ public class RIOHandler {
             RserveException,
             RAnnotationException,
             ExceptionReport {
+        return parseOutput(result_id, result, annotations, workspace, new RFileTransfer(connection, workspace));
+    }
+
+    /**
+     * parses an R result to an output value, files are moved from the R working directory with the given
+     * transfer
+     */
+    public IData parseOutput(String result_id,
+                             REXP result,
+                             Collection<RAnnotation> annotations,
+                             RWorkspace workspace,
+                             RFileTransfer transfer) throws IOException,
+            REXPMismatchException,
+            RserveException,
+            RAnnotationException,
+            ExceptionReport {
         log.debug("parsing Output with id {} from result {}", result_id, result);
 
-        boolean wpsWorkDirIsRWorkDir = workspace.isWpsWorkDirIsRWorkDir();
         String wpsWorkDir = workspace.getPath();
 
         if (result == null) {
@@ -359,27 +390,13 @@ public class RIOHandler {
             log.debug("Creating output with GenericFileDataBinding for file {}", filename);
             String mimeType = "application/unknown";
 
-            File resultFile = new File(filename);
-            log.debug("Loading file " + resultFile.getAbsolutePath());
-
-            if ( !resultFile.isAbsolute())
-                // relative path names are relative to R work directory
-                resultFile = new File(connection.eval("getwd()").asString(), resultFile.getName());
-
-            if (resultFile.exists())
-                log.debug("Found file at {}", resultFile);
-            else
-                log.warn("Result file does not exists at {}", resultFile);
-
-            // Transfer file from R workdir to WPS workdir
-            File outputFile = null;
-            if (wpsWorkDirIsRWorkDir)
-                outputFile = resultFile;
-            else
-                outputFile = streamFromRserveToWPS(connection, resultFile.getAbsolutePath(), wpsWorkDir);
+            // relative path names are relative to R work directory, the file is used in place on a shared
+            // filesystem
+            File outputFile = transfer.download(filename, wpsWorkDir);
 
             if ( !outputFile.exists())
-                throw new IOException("Output file does not exists: " + resultFile.getAbsolutePath());
+                throw new IOException("Output file does not exists: " + outputFile.getAbsolutePath());
+            log.debug("Loading file {}", outputFile);
 
             String rType = currentAnnotation.getStringValue(RAttribute.TYPE);
             mimeType = RDataTypeRegistry.getInstance().getType(rType).getProcessKey();
@@ -393,10 +410,8 @@ public class RIOHandler {
             RTypeDefinition dataType = currentAnnotation.getRDataType();
             File outputFile;
 
-            if (dataType.equals(RDataType.SHAPE) || dataType.equals(RDataType.SHAPE_ZIP2) && !wpsWorkDirIsRWorkDir) {
-                String zip = "";
-                REXP ev = connection.eval("zipShp(\"" + filename + "\")");
-
+            if ( (dataType.equals(RDataType.SHAPE) || dataType.equals(RDataType.SHAPE_ZIP2))
+                    && !transfer.isSharedFilesystem()) {
                 // filname = baseName (+ suffix)
                 String baseName = null;
 
@@ -405,33 +420,16 @@ public class RIOHandler {
                 else
                     baseName = filename;
 
-                // zip all -- stream --> unzip all or stream each file?
-                if ( !ev.isNull()) {
-                    zip = ev.asString();
-                    File zipfile = streamFromRserveToWPS(connection, zip, wpsWorkDir);
-                    outputFile = IOUtils.unzip(zipfile, "shp").get(0);
+                // stream each component, the work directory is listed once for all outputs
+                for (String f : transfer.listWorkDir()) {
+                    if (f.startsWith(baseName + ".") && !f.equals(filename))
+                        transfer.download(f, wpsWorkDir);
                 }
-                else {
-                    log.info("R call to zip() does not work, streaming of shapefile without zipping");
-                    String[] dir = connection.eval("dir()").asStrings();
-                    for (String f : dir) {
-                        if (f.startsWith(baseName) && !f.equals(filename))
-                            streamFromRserveToWPS(connection, f, wpsWorkDir);
-                    }
 
-                    outputFile = streamFromRserveToWPS(connection, filename, wpsWorkDir);
-                }
-            }
-            else {
-                if (wpsWorkDirIsRWorkDir) {
-                    outputFile = new File(filename);
-                    if ( !outputFile.isAbsolute())
-                        // relative path names are alway relative to R work directory
-                        outputFile = new File(connection.eval("getwd()").asString(), outputFile.getName());
-                }
-                else
-                    outputFile = streamFromRserveToWPS(connection, filename, wpsWorkDir);
+                outputFile = transfer.download(filename, wpsWorkDir);
             }
+            else
+                outputFile = transfer.download(filename, wpsWorkDir);
 
             String rType = currentAnnotation.getStringValue(RAttribute.TYPE);
             mimeType = RDataTypeRegistry.getInstance().getType(rType).getProcessKey();
@@ -443,7 +441,7 @@ public class RIOHandler {
         else if (iClass.equals(GTRasterDataBinding.class)) {
             String mimeType = "application/unknown";
 
-            File tempfile = streamFromRserveToWPS(connection, filename, wpsWorkDir);
+            File tempfile = transfer.download(filename, wpsWorkDir);
 
             String rType = currentAnnotation.getStringValue(RAttribute.TYPE);
             mimeType = RDataTypeRegistry.getInstance().getType(rType).getProcessKey();
@@ -498,88 +496,4 @@ public class RIOHandler {
         throw new RuntimeException(message);
     }
 
-    /**
-     * Streams a File from R workdirectory to a temporal file in the WPS4R workdirectory
-     * (R.Config.WORK_DIR/random folder)
-     * 
-     * @param filename
-     *        name or path of the file located in the R workdirectory
-     * @param wpsWorkDir
-     * @return Location of a file which has been streamed
-     * @throws IOException
-     * @throws FileNotFoundException
-     */
-    private File streamFromRserveToWPS(RConnection connection, String filename, String wpsWorkDir) throws IOException,
-            FileNotFoundException {
-        File tempfile = new File(filename);
-        File destination = new File(wpsWorkDir);
-        if ( !destination.exists())
-            destination.mkdirs();
-        tempfile = new File(destination, tempfile.getName());
-
-        // Do streaming Rserve --> WPS tempfile
-        RFileInputStream fis = connection.openFile(filename);
-        FileOutputStream fos = new FileOutputStream(tempfile);
-        byte[] buffer = new byte[2048];
-        int stop = fis.read(buffer);
-        while (stop != -1) {
-            fos.write(buffer, 0, stop);
-            stop = fis.read(buffer);
-        }
-        fis.close();
-        fos.close();
-        // tempfile.deleteOnExit();
-        return tempfile;
-    }
-
-    /**
-     * Streams a file from WPS to Rserve workdirectory
-     * 
-     * @param connection
-     *        active RConnecion
-     * @param is
-     *        inputstream of the inputfile
-     * @param ext
-     *        basefile extension
-     * @return
-     * @throws IOException
-     * @throws REXPMismatchException
-     * @throws RserveException
-     */
-    private String streamFromWPSToRserve(RConnection connection, InputStream is, String ext) throws IOException,
-            REXPMismatchException,
-            RserveException {
-        String result;
-        String randomname = UUID.randomUUID().toString();
-        String inputFileName = randomname;
-
-        // List<Class< ? extends AbstractLiteralDataBinding>> easyLiterals =
-        // Arrays.asList(LiteralByteBinding.class,
-        // LiteralDoubleBinding.class,
-        // LiteralFloatBinding.class,
-        // LiteralIntBinding.class,
-        // LiteralLongBinding.class,
-        // LiteralShortBinding.class);
-
-        RFileOutputStream rfos = connection.createFile(inputFileName);
-
-        byte[] buffer = new byte[2048];
-        int stop = is.read(buffer);
-
-        while (stop != -1) {
-            rfos.write(buffer, 0, stop);
-            stop = is.read(buffer);
-        }
-        rfos.flush();
-        rfos.close();
-        is.close();
-        // R unzips archive files and renames files with unique
-        // random names
-        // TODO: check whether input is a zip archive or not
-        result = connection.eval("unzipRename(" + "\"" + inputFileName + "\", " + "\"" + randomname + "\", " + "\""
-                + ext + "\")").asString();
-        result = "\"" + result + "\"";
-        return result;
-    }
-
 }
@@ -104,9 +104,22 @@ public class RSessionManager {
             FileNotFoundException,
             IOException,
             RAnnotationException {
+        configureSession(processWKN, executor, false);
+    }
+
+    /**
+     * @param pooled
+     *        <code>true</code> if the session is lent by the {@link RSessionPool}, i.e. it is clean and the
+     *        utility scripts are loaded already
+     */
+    public void configureSession(String processWKN, RExecutor executor, boolean pooled) throws ExceptionReport,
+            RserveException,
+            FileNotFoundException,
+            IOException,
+            RAnnotationException {
         log.debug("Configuring R session...");
 
-        if (cleanOnStartup) {
+        if (cleanOnStartup && !pooled) {
             cleanSession();
         }
 
@@ -131,7 +144,8 @@ public class RSessionManager {
         }
 
         loadWPSSessionVariables(processWKN);
-        loadUtilityScripts(executor);
+        if ( !pooled)
+            loadUtilityScripts(executor);
     }
 
     public String getConsoleOutput(String cmd) throws RserveException, REXPMismatchException {
@@ -0,0 +1,434 @@
+/**
+ * ﻿Copyright (C) 2010 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+
+package org.n52.wps.server.r.workspace;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.n52.wps.server.ExceptionReport;
+import org.n52.wps.server.r.FilteredRConnection;
+import org.n52.wps.server.r.R_Config;
+import org.n52.wps.server.r.syntax.RAnnotationException;
+import org.n52.wps.server.r.util.RExecutor;
+import org.n52.wps.server.r.util.RFileExtensionFilter;
+import org.n52.wps.server.r.util.RLogger;
+import org.rosuda.REngine.REXP;
+import org.rosuda.REngine.REXPMismatchException;
+import org.rosuda.REngine.Rserve.RserveException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded pool of Rserve sessions which have the utility scripts loaded already.
+ * 
+ * A session is health-checked before it is lent and reset to the state it had after loading the utility
+ * scripts when it is returned: objects created by a process are removed, the objects of the utility scripts
+ * and the options are restored to their baseline values. Packages cannot be detached reliably, so a session
+ * whose search path was changed by a script is recycled. Sessions are closed instead of being returned after
+ * <code>maxUses</code> runs, if they fail the health check or the reset, or if the pool was closed meanwhile.
+ * 
+ * The pool is configured with the repository properties {@link org.n52.wps.server.r.RWPSConfigVariables#R_POOL_MAX_SESSIONS} and
+ * {@link org.n52.wps.server.r.RWPSConfigVariables#R_POOL_MAX_USES}, see {@link R_Config#getSessionPool()}.
+ */
+public class RSessionPool {
+
+    private static Logger log = LoggerFactory.getLogger(RSessionPool.class);
+
+    /** the objects, options and search path of a new session, restored when it is reset */
+    private static final String BASELINE_VARIABLE = ".wps.pool.baseline";
+
+    private static final String SAVE_BASELINE = BASELINE_VARIABLE
+            + " <- list(values = mget(ls(all.names = TRUE), envir = globalenv()), options = options(), search = search())";
+
+    /** evaluates to 1 if the session was reset, 0 if its search path changed */
+    private static final String RESET = "local({ baseline <- get(\"" + BASELINE_VARIABLE + "\", envir = globalenv()); "
+            + "rm(list = setdiff(ls(all.names = TRUE, envir = globalenv()), c(names(baseline$values), \""
+            + BASELINE_VARIABLE + "\")), envir = globalenv()); "
+            + "list2env(baseline$values, envir = globalenv()); "
+            + "changed <- Filter(function(name) !identical(getOption(name), baseline$options[[name]]), names(baseline$options)); "
+            + "if (length(changed) > 0) options(baseline$options[changed]); "
+            + "added <- setdiff(names(options()), names(baseline$options)); "
+            + "if (length(added) > 0) options(structure(vector(\"list\", length(added)), names = added)); "
+            + "as.integer(identical(search(), baseline$search)) })";
+
+    private static final String HEALTH_CHECK = "1 + 1";
+
+    private static final long BORROW_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(60);
+
+    private enum ResetResult {
+        RESET, SEARCH_PATH_CHANGED, FAILED
+    }
+
+    private final R_Config config;
+
+    private final int maxSessions;
+
+    private final int maxUses;
+
+    private final long borrowTimeoutMillis;
+
+    private final Semaphore permits;
+
+    private final LinkedBlockingDeque<PooledSession> idle = new LinkedBlockingDeque<PooledSession>();
+
+    private final RExecutor executor = new RExecutor();
+
+    private volatile boolean closed = false;
+
+    private final AtomicLong created = new AtomicLong();
+
+    private final AtomicLong reused = new AtomicLong();
+
+    private final AtomicLong recycled = new AtomicLong();
+
+    private final AtomicLong discarded = new AtomicLong();
+
+    private final AtomicLong timeouts = new AtomicLong();
+
+    /**
+     * @param maxSessions
+     *        the maximum number of open sessions, busy and idle ones
+     * @param maxUses
+     *        the runs after which a session is closed, 0 for no limit
+     */
+    public RSessionPool(R_Config config, int maxSessions, int maxUses) {
+        this(config, maxSessions, maxUses, BORROW_TIMEOUT_MILLIS);
+    }
+
+    RSessionPool(R_Config config, int maxSessions, int maxUses, long borrowTimeoutMillis) {
+        this.config = config;
+        this.maxSessions = maxSessions;
+        this.maxUses = maxUses;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.permits = new Semaphore(maxSessions, true);
+
+        log.info("NEW {}", this);
+    }
+
+    /**
+     * Lends an idle session or opens a new one, waiting if all sessions are busy.
+     * 
+     * @return a session which has to be given back using {@link #release(PooledSession, boolean)}
+     * @throws ExceptionReport
+     *         if no session became available in time or a new session could not be set up
+     */
+    public PooledSession borrow() throws ExceptionReport {
+        if (closed)
+            throw new ExceptionReport("The R session pool is closed", ExceptionReport.SERVER_BUSY);
+
+        try {
+            if ( !permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                timeouts.incrementAndGet();
+                throw new ExceptionReport("No R session became available within " + borrowTimeoutMillis + " ms",
+                                          ExceptionReport.SERVER_BUSY);
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ExceptionReport("Interrupted while waiting for an R session", ExceptionReport.SERVER_BUSY, e);
+        }
+
+        try {
+            PooledSession session;
+            while ( (session = idle.pollFirst()) != null) {
+                if (isHealthy(session)) {
+                    reused.incrementAndGet();
+                    log.debug("Reusing {}", session);
+                    return session;
+                }
+                discard(session);
+            }
+            session = createSession();
+            created.incrementAndGet();
+            log.debug("Created {}", session);
+            return session;
+        }
+        catch (ExceptionReport e) {
+            permits.release();
+            throw e;
+        }
+        catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Gives a session back to the pool.
+     * 
+     * @param reusable
+     *        <code>false</code> if the session is in an unknown state, e.g. after a failed run, so that it is
+     *        closed
+     */
+    public void release(PooledSession session, boolean reusable) {
+        try {
+            session.uses++;
+            if ( !reusable || closed) {
+                discard(session);
+            }
+            else if (maxUses > 0 && session.uses >= maxUses) {
+                log.debug("Recycling {} after {} uses", session, session.uses);
+                recycled.incrementAndGet();
+                close(session);
+            }
+            else {
+                ResetResult result = reset(session);
+                if (result == ResetResult.RESET) {
+                    idle.offerFirst(session);
+                }
+                else if (result == ResetResult.SEARCH_PATH_CHANGED) {
+                    log.debug("Recycling {}, its search path was changed", session);
+                    recycled.incrementAndGet();
+                    close(session);
+                }
+                else {
+                    discard(session);
+                }
+            }
+        }
+        finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Closes the idle sessions, busy sessions are closed when they are released.
+     */
+    public void close() {
+        closed = true;
+        PooledSession session;
+        while ( (session = idle.pollFirst()) != null)
+            close(session);
+
+        log.info("Closed {}", this);
+    }
+
+    /**
+     * Opens a connection and loads the utility scripts.
+     */
+    PooledSession createSession() throws ExceptionReport {
+        FilteredRConnection connection = null;
+        try {
+            connection = config.openRConnection();
+            RLogger.log(connection, "New pooled session");
+
+            connection.eval("rm(list = ls(all.names = TRUE))");
+            File[] utils = new File(config.utilsDirFull).listFiles(new RFileExtensionFilter());
+            if (utils != null)
+                for (File file : utils)
+                    executor.executeScript(file, connection);
+            connection.eval(SAVE_BASELINE);
+
+            return new PooledSession(connection);
+        }
+        catch (RserveException e) {
+            closeQuietly(connection);
+            throw new ExceptionReport("Could not create R session: " + e.getMessage(),
+                                      ExceptionReport.REMOTE_COMPUTATION_ERROR,
+                                      e);
+        }
+        catch (IOException e) {
+            closeQuietly(connection);
+            throw new ExceptionReport("Could not load utility scripts: " + e.getMessage(),
+                                      ExceptionReport.NO_APPLICABLE_CODE,
+                                      e);
+        }
+        catch (RAnnotationException e) {
+            closeQuietly(connection);
+            throw new ExceptionReport("Could not load utility scripts: " + e.getMessage(),
+                                      ExceptionReport.NO_APPLICABLE_CODE,
+                                      e);
+        }
+        catch (ExceptionReport e) {
+            closeQuietly(connection);
+            throw e;
+        }
+    }
+
+    private boolean isHealthy(PooledSession session) {
+        if ( !session.isConnected())
+            return false;
+        try {
+            REXP result = session.eval(HEALTH_CHECK);
+            return result.asInteger() == 2;
+        }
+        catch (RserveException e) {
+            log.debug("Health check of {} failed: {}", session, e.getMessage());
+        }
+        catch (REXPMismatchException e) {
+            log.debug("Health check of {} failed: {}", session, e.getMessage());
+        }
+        return false;
+    }
+
+    private ResetResult reset(PooledSession session) {
+        try {
+            return session.eval(RESET).asInteger() == 1 ? ResetResult.RESET : ResetResult.SEARCH_PATH_CHANGED;
+        }
+        catch (RserveException e) {
+            log.warn("Could not reset {}: {}", session, e.getMessage());
+        }
+        catch (REXPMismatchException e) {
+            log.warn("Could not reset {}: {}", session, e.getMessage());
+        }
+        return ResetResult.FAILED;
+    }
+
+    private void discard(PooledSession session) {
+        discarded.incrementAndGet();
+        log.debug("Discarding {}", session);
+        close(session);
+    }
+
+    private static void close(PooledSession session) {
+        try {
+            session.close();
+        }
+        catch (RuntimeException e) {
+            log.debug("Error closing connection", e);
+        }
+    }
+
+    private static void closeQuietly(FilteredRConnection connection) {
+        if (connection == null)
+            return;
+        try {
+            connection.close();
+        }
+        catch (RuntimeException e) {
+            log.debug("Error closing connection", e);
+        }
+    }
+
+    public int getIdle() {
+        return idle.size();
+    }
+
+    /**
+     * @return the number of sessions lent and not yet released
+     */
+    public int getActive() {
+        // idle sessions do not hold a permit
+        return this.maxSessions - permits.availablePermits();
+    }
+
+    public int getMaxSessions() {
+        return maxSessions;
+    }
+
+    public long getCreated() {
+        return created.get();
+    }
+
+    public long getReused() {
+        return reused.get();
+    }
+
+    /**
+     * @return the number of sessions closed after reaching the maximum uses
+     */
+    public long getRecycled() {
+        return recycled.get();
+    }
+
+    /**
+     * @return the number of sessions closed because of a failed run, health check or reset
+     */
+    public long getDiscarded() {
+        return discarded.get();
+    }
+
+    /**
+     * @return the number of borrow attempts that found no free session in time
+     */
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("RSessionPool [maxSessions = ").append(getMaxSessions());
+        sb.append(", maxUses = ").append(this.maxUses);
+        sb.append(", active = ").append(getActive());
+        sb.append(", idle = ").append(getIdle());
+        sb.append(", created = ").append(getCreated());
+        sb.append(", reused = ").append(getReused());
+        sb.append(", recycled = ").append(getRecycled());
+        sb.append(", discarded = ").append(getDiscarded());
+        sb.append(", timeouts = ").append(getTimeouts());
+        sb.append("]");
+        return sb.toString();
+    }
+
+    /**
+     * An Rserve connection lent by the pool.
+     */
+    public static class PooledSession {
+
+        private final FilteredRConnection connection;
+
+        private int uses = 0;
+
+        PooledSession(FilteredRConnection connection) {
+            this.connection = connection;
+        }
+
+        public FilteredRConnection getConnection() {
+            return this.connection;
+        }
+
+        public int getUses() {
+            return this.uses;
+        }
+
+        boolean isConnected() {
+            return this.connection.isConnected();
+        }
+
+        REXP eval(String command) throws RserveException {
+            return this.connection.eval(command);
+        }
+
+        void close() {
+            this.connection.close();
+        }
+
+        @Override
+        public String toString() {
+            return "PooledSession [uses = " + this.uses + ", connection = " + this.connection + "]";
+        }
+    }
+
+}
@@ -41,6 +41,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 
+import org.n52.wps.commons.context.ExecutionContextFactory;
 import org.n52.wps.io.data.IData;
 import org.n52.wps.server.ExceptionReport;
 import org.n52.wps.server.r.FilteredRConnection;
@@ -86,6 +87,8 @@ public class RWorkspaceManager {
 
     private RWorkspace workspace;
 
+    private RFileTransfer transfer;
+
     public RWorkspaceManager(FilteredRConnection connection, RIOHandler iohandler, R_Config config) {
         this.connection = connection;
         this.workspace = new RWorkspace();
@@ -187,7 +190,7 @@ public class RWorkspaceManager {
         for (Entry<String, List<IData>> entry : inputData.entrySet()) {
             // parses input values to R-compatible literals and streams input files to workspace
             try {
-                String entryRValue = this.iohandler.parseInput(entry.getValue(), connection);
+                String entryRValue = this.iohandler.parseInput(entry.getValue(), getTransfer());
                 log.debug("Parsed input for '{}' to '{}' based on value '{}'",
                           entry.getKey(),
                           entryRValue,
@@ -366,6 +369,7 @@ public class RWorkspaceManager {
                       e);
         }
 
+        this.transfer = null;
         this.workspace.setWorkingDirectory(this.connection,
                                            originalWD,
                                            strategy,
@@ -417,11 +421,11 @@ public class RWorkspaceManager {
 
             // TODO depending on the generated outputs deleteWorkDirectory must be set!
             try {
-                IData output = this.iohandler.parseOutput(connection,
-                                                          resultId,
+                IData output = this.iohandler.parseOutput(resultId,
                                                           evalResult,
                                                           outAnnotations,
-                                                          this.workspace);
+                                                          this.workspace,
+                                                          getTransfer());
                 result.put(resultId, output);
 
                 log.debug("Output for {} is {} with payload {}", resultId, output, output.getPayload());
@@ -440,9 +444,21 @@ public class RWorkspaceManager {
             }
         }
 
+        log.info("Transferred files for outputs {}: {}", result.keySet(), getTransfer());
         return result;
     }
 
+    /**
+     * @return the file transfer for the current workspace, the workspace must be prepared
+     */
+    private RFileTransfer getTransfer() {
+        if (this.transfer == null) {
+            File scratchDirectory = new File(ExecutionContextFactory.getContext().getTempDirectoryPath());
+            this.transfer = new RFileTransfer(this.connection, this.workspace, scratchDirectory);
+        }
+        return this.transfer;
+    }
+
     private void streamFromWPSToRserve(File source) throws IOException {
         streamFromWPSToRserve(source, RWorkspace.ROOT);
     }
@@ -462,26 +478,17 @@ public class RWorkspaceManager {
                   this.workspace);
 
         if ( !source.isDirectory()) {
-
-            this.workspace.copyFile(source, name, connection);
+            getTransfer().upload(source, name);
         }
         else {
-            // create directory and append path for recursive calls
-            try {
-                // create subdir in R
-                this.workspace.createDirectory(name, this.connection);
+            // create subdir in R and append path for recursive calls
+            getTransfer().createDirectory(name);
 
-                String[] files = source.list();
-                for (String file : files) {
-                    File sourceFile = new File(source, file);
-                    streamFromWPSToRserve(sourceFile, name);
-                }
+            String[] files = source.list();
+            for (String file : files) {
+                File sourceFile = new File(source, file);
+                streamFromWPSToRserve(sourceFile, name);
             }
-            catch (RserveException e) {
-                log.error("Error creating directory in workdir", e);
-                throw new IOException(e);
-            }
-
         }
     }
 
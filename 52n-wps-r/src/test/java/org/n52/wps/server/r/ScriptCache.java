@@ -0,0 +1,99 @@
+/**
+ * ﻿Copyright (C) 2010 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.r;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.n52.wps.server.r.metadata.RScriptCache;
+import org.n52.wps.server.r.syntax.RAnnotation;
+import org.n52.wps.server.r.syntax.RAnnotationException;
+
+public class ScriptCache {
+
+    private File directory;
+
+    private File script;
+
+    private RScriptCache cache;
+
+    @Before
+    public void copyScript() throws IOException {
+        this.directory = File.createTempFile("wps4r-cache", "");
+        this.directory.delete();
+        this.directory.mkdirs();
+        this.script = new File(this.directory, "uniform.R");
+        FileUtils.copyFile(Util.loadFile("/uniform.R"), this.script);
+
+        this.cache = new RScriptCache(R_Config.getInstance(), null);
+    }
+
+    @After
+    public void deleteScript() throws IOException {
+        FileUtils.deleteDirectory(this.directory);
+    }
+
+    @Test
+    public void annotationsAreParsedOnce() throws IOException, RAnnotationException {
+        List<RAnnotation> annotations = this.cache.getAnnotations(this.script);
+        Assert.assertFalse(annotations.isEmpty());
+        Assert.assertSame(annotations, this.cache.getAnnotations(this.script));
+        Assert.assertFalse(this.cache.refresh(this.script));
+    }
+
+    @Test
+    public void changedScriptIsParsedAgain() throws IOException, RAnnotationException {
+        List<RAnnotation> annotations = this.cache.getAnnotations(this.script);
+
+        FileWriter writer = new FileWriter(this.script, true);
+        writer.write("\n# a comment changing the content\n");
+        writer.close();
+        this.script.setLastModified(this.script.lastModified() + 2000);
+
+        Assert.assertTrue(this.cache.refresh(this.script));
+        List<RAnnotation> reparsed = this.cache.getAnnotations(this.script);
+        Assert.assertNotSame(annotations, reparsed);
+        Assert.assertEquals(annotations.size(), reparsed.size());
+    }
+
+    @Test
+    public void preloadedAnnotationsAreCached() throws IOException, RAnnotationException {
+        this.cache.preloadAnnotations(Collections.singletonList(this.script));
+        Assert.assertFalse(this.cache.refresh(this.script));
+    }
+
+}
@@ -0,0 +1,196 @@
+/**
+ * ﻿Copyright (C) 2010 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.r.workspace;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.UUID;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RFileTransferTest {
+
+    private File directory;
+
+    private File scratchDirectory;
+
+    private File resourceDirectory;
+
+    private File rWorkDirectory;
+
+    @Before
+    public void setUp() {
+        this.directory = new File(System.getProperty("java.io.tmpdir"), "wps4r-transfer-" + UUID.randomUUID());
+        this.scratchDirectory = new File(this.directory, "scratch");
+        this.resourceDirectory = new File(this.directory, "resources");
+        this.rWorkDirectory = new File(this.directory, "workdir");
+        this.scratchDirectory.mkdirs();
+        this.resourceDirectory.mkdirs();
+        this.rWorkDirectory.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly(this.directory);
+    }
+
+    @Test
+    public void scratchFileIsLinked() throws IOException {
+        File input = write(new File(this.scratchDirectory, "input.csv"), "1,2,3");
+        RFileTransfer transfer = new SharedTransfer(this.scratchDirectory);
+
+        transfer.upload(input, "input.csv");
+
+        File uploaded = new File(this.rWorkDirectory, "input.csv");
+        Assert.assertEquals("1,2,3", FileUtils.readFileToString(uploaded));
+        Assert.assertTrue(Files.isSameFile(input.toPath(), uploaded.toPath()));
+        Assert.assertEquals(0, transfer.getUploadBytes());
+    }
+
+    @Test
+    public void resourceIsCopied() throws IOException {
+        File resource = write(new File(this.resourceDirectory, "helper.R"), "x <- 1");
+        RFileTransfer transfer = new SharedTransfer(this.scratchDirectory);
+
+        transfer.upload(resource, "helper.R");
+
+        File uploaded = new File(this.rWorkDirectory, "helper.R");
+        Assert.assertFalse(Files.isSameFile(resource.toPath(), uploaded.toPath()));
+        Assert.assertEquals(6, transfer.getUploadBytes());
+
+        // a script changing its copy leaves the original untouched
+        write(uploaded, "x <- 2");
+        Assert.assertEquals("x <- 1", FileUtils.readFileToString(resource));
+    }
+
+    @Test
+    public void allFilesAreCopiedWithoutScratchDirectory() throws IOException {
+        File input = write(new File(this.scratchDirectory, "input.csv"), "1,2,3");
+        RFileTransfer transfer = new SharedTransfer(null);
+
+        transfer.upload(input, "input.csv");
+
+        File uploaded = new File(this.rWorkDirectory, "input.csv");
+        Assert.assertEquals("1,2,3", FileUtils.readFileToString(uploaded));
+        Assert.assertFalse(Files.isSameFile(input.toPath(), uploaded.toPath()));
+    }
+
+    @Test
+    public void archiveIsUnzippedWithCommonBaseName() throws IOException {
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        ZipOutputStream zip = new ZipOutputStream(archive);
+        for (String name : new String[] {"dir/", "dir/roads.shp", "dir/roads.dbf"}) {
+            zip.putNextEntry(new ZipEntry(name));
+            if ( !name.endsWith("/"))
+                zip.write(name.getBytes("UTF-8"));
+            zip.closeEntry();
+        }
+        zip.close();
+        RFileTransfer transfer = new SharedTransfer(this.scratchDirectory);
+
+        String name = transfer.uploadUnzipped(new ByteArrayInputStream(archive.toByteArray()), "shp");
+
+        Assert.assertTrue(name.endsWith(".shp"));
+        String baseName = name.substring(0, name.length() - ".shp".length());
+        Assert.assertEquals("dir/roads.shp", FileUtils.readFileToString(new File(this.rWorkDirectory, name)));
+        Assert.assertEquals("dir/roads.dbf",
+                            FileUtils.readFileToString(new File(this.rWorkDirectory, baseName + ".dbf")));
+        Assert.assertEquals(2, this.rWorkDirectory.list().length);
+    }
+
+    @Test
+    public void plainStreamIsUploadedWithExtension() throws IOException {
+        RFileTransfer transfer = new SharedTransfer(this.scratchDirectory);
+
+        String name = transfer.uploadUnzipped(new ByteArrayInputStream("a;b".getBytes("UTF-8")), "csv");
+
+        Assert.assertTrue(name.endsWith(".csv"));
+        Assert.assertEquals("a;b", FileUtils.readFileToString(new File(this.rWorkDirectory, name)));
+        Assert.assertEquals(3, transfer.getUploadBytes());
+    }
+
+    @Test
+    public void outputIsUsedInPlace() throws IOException {
+        File output = write(new File(this.rWorkDirectory, "result.txt"), "42");
+        RFileTransfer transfer = new SharedTransfer(this.scratchDirectory);
+
+        Assert.assertEquals(output, transfer.download("result.txt", this.scratchDirectory.getPath()));
+        Assert.assertEquals(0, transfer.getDownloadBytes());
+    }
+
+    private static File write(File file, String content) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        }
+        finally {
+            out.close();
+        }
+        return file;
+    }
+
+    /**
+     * A transfer to a local R working directory, without an Rserve connection.
+     */
+    private class SharedTransfer extends RFileTransfer {
+
+        SharedTransfer(File scratchDirectory) {
+            super(null, new LocalWorkspace(), scratchDirectory);
+        }
+
+        @Override
+        boolean probe() {
+            return true;
+        }
+    }
+
+    private class LocalWorkspace extends RWorkspace {
+
+        @Override
+        public String getPath() {
+            return RFileTransferTest.this.rWorkDirectory.getAbsolutePath();
+        }
+
+        @Override
+        public boolean isWpsWorkDirIsRWorkDir() {
+            return true;
+        }
+    }
+}
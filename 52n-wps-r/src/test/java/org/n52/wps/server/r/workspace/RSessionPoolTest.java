@@ -0,0 +1,181 @@
+/**
+ * ﻿Copyright (C) 2010 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+
+package org.n52.wps.server.r.workspace;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.n52.wps.server.ExceptionReport;
+import org.n52.wps.server.r.workspace.RSessionPool.PooledSession;
+import org.rosuda.REngine.REXP;
+import org.rosuda.REngine.REXPInteger;
+import org.rosuda.REngine.Rserve.RserveException;
+
+public class RSessionPoolTest {
+
+    private final List<StubSession> sessions = new ArrayList<StubSession>();
+
+    @Test
+    public void borrowTimesOutWhenAllSessionsAreBusy() throws ExceptionReport {
+        RSessionPool pool = new StubPool(1, 0);
+        PooledSession session = pool.borrow();
+        try {
+            pool.borrow();
+            Assert.fail("borrowed more sessions than allowed");
+        }
+        catch (ExceptionReport e) {
+            Assert.assertEquals(1, pool.getTimeouts());
+        }
+        Assert.assertEquals(1, pool.getActive());
+
+        pool.release(session, true);
+        Assert.assertSame(session, pool.borrow());
+        Assert.assertEquals(1, pool.getReused());
+    }
+
+    @Test
+    public void sessionIsRecycledAfterMaxUses() throws ExceptionReport {
+        RSessionPool pool = new StubPool(2, 2);
+        PooledSession session = pool.borrow();
+        pool.release(session, true);
+        Assert.assertSame(session, pool.borrow());
+        pool.release(session, true);
+
+        Assert.assertEquals(1, pool.getRecycled());
+        Assert.assertEquals(0, pool.getIdle());
+        Assert.assertTrue(this.sessions.get(0).closed);
+        Assert.assertNotSame(session, pool.borrow());
+        Assert.assertEquals(2, pool.getCreated());
+    }
+
+    @Test
+    public void unhealthySessionIsEvicted() throws ExceptionReport {
+        RSessionPool pool = new StubPool(2, 0);
+        pool.release(pool.borrow(), true);
+        StubSession unhealthy = this.sessions.get(0);
+        unhealthy.healthy = false;
+
+        PooledSession session = pool.borrow();
+        Assert.assertNotSame(unhealthy, session);
+        Assert.assertTrue(unhealthy.closed);
+        Assert.assertEquals(1, pool.getDiscarded());
+        Assert.assertEquals(2, pool.getCreated());
+    }
+
+    @Test
+    public void sessionIsResetWhenReleased() throws ExceptionReport {
+        RSessionPool pool = new StubPool(1, 0);
+        pool.release(pool.borrow(), true);
+        Assert.assertEquals(1, this.sessions.get(0).resets);
+        Assert.assertEquals(1, pool.getIdle());
+    }
+
+    @Test
+    public void sessionWithChangedSearchPathIsRecycled() throws ExceptionReport {
+        RSessionPool pool = new StubPool(1, 0);
+        PooledSession session = pool.borrow();
+        this.sessions.get(0).searchPathChanged = true;
+        pool.release(session, true);
+
+        Assert.assertTrue(this.sessions.get(0).closed);
+        Assert.assertEquals(1, pool.getRecycled());
+        Assert.assertEquals(0, pool.getIdle());
+    }
+
+    @Test
+    public void sessionIsDiscardedIfTheResetFails() throws ExceptionReport {
+        RSessionPool pool = new StubPool(1, 0);
+        PooledSession session = pool.borrow();
+        this.sessions.get(0).connected = false;
+        pool.release(session, true);
+
+        Assert.assertTrue(this.sessions.get(0).closed);
+        Assert.assertEquals(1, pool.getDiscarded());
+        Assert.assertEquals(0, pool.getActive());
+    }
+
+    private class StubPool extends RSessionPool {
+
+        StubPool(int maxSessions, int maxUses) {
+            super(null, maxSessions, maxUses, 50);
+        }
+
+        @Override
+        PooledSession createSession() {
+            StubSession session = new StubSession();
+            RSessionPoolTest.this.sessions.add(session);
+            return session;
+        }
+    }
+
+    /**
+     * Answers the health check and the reset of the pool like an Rserve connection.
+     */
+    private static class StubSession extends PooledSession {
+
+        private boolean connected = true;
+
+        private boolean healthy = true;
+
+        private boolean searchPathChanged = false;
+
+        private boolean closed = false;
+
+        private int resets = 0;
+
+        StubSession() {
+            super(null);
+        }
+
+        @Override
+        boolean isConnected() {
+            return this.connected && !this.closed;
+        }
+
+        @Override
+        REXP eval(String command) throws RserveException {
+            if ( !isConnected())
+                throw new RserveException(null, "not connected");
+            if (command.startsWith("local(")) {
+                // the reset
+                this.resets++;
+                return new REXPInteger(this.searchPathChanged ? 0 : 1);
+            }
+            return new REXPInteger(this.healthy ? 2 : 0);
+        }
+
+        @Override
+        void close() {
+            this.closed = true;
+        }
+    }
+}
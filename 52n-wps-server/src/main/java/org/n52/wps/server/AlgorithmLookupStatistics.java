@@ -0,0 +1,101 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the algorithm lookups of the {@link RepositoryManager} and their
+ * latency.
+ */
+public class AlgorithmLookupStatistics {
+
+	private final AtomicLong lookups = new AtomicLong();
+
+	private final AtomicLong indexMisses = new AtomicLong();
+
+	private final AtomicLong notFound = new AtomicLong();
+
+	private final AtomicLong totalNanos = new AtomicLong();
+
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	AlgorithmLookupStatistics() {
+	}
+
+	public long getLookups() {
+		return lookups.get();
+	}
+
+	/**
+	 * @return the number of lookups that were not answered by the index, but
+	 *         by asking every repository
+	 */
+	public long getIndexMisses() {
+		return indexMisses.get();
+	}
+
+	/**
+	 * @return the number of lookups of unknown algorithms
+	 */
+	public long getNotFound() {
+		return notFound.get();
+	}
+
+	public long getAverageNanos() {
+		long count = lookups.get();
+		return count == 0 ? 0 : totalNanos.get() / count;
+	}
+
+	public long getMaxNanos() {
+		return maxNanos.get();
+	}
+
+	void onLookup(long nanos, boolean indexed, boolean found) {
+		lookups.incrementAndGet();
+		totalNanos.addAndGet(nanos);
+		long max;
+		do {
+			max = maxNanos.get();
+		} while (nanos > max && !maxNanos.compareAndSet(max, nanos));
+		if (!indexed) {
+			indexMisses.incrementAndGet();
+		}
+		if (!found) {
+			notFound.incrementAndGet();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "AlgorithmLookupStatistics[lookups=" + getLookups() + ", indexMisses=" + getIndexMisses()
+				+ ", notFound=" + getNotFound() + ", averageNanos=" + getAverageNanos() + ", maxNanos="
+				+ getMaxNanos() + "]";
+	}
+}
@@ -0,0 +1,119 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server;
+
+/**
+ * A single byte range of an HTTP <code>Range</code> header (RFC 7233).
+ */
+public class ByteRange {
+
+	/**
+	 * The range of a request that cannot be served (416).
+	 */
+	public static final ByteRange UNSATISFIABLE = new ByteRange(-1, -1);
+
+	private static final String BYTES_UNIT = "bytes=";
+
+	private final long start;
+
+	private final long end;
+
+	private ByteRange(long start, long end) {
+		this.start = start;
+		this.end = end;
+	}
+
+	/**
+	 * Parses a <code>Range</code> header.
+	 *
+	 * @param header
+	 *            the header value or <code>null</code>
+	 * @param length
+	 *            the length of the representation
+	 * @return <code>null</code> if the complete representation is to be sent
+	 *         (no, an invalid or a multi range header),
+	 *         {@link #UNSATISFIABLE} or the requested range
+	 */
+	public static ByteRange parse(String header, long length) {
+		if (header == null || !header.trim().toLowerCase().startsWith(BYTES_UNIT)) {
+			return null;
+		}
+		String range = header.trim().substring(BYTES_UNIT.length()).trim();
+		int dash = range.indexOf('-');
+		if (dash < 0 || range.indexOf(',') >= 0) {
+			// multipart/byteranges responses are not supported
+			return null;
+		}
+		try {
+			String first = range.substring(0, dash).trim();
+			String last = range.substring(dash + 1).trim();
+			if (first.isEmpty()) {
+				// suffix range: the last n bytes
+				long suffix = Long.parseLong(last);
+				if (suffix <= 0 || length == 0) {
+					return UNSATISFIABLE;
+				}
+				return new ByteRange(Math.max(0, length - suffix), length - 1);
+			}
+			long start = Long.parseLong(first);
+			long end = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+			if (start < 0 || end < start) {
+				return null;
+			}
+			if (start >= length) {
+				return UNSATISFIABLE;
+			}
+			return new ByteRange(start, Math.min(end, length - 1));
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	public long getStart() {
+		return start;
+	}
+
+	/**
+	 * @return the last byte (inclusive)
+	 */
+	public long getEnd() {
+		return end;
+	}
+
+	public long getLength() {
+		return end - start + 1;
+	}
+
+	/**
+	 * @return the value of the <code>Content-Range</code> header
+	 */
+	public String toContentRange(long length) {
+		return this == UNSATISFIABLE ? "bytes */" + length : "bytes " + start + "-" + end + "/" + length;
+	}
+}
@@ -50,6 +50,7 @@ import net.opengis.wps.x100.ProcessOfferingsDocument.ProcessOfferings;
 import org.apache.xmlbeans.XmlException;
 import org.apache.xmlbeans.XmlOptions;
 import org.n52.wps.commons.WPSConfig;
+import org.n52.wps.server.response.ResponseCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -179,7 +180,9 @@ public class CapabilitiesConfiguration {
             }
             else {
                 loadingStrategy = strategy;
-                return getInstance(true);
+                CapabilitiesDocument capabilities = getInstance(true);
+                ResponseCache.getInstance().invalidate();
+                return capabilities;
             }
         }
         finally {
@@ -340,6 +343,7 @@ public class CapabilitiesConfiguration {
      */
     public static void reloadSkeleton() throws XmlException, IOException {
         getInstance(true);
+        ResponseCache.getInstance().invalidate();
     }
 
     /**
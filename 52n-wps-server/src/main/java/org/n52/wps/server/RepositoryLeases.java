@@ -0,0 +1,151 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.MapMaker;
+
+/**
+ * Remembers the repository each borrowed algorithm instance came from, so a
+ * repository replaced by a reload is only shut down once the executions using
+ * its algorithms finished. Instances that are never handed back are forgotten
+ * when they are garbage collected; a retired repository is shut down after
+ * the maximum delay even if some of its instances are still referenced.
+ */
+class RepositoryLeases {
+
+	private final long maxRetireDelayNanos;
+
+	// weak identity keys, guarded by this
+	private final Map<IAlgorithm, Lease> leases = new MapMaker().weakKeys().makeMap();
+
+	// retired repositories and when they were retired, guarded by this
+	private final Map<IAlgorithmRepository, Long> retired = new IdentityHashMap<IAlgorithmRepository, Long>();
+
+	RepositoryLeases(long maxRetireDelay, TimeUnit unit) {
+		this.maxRetireDelayNanos = unit.toNanos(maxRetireDelay);
+	}
+
+	synchronized void borrowed(IAlgorithm algorithm, IAlgorithmRepository repository) {
+		Lease lease = leases.get(algorithm);
+		if (lease == null || lease.repository != repository) {
+			lease = new Lease(repository);
+			leases.put(algorithm, lease);
+		}
+		lease.count++;
+	}
+
+	/**
+	 * @return the repository the algorithm was borrowed from or
+	 *         <code>null</code> if it is not borrowed
+	 */
+	synchronized IAlgorithmRepository released(IAlgorithm algorithm) {
+		Lease lease = leases.get(algorithm);
+		if (lease == null) {
+			return null;
+		}
+		if (--lease.count == 0) {
+			leases.remove(algorithm);
+		}
+		return lease.repository;
+	}
+
+	/**
+	 * Marks repositories that were replaced by a reload, they are returned by
+	 * {@link #drain()} once none of their algorithms is borrowed anymore.
+	 */
+	synchronized void retire(Collection<IAlgorithmRepository> repositories) {
+		long now = System.nanoTime();
+		for (IAlgorithmRepository repository : repositories) {
+			if (!retired.containsKey(repository)) {
+				retired.put(repository, now);
+			}
+		}
+	}
+
+	synchronized boolean hasRetired() {
+		return !retired.isEmpty();
+	}
+
+	/**
+	 * Removes the retired repositories that are no longer in use.
+	 *
+	 * @return the repositories to shut down
+	 */
+	synchronized List<IAlgorithmRepository> drain() {
+		List<IAlgorithmRepository> drained = new ArrayList<IAlgorithmRepository>();
+		if (retired.isEmpty()) {
+			return drained;
+		}
+		Map<IAlgorithmRepository, Boolean> inUse = new IdentityHashMap<IAlgorithmRepository, Boolean>();
+		for (Lease lease : leases.values()) {
+			inUse.put(lease.repository, Boolean.TRUE);
+		}
+		long now = System.nanoTime();
+		Iterator<Map.Entry<IAlgorithmRepository, Long>> iterator = retired.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<IAlgorithmRepository, Long> entry = iterator.next();
+			if (!inUse.containsKey(entry.getKey()) || now - entry.getValue() >= maxRetireDelayNanos) {
+				drained.add(entry.getKey());
+				iterator.remove();
+			}
+		}
+		return drained;
+	}
+
+	/**
+	 * Forgets all retired repositories.
+	 *
+	 * @return the repositories that were retired
+	 */
+	synchronized List<IAlgorithmRepository> drainAll() {
+		List<IAlgorithmRepository> drained = new ArrayList<IAlgorithmRepository>(retired.keySet());
+		retired.clear();
+		return drained;
+	}
+
+	private static class Lease {
+
+		private final IAlgorithmRepository repository;
+
+		// the same instance may be handed out more than once by a non-pooling repository
+		private int count = 0;
+
+		Lease(IAlgorithmRepository repository) {
+			this.repository = repository;
+		}
+	}
+}
@@ -33,16 +33,31 @@ import java.beans.PropertyChangeListener;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import net.opengis.wps.x100.ProcessDescriptionType;
 
 import org.n52.wps.PropertyDocument.Property;
 import org.n52.wps.RepositoryDocument.Repository;
 import org.n52.wps.commons.WPSConfig;
+import org.n52.wps.server.response.ResponseCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 /**
  * @author Bastian Schaeffer, University of Muenster
  *
@@ -51,17 +66,29 @@ public class RepositoryManager {
 	
 	private static RepositoryManager instance;
 	private static Logger LOGGER = LoggerFactory.getLogger(RepositoryManager.class);
-	private List<IAlgorithmRepository> repositories;
+	// replaced as a whole by loadAllRepositories(), readers never see a partially loaded state
+	private volatile AlgorithmIndex algorithmIndex = new AlgorithmIndex(Collections.<IAlgorithmRepository>emptyList());
+	// the loaded repositories by their configuration, guarded by loadAllRepositories()
+	private Map<String, IAlgorithmRepository> repositoryConfigurations = new HashMap<String, IAlgorithmRepository>();
+	private String datahandlersConfiguration;
+	private final AlgorithmLookupStatistics lookupStatistics = new AlgorithmLookupStatistics();
 	private ProcessIDRegistry globalProcessIDs = ProcessIDRegistry.getInstance();
-	private UpdateThread updateThread;
+	// replaced repositories are shut down once the executions using them finished
+	private final RepositoryLeases leases = new RepositoryLeases(MAX_RETIRE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+	// reloads the repositories and shuts down the replaced ones
+	private final ScheduledExecutorService loader = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+			.setNameFormat("wps-repository-loader").setDaemon(true).build());
+	
+	private final static long RETIRE_CHECK_INTERVAL_MILLIS = 60 * 1000;
+	private final static long MAX_RETIRE_DELAY_MILLIS = 60 * 60 * 1000;
 	
-	private RepositoryManager(){
+	RepositoryManager(){
 		
 		// clear registry
 		globalProcessIDs.clearRegistry();
 		
         // initialize all Repositories
-        loadAllRepositories();
+        loadAllRepositories(false);
 
         // FvK: added Property Change Listener support
         // creates listener and register it to the wpsConfig instance.
@@ -70,7 +97,7 @@ public class RepositoryManager {
                     final PropertyChangeEvent propertyChangeEvent) {
                                                                   LOGGER.info("Received Property Change Event: {}",
                                                                               propertyChangeEvent.getPropertyName());
-                loadAllRepositories();
+                scheduleLoad(false);
             }
         });
         
@@ -80,18 +107,65 @@ public class RepositoryManager {
             LOGGER.info("Setting repository update period to {} hours.", updateHours);
         	updateHours = updateHours * 3600 * 1000; // make milliseconds
             long updateInterval = updateHours.longValue();
-            this.updateThread = new UpdateThread(updateInterval);
-        	updateThread.start();
+            loader.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    LOGGER.info("Reloading repositories - this might take a while ...");
+                    long timestamp = System.currentTimeMillis();
+                    reloadRepositories();
+                    LOGGER.info("Repositories reloaded - going to sleep. Took {} seconds.",
+                                (System.currentTimeMillis() - timestamp) / 1000);
+                }
+            }, updateInterval, updateInterval, TimeUnit.MILLISECONDS);
         }
         
+        // picks up retired repositories whose algorithms were never handed back
+        loader.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                shutdownDrainedRepositories();
+            }
+        }, RETIRE_CHECK_INTERVAL_MILLIS, RETIRE_CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
     	
 	}
 
-    private void loadAllRepositories(){
-        repositories = new ArrayList<IAlgorithmRepository>();
-        LOGGER.debug("Loading all repositories: {} (doing a gc beforehand...)", repositories);
+    /**
+     * Loads the repositories in the background, lookups use the current
+     * repositories until the new ones are swapped in.
+     */
+    private void scheduleLoad(final boolean rebuildAll) {
+        try {
+            loader.execute(new Runnable() {
+                public void run() {
+                    loadAllRepositories(rebuildAll);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("Repository manager was shut down, not reloading");
+        }
+    }
+
+    /**
+     * Loads the configured repositories. Repositories whose configuration did
+     * not change since the last load are kept, unless all repositories are
+     * rebuilt. The new repositories are swapped in at once, lookups use the
+     * previous repositories until then. Replaced repositories are shut down
+     * once none of their algorithms is borrowed by an execution anymore.
+     * 
+     * @param rebuildAll
+     *        <code>true</code> to create new instances of all repositories,
+     *        e.g. to pick up algorithms added since the last load
+     */
+    synchronized void loadAllRepositories(boolean rebuildAll){
+        List<IAlgorithmRepository> loadedRepositories = new ArrayList<IAlgorithmRepository>();
+        Map<String, IAlgorithmRepository> loadedConfigurations = new HashMap<String, IAlgorithmRepository>();
+        Map<String, IAlgorithmRepository> previousConfigurations = new HashMap<String, IAlgorithmRepository>(repositoryConfigurations);
+        LOGGER.debug("Loading all repositories: {}", algorithmIndex.getRepositories());
 
-        System.gc();
+        // the process descriptions list the formats of the parsers and generators
+        String datahandlers = WPSConfig.getInstance().getWPSConfig().getDatahandlers().xmlText();
+        if ( !datahandlers.equals(datahandlersConfiguration)) {
+            rebuildAll = true;
+            datahandlersConfiguration = datahandlers;
+        }
 
 		Repository[] repositoryList = WPSConfig.getInstance().getRegisterdAlgorithmRepositories();
 
@@ -99,6 +173,85 @@ public class RepositoryManager {
 			if(repository.getActive()==false){
 				continue;
 			}
+			String configuration = getConfiguration(repository);
+			IAlgorithmRepository algorithmRepository = rebuildAll ? null : previousConfigurations.remove(configuration);
+			if(algorithmRepository != null){
+				LOGGER.debug("Algorithm Repository {} unchanged", repository.getClassName());
+			}else{
+				algorithmRepository = createRepository(repository);
+			}
+			if(algorithmRepository != null){
+				loadedRepositories.add(algorithmRepository);
+				loadedConfigurations.put(configuration, algorithmRepository);
+			}
+		}
+		
+		repositoryConfigurations = loadedConfigurations;
+		List<IAlgorithmRepository> previousRepositories = algorithmIndex.getRepositories();
+		if(loadedRepositories.equals(previousRepositories)){
+			LOGGER.info("Algorithm Repositories unchanged");
+			return;
+		}
+		algorithmIndex = new AlgorithmIndex(loadedRepositories);
+		LOGGER.info("Indexed {} algorithms of {} repositories", algorithmIndex.size(), loadedRepositories.size());
+		// the cached capabilities and process descriptions may have changed
+		ResponseCache.getInstance().invalidate();
+
+		Map<IAlgorithmRepository, Boolean> kept = new IdentityHashMap<IAlgorithmRepository, Boolean>();
+		for(IAlgorithmRepository repository : loadedRepositories){
+			kept.put(repository, Boolean.TRUE);
+		}
+		List<IAlgorithmRepository> replaced = new ArrayList<IAlgorithmRepository>();
+		for(IAlgorithmRepository repository : previousRepositories){
+			if(!kept.containsKey(repository)){
+				replaced.add(repository);
+			}
+		}
+		if(!replaced.isEmpty()){
+			LOGGER.info("Retiring {} replaced Algorithm Repositories", replaced.size());
+			leases.retire(replaced);
+			shutdownDrainedRepositories();
+		}
+    }
+
+    /**
+     * Shuts down the replaced repositories none of whose algorithms is
+     * borrowed anymore.
+     */
+    private void shutdownDrainedRepositories() {
+        for (IAlgorithmRepository repository : leases.drain()) {
+            shutdownRepository(repository);
+        }
+    }
+
+    private static void shutdownRepository(IAlgorithmRepository repository) {
+        LOGGER.info("Shutting down replaced Algorithm Repository {}", repository.getClass().getName());
+        try {
+            repository.shutdown();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Could not shut down Algorithm Repository " + repository.getClass().getName(), e);
+        }
+    }
+
+    /**
+     * @return the class name and the properties of the repository, which
+     *         determine the algorithms it offers
+     */
+    private static String getConfiguration(Repository repository) {
+        StringBuilder configuration = new StringBuilder(repository.getClassName());
+        for (Property property : repository.getPropertyArray()) {
+            configuration.append('\n').append(property.getName()).append('=').append(property.getStringValue());
+            if ( !property.getActive()) {
+                configuration.append(" (inactive)");
+            }
+        }
+        return configuration.toString();
+    }
+
+    /**
+     * @return the repository or <code>null</code> if it could not be created
+     */
+    private IAlgorithmRepository createRepository(Repository repository){
 			String repositoryClassName = repository.getClassName();
 			try {
 				IAlgorithmRepository algorithmRepository = null;
@@ -116,8 +269,8 @@ public class RepositoryManager {
 					}
 				}
 				
-				repositories.add(algorithmRepository);
                 LOGGER.info("Algorithm Repository {} initialized", repositoryClassName);
+				return algorithmRepository;
 			} catch (InstantiationException e) {
                 LOGGER.warn("An error occured while registering AlgorithmRepository: {}", repositoryClassName);
 			} catch (IllegalAccessException e) {
@@ -162,7 +315,7 @@ public class RepositoryManager {
                             repositoryClassName,
                             e.getMessage());
 			}
-		}
+			return null;
     }
 	
 	public static RepositoryManager getInstance(){
@@ -185,7 +338,7 @@ public class RepositoryManager {
 	 *
 	 */
 	protected void reloadRepositories() {
-		loadAllRepositories();
+		loadAllRepositories(true);
 	}
 	
 	/**
@@ -198,12 +351,22 @@ public class RepositoryManager {
 	 * @throws Exception
 	 */
 	public IAlgorithm getAlgorithm(String className){
-		for(IAlgorithmRepository repository : repositories){
-			if(repository.containsAlgorithm(className)){
-				return repository.getAlgorithm(className);
-			}
+		AlgorithmIndex index = algorithmIndex;
+		IAlgorithmRepository repository = index.lookup(className, lookupStatistics);
+		if (repository == null) {
+			return null;
 		}
-		return null;
+		IAlgorithm algorithm = repository.getAlgorithm(className);
+		if (algorithm == null && index.evict(className, repository)) {
+			// removed from the repository since it was indexed, it may have moved
+			repository = index.lookup(className, lookupStatistics);
+			algorithm = repository == null ? null : repository.getAlgorithm(className);
+		}
+		if (algorithm != null) {
+			// keeps the repository from being shut down while the instance is used
+			leases.borrowed(algorithm, repository);
+		}
+		return algorithm;
 	}
 	
 	/**
@@ -212,41 +375,113 @@ public class RepositoryManager {
 	 */
 	public List<String> getAlgorithms(){
 		List<String> allAlgorithmNamesCollection = new ArrayList<String>();
-		for(IAlgorithmRepository repository : repositories){
+		for(IAlgorithmRepository repository : algorithmIndex.getRepositories()){
 			allAlgorithmNamesCollection.addAll(repository.getAlgorithmNames());
 		}
 		return allAlgorithmNamesCollection;
 		
 	}
 
-	public boolean containsAlgorithm(String algorithmName) {
-		for(IAlgorithmRepository repository : repositories){
-			if(repository.containsAlgorithm(algorithmName)){
-				return true;
-			}
+	/**
+	 * Hands an executed algorithm instance back to its repository. Instances
+	 * of repositories not implementing {@link IPooledAlgorithmRepository} are
+	 * left to the garbage collector.
+	 * 
+	 * @param algorithmName
+	 * @param algorithm
+	 *            the instance obtained by {@link #getAlgorithm(String)}, it
+	 *            must not be used by the caller afterwards
+	 */
+	public void releaseAlgorithm(String algorithmName, IAlgorithm algorithm){
+		if (algorithm == null) {
+			return;
 		}
-		return false;
+		// the instance belongs to the repository it came from, even if that was replaced since
+		IAlgorithmRepository repository = leases.released(algorithm);
+		if (repository == null) {
+			repository = lookupRepository(algorithmName);
+		}
+		if (repository instanceof IPooledAlgorithmRepository) {
+			((IPooledAlgorithmRepository) repository).releaseAlgorithm(algorithmName, algorithm);
+		}
+		scheduleDrain();
+	}
+
+	/**
+	 * Ends the use of an algorithm instance that must not be reused, e.g.
+	 * because its execution failed.
+	 * 
+	 * @param algorithm
+	 *            the instance obtained by {@link #getAlgorithm(String)}
+	 */
+	public void discardAlgorithm(IAlgorithm algorithm){
+		if (algorithm == null) {
+			return;
+		}
+		leases.released(algorithm);
+		scheduleDrain();
+	}
+
+	private void scheduleDrain() {
+		if (!leases.hasRetired()) {
+			return;
+		}
+		try {
+			loader.execute(new Runnable() {
+				public void run() {
+					shutdownDrainedRepositories();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			LOGGER.debug("Repository manager was shut down, not shutting down replaced repositories");
+		}
+	}
+
+	public boolean containsAlgorithm(String algorithmName) {
+		return lookupRepository(algorithmName) != null;
 	}
 	
 	public IAlgorithmRepository getRepositoryForAlgorithm(String algorithmName){
-		for(IAlgorithmRepository repository : repositories){
-			if(repository.containsAlgorithm(algorithmName)){
-				return repository;
-			}
-		}
-		return null;
+		return lookupRepository(algorithmName);
+	}
+	
+	/**
+	 * Looks up the repository of an algorithm in the index. Algorithms added
+	 * to a repository after it was loaded are looked up by asking every
+	 * repository and indexed.
+	 * 
+	 * @param algorithmName
+	 * @return the first repository containing the algorithm or null
+	 */
+	private IAlgorithmRepository lookupRepository(String algorithmName){
+		return algorithmIndex.lookup(algorithmName, lookupStatistics);
+	}
+	
+	/**
+	 * @return the number and latency of algorithm lookups
+	 */
+	public AlgorithmLookupStatistics getLookupStatistics(){
+		return lookupStatistics;
 	}
 	
 	public Class getInputDataTypeForAlgorithm(String algorithmIdentifier, String inputIdentifier){
 		IAlgorithm algorithm = getAlgorithm(algorithmIdentifier);
-		return algorithm.getInputDataType(inputIdentifier);
-		
+		try {
+			return algorithm.getInputDataType(inputIdentifier);
+		} finally {
+			// the instance was only borrowed to look up the type
+			releaseAlgorithm(algorithmIdentifier, algorithm);
+		}
 	}
 	
 	public Class getOutputDataTypeForAlgorithm(String algorithmIdentifier, String inputIdentifier){
 		IAlgorithm algorithm = getAlgorithm(algorithmIdentifier);
-		return algorithm.getOutputDataType(inputIdentifier);
-		
+		try {
+			return algorithm.getOutputDataType(inputIdentifier);
+		} finally {
+			// the instance was only borrowed to look up the type
+			releaseAlgorithm(algorithmIdentifier, algorithm);
+		}
 	}
 	
 	public boolean registerAlgorithm(String id, IAlgorithmRepository repository){
@@ -264,7 +499,7 @@ public class RepositoryManager {
 	}
 	
 	public IAlgorithmRepository getAlgorithmRepository(String name){
-	  for (IAlgorithmRepository repo : repositories ){
+	  for (IAlgorithmRepository repo : algorithmIndex.getRepositories() ){
 		   if(repo.getClass().getName().equals(name)){
 			   return repo;
 		  }
@@ -274,7 +509,7 @@ public class RepositoryManager {
 
 	public IAlgorithmRepository getRepositoryForClassName(
 			String className) {
-		for(IAlgorithmRepository repository : repositories){
+		for(IAlgorithmRepository repository : algorithmIndex.getRepositories()){
 			if(repository.getClass().getName().equals(className)){
 				return repository;
 			}
@@ -283,61 +518,103 @@ public class RepositoryManager {
 	}
 	
 	public ProcessDescriptionType getProcessDescription(String processClassName){
-		for(IAlgorithmRepository repository : repositories){
-			if(repository.containsAlgorithm(processClassName)){
-				return repository.getProcessDescription(processClassName);
+		IAlgorithmRepository repository = lookupRepository(processClassName);
+		return repository == null ? null : repository.getProcessDescription(processClassName);
+	}
+	
+	/**
+	 * The loaded repositories and the index of their algorithms.
+	 */
+	static class AlgorithmIndex {
+		
+		private final static long MAX_CACHED_MISSES = 1000;
+		
+		private final static long MISS_EXPIRY_SECONDS = 30;
+		
+		private final List<IAlgorithmRepository> repositories;
+		
+		private final ConcurrentHashMap<String, IAlgorithmRepository> index = new ConcurrentHashMap<String, IAlgorithmRepository>();
+		
+		// unknown identifiers, they are looked up again once expired as repositories may add algorithms
+		private final Cache<String, Boolean> misses;
+		
+		AlgorithmIndex(List<IAlgorithmRepository> repositories) {
+			this(repositories, MISS_EXPIRY_SECONDS, TimeUnit.SECONDS);
+		}
+		
+		AlgorithmIndex(List<IAlgorithmRepository> repositories, long missExpiry, TimeUnit unit) {
+			this.repositories = Collections.unmodifiableList(repositories);
+			this.misses = CacheBuilder.newBuilder().maximumSize(MAX_CACHED_MISSES)
+					.expireAfterWrite(missExpiry, unit).build();
+			for(IAlgorithmRepository repository : repositories){
+				Collection<String> algorithmNames = repository.getAlgorithmNames();
+				if(algorithmNames == null){
+					continue;
+				}
+				for(String algorithmName : algorithmNames){
+					// like a scan, the first repository containing an algorithm wins
+					index.putIfAbsent(algorithmName, repository);
+				}
 			}
 		}
-		return null;
+		
+		List<IAlgorithmRepository> getRepositories() {
+			return repositories;
+		}
+		
+		int size() {
+			return index.size();
+		}
+		
+		/**
+		 * Indexed algorithms are trusted until the index is rebuilt or they
+		 * are {@link #evict(String, IAlgorithmRepository) evicted}. Algorithms
+		 * added to a repository after it was indexed are looked up by asking
+		 * every repository and indexed, unknown algorithms are remembered for
+		 * a while.
+		 */
+		IAlgorithmRepository lookup(String algorithmName, AlgorithmLookupStatistics statistics) {
+			if(algorithmName == null){
+				return null;
+			}
+			long start = System.nanoTime();
+			IAlgorithmRepository repository = index.get(algorithmName);
+			boolean indexed = repository != null || misses.getIfPresent(algorithmName) != null;
+			if(!indexed){
+				for(IAlgorithmRepository candidate : repositories){
+					if(candidate.containsAlgorithm(algorithmName)){
+						repository = candidate;
+						index.put(algorithmName, candidate);
+						break;
+					}
+				}
+				if(repository == null){
+					misses.put(algorithmName, Boolean.TRUE);
+				}
+			}
+			statistics.onLookup(System.nanoTime() - start, indexed, repository != null);
+			return repository;
+		}
+		
+		/**
+		 * Removes an algorithm that its indexed repository no longer offers,
+		 * the next lookup asks every repository again.
+		 * 
+		 * @return <code>true</code> if the algorithm was indexed for the
+		 *         repository
+		 */
+		boolean evict(String algorithmName, IAlgorithmRepository repository) {
+			return index.remove(algorithmName, repository);
+		}
 	}
 	
-    static class UpdateThread extends Thread {
-        
-    	private final long interval;
-    	private boolean firstrun = true;
-    	
-    	public UpdateThread (long interval){
-    		this.interval = interval;
-    	}
-    	
-        @Override
-        public void run() {
-        	LOGGER.debug("UpdateThread started");
-        	
-        	try {
-        		// never terminate the run method
-        		while (true){
-        			// do not update on first run!
-        			if (!firstrun){
-        				LOGGER.info("Reloading repositories - this might take a while ...");
-            			long timestamp = System.currentTimeMillis();
-            			RepositoryManager.getInstance().reloadRepositories();
-                        LOGGER.info("Repositories reloaded - going to sleep. Took {} seconds.",
-                                    (System.currentTimeMillis() - timestamp) / 1000);
-        			} else {
-        				firstrun = false;
-        			}
-        			
-        			// sleep for a given INTERVAL
-        			sleep(interval);
-        		}
-			} catch (InterruptedException e) {
-				LOGGER.debug("Interrupt received - Terminating the UpdateThread.");
-			}
-        }
-       
-    }
-    
-    // shut down the update thread
-    public void finalize(){
-    	if (updateThread != null){
-    		updateThread.interrupt();
-    	}
-    }
-
 	public void shutdown() {
         LOGGER.debug("Shutting down all repositories..");
-		for (IAlgorithmRepository repo : repositories) {
+        loader.shutdownNow();
+		for (IAlgorithmRepository repo : algorithmIndex.getRepositories()) {
+			repo.shutdown();
+		}
+		for (IAlgorithmRepository repo : leases.drainAll()) {
 			repo.shutdown();
 		}
 	}
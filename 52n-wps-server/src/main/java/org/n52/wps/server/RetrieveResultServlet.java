@@ -28,11 +28,17 @@
  */
 package org.n52.wps.server;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.UUID;
+import java.util.zip.GZIPInputStream;
 
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
@@ -60,6 +66,14 @@ public class RetrieveResultServlet extends HttpServlet {
     
     private final int uuid_length = 36;
 
+    private final static String SUFFIX_GZIP = ".gz";
+
+    // request attributes of containers supporting sendfile (e.g. Tomcat NIO/APR connectors)
+    private final static String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private final static String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private final static String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private final static String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
     @Override
     public void init(ServletConfig config) throws ServletException {
         super.init(config);
@@ -88,6 +102,7 @@ public class RetrieveResultServlet extends HttpServlet {
 
         	if(!isIDValid(id)){
         		errorResponse("id parameter not valid", response);
+        		return;
         	}
         	
             IDatabase db = DatabaseFactory.getDatabase();
@@ -136,6 +151,13 @@ public class RetrieveResultServlet extends HttpServlet {
                         copyResponseAsXML(inputStream, outputStream, useAttachment || indentXML, id);
                     } else {
 
+                        File responseFile = lookupResponseFile(db, id);
+                        if (responseFile != null) {
+                            IOUtils.closeQuietly(inputStream);
+                            writeResponseFile(request, response, responseFile, id, contentLength);
+                            return;
+                        }
+
                         if (contentLength > -1) {
                             // Can't use response.setContentLength(...) as it accepts an int (max of 2^31 - 1) ?!
                             // response.setContentLength(contentLength);
@@ -192,6 +214,175 @@ public class RetrieveResultServlet extends HttpServlet {
         LOGGER.info("{} bytes written in response to id {}", contentWritten, id);
     }
 
+    private File lookupResponseFile(IDatabase db, String id) {
+        try {
+            File responseFile = db.lookupResponseAsFile(id);
+            return responseFile != null && responseFile.isFile() ? responseFile : null;
+        } catch (RuntimeException e) {
+            LOGGER.debug("No response file for id {}: {}", id, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Writes a result stored on disk. Supports conditional (ETag) and partial
+     * (Range, If-Range) requests. Gzipped results are passed through with
+     * <code>Content-Encoding: gzip</code> if the client accepts it. The file
+     * is handed to the container (sendfile) or transferred from its channel
+     * instead of being copied through a buffer.
+     *
+     * @param contentLength
+     *            the length of the uncompressed result or -1
+     */
+    protected void writeResponseFile(
+            HttpServletRequest request,
+            HttpServletResponse response,
+            File responseFile,
+            String id,
+            long contentLength) throws IOException {
+        boolean gzipped = responseFile.getName().endsWith(SUFFIX_GZIP);
+        if (gzipped) {
+            response.addHeader("Vary", "Accept-Encoding");
+            if ( !acceptsGzip(request)) {
+                // has to be decompressed, ranges of the decompressed content cannot be served
+                response.setHeader("Accept-Ranges", "none");
+                if (contentLength > -1) {
+                    response.setHeader("Content-Length", Long.toString(contentLength));
+                }
+                InputStream inputStream = new GZIPInputStream(new FileInputStream(responseFile));
+                try {
+                    copyResponseStream(inputStream, response.getOutputStream(), id, contentLength);
+                } finally {
+                    IOUtils.closeQuietly(inputStream);
+                }
+                return;
+            }
+            response.setHeader("Content-Encoding", "gzip");
+        }
+
+        long length = responseFile.length();
+        long lastModified = responseFile.lastModified();
+        String etag = "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(length)
+                + (gzipped ? "-gzip" : "") + "\"";
+        response.setHeader("ETag", etag);
+        response.setDateHeader("Last-Modified", lastModified);
+        response.setHeader("Accept-Ranges", "bytes");
+
+        if (matchesETag(request.getHeader("If-None-Match"), etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        ByteRange range = null;
+        if (isIfRangeSatisfied(request, etag, lastModified)) {
+            range = ByteRange.parse(request.getHeader("Range"), length);
+        }
+        if (range == ByteRange.UNSATISFIABLE) {
+            response.setHeader("Content-Range", range.toContentRange(length));
+            response.sendError(416); // Requested Range Not Satisfiable
+            return;
+        }
+        long start = 0;
+        long count = length;
+        if (range != null) {
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader("Content-Range", range.toContentRange(length));
+            start = range.getStart();
+            count = range.getLength();
+        }
+        // Can't use response.setContentLength(...) as it accepts an int
+        response.setHeader("Content-Length", Long.toString(count));
+
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, responseFile.getAbsolutePath());
+            request.setAttribute(SENDFILE_START, Long.valueOf(start));
+            request.setAttribute(SENDFILE_END, Long.valueOf(start + count));
+            LOGGER.info("{} bytes handed to the container in response to id {}", count, id);
+            return;
+        }
+        transferResponseFile(responseFile, start, count, response.getOutputStream(), id);
+    }
+
+    protected void transferResponseFile(
+            File responseFile,
+            long start,
+            long count,
+            OutputStream outputStream,
+            String id) throws IOException {
+        long contentWritten = 0;
+        FileInputStream inputStream = new FileInputStream(responseFile);
+        try {
+            FileChannel channel = inputStream.getChannel();
+            WritableByteChannel target = Channels.newChannel(outputStream);
+            while (contentWritten < count) {
+                long transferred = channel.transferTo(start + contentWritten, count - contentWritten, target);
+                if (transferred <= 0) {
+                    break;
+                }
+                contentWritten += transferred;
+            }
+        } catch (IOException e) {
+            throw new IOException(String.format("Error writing response to output stream for id %s, %d of %d bytes written",
+                    id, contentWritten, count), e);
+        } finally {
+            IOUtils.closeQuietly(inputStream);
+        }
+        LOGGER.info("{} bytes written in response to id {}", contentWritten, id);
+    }
+
+    static boolean acceptsGzip(HttpServletRequest request) {
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parameters = coding.split(";");
+            String name = parameters[0].trim().toLowerCase();
+            if (name.equals("gzip") || name.equals("x-gzip") || name.equals("*")) {
+                for (int i = 1; i < parameters.length; i++) {
+                    String parameter = parameters[i].trim().replace(" ", "");
+                    if (parameter.matches("q=0(\\.0*)?")) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static boolean matchesETag(String header, String etag) {
+        if (header == null) {
+            return false;
+        }
+        for (String candidate : header.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals("*") || candidate.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isIfRangeSatisfied(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader("If-Range");
+        if (ifRange == null) {
+            return true;
+        }
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(etag);
+        }
+        try {
+            return lastModified / 1000 <= request.getDateHeader("If-Range") / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
     protected void copyResponseAsXML(
             InputStream inputStream,
             OutputStream outputStream,
@@ -34,7 +34,9 @@ import java.beans.PropertyChangeListener;
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.StringWriter;
 import java.net.URLDecoder;
@@ -55,6 +57,7 @@ import org.n52.wps.io.GeneratorFactory;
 import org.n52.wps.io.ParserFactory;
 import org.n52.wps.server.database.DatabaseFactory;
 import org.n52.wps.server.handler.RequestHandler;
+import org.n52.wps.server.response.ResponseCache;
 import org.n52.wps.util.XMLBeansHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -230,9 +233,15 @@ public class WebProcessingService extends HttpServlet {
             RequestHandler handler = new RequestHandler((Map<String, String[]>) req.getParameterMap(), out);
             String mimeType = handler.getResponseMimeType();
             res.setContentType(mimeType);
-            handler.handle();
+            ResponseCache.Entry cachedResponse = handler.getCachedResponse();
+            if (cachedResponse != null) {
+                writeCachedResponse(req, res, out, cachedResponse);
+            }
+            else {
+                handler.handle();
 
-            res.setStatus(HttpServletResponse.SC_OK);
+                res.setStatus(HttpServletResponse.SC_OK);
+            }
         }
         catch (ExceptionReport e) {
             handleException(e, res);
@@ -252,13 +261,67 @@ public class WebProcessingService extends HttpServlet {
         }
     }
 
+    /**
+     * Writes a GetCapabilities or DescribeProcess response served from the {@link ResponseCache}. Clients
+     * have to revalidate the response, which is answered with 304 (Not Modified) while the cached response
+     * is unchanged. The pre-gzipped content is sent if the client accepts it. A response that is not cached
+     * is written as is.
+     */
+    private static void writeCachedResponse(HttpServletRequest req,
+                                            HttpServletResponse res,
+                                            OutputStream out,
+                                            ResponseCache.Entry cachedResponse) throws IOException {
+        if ( !cachedResponse.isCached()) {
+            res.setContentLength(cachedResponse.getContent().length);
+            res.setStatus(HttpServletResponse.SC_OK);
+            out.write(cachedResponse.getContent());
+            return;
+        }
+
+        boolean gzip = RetrieveResultServlet.acceptsGzip(req);
+        String etag = gzip ? cachedResponse.getGzippedETag() : cachedResponse.getETag();
+        res.addHeader("Vary", "Accept-Encoding");
+        res.setHeader("Cache-Control", "no-cache");
+        res.setHeader("ETag", etag);
+        res.setDateHeader("Last-Modified", cachedResponse.getLastModified());
+
+        String ifNoneMatch = req.getHeader("If-None-Match");
+        boolean notModified;
+        if (ifNoneMatch != null) {
+            notModified = RetrieveResultServlet.matchesETag(ifNoneMatch, etag);
+        }
+        else {
+            notModified = getDateHeader(req, "If-Modified-Since") >= cachedResponse.getLastModified();
+        }
+        if (notModified) {
+            res.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        byte[] content = gzip ? cachedResponse.getGzippedContent() : cachedResponse.getContent();
+        if (gzip) {
+            res.setHeader("Content-Encoding", "gzip");
+        }
+        res.setContentLength(content.length);
+        res.setStatus(HttpServletResponse.SC_OK);
+        out.write(content);
+    }
+
+    private static long getDateHeader(HttpServletRequest req, String name) {
+        try {
+            return req.getDateHeader(name);
+        }
+        catch (IllegalArgumentException e) {
+            // not a date, ignored like an absent header
+            return -1;
+        }
+    }
+
     public final static int MAXIMUM_REQUEST_SIZE = 128 << 20;
     public final static String SPECIAL_XML_POST_VARIABLE = "request";
     private static final String XML_CONTENT_TYPE = "text/xml";
 
     protected void doPost(HttpServletRequest req, HttpServletResponse res) throws ServletException, IOException {
-        BufferedReader reader = null;
-
         try {
             String contentType = req.getContentType();
             String characterEncoding = req.getCharacterEncoding();
@@ -272,15 +335,53 @@ public class WebProcessingService extends HttpServlet {
                 ExceptionReport er = new ExceptionReport("Request body too large, limited to " + MAXIMUM_REQUEST_SIZE
                         + " bytes", ExceptionReport.NO_APPLICABLE_CODE);
                 handleException(er, res);
+                return;
             }
 
             LOGGER.debug("Received POST: Content-Type = " + contentType + ", Character-Encoding = " + characterEncoding
                     + ", Content-Length = " + contentLength);
 
-            int requestSize = 0;
+            RequestHandler handler;
+            // Perform URL decoding, if necessary
+            if (contentType != null && contentType.startsWith("application/x-www-form-urlencoded")) {
+                String documentString = readFormEncodedRequest(req, characterEncoding);
+                handler = new RequestHandler(new ByteArrayInputStream(documentString.getBytes("UTF-8")),
+                                             res.getOutputStream());
+            }
+            else {
+                // stream the request, the XML parser detects the encoding
+                handler = new RequestHandler(new SizeLimitedInputStream(req.getInputStream(), MAXIMUM_REQUEST_SIZE),
+                                             res.getOutputStream());
+            }
+            String mimeType = handler.getResponseMimeType();
+            res.setContentType(mimeType);
 
-            StringWriter writer = contentLength > 0 ? new StringWriter(contentLength) : new StringWriter();
-            reader = req.getReader();
+            handler.handle();
+
+            res.setStatus(HttpServletResponse.SC_OK);
+        }
+        catch (ExceptionReport e) {
+            handleException(e, res);
+        }
+        catch (Exception e) {
+            ExceptionReport er = new ExceptionReport("Error handing request: " + e.getMessage(), ExceptionReport.NO_APPLICABLE_CODE, e);
+            handleException(er, res);
+        }
+        finally {
+            if (res != null) {
+                res.flushBuffer();
+            }
+        }
+    }
+
+    private static String readFormEncodedRequest(HttpServletRequest req, String characterEncoding)
+            throws IOException, ExceptionReport {
+        int requestSize = 0;
+        int contentLength = req.getContentLength();
+
+        StringWriter writer = contentLength > 0 ? new StringWriter(contentLength) : new StringWriter();
+        BufferedReader reader = req.getReader();
+        try {
             char[] buffer = new char[8192];
             int read;
             while ( (read = reader.read(buffer)) != -1 && requestSize < MAXIMUM_REQUEST_SIZE) {
@@ -293,51 +394,78 @@ public class WebProcessingService extends HttpServlet {
             // Protect against denial of service attacks.
             if (requestSize >= MAXIMUM_REQUEST_SIZE && reader.read() > -1) {
                 LOGGER.warn("POST request rejected, request size of " + requestSize + " too large.");
-                ExceptionReport er = new ExceptionReport("Request body too large, limited to " + MAXIMUM_REQUEST_SIZE
+                throw new ExceptionReport("Request body too large, limited to " + MAXIMUM_REQUEST_SIZE
                         + " bytes", ExceptionReport.NO_APPLICABLE_CODE);
-                handleException(er, res);
             }
+        }
+        finally {
+            reader.close();
+        }
 
-            String documentString = writer.toString();
+        String documentString = writer.toString();
+        if (documentString.startsWith(SPECIAL_XML_POST_VARIABLE + "=")) {
+            // This is a hack to permit xml to be easily submitted via a form POST.
+            // By convention, we are allowing users to post xml if they name it
+            // with a POST parameter "request" although this is not
+            // valid per the specification.
+            documentString = documentString.substring(SPECIAL_XML_POST_VARIABLE.length() + 1);
+            LOGGER.debug("POST request form variable removed");
+        }
+        documentString = URLDecoder.decode(documentString, characterEncoding);
+        LOGGER.debug("Decoded of POST:\n" + documentString + "\n");
+        return documentString;
+    }
 
-            // Perform URL decoding, if necessary
-            // if ("application/x-www-form-urlencoded".equals(contentType)) {
-            if ( (contentType).startsWith("application/x-www-form-urlencoded")) {
-                if (documentString.startsWith(SPECIAL_XML_POST_VARIABLE + "=")) {
-                    // This is a hack to permit xml to be easily submitted via a form POST.
-                    // By convention, we are allowing users to post xml if they name it
-                    // with a POST parameter "request" although this is not
-                    // valid per the specification.
-                    documentString = documentString.substring(SPECIAL_XML_POST_VARIABLE.length() + 1);
-                    LOGGER.debug("POST request form variable removed");
-                }
-                documentString = URLDecoder.decode(documentString, characterEncoding);
-                LOGGER.debug("Decoded of POST:\n" + documentString + "\n");
-            }
+    /**
+     * Protects against denial of service attacks: fails once more than
+     * <code>limit</code> bytes are read from a streamed request.
+     */
+    private static class SizeLimitedInputStream extends FilterInputStream {
 
-            RequestHandler handler = new RequestHandler(new ByteArrayInputStream(documentString.getBytes("UTF-8")),
-                                                        res.getOutputStream());
-            String mimeType = handler.getResponseMimeType();
-            res.setContentType(mimeType);
+        private final long limit;
 
-            handler.handle();
+        private long count = 0;
 
-            res.setStatus(HttpServletResponse.SC_OK);
-        }
-        catch (ExceptionReport e) {
-            handleException(e, res);
+        SizeLimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.limit = limit;
         }
-        catch (Exception e) {
-            ExceptionReport er = new ExceptionReport("Error handing request: " + e.getMessage(), ExceptionReport.NO_APPLICABLE_CODE, e);
-            handleException(er, res);
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count(1);
+            }
+            return b;
         }
-        finally {
-            if (res != null) {
-                res.flushBuffer();
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count(read);
             }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count(skipped);
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
 
-            if (reader != null) {
-                reader.close();
+        private void count(long n) throws IOException {
+            count += n;
+            if (count > limit) {
+                LOGGER.warn("POST request rejected, request size exceeds " + limit + " bytes.");
+                throw new IOException("Request body too large, limited to " + limit + " bytes");
             }
         }
     }
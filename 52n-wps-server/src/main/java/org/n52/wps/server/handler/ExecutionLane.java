@@ -0,0 +1,196 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.handler;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A named share of a {@link WeightedFairExecutor}. Each lane has its own
+ * bounded queue (the admission limit), a weight that determines its share of
+ * the worker threads while other lanes are backlogged, and an optional cap on
+ * the number of its tasks that may run at the same time.
+ *
+ * The lane also collects queue-depth and latency statistics which are exposed
+ * through the getters of this class.
+ */
+public class ExecutionLane {
+
+	public static final String DEFAULT_LANE_NAME = "default";
+
+	private final String name;
+
+	private final double weight;
+
+	private final int maxConcurrent;
+
+	private final int capacity;
+
+	private final AtomicInteger queued = new AtomicInteger();
+
+	private final AtomicInteger running = new AtomicInteger();
+
+	private final AtomicLong submitted = new AtomicLong();
+
+	private final AtomicLong rejected = new AtomicLong();
+
+	private final AtomicLong completed = new AtomicLong();
+
+	private final AtomicLong totalWaitNanos = new AtomicLong();
+
+	private final AtomicLong totalRunNanos = new AtomicLong();
+
+	/**
+	 * Create a lane.
+	 *
+	 * @param name
+	 *            the name of the lane
+	 * @param weight
+	 *            the relative share of the workers, has to be positive
+	 * @param maxConcurrent
+	 *            the maximum number of tasks of this lane running at the same
+	 *            time, <code>0</code> for no limit
+	 * @param capacity
+	 *            the maximum number of tasks waiting in this lane
+	 */
+	public ExecutionLane(String name, double weight, int maxConcurrent, int capacity) {
+		if (name == null) {
+			throw new IllegalArgumentException("name must not be null");
+		}
+		if (weight <= 0) {
+			throw new IllegalArgumentException("weight has to be positive: " + weight);
+		}
+		if (maxConcurrent < 0) {
+			throw new IllegalArgumentException("maxConcurrent must not be negative: " + maxConcurrent);
+		}
+		if (capacity < 0) {
+			throw new IllegalArgumentException("capacity must not be negative: " + capacity);
+		}
+		this.name = name;
+		this.weight = weight;
+		this.maxConcurrent = maxConcurrent;
+		this.capacity = capacity;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public double getWeight() {
+		return weight;
+	}
+
+	public int getMaxConcurrent() {
+		return maxConcurrent;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return the number of tasks waiting for a worker
+	 */
+	public int getQueueDepth() {
+		return queued.get();
+	}
+
+	/**
+	 * @return the number of tasks currently running
+	 */
+	public int getRunning() {
+		return running.get();
+	}
+
+	public long getSubmitted() {
+		return submitted.get();
+	}
+
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	public long getCompleted() {
+		return completed.get();
+	}
+
+	/**
+	 * @return the average time a task spent in the queue of this lane
+	 */
+	public double getAverageWaitMillis() {
+		long count = completed.get() + running.get();
+		return count == 0 ? 0 : totalWaitNanos.get() / 1000000d / count;
+	}
+
+	/**
+	 * @return the average time a task of this lane spent running
+	 */
+	public double getAverageRunMillis() {
+		long count = completed.get();
+		return count == 0 ? 0 : totalRunNanos.get() / 1000000d / count;
+	}
+
+	ExecutionLane copy() {
+		return new ExecutionLane(name, weight, maxConcurrent, capacity);
+	}
+
+	void onSubmitted() {
+		submitted.incrementAndGet();
+		queued.incrementAndGet();
+	}
+
+	void onRejected() {
+		rejected.incrementAndGet();
+	}
+
+	void onCancelled() {
+		queued.decrementAndGet();
+	}
+
+	void onStarted(long waitNanos) {
+		queued.decrementAndGet();
+		running.incrementAndGet();
+		totalWaitNanos.addAndGet(waitNanos);
+	}
+
+	void onFinished(long runNanos) {
+		running.decrementAndGet();
+		completed.incrementAndGet();
+		totalRunNanos.addAndGet(runNanos);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s[weight=%s, maxConcurrent=%d, capacity=%d, queued=%d, running=%d, "
+				+ "submitted=%d, rejected=%d, completed=%d, avgWait=%.1fms, avgRun=%.1fms]",
+				name, weight, maxConcurrent, capacity, getQueueDepth(), getRunning(),
+				getSubmitted(), getRejected(), getCompleted(), getAverageWaitMillis(),
+				getAverageRunMillis());
+	}
+}
@@ -0,0 +1,261 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.handler;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.n52.wps.PropertyDocument.Property;
+import org.n52.wps.ServerDocument.Server;
+import org.n52.wps.commons.PropertyUtil;
+import org.n52.wps.commons.WPSConfig;
+import org.n52.wps.server.IAlgorithmRepository;
+import org.n52.wps.server.RepositoryManager;
+import org.n52.wps.server.request.ExecuteRequest;
+import org.n52.wps.server.response.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Schedules {@link ExecuteRequest}s for execution. Synchronous and asynchronous
+ * (<code>storeExecuteResponse</code>) executions get separate worker pools, so
+ * long running asynchronous jobs can not block clients waiting for an
+ * immediate response. Inside each pool, executions are assigned to lanes by
+ * process identifier or by the class of the repository providing the process,
+ * and the lanes share the workers by weight (see {@link WeightedFairExecutor}).
+ *
+ * The scheduler is configured using the following <code>Server</code>
+ * properties of the wps_config.xml (each can be overridden by a system
+ * property prefixed with <code>org.n52.wps.server.</code>):
+ * <ul>
+ * <li><code>scheduler.sync.threads</code>: workers for synchronous executions</li>
+ * <li><code>scheduler.async.threads</code>: workers for asynchronous executions</li>
+ * <li><code>scheduler.queue.capacity</code>: waiting executions per lane</li>
+ * <li><code>scheduler.lane.&lt;name&gt;.weight</code>: share of the workers</li>
+ * <li><code>scheduler.lane.&lt;name&gt;.maxConcurrent</code>: concurrency cap</li>
+ * <li><code>scheduler.lane.&lt;name&gt;.capacity</code>: waiting executions</li>
+ * <li><code>scheduler.lane.&lt;name&gt;.processes</code>: comma separated
+ * process identifiers</li>
+ * <li><code>scheduler.lane.&lt;name&gt;.repositories</code>: comma separated
+ * repository class names</li>
+ * </ul>
+ * The scheduler is rebuilt if the configuration changes; executions already
+ * accepted by the old scheduler are still run by it.
+ */
+public class ExecutionScheduler {
+
+	private static Logger LOGGER = LoggerFactory.getLogger(ExecutionScheduler.class);
+
+	private final static String KEY_SERVER_ROOT = "org.n52.wps.server";
+	private final static String KEY_SYNC_THREADS = "scheduler.sync.threads";
+	private final static String KEY_ASYNC_THREADS = "scheduler.async.threads";
+	private final static String KEY_QUEUE_CAPACITY = "scheduler.queue.capacity";
+	private final static String KEY_LANE_PREFIX = "scheduler.lane.";
+	private final static String KEY_LANE_WEIGHT = "weight";
+	private final static String KEY_LANE_MAX_CONCURRENT = "maxConcurrent";
+	private final static String KEY_LANE_CAPACITY = "capacity";
+	private final static String KEY_LANE_PROCESSES = "processes";
+	private final static String KEY_LANE_REPOSITORIES = "repositories";
+
+	// same capacity as the former fixed RequestExecutor
+	private final static int DEFAULT_SYNC_THREADS = 10;
+	private final static int DEFAULT_ASYNC_THREADS = 10;
+	private final static int DEFAULT_QUEUE_CAPACITY = 100;
+	private final static double DEFAULT_LANE_WEIGHT = 1;
+
+	private static ExecutionScheduler instance;
+
+	public synchronized static ExecutionScheduler getInstance() {
+		if (instance == null) {
+			instance = new ExecutionScheduler(WPSConfig.getInstance().getWPSConfig().getServer());
+			WPSConfig.getInstance().addPropertyChangeListener(WPSConfig.WPSCONFIG_PROPERTY_EVENT_NAME,
+					new PropertyChangeListener() {
+						public void propertyChange(PropertyChangeEvent event) {
+							LOGGER.info("Received Property Change Event: {}", event.getPropertyName());
+							reInitialize();
+						}
+					});
+		}
+		return instance;
+	}
+
+	private synchronized static void reInitialize() {
+		ExecutionScheduler old = instance;
+		instance = new ExecutionScheduler(WPSConfig.getInstance().getWPSConfig().getServer());
+		if (old != null) {
+			old.shutdown();
+		}
+	}
+
+	private final WeightedFairExecutor syncExecutor;
+
+	private final WeightedFairExecutor asyncExecutor;
+
+	private final Map<String, String> processLanes = new HashMap<String, String>();
+
+	private final Map<String, String> repositoryLanes = new HashMap<String, String>();
+
+	protected ExecutionScheduler(Server server) {
+		Property[] properties = server.getPropertyArray();
+		PropertyUtil propertyUtil = new PropertyUtil(properties, KEY_SERVER_ROOT);
+
+		int syncThreads = (int) propertyUtil.extractLong(KEY_SYNC_THREADS, DEFAULT_SYNC_THREADS);
+		int asyncThreads = (int) propertyUtil.extractLong(KEY_ASYNC_THREADS, DEFAULT_ASYNC_THREADS);
+		int defaultCapacity = (int) propertyUtil.extractLong(KEY_QUEUE_CAPACITY, DEFAULT_QUEUE_CAPACITY);
+
+		ExecutionLane defaultLane = new ExecutionLane(ExecutionLane.DEFAULT_LANE_NAME,
+				DEFAULT_LANE_WEIGHT, 0, defaultCapacity);
+		List<ExecutionLane> lanes = new ArrayList<ExecutionLane>();
+		for (String laneName : findLaneNames(properties)) {
+			if (laneName.equals(ExecutionLane.DEFAULT_LANE_NAME)) {
+				defaultLane = createLane(propertyUtil, laneName, defaultCapacity);
+			} else {
+				lanes.add(createLane(propertyUtil, laneName, defaultCapacity));
+			}
+		}
+
+		syncExecutor = new WeightedFairExecutor("WPS-sync", syncThreads, defaultLane, lanes);
+		asyncExecutor = new WeightedFairExecutor("WPS-async", asyncThreads, defaultLane.copy(),
+				copyLanes(lanes));
+		LOGGER.info("Started execution scheduler with {} synchronous and {} asynchronous workers, lanes: {}",
+				new Object[] { syncThreads, asyncThreads, syncExecutor.getLanes() });
+	}
+
+	private ExecutionLane createLane(PropertyUtil propertyUtil, String laneName, int defaultCapacity) {
+		String prefix = KEY_LANE_PREFIX + laneName + ".";
+		double weight = propertyUtil.extractDouble(prefix + KEY_LANE_WEIGHT, DEFAULT_LANE_WEIGHT);
+		int maxConcurrent = (int) propertyUtil.extractLong(prefix + KEY_LANE_MAX_CONCURRENT, 0);
+		int capacity = (int) propertyUtil.extractLong(prefix + KEY_LANE_CAPACITY, defaultCapacity);
+		for (String process : split(propertyUtil.extractString(prefix + KEY_LANE_PROCESSES, null))) {
+			processLanes.put(process, laneName);
+		}
+		for (String repository : split(propertyUtil.extractString(prefix + KEY_LANE_REPOSITORIES, null))) {
+			repositoryLanes.put(repository, laneName);
+		}
+		return new ExecutionLane(laneName, weight, maxConcurrent, capacity);
+	}
+
+	private static Set<String> findLaneNames(Property[] properties) {
+		Set<String> names = new LinkedHashSet<String>();
+		if (properties == null) {
+			return names;
+		}
+		for (Property property : properties) {
+			String propertyName = property.getName();
+			if (propertyName != null && propertyName.startsWith(KEY_LANE_PREFIX)) {
+				int end = propertyName.lastIndexOf('.');
+				if (end > KEY_LANE_PREFIX.length()) {
+					names.add(propertyName.substring(KEY_LANE_PREFIX.length(), end));
+				}
+			}
+		}
+		return names;
+	}
+
+	private static List<ExecutionLane> copyLanes(List<ExecutionLane> lanes) {
+		List<ExecutionLane> copies = new ArrayList<ExecutionLane>(lanes.size());
+		for (ExecutionLane lane : lanes) {
+			copies.add(lane.copy());
+		}
+		return copies;
+	}
+
+	private static List<String> split(String value) {
+		List<String> values = new ArrayList<String>();
+		if (value != null) {
+			for (String s : value.split(",")) {
+				if (!s.trim().isEmpty()) {
+					values.add(s.trim());
+				}
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Schedules the request for execution.
+	 *
+	 * @param request
+	 *            the request
+	 * @return the pending response
+	 * @throws RejectedExecutionException
+	 *             if the lane of the process is full
+	 */
+	public Future<Response> submit(ExecuteRequest request) {
+		String lane = getLaneName(request.getAlgorithmIdentifier());
+		WeightedFairExecutor executor = request.isStoreResponse() ? asyncExecutor : syncExecutor;
+		LOGGER.debug("Scheduling {} in lane {} of {}",
+				new Object[] { request.getUniqueId(), lane, executor.getName() });
+		return executor.submit(lane, request);
+	}
+
+	/**
+	 * @param algorithmIdentifier
+	 *            the identifier of the process
+	 * @return the name of the lane used for the process
+	 */
+	public String getLaneName(String algorithmIdentifier) {
+		String lane = processLanes.get(algorithmIdentifier);
+		if (lane == null && !repositoryLanes.isEmpty()) {
+			IAlgorithmRepository repository = RepositoryManager.getInstance().getRepositoryForAlgorithm(
+					algorithmIdentifier);
+			if (repository != null) {
+				lane = repositoryLanes.get(repository.getClass().getName());
+			}
+		}
+		return lane == null ? ExecutionLane.DEFAULT_LANE_NAME : lane;
+	}
+
+	/**
+	 * @return the lanes of the synchronous executions and their statistics
+	 */
+	public List<ExecutionLane> getSyncLanes() {
+		return syncExecutor.getLanes();
+	}
+
+	/**
+	 * @return the lanes of the asynchronous executions and their statistics
+	 */
+	public List<ExecutionLane> getAsyncLanes() {
+		return asyncExecutor.getLanes();
+	}
+
+	public void shutdown() {
+		syncExecutor.shutdown();
+		asyncExecutor.shutdown();
+	}
+}
@@ -42,7 +42,10 @@ import java.util.concurrent.TimeUnit;
  * time of a task ST = Average service time of a task #Threads = N * (1 + WT/ST)
  * 
  * @author Timon ter Braak
+ * @deprecated ExecuteRequests are scheduled by the configurable
+ *             {@link ExecutionScheduler}.
  */
+@Deprecated
 public class RequestExecutor extends ThreadPoolExecutor {
 
 	public static final int MIN_POOL_SIZE = 10;
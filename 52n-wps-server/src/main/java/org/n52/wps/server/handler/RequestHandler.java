@@ -29,6 +29,7 @@
 package org.n52.wps.server.handler;
 
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -38,11 +39,16 @@ import java.util.concurrent.RejectedExecutionException;
 
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import org.apache.commons.collections.map.CaseInsensitiveMap;
-import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.n52.wps.commons.context.ExecutionContextFactory;
 import org.n52.wps.server.ExceptionReport;
 import org.n52.wps.server.WebProcessingService;
 import org.n52.wps.server.request.CapabilitiesRequest;
@@ -50,10 +56,12 @@ import org.n52.wps.server.request.DescribeProcessRequest;
 import org.n52.wps.server.request.ExecuteRequest;
 import org.n52.wps.server.request.Request;
 import org.n52.wps.server.request.RetrieveResultRequest;
+import org.n52.wps.server.response.CapabilitiesResponse;
+import org.n52.wps.server.response.DescribeProcessResponse;
 import org.n52.wps.server.response.ExecuteResponse;
 import org.n52.wps.server.response.Response;
+import org.n52.wps.server.response.ResponseCache;
 import org.w3c.dom.Document;
-import org.w3c.dom.Node;
 import org.xml.sax.SAXException;
 
 /**
@@ -70,12 +78,14 @@ public class RequestHandler {
 	
     public static final String VERSION_ATTRIBUTE_NAME = "version";
 
-	/** Computation timeout in seconds */
-	protected static RequestExecutor pool = new RequestExecutor();
-
 	protected OutputStream os;
 
 	private static Logger LOGGER = LoggerFactory.getLogger(RequestHandler.class);
+
+	/** bytes that may precede the end of the root element start tag of a POST request */
+	private static final int ROOT_ELEMENT_PEEK_LIMIT = 64 << 10;
+
+	private static final XMLInputFactory XML_INPUT_FACTORY = createXMLInputFactory();
 	
 	protected String responseMimeType;
 	
@@ -172,62 +182,65 @@ public class RequestHandler {
 	public RequestHandler(InputStream is, OutputStream os)
 			throws ExceptionReport {
 		String nodeName, localName, nodeURI, version = null;
-		Document doc;
 		this.os = os;
 		
 		boolean isCapabilitiesNode = false;
 		
+		// only the root element is inspected here, the stream is reset afterwards
+		BufferedInputStream stream = new BufferedInputStream(is);
 		try {
-			System.setProperty("javax.xml.parsers.DocumentBuilderFactory", "org.apache.xerces.jaxp.DocumentBuilderFactoryImpl");
-		
-			DocumentBuilderFactory fac = DocumentBuilderFactory.newInstance();
-			fac.setNamespaceAware(true);
-
-			// parse the InputStream to create a Document
-			doc = fac.newDocumentBuilder().parse(is);
-			
-			// Get the first non-comment child.
-			Node child = doc.getFirstChild();
-			while(child.getNodeName().compareTo("#comment")==0) {
-				child = child.getNextSibling();
-			}
-			nodeName = child.getNodeName();
-			localName = child.getLocalName();
-			nodeURI = child.getNamespaceURI();
-			Node versionNode = child.getAttributes().getNamedItem("version");
-			
-			/*
-			 * check for service parameter. this has to be present for all requests
-			 */
-			Node serviceNode = child.getAttributes().getNamedItem("service");
-			
-			if(serviceNode == null){
-				throw new ExceptionReport("Parameter <service> not specified.", ExceptionReport.MISSING_PARAMETER_VALUE, "service");
-			}else{
-				if(!serviceNode.getNodeValue().equalsIgnoreCase("WPS")){
-					throw new ExceptionReport("Parameter <service> not specified.", ExceptionReport.INVALID_PARAMETER_VALUE, "service");
+			stream.mark(ROOT_ELEMENT_PEEK_LIMIT);
+			BoundedInputStream peek = new BoundedInputStream(stream, ROOT_ELEMENT_PEEK_LIMIT);
+			peek.setPropagateClose(false);
+			XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(peek);
+			try {
+				while (reader.hasNext() && reader.next() != XMLStreamConstants.START_ELEMENT) {
+					// skip prolog and comments
 				}
+				if (!reader.isStartElement()) {
+					throw new ExceptionReport("There went something wrong with parsing the POST data: no root element found",
+							ExceptionReport.NO_APPLICABLE_CODE);
+				}
+				localName = reader.getLocalName();
+				nodeName = reader.getPrefix() == null || reader.getPrefix().isEmpty()
+						? localName : reader.getPrefix() + ":" + localName;
+				nodeURI = reader.getNamespaceURI() == null ? "" : reader.getNamespaceURI();
+				String versionValue = reader.getAttributeValue(null, "version");
+				
+				/*
+				 * check for service parameter. this has to be present for all requests
+				 */
+				String serviceValue = reader.getAttributeValue(null, "service");
+				
+				if(serviceValue == null){
+					throw new ExceptionReport("Parameter <service> not specified.", ExceptionReport.MISSING_PARAMETER_VALUE, "service");
+				}else{
+					if(!serviceValue.equalsIgnoreCase("WPS")){
+						throw new ExceptionReport("Parameter <service> not specified.", ExceptionReport.INVALID_PARAMETER_VALUE, "service");
+					}
+				}
+				
+				isCapabilitiesNode = nodeName.toLowerCase().contains("capabilities");
+				if(versionValue == null && !isCapabilitiesNode) {
+					throw new ExceptionReport("Parameter <version> not specified.", ExceptionReport.MISSING_PARAMETER_VALUE, "version");
+				}
+				//TODO: I think this can be removed, as capabilities requests do not have a version parameter (BenjaminPross)
+				if(!isCapabilitiesNode){
+					version = versionValue;
+				}
+				/*
+				 * check language, if not supported, return ExceptionReport
+				 * Fix for https://bugzilla.52north.org/show_bug.cgi?id=905
+				 */
+				String language = reader.getAttributeValue(null, "language");
+				if(language != null){
+					Request.checkLanguageSupported(language);
+				}
+			} finally {
+				reader.close();
 			}
-			
-            isCapabilitiesNode = nodeName.toLowerCase().contains("capabilities");
-			if(versionNode == null && !isCapabilitiesNode) {
-				throw new ExceptionReport("Parameter <version> not specified.", ExceptionReport.MISSING_PARAMETER_VALUE, "version");
-			}
-			//TODO: I think this can be removed, as capabilities requests do not have a version parameter (BenjaminPross)
-			if(!isCapabilitiesNode){
-//				version = child.getFirstChild().getTextContent();//.getNextSibling().getFirstChild().getNextSibling().getFirstChild().getNodeValue();
-				version = child.getAttributes().getNamedItem("version").getNodeValue();
-			}
-			/*
-			 * check language, if not supported, return ExceptionReport
-			 * Fix for https://bugzilla.52north.org/show_bug.cgi?id=905
-			 */
-			Node languageNode = child.getAttributes().getNamedItem("language");
-			if(languageNode != null){
-				String language = languageNode.getNodeValue();
-				Request.checkLanguageSupported(language);
-			}
-		} catch (SAXException e) {
+			stream.reset();
+		} catch (XMLStreamException e) {
 			throw new ExceptionReport(
 					"There went something wrong with parsing the POST data: "
 							+ e.getMessage(),
@@ -236,10 +249,6 @@ public class RequestHandler {
 			throw new ExceptionReport(
 					"There went something wrong with the network connection.",
 					ExceptionReport.NO_APPLICABLE_CODE, e);
-		} catch (ParserConfigurationException e) {
-			throw new ExceptionReport(
-					"There is a internal parser configuration error",
-					ExceptionReport.NO_APPLICABLE_CODE, e);
 		}
 		//Fix for Bug 904 https://bugzilla.52north.org/show_bug.cgi?id=904
 		if(!isCapabilitiesNode && version == null) {
@@ -250,13 +259,14 @@ public class RequestHandler {
 		}
 		// get the request type
 		if (nodeURI.equals(WebProcessingService.WPS_NAMESPACE) && localName.equals("Execute")) {
-			req = new ExecuteRequest(doc);
+			// streamed, inline complex data is spooled instead of held in a DOM
+			req = new ExecuteRequest(stream);
 			setResponseMimeType((ExecuteRequest)req);
 		}else if (nodeURI.equals(WebProcessingService.WPS_NAMESPACE) && localName.equals("GetCapabilities")){
-			req = new CapabilitiesRequest(doc);
+			req = new CapabilitiesRequest(parseDocument(stream));
 			this.responseMimeType = "text/xml";
 		} else if (nodeURI.equals(WebProcessingService.WPS_NAMESPACE) && localName.equals("DescribeProcess")) {
-			req = new DescribeProcessRequest(doc);
+			req = new DescribeProcessRequest(parseDocument(stream));
 			this.responseMimeType = "text/xml";
 			
 		}  else if(!localName.equals("Execute")){
@@ -269,6 +279,38 @@ public class RequestHandler {
 		}
 	}
 
+	private static XMLInputFactory createXMLInputFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		return factory;
+	}
+
+	private static Document parseDocument(InputStream is) throws ExceptionReport {
+		try {
+			System.setProperty("javax.xml.parsers.DocumentBuilderFactory", "org.apache.xerces.jaxp.DocumentBuilderFactoryImpl");
+		
+			DocumentBuilderFactory fac = DocumentBuilderFactory.newInstance();
+			fac.setNamespaceAware(true);
+
+			// parse the InputStream to create a Document
+			return fac.newDocumentBuilder().parse(is);
+		} catch (SAXException e) {
+			throw new ExceptionReport(
+					"There went something wrong with parsing the POST data: "
+							+ e.getMessage(),
+					ExceptionReport.NO_APPLICABLE_CODE, e);
+		} catch (IOException e) {
+			throw new ExceptionReport(
+					"There went something wrong with the network connection.",
+					ExceptionReport.NO_APPLICABLE_CODE, e);
+		} catch (ParserConfigurationException e) {
+			throw new ExceptionReport(
+					"There is a internal parser configuration error",
+					ExceptionReport.NO_APPLICABLE_CODE, e);
+		}
+	}
+
 	/**
 	 * Handle a request after its type is determined. The request is scheduled
 	 * for execution. If the server has enough free resources, the client will
@@ -293,16 +335,14 @@ public class RequestHandler {
 			try {
 				if (execReq.isStoreResponse()) {
 					resp = new ExecuteResponse(execReq);
-					InputStream is = resp.getAsStream();
-					IOUtils.copy(is, os);
-					is.close();
-                    pool.submit(execReq);
+					resp.writeTo(os);
+                    ExecutionScheduler.getInstance().submit(execReq);
 					return;
 				}
 				try {
 					// retrieve status with timeout enabled
 					try {
-						resp = pool.submit(execReq).get();
+						resp = ExecutionScheduler.getInstance().submit(execReq).get();
 					}
 					catch (ExecutionException ee) {
 						LOGGER.warn("exception while handling ExecuteRequest.");
@@ -339,14 +379,19 @@ public class RequestHandler {
 						throw new ExceptionReport("Problem with handling threads in RequestHandler", ExceptionReport.NO_APPLICABLE_CODE);
 					}
 					if(!execReq.isStoreResponse()) {
-						InputStream is = resp.getAsStream();
-						IOUtils.copy(is, os);
-						is.close();
+						// raw outputs are generated into the scratch space of the execution
+						ExecutionContextFactory.registerContext(execReq.getExecutionContext());
+						try {
+							resp.writeTo(os);
+						} finally {
+							ExecutionContextFactory.unregisterContext();
+						}
 						LOGGER.info("Served ExecuteRequest.");
 					}
 				}
 			} catch (RejectedExecutionException ree) {
                 LOGGER.warn("exception handling ExecuteRequest.", ree);
+				execReq.disposeComplexDataSpools();
 				// server too busy?
 				throw new ExceptionReport(
 						"The requested process was rejected. Maybe the server is flooded with requests.",
@@ -357,14 +402,16 @@ public class RequestHandler {
                     throw (ExceptionReport)e;
                 }
                 throw new ExceptionReport("Could not read from response stream.", ExceptionReport.NO_APPLICABLE_CODE);
+			} finally {
+				if (!execReq.isStoreResponse()) {
+					execReq.disposeExecutionContext();
+				}
 			}
 		} else {
 			// for GetCapabilities and DescribeProcess:
 			resp = req.call();
 			try {
-				InputStream is = resp.getAsStream();
-				IOUtils.copy(is, os);
-				is.close();
+				resp.writeTo(os);
 			} catch (IOException e) {
 				throw new ExceptionReport("Could not read from response stream.", ExceptionReport.NO_APPLICABLE_CODE);
 			}
@@ -372,6 +419,24 @@ public class RequestHandler {
 		}
 	}
 	
+	/**
+	 * Serves a GetCapabilities or DescribeProcess request from the
+	 * {@link ResponseCache}, allowing the caller to answer conditional
+	 * requests instead of calling {@link #handle()}.
+	 * 
+	 * @return the serialized response or <code>null</code> for other requests
+	 * @throws ExceptionReport
+	 */
+	public ResponseCache.Entry getCachedResponse() throws ExceptionReport {
+		if (req instanceof CapabilitiesRequest) {
+			return ((CapabilitiesResponse) req.call()).getCacheEntry();
+		}
+		if (req instanceof DescribeProcessRequest) {
+			return ((DescribeProcessResponse) req.call()).getCacheEntry();
+		}
+		return null;
+	}
+	
 	protected void setResponseMimeType(ExecuteRequest req) {
 		if(req.isRawData()){
 			responseMimeType = req.getExecuteResponseBuilder().getMimeType();
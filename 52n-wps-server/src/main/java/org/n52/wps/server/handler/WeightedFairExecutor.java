@@ -0,0 +1,341 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.handler;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A fixed number of worker threads shared by several {@link ExecutionLane}s.
+ * Tasks are dispatched using start-time fair queuing: every task gets a virtual
+ * start tag of <code>max(virtualTime, lastFinishTagOfLane)</code> and the lane
+ * advances its finish tag by <code>1 / weight</code>. The waiting task with the
+ * lowest start tag whose lane has not reached its concurrency limit is run
+ * next, so a backlogged lane with weight 2 gets twice as many dispatches as a
+ * backlogged lane with weight 1, while an idle lane can not save up credit.
+ *
+ * A task submitted to a full lane is rejected with a
+ * {@link RejectedExecutionException}; the other lanes are not affected.
+ */
+public class WeightedFairExecutor {
+
+	private static Logger LOGGER = LoggerFactory.getLogger(WeightedFairExecutor.class);
+
+	private final String name;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final Condition dispatchable = lock.newCondition();
+
+	private final Map<String, LaneQueue> lanes = new LinkedHashMap<String, LaneQueue>();
+
+	private final LaneQueue defaultLane;
+
+	private final List<Thread> workers;
+
+	private double virtualTime = 0;
+
+	private boolean shutdown = false;
+
+	/**
+	 * Create and start an executor.
+	 *
+	 * @param name
+	 *            the name of the executor, used for the worker thread names
+	 * @param threads
+	 *            the number of worker threads
+	 * @param defaultLane
+	 *            the lane used for tasks submitted to an unknown lane
+	 * @param lanes
+	 *            additional lanes
+	 */
+	public WeightedFairExecutor(String name, int threads, ExecutionLane defaultLane,
+			Collection<ExecutionLane> lanes) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("at least one worker thread is required");
+		}
+		this.name = name;
+		this.defaultLane = new LaneQueue(defaultLane);
+		this.lanes.put(defaultLane.getName(), this.defaultLane);
+		if (lanes != null) {
+			for (ExecutionLane lane : lanes) {
+				this.lanes.put(lane.getName(), new LaneQueue(lane));
+			}
+		}
+		this.workers = new ArrayList<Thread>(threads);
+		for (int i = 0; i < threads; i++) {
+			Thread worker = new Thread(new Worker(), name + "-worker-" + i);
+			worker.setDaemon(true);
+			workers.add(worker);
+			worker.start();
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getThreadCount() {
+		return workers.size();
+	}
+
+	/**
+	 * @return the lanes of this executor, including the default lane
+	 */
+	public List<ExecutionLane> getLanes() {
+		List<ExecutionLane> result = new ArrayList<ExecutionLane>(lanes.size());
+		for (LaneQueue queue : lanes.values()) {
+			result.add(queue.lane);
+		}
+		return Collections.unmodifiableList(result);
+	}
+
+	/**
+	 * Submits a task to the given lane. If the lane does not exist the task is
+	 * submitted to the default lane.
+	 *
+	 * @param laneName
+	 *            the name of the lane
+	 * @param task
+	 *            the task
+	 * @return a future representing the pending result of the task
+	 * @throws RejectedExecutionException
+	 *             if the lane is full or the executor was shut down
+	 */
+	public <T> Future<T> submit(String laneName, Callable<T> task) {
+		LaneQueue queue = laneName == null ? null : lanes.get(laneName);
+		if (queue == null) {
+			queue = defaultLane;
+		}
+		QueuedTask<T> queuedTask = new QueuedTask<T>(task, queue);
+		lock.lock();
+		try {
+			if (shutdown) {
+				queue.lane.onRejected();
+				throw new RejectedExecutionException("Executor " + name + " has been shut down.");
+			}
+			if (queue.tasks.size() >= queue.lane.getCapacity()) {
+				queue.lane.onRejected();
+				throw new RejectedExecutionException("Lane " + queue.lane.getName() + " of executor "
+						+ name + " is full (" + queue.lane.getCapacity() + " waiting tasks).");
+			}
+			queuedTask.startTag = Math.max(virtualTime, queue.finishTag);
+			queue.finishTag = queuedTask.startTag + 1d / queue.lane.getWeight();
+			queue.tasks.add(queuedTask);
+			queue.lane.onSubmitted();
+			dispatchable.signal();
+		} finally {
+			lock.unlock();
+		}
+		return queuedTask;
+	}
+
+	/**
+	 * Stops accepting new tasks. Tasks that are already queued are still
+	 * executed, afterwards the worker threads terminate.
+	 */
+	public void shutdown() {
+		lock.lock();
+		try {
+			shutdown = true;
+			dispatchable.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Blocks until all workers terminated after a {@link #shutdown()} or the
+	 * timeout elapsed.
+	 *
+	 * @return <code>true</code> if all workers terminated
+	 */
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		for (Thread worker : workers) {
+			long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+			if (remaining <= 0) {
+				return false;
+			}
+			worker.join(remaining);
+			if (worker.isAlive()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Takes the next task to run, blocking until one is available.
+	 *
+	 * @return the task or <code>null</code> if the executor was shut down and
+	 *         no more tasks are waiting
+	 */
+	private QueuedTask<?> take() throws InterruptedException {
+		lock.lock();
+		try {
+			while (true) {
+				QueuedTask<?> next = null;
+				boolean waiting = false;
+				for (LaneQueue queue : lanes.values()) {
+					QueuedTask<?> head = queue.tasks.peek();
+					if (head == null) {
+						continue;
+					}
+					waiting = true;
+					if (queue.isSaturated()) {
+						continue;
+					}
+					if (next == null || head.startTag < next.startTag) {
+						next = head;
+					}
+				}
+				if (next != null) {
+					next.queue.tasks.poll();
+					next.queue.running++;
+					// never moves backwards, a lane can not regain credit it already had
+					virtualTime = Math.max(virtualTime, next.startTag);
+					return next;
+				}
+				if (shutdown && !waiting) {
+					return null;
+				}
+				dispatchable.await();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes a task that was cancelled while waiting, so it no longer counts
+	 * against the capacity of its lane.
+	 */
+	private void cancelled(QueuedTask<?> task) {
+		lock.lock();
+		try {
+			if (task.queue.tasks.remove(task)) {
+				task.queue.lane.onCancelled();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void finished(QueuedTask<?> task) {
+		lock.lock();
+		try {
+			task.queue.running--;
+			// a slot of a saturated lane got free, other workers may proceed
+			dispatchable.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private class Worker implements Runnable {
+
+		@Override
+		public void run() {
+			try {
+				QueuedTask<?> task;
+				while ((task = take()) != null) {
+					long start = System.nanoTime();
+					task.queue.lane.onStarted(start - task.enqueued);
+					try {
+						task.run();
+					} catch (RuntimeException e) {
+						LOGGER.error("Unexpected exception in " + name + " worker.", e);
+					} finally {
+						task.queue.lane.onFinished(System.nanoTime() - start);
+						finished(task);
+					}
+				}
+			} catch (InterruptedException e) {
+				LOGGER.debug("{} worker interrupted, terminating.", name);
+			}
+		}
+	}
+
+	private static class LaneQueue {
+
+		private final ExecutionLane lane;
+
+		private final Queue<QueuedTask<?>> tasks = new ArrayDeque<QueuedTask<?>>();
+
+		private double finishTag = 0;
+
+		private int running = 0;
+
+		LaneQueue(ExecutionLane lane) {
+			this.lane = lane;
+		}
+
+		boolean isSaturated() {
+			return lane.getMaxConcurrent() > 0 && running >= lane.getMaxConcurrent();
+		}
+	}
+
+	private class QueuedTask<T> extends FutureTask<T> {
+
+		private final LaneQueue queue;
+
+		private final long enqueued = System.nanoTime();
+
+		private double startTag;
+
+		QueuedTask(Callable<T> callable, LaneQueue queue) {
+			super(callable);
+			this.queue = queue;
+		}
+
+		@Override
+		protected void done() {
+			if (isCancelled()) {
+				cancelled(this);
+			}
+		}
+	}
+}
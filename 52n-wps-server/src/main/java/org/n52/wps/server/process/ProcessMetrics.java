@@ -0,0 +1,150 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.process;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the executions of a backend of the {@link ProcessSupervisor} and
+ * their latency.
+ */
+public class ProcessMetrics {
+
+	private final AtomicLong started = new AtomicLong();
+
+	private final AtomicLong succeeded = new AtomicLong();
+
+	private final AtomicLong failed = new AtomicLong();
+
+	private final AtomicLong timedOut = new AtomicLong();
+
+	private final AtomicLong rejected = new AtomicLong();
+
+	private final AtomicInteger running = new AtomicInteger();
+
+	private final AtomicLong totalNanos = new AtomicLong();
+
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	private final AtomicLong totalWaitNanos = new AtomicLong();
+
+	ProcessMetrics() {
+	}
+
+	public long getStarted() {
+		return started.get();
+	}
+
+	/**
+	 * @return the number of executions terminated in time with exit value 0
+	 */
+	public long getSucceeded() {
+		return succeeded.get();
+	}
+
+	/**
+	 * @return the number of executions terminated with another exit value or
+	 *         an error
+	 */
+	public long getFailed() {
+		return failed.get();
+	}
+
+	/**
+	 * @return the number of executions killed because of the timeout
+	 */
+	public long getTimedOut() {
+		return timedOut.get();
+	}
+
+	/**
+	 * @return the number of executions not started because the backend was
+	 *         busy
+	 */
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	public int getRunning() {
+		return running.get();
+	}
+
+	public long getAverageNanos() {
+		long count = succeeded.get() + failed.get() + timedOut.get();
+		return count == 0 ? 0 : totalNanos.get() / count;
+	}
+
+	public long getMaxNanos() {
+		return maxNanos.get();
+	}
+
+	/**
+	 * @return the average time executions waited for a free slot of the
+	 *         backend
+	 */
+	public long getAverageWaitNanos() {
+		long count = started.get();
+		return count == 0 ? 0 : totalWaitNanos.get() / count;
+	}
+
+	void onStart(long waitNanos) {
+		started.incrementAndGet();
+		running.incrementAndGet();
+		totalWaitNanos.addAndGet(waitNanos);
+	}
+
+	void onRejected() {
+		rejected.incrementAndGet();
+	}
+
+	void onEnd(long nanos, boolean success, boolean timeout) {
+		running.decrementAndGet();
+		totalNanos.addAndGet(nanos);
+		long max;
+		do {
+			max = maxNanos.get();
+		} while (nanos > max && !maxNanos.compareAndSet(max, nanos));
+		if (timeout) {
+			timedOut.incrementAndGet();
+		} else if (success) {
+			succeeded.incrementAndGet();
+		} else {
+			failed.incrementAndGet();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "ProcessMetrics[started=" + getStarted() + ", succeeded=" + getSucceeded() + ", failed="
+				+ getFailed() + ", timedOut=" + getTimedOut() + ", rejected=" + getRejected() + ", running="
+				+ getRunning() + ", averageNanos=" + getAverageNanos() + ", maxNanos=" + getMaxNanos()
+				+ ", averageWaitNanos=" + getAverageWaitNanos() + "]";
+	}
+}
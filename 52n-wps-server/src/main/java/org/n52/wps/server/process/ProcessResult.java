@@ -0,0 +1,99 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.process;
+
+/**
+ * The outcome of an external process run by the {@link ProcessSupervisor}.
+ */
+public class ProcessResult {
+
+	private final int exitValue;
+
+	private final String output;
+
+	private final String errorOutput;
+
+	private final long durationMillis;
+
+	private final boolean timedOut;
+
+	ProcessResult(int exitValue, String output, String errorOutput, long durationMillis, boolean timedOut) {
+		this.exitValue = exitValue;
+		this.output = output;
+		this.errorOutput = errorOutput;
+		this.durationMillis = durationMillis;
+		this.timedOut = timedOut;
+	}
+
+	public int getExitValue() {
+		return exitValue;
+	}
+
+	/**
+	 * @return the end of the standard output, at most
+	 *         {@link ProcessSupervisor#MAX_CAPTURED_CHARS} characters
+	 */
+	public String getOutput() {
+		return output;
+	}
+
+	/**
+	 * @return the end of the error output, at most
+	 *         {@link ProcessSupervisor#MAX_CAPTURED_CHARS} characters
+	 */
+	public String getErrorOutput() {
+		return errorOutput;
+	}
+
+	public long getDurationMillis() {
+		return durationMillis;
+	}
+
+	/**
+	 * @return <code>true</code> if the process was killed because it exceeded
+	 *         the timeout of its backend
+	 */
+	public boolean isTimedOut() {
+		return timedOut;
+	}
+
+	/**
+	 * @return <code>true</code> if the process terminated in time with exit
+	 *         value 0
+	 */
+	public boolean isSuccessful() {
+		return !timedOut && exitValue == 0;
+	}
+
+	@Override
+	public String toString() {
+		return "ProcessResult[exitValue=" + exitValue + ", durationMillis=" + durationMillis + ", timedOut="
+				+ timedOut + "]";
+	}
+}
@@ -0,0 +1,466 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.process;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.n52.wps.PropertyDocument.Property;
+import org.n52.wps.commons.PropertyUtil;
+import org.n52.wps.commons.WPSConfig;
+import org.n52.wps.server.ExceptionReport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the external processes of the GRASS, Python and MovingCode backends.
+ * The standard and error output of a process are always drained, so that a
+ * process never blocks on a full pipe, and the end of both is kept for the
+ * result. A process exceeding the timeout of its backend is destroyed, and
+ * the number of concurrently running processes of a backend can be capped.
+ * On Unix systems, memory and CPU time are limited with <code>ulimit</code>,
+ * and the command can be prefixed with a wrapper such as
+ * <code>cgexec</code> or <code>systemd-run --scope</code> to put it into a
+ * cgroup.
+ *
+ * A backend is configured using the following <code>Server</code> properties
+ * of the wps_config.xml, where <code>&lt;backend&gt;</code> is e.g.
+ * <code>grass</code>, <code>python</code> or <code>mc</code> (they can be
+ * overridden by system properties prefixed with
+ * <code>org.n52.wps.server.</code>):
+ * <ul>
+ * <li><code>process.&lt;backend&gt;.maxConcurrent</code>: processes running
+ * at the same time, 0 for no limit</li>
+ * <li><code>process.&lt;backend&gt;.queueTimeout</code>: ISO 8601 period to
+ * wait for a free slot before the request is rejected as busy, PT0S to wait
+ * as long as it takes</li>
+ * <li><code>process.&lt;backend&gt;.timeout</code>: ISO 8601 period after
+ * which a process is destroyed, PT0S for no timeout</li>
+ * <li><code>process.&lt;backend&gt;.maxMemoryMB</code>: virtual memory limit,
+ * 0 for no limit</li>
+ * <li><code>process.&lt;backend&gt;.maxCpuSeconds</code>: CPU time limit, 0
+ * for no limit</li>
+ * <li><code>process.&lt;backend&gt;.wrapper</code>: command prefix</li>
+ * </ul>
+ */
+public class ProcessSupervisor {
+
+	private static Logger LOGGER = LoggerFactory.getLogger(ProcessSupervisor.class);
+
+	/**
+	 * The number of characters of the standard and error output kept for
+	 * the result.
+	 */
+	public static final int MAX_CAPTURED_CHARS = 64 * 1024;
+
+	private final static String KEY_SERVER_ROOT = "org.n52.wps.server";
+	private final static String KEY_PREFIX = "process.";
+	private final static String KEY_MAX_CONCURRENT = ".maxConcurrent";
+	private final static String KEY_QUEUE_TIMEOUT = ".queueTimeout";
+	private final static String KEY_TIMEOUT = ".timeout";
+	private final static String KEY_MAX_MEMORY_MB = ".maxMemoryMB";
+	private final static String KEY_MAX_CPU_SECONDS = ".maxCpuSeconds";
+	private final static String KEY_WRAPPER = ".wrapper";
+
+	// time to collect the output after the process terminated, child processes might keep the pipes open
+	private final static long DRAIN_TIMEOUT_MILLIS = 5000;
+
+	private final static boolean WINDOWS = System.getProperty("os.name", "").startsWith("Windows");
+
+	private static final ExecutorService DRAINS = Executors.newCachedThreadPool(new DaemonThreadFactory(
+			"wps-process-drain"));
+
+	private static final ScheduledExecutorService TIMEOUTS = Executors
+			.newSingleThreadScheduledExecutor(new DaemonThreadFactory("wps-process-timeout"));
+
+	private static ProcessSupervisor instance;
+
+	public synchronized static ProcessSupervisor getInstance() {
+		if (instance == null) {
+			instance = new ProcessSupervisor(WPSConfig.getInstance().getWPSConfig().getServer().getPropertyArray());
+			WPSConfig.getInstance().addPropertyChangeListener(WPSConfig.WPSCONFIG_PROPERTY_EVENT_NAME,
+					new PropertyChangeListener() {
+						public void propertyChange(PropertyChangeEvent event) {
+							LOGGER.info("Received Property Change Event: {}", event.getPropertyName());
+							reInitialize();
+						}
+					});
+		}
+		return instance;
+	}
+
+	private synchronized static void reInitialize() {
+		// running processes keep the limits they were started with
+		instance = new ProcessSupervisor(WPSConfig.getInstance().getWPSConfig().getServer().getPropertyArray());
+	}
+
+	private final PropertyUtil propertyUtil;
+
+	private final ConcurrentMap<String, Backend> backends = new ConcurrentHashMap<String, Backend>();
+
+	protected ProcessSupervisor(Property[] properties) {
+		propertyUtil = new PropertyUtil(properties, KEY_SERVER_ROOT);
+	}
+
+	/**
+	 * Runs a process and waits for its termination.
+	 *
+	 * @param backend
+	 *            the name of the backend, which selects the limits
+	 * @param builder
+	 *            the command, working directory and environment of the
+	 *            process, it is not modified
+	 * @return the exit value and output of the process
+	 * @throws ExceptionReport
+	 *             if the backend is busy
+	 * @throws IOException
+	 *             if the process cannot be started or the current thread is
+	 *             interrupted
+	 */
+	public ProcessResult execute(String backend, ProcessBuilder builder) throws ExceptionReport, IOException {
+		Backend b = getBackend(backend);
+		b.acquire();
+		try {
+			return run(b, builder);
+		} finally {
+			b.release();
+		}
+	}
+
+	/**
+	 * Runs a task which starts and supervises its processes itself, such as
+	 * a MovingCode processor, within the concurrency cap of the backend.
+	 *
+	 * @param backend
+	 *            the name of the backend
+	 * @param execution
+	 *            the task, it is given the timeout of the backend
+	 * @return the result of the task
+	 * @throws ExceptionReport
+	 *             if the backend is busy
+	 */
+	public <T> T execute(String backend, Execution<T> execution) throws ExceptionReport, IOException {
+		Backend b = getBackend(backend);
+		b.acquire();
+		long start = System.nanoTime();
+		boolean success = false;
+		try {
+			T result = execution.execute(b.timeoutMillis);
+			success = true;
+			return result;
+		} finally {
+			b.metrics.onEnd(System.nanoTime() - start, success, false);
+			b.release();
+		}
+	}
+
+	/**
+	 * @return the timeout of the backend in milliseconds, 0 if there is none
+	 */
+	public long getTimeoutMillis(String backend) {
+		return getBackend(backend).timeoutMillis;
+	}
+
+	public ProcessMetrics getMetrics(String backend) {
+		return getBackend(backend).metrics;
+	}
+
+	/**
+	 * Splits a command line into its arguments like
+	 * {@link Runtime#exec(String)} does.
+	 */
+	public static List<String> tokenize(String command) {
+		StringTokenizer tokenizer = new StringTokenizer(command);
+		List<String> tokens = new ArrayList<String>();
+		while (tokenizer.hasMoreTokens()) {
+			tokens.add(tokenizer.nextToken());
+		}
+		return tokens;
+	}
+
+	private Backend getBackend(String name) {
+		Backend backend = backends.get(name);
+		if (backend == null) {
+			backend = new Backend(name, propertyUtil);
+			Backend existing = backends.putIfAbsent(name, backend);
+			if (existing != null) {
+				backend = existing;
+			}
+		}
+		return backend;
+	}
+
+	private ProcessResult run(Backend backend, ProcessBuilder builder) throws IOException {
+		ProcessBuilder supervised = new ProcessBuilder(backend.wrap(builder.command()));
+		supervised.directory(builder.directory());
+		supervised.redirectErrorStream(builder.redirectErrorStream());
+		Map<String, String> environment = supervised.environment();
+		environment.clear();
+		environment.putAll(builder.environment());
+
+		long start = System.nanoTime();
+		final AtomicBoolean timedOut = new AtomicBoolean(false);
+		boolean success = false;
+		try {
+			final Process process = supervised.start();
+			process.getOutputStream().close();
+			Future<String> output = DRAINS.submit(new StreamDrain(process.getInputStream(), backend.name + " out> "));
+			Future<String> errorOutput = DRAINS.submit(new StreamDrain(process.getErrorStream(), backend.name
+					+ " err> "));
+
+			ScheduledFuture<?> kill = null;
+			if (backend.timeoutMillis > 0) {
+				kill = TIMEOUTS.schedule(new Runnable() {
+					public void run() {
+						timedOut.set(true);
+						process.destroy();
+					}
+				}, backend.timeoutMillis, TimeUnit.MILLISECONDS);
+			}
+
+			int exitValue;
+			try {
+				exitValue = process.waitFor();
+			} catch (InterruptedException e) {
+				process.destroy();
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while waiting for " + builder.command(), e);
+			} finally {
+				if (kill != null) {
+					kill.cancel(false);
+				}
+			}
+
+			ProcessResult result = new ProcessResult(exitValue, collect(output, process.getInputStream()), collect(
+					errorOutput, process.getErrorStream()), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+					timedOut.get());
+			success = result.isSuccessful();
+			if (result.isTimedOut()) {
+				LOGGER.warn("Destroyed process {} of backend {} after the timeout of {} ms", builder.command(),
+						backend.name, backend.timeoutMillis);
+			} else {
+				LOGGER.info("Process {} of backend {} terminated with exit value {} after {} ms", builder.command(),
+						backend.name, exitValue, result.getDurationMillis());
+			}
+			return result;
+		} finally {
+			backend.metrics.onEnd(System.nanoTime() - start, success, timedOut.get());
+		}
+	}
+
+	private static String collect(Future<String> drain, InputStream stream) {
+		try {
+			return drain.get(DRAIN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			LOGGER.warn("Output of the process is still open after its termination, closing it");
+			try {
+				stream.close();
+			} catch (IOException ioe) {
+				LOGGER.debug("Could not close process stream", ioe);
+			}
+			drain.cancel(true);
+		} catch (ExecutionException e) {
+			LOGGER.warn("Could not read output of the process", e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return "";
+	}
+
+	/**
+	 * A task starting and supervising its processes itself.
+	 */
+	public interface Execution<T> {
+
+		/**
+		 * @param timeoutMillis
+		 *            the timeout of the backend, 0 if there is none
+		 */
+		T execute(long timeoutMillis) throws IOException;
+	}
+
+	private static class Backend {
+
+		private final String name;
+
+		private final Semaphore slots;
+
+		private final int maxConcurrent;
+
+		private final long queueTimeoutMillis;
+
+		private final long timeoutMillis;
+
+		private final long maxMemoryMB;
+
+		private final long maxCpuSeconds;
+
+		private final List<String> wrapper;
+
+		private final ProcessMetrics metrics = new ProcessMetrics();
+
+		Backend(String name, PropertyUtil propertyUtil) {
+			this.name = name;
+			String prefix = KEY_PREFIX + name;
+			maxConcurrent = (int) Math.max(0, propertyUtil.extractLong(prefix + KEY_MAX_CONCURRENT, 0));
+			slots = maxConcurrent > 0 ? new Semaphore(maxConcurrent, true) : null;
+			queueTimeoutMillis = Math.max(0, propertyUtil.extractPeriodAsMillis(prefix + KEY_QUEUE_TIMEOUT, 0));
+			timeoutMillis = Math.max(0, propertyUtil.extractPeriodAsMillis(prefix + KEY_TIMEOUT, 0));
+			maxMemoryMB = Math.max(0, propertyUtil.extractLong(prefix + KEY_MAX_MEMORY_MB, 0));
+			maxCpuSeconds = Math.max(0, propertyUtil.extractLong(prefix + KEY_MAX_CPU_SECONDS, 0));
+			wrapper = tokenize(propertyUtil.extractString(prefix + KEY_WRAPPER, ""));
+		}
+
+		void acquire() throws ExceptionReport, IOException {
+			long start = System.nanoTime();
+			if (slots != null) {
+				boolean acquired;
+				try {
+					if (queueTimeoutMillis > 0) {
+						acquired = slots.tryAcquire(queueTimeoutMillis, TimeUnit.MILLISECONDS);
+					} else {
+						slots.acquire();
+						acquired = true;
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while waiting for the " + name + " backend", e);
+				}
+				if (!acquired) {
+					metrics.onRejected();
+					throw new ExceptionReport("The " + name + " backend is busy, " + maxConcurrent
+							+ " processes are running", ExceptionReport.SERVER_BUSY);
+				}
+			}
+			metrics.onStart(System.nanoTime() - start);
+		}
+
+		void release() {
+			if (slots != null) {
+				slots.release();
+			}
+		}
+
+		List<String> wrap(List<String> command) {
+			List<String> wrapped = new ArrayList<String>(wrapper);
+			if (!WINDOWS && (maxMemoryMB > 0 || maxCpuSeconds > 0)) {
+				// the shell applies the limits and replaces itself with the command
+				StringBuilder script = new StringBuilder();
+				if (maxMemoryMB > 0) {
+					script.append("ulimit -v ").append(maxMemoryMB * 1024).append("; ");
+				}
+				if (maxCpuSeconds > 0) {
+					script.append("ulimit -t ").append(maxCpuSeconds).append("; ");
+				}
+				script.append("exec \"$0\" \"$@\"");
+				wrapped.add("/bin/sh");
+				wrapped.add("-c");
+				wrapped.add(script.toString());
+			}
+			wrapped.addAll(command);
+			return wrapped;
+		}
+	}
+
+	/**
+	 * Reads a stream to its end, logs its lines and keeps its end.
+	 */
+	private static class StreamDrain implements Callable<String> {
+
+		private final InputStream stream;
+
+		private final String prefix;
+
+		StreamDrain(InputStream stream, String prefix) {
+			this.stream = stream;
+			this.prefix = prefix;
+		}
+
+		public String call() throws IOException {
+			StringBuilder captured = new StringBuilder();
+			BufferedReader reader = new BufferedReader(new InputStreamReader(stream));
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					LOGGER.debug("{}{}", prefix, line);
+					captured.append(line).append('\n');
+					if (captured.length() > 2 * MAX_CAPTURED_CHARS) {
+						captured.delete(0, captured.length() - MAX_CAPTURED_CHARS);
+					}
+				}
+			} finally {
+				reader.close();
+			}
+			if (captured.length() > MAX_CAPTURED_CHARS) {
+				captured.delete(0, captured.length() - MAX_CAPTURED_CHARS);
+			}
+			return captured.toString();
+		}
+	}
+
+	private static class DaemonThreadFactory implements ThreadFactory {
+
+		private final String name;
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		DaemonThreadFactory(String name) {
+			this.name = name;
+		}
+
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
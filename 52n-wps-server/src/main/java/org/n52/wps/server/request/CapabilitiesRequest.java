@@ -28,13 +28,21 @@
  */
 package org.n52.wps.server.request;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 
 import org.apache.commons.collections.map.CaseInsensitiveMap;
+import org.apache.xmlbeans.XmlException;
+import org.n52.wps.commons.WPSConfig;
+import org.n52.wps.server.CapabilitiesConfiguration;
 import org.n52.wps.server.ExceptionReport;
+import org.n52.wps.server.WebProcessingService;
 import org.n52.wps.server.handler.RequestHandler;
 import org.n52.wps.server.response.CapabilitiesResponse;
 import org.n52.wps.server.response.Response;
+import org.n52.wps.server.response.ResponseCache;
+import org.n52.wps.util.XMLBeansHelper;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
@@ -48,6 +56,7 @@ public class CapabilitiesRequest extends Request {
     private static final String PARAM_SERVICE = "service";
     private static final String PARAM_VERSION = "version";
     private static final Object REQUEST_DOC = "document";
+    private static final String CACHE_KEY_PREFIX = "GetCapabilities;";
 
     /**
      * Creates a CapabilitesRequest based on a Map (HTTP_GET)
@@ -146,8 +155,39 @@ public class CapabilitiesRequest extends Request {
      */
     public Response call() throws ExceptionReport {
         validate();
+        ResponseCache.Entry entry;
+        if (WPSConfig.getInstance().getWPSConfig().getServer().getCacheCapabilites()) {
+            entry = ResponseCache.getInstance().get(CACHE_KEY_PREFIX + WebProcessingService.DEFAULT_LANGUAGE,
+                                                    new ResponseCache.Loader() {
+                                                        public byte[] load() throws ExceptionReport {
+                                                            return serializeCapabilities();
+                                                        }
+                                                    });
+        }
+        else {
+            // the skeleton is reloaded for every request
+            entry = new ResponseCache.Entry(serializeCapabilities());
+        }
         LOGGER.info("Handled GetCapabilitiesRequest successfully!");
-        return new CapabilitiesResponse(this);
+        return new CapabilitiesResponse(this, entry);
+    }
+
+    private static byte[] serializeCapabilities() throws ExceptionReport {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            CapabilitiesConfiguration.getInstance().save(bytes, XMLBeansHelper.getXmlOptions());
+            return bytes.toByteArray();
+        }
+        catch (IOException e) {
+            throw new ExceptionReport("Exception occured while generating response",
+                                      ExceptionReport.NO_APPLICABLE_CODE,
+                                      e);
+        }
+        catch (XmlException e) {
+            throw new ExceptionReport("Exception occured while generating response",
+                                      ExceptionReport.NO_APPLICABLE_CODE,
+                                      e);
+        }
     }
 
     /**
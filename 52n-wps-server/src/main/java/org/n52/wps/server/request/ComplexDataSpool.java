@@ -0,0 +1,103 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.request;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * The content of an inline <code>wps:ComplexData</code> element of an Execute
+ * request, held either in memory or, if it exceeded the spool threshold, in a
+ * spill file. The content is parsed from here once the request is executed.
+ *
+ * @see ExecuteDocumentSpooler
+ */
+public class ComplexDataSpool {
+
+	private final byte[] data;
+
+	private final File file;
+
+	private final boolean xml;
+
+	ComplexDataSpool(byte[] data, boolean xml) {
+		this.data = data;
+		this.file = null;
+		this.xml = xml;
+	}
+
+	ComplexDataSpool(File file, boolean xml) {
+		this.data = null;
+		this.file = file;
+		this.xml = xml;
+	}
+
+	/**
+	 * @return <code>true</code> if the content consists of XML elements,
+	 *         <code>false</code> if it is plain text (e.g. base64 or WKT)
+	 */
+	public boolean isXML() {
+		return xml;
+	}
+
+	public boolean isInMemory() {
+		return file == null;
+	}
+
+	public long getSize() {
+		return isInMemory() ? data.length : file.length();
+	}
+
+	/**
+	 * @return a new stream of the spooled content
+	 * @throws IOException
+	 *             if the spill file can not be opened
+	 */
+	public InputStream openStream() throws IOException {
+		if (isInMemory()) {
+			return new ByteArrayInputStream(data);
+		}
+		return new BufferedInputStream(new FileInputStream(file));
+	}
+
+	/**
+	 * Deletes the spill file, if any.
+	 */
+	public void dispose() {
+		if (file != null) {
+			FileUtils.deleteQuietly(file);
+		}
+	}
+}
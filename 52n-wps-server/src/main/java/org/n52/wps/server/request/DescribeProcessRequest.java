@@ -30,6 +30,8 @@ package org.n52.wps.server.request;
 
 
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.List;
 
 import javax.xml.XMLConstants;
@@ -45,6 +47,8 @@ import org.n52.wps.server.RepositoryManager;
 import org.n52.wps.server.WebProcessingService;
 import org.n52.wps.server.response.DescribeProcessResponse;
 import org.n52.wps.server.response.Response;
+import org.n52.wps.server.response.ResponseCache;
+import org.n52.wps.util.XMLBeansHelper;
 import org.w3c.dom.Document;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
@@ -56,7 +60,9 @@ import org.w3c.dom.NodeList;
  */
 public class DescribeProcessRequest extends Request {
 
-	private ProcessDescriptionsDocument document;
+	private static final String CACHE_KEY_PREFIX = "DescribeProcess;";
+
+	private ResponseCache.Entry entry;
 	
 	/**
 	 * Creates a DescribeProcessRequest based on a Map (HTTP_GET)
@@ -123,8 +129,11 @@ public class DescribeProcessRequest extends Request {
 		return true;
 	}
 	
+	/**
+	 * @return the serialized process descriptions
+	 */
 	public Object getAttachedResult(){
-		return document;
+		return entry;
 	}
 	
 	/**
@@ -135,23 +144,37 @@ public class DescribeProcessRequest extends Request {
 	public Response call() throws ExceptionReport {
 		validate();
 		
-		document = ProcessDescriptionsDocument.Factory.newInstance();
+		final String identifierList = getMapValue("identifier", true);
+		String processSet = identifierList.trim().equalsIgnoreCase("all") ? "all" : identifierList;
+		entry = ResponseCache.getInstance().get(CACHE_KEY_PREFIX + WebProcessingService.DEFAULT_LANGUAGE + ";" + processSet,
+				new ResponseCache.Loader() {
+					public byte[] load() throws ExceptionReport {
+						return serializeDescriptions(identifierList);
+					}
+				});
+		
+		LOGGER.info("Handled Request successfully for: " + identifierList);
+		return new DescribeProcessResponse(this, entry);
+	}
+	
+	private static byte[] serializeDescriptions(String identifierList) throws ExceptionReport {
+		ProcessDescriptionsDocument document = ProcessDescriptionsDocument.Factory.newInstance();
 		document.addNewProcessDescriptions();
 		XmlCursor c = document.newCursor();
 		c.toFirstChild();
 		c.toLastAttribute();
 		c.setAttributeText(new QName(XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI, "schemaLocation"), "http://www.opengis.net/wps/1.0.0 http://schemas.opengis.net/wps/1.0.0/wpsDescribeProcess_response.xsd");
 				
-		String[] identifiers = getMapValue("identifier", true).split(",");
+		String[] identifiers = identifierList.split(",");
 		document.getProcessDescriptions().setLang(WebProcessingService.DEFAULT_LANGUAGE);
 		document.getProcessDescriptions().setService("WPS");
 		document.getProcessDescriptions().setVersion(Request.SUPPORTED_VERSION);
 		
 		if(identifiers.length==1 && identifiers[0].equalsIgnoreCase("all")){
-			List<String> identifierList = RepositoryManager.getInstance().getAlgorithms();
-			identifiers = new String[identifierList.size()];
-			for(int i = 0;i<identifierList.size();i++){
-				identifiers[i] = identifierList.get(i);
+			List<String> algorithms = RepositoryManager.getInstance().getAlgorithms();
+			identifiers = new String[algorithms.size()];
+			for(int i = 0;i<algorithms.size();i++){
+				identifiers[i] = algorithms.get(i);
 			}
 		}
 		
@@ -178,8 +201,14 @@ public class DescribeProcessRequest extends Request {
 			document.getProcessDescriptions().addNewProcessDescription().set(description);
 		}
 		
-		LOGGER.info("Handled Request successfully for: " + getMapValue("identifier", true));
-		return new DescribeProcessResponse(this);
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			document.save(bytes, XMLBeansHelper.getXmlOptions());
+			return bytes.toByteArray();
+		}
+		catch(IOException e) {
+			throw new ExceptionReport("Exception occured while writing response document", ExceptionReport.NO_APPLICABLE_CODE, e);
+		}
 	}
 
 }
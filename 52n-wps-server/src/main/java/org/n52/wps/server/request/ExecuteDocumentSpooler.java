@@ -0,0 +1,444 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.request;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+import net.opengis.wps.x100.ComplexDataType;
+import net.opengis.wps.x100.ExecuteDocument;
+import net.opengis.wps.x100.InputType;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.DeferredFileOutputStream;
+import org.apache.xmlbeans.XmlCursor;
+import org.apache.xmlbeans.XmlException;
+import org.apache.xmlbeans.XmlObject;
+import org.apache.xmlbeans.XmlOptions;
+import org.n52.wps.commons.PropertyUtil;
+import org.n52.wps.commons.WPSConfig;
+import org.n52.wps.server.ExceptionReport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Parses an Execute request from a stream without building a DOM of the
+ * whole request. The request is copied event by event into a reduced
+ * document, except for the content of inline <code>wps:ComplexData</code>
+ * elements: that content is written to a {@link ComplexDataSpool}, which
+ * stays in memory up to a threshold and is spilled to a temporary file
+ * beyond it. Only the reduced document is bound to XmlBeans, the complex data
+ * is parsed from the spools when the request is executed.
+ *
+ * The threshold is configured by the <code>Server</code> property
+ * <code>execute.spool.threshold</code> (bytes, default 1 MiB).
+ */
+public class ExecuteDocumentSpooler {
+
+	private static Logger LOGGER = LoggerFactory.getLogger(ExecuteDocumentSpooler.class);
+
+	private final static String KEY_SERVER_ROOT = "org.n52.wps.server";
+	private final static String KEY_SPOOL_THRESHOLD = "execute.spool.threshold";
+	private final static int DEFAULT_SPOOL_THRESHOLD = 1 << 20;
+
+	private final static String WPS_NAMESPACE = "http://www.opengis.net/wps/1.0.0";
+	private final static String INPUT_ELEMENT = "Input";
+	private final static String COMPLEX_DATA_ELEMENT = "ComplexData";
+	private final static String XSI_PREFIX = "xsi";
+
+	private final static String SPOOL_PREFIX = "wps-input";
+	private final static String SPOOL_SUFFIX = ".spool";
+
+	private final static XMLInputFactory INPUT_FACTORY = createInputFactory();
+	private final static XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+	private final int threshold;
+
+	private final File directory;
+
+	private final Map<Integer, ComplexDataSpool> spools = new HashMap<Integer, ComplexDataSpool>();
+
+	/**
+	 * Creates a spooler using the configured threshold and the default
+	 * temporary directory.
+	 */
+	public ExecuteDocumentSpooler() {
+		this(getConfiguredThreshold(), null);
+	}
+
+	/**
+	 * @param threshold
+	 *            the size in bytes up to which complex data is kept in memory
+	 * @param directory
+	 *            the directory of the spill files or <code>null</code> for
+	 *            the default temporary directory
+	 */
+	public ExecuteDocumentSpooler(int threshold, File directory) {
+		this.threshold = threshold;
+		this.directory = directory;
+	}
+
+	private static int getConfiguredThreshold() {
+		try {
+			PropertyUtil propertyUtil = new PropertyUtil(WPSConfig.getInstance().getWPSConfig().getServer()
+					.getPropertyArray(), KEY_SERVER_ROOT);
+			return (int) propertyUtil.extractLong(KEY_SPOOL_THRESHOLD, DEFAULT_SPOOL_THRESHOLD);
+		} catch (RuntimeException e) {
+			LOGGER.warn("Could not read {}, using {} bytes.", KEY_SPOOL_THRESHOLD, DEFAULT_SPOOL_THRESHOLD);
+			return DEFAULT_SPOOL_THRESHOLD;
+		}
+	}
+
+	private static XMLInputFactory createInputFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		return factory;
+	}
+
+	/**
+	 * Parses the Execute request.
+	 *
+	 * @param in
+	 *            the request
+	 * @return the request without the content of inline complex data
+	 * @throws ExceptionReport
+	 *             if the request can not be parsed
+	 */
+	public ExecuteDocument parse(InputStream in) throws ExceptionReport {
+		ByteArrayOutputStream reduced = new ByteArrayOutputStream();
+		try {
+			spool(in, reduced);
+			XmlOptions option = new XmlOptions();
+			option.setLoadTrimTextBuffer();
+			ExecuteDocument execDom = ExecuteDocument.Factory.parse(
+					new ByteArrayInputStream(reduced.toByteArray()), option);
+			if (execDom == null) {
+				throw new ExceptionReport("Error while parsing post data",
+						ExceptionReport.MISSING_PARAMETER_VALUE);
+			}
+			return execDom;
+		} catch (XMLStreamException e) {
+			dispose();
+			throw new ExceptionReport("Error while parsing post data",
+					ExceptionReport.MISSING_PARAMETER_VALUE, e);
+		} catch (XmlException e) {
+			dispose();
+			throw new ExceptionReport("Error while parsing post data",
+					ExceptionReport.MISSING_PARAMETER_VALUE, e);
+		} catch (IOException e) {
+			dispose();
+			throw new ExceptionReport("Error while reading post data",
+					ExceptionReport.NO_APPLICABLE_CODE, e);
+		} catch (ExceptionReport e) {
+			dispose();
+			throw e;
+		}
+	}
+
+	/**
+	 * Copies the request to <code>reduced</code>, spooling the content of
+	 * inline complex data.
+	 */
+	void spool(InputStream in, OutputStream reduced) throws XMLStreamException, IOException {
+		XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(in);
+		XMLStreamWriter writer = OUTPUT_FACTORY.createXMLStreamWriter(reduced, "UTF-8");
+		// namespace bindings in scope, needed to declare them on spooled fragments
+		Deque<Map<String, String>> scopes = new ArrayDeque<Map<String, String>>();
+		scopes.push(Collections.<String, String> emptyMap());
+		int inputIndex = -1;
+		try {
+			writer.writeStartDocument("UTF-8", "1.0");
+			while (reader.hasNext()) {
+				switch (reader.next()) {
+				case XMLStreamConstants.START_ELEMENT:
+					Map<String, String> scope = new LinkedHashMap<String, String>(scopes.peek());
+					for (int i = 0; i < reader.getNamespaceCount(); i++) {
+						scope.put(nullToEmpty(reader.getNamespacePrefix(i)), nullToEmpty(reader.getNamespaceURI(i)));
+					}
+					copyStartElement(reader, writer);
+					if (WPS_NAMESPACE.equals(reader.getNamespaceURI())) {
+						if (INPUT_ELEMENT.equals(reader.getLocalName())) {
+							inputIndex++;
+						} else if (COMPLEX_DATA_ELEMENT.equals(reader.getLocalName()) && inputIndex >= 0) {
+							spools.put(inputIndex, spoolContent(reader, scope));
+							writer.writeEndElement();
+							break;
+						}
+					}
+					scopes.push(scope);
+					break;
+				case XMLStreamConstants.END_ELEMENT:
+					scopes.pop();
+					writer.writeEndElement();
+					break;
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.SPACE:
+					writer.writeCharacters(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+					break;
+				case XMLStreamConstants.CDATA:
+					writer.writeCData(reader.getText());
+					break;
+				default:
+					// comments, processing instructions and the DTD are dropped
+					break;
+				}
+			}
+			writer.writeEndDocument();
+			writer.flush();
+		} finally {
+			reader.close();
+			writer.close();
+		}
+	}
+
+	/**
+	 * Spools the content of the current <code>wps:ComplexData</code> element
+	 * and leaves the reader at its end tag. Element content is written as XML
+	 * fragment, declaring the namespaces in scope on each top level element.
+	 * Text content (e.g. base64 or WKT) is written unescaped.
+	 */
+	private ComplexDataSpool spoolContent(XMLStreamReader reader, Map<String, String> scope)
+			throws XMLStreamException, IOException {
+		DeferredFileOutputStream out = new DeferredFileOutputStream(threshold, SPOOL_PREFIX, SPOOL_SUFFIX, directory);
+		XMLStreamWriter writer = OUTPUT_FACTORY.createXMLStreamWriter(out, "UTF-8");
+		Writer text = new OutputStreamWriter(out, "UTF-8");
+		boolean xml = false;
+		int depth = 0;
+		try {
+			while (depth >= 0) {
+				switch (reader.next()) {
+				case XMLStreamConstants.START_ELEMENT:
+					xml = true;
+					writer.writeStartElement(nullToEmpty(reader.getPrefix()), reader.getLocalName(),
+							nullToEmpty(reader.getNamespaceURI()));
+					if (depth == 0) {
+						declareScope(reader, writer, scope);
+					}
+					copyNamespacesAndAttributes(reader, writer);
+					depth++;
+					break;
+				case XMLStreamConstants.END_ELEMENT:
+					if (--depth >= 0) {
+						writer.writeEndElement();
+					}
+					break;
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.SPACE:
+				case XMLStreamConstants.CDATA:
+					if (depth == 0) {
+						writer.flush();
+						text.write(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+						text.flush();
+					} else {
+						writer.writeCharacters(reader.getTextCharacters(), reader.getTextStart(),
+								reader.getTextLength());
+					}
+					break;
+				default:
+					break;
+				}
+			}
+			writer.flush();
+		} catch (XMLStreamException e) {
+			out.close();
+			deleteSpillFile(out);
+			throw e;
+		} catch (IOException e) {
+			out.close();
+			deleteSpillFile(out);
+			throw e;
+		}
+		out.close();
+		if (out.isInMemory()) {
+			return new ComplexDataSpool(out.getData(), xml);
+		}
+		LOGGER.debug("Spooled {} bytes of complex data to {}", out.getByteCount(), out.getFile());
+		return new ComplexDataSpool(out.getFile(), xml);
+	}
+
+	private static void deleteSpillFile(DeferredFileOutputStream out) {
+		if (!out.isInMemory()) {
+			new ComplexDataSpool(out.getFile(), false).dispose();
+		}
+	}
+
+	private static void declareScope(XMLStreamReader reader, XMLStreamWriter writer, Map<String, String> scope)
+			throws XMLStreamException {
+		for (Map.Entry<String, String> binding : scope.entrySet()) {
+			if (isDeclared(reader, binding.getKey())) {
+				continue;
+			}
+			if (binding.getKey().isEmpty()) {
+				writer.writeDefaultNamespace(binding.getValue());
+			} else {
+				writer.writeNamespace(binding.getKey(), binding.getValue());
+			}
+		}
+		// like InputHandler does for inline XML taken from the DOM, so that
+		// parsers find the xsi:schemaLocation
+		if (!scope.containsKey(XSI_PREFIX) && !isDeclared(reader, XSI_PREFIX)) {
+			writer.writeNamespace(XSI_PREFIX, XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI);
+		}
+	}
+
+	private static boolean isDeclared(XMLStreamReader reader, String prefix) {
+		for (int i = 0; i < reader.getNamespaceCount(); i++) {
+			if (prefix.equals(nullToEmpty(reader.getNamespacePrefix(i)))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static void copyStartElement(XMLStreamReader reader, XMLStreamWriter writer) throws XMLStreamException {
+		writer.writeStartElement(nullToEmpty(reader.getPrefix()), reader.getLocalName(),
+				nullToEmpty(reader.getNamespaceURI()));
+		copyNamespacesAndAttributes(reader, writer);
+	}
+
+	private static void copyNamespacesAndAttributes(XMLStreamReader reader, XMLStreamWriter writer)
+			throws XMLStreamException {
+		for (int i = 0; i < reader.getNamespaceCount(); i++) {
+			String prefix = nullToEmpty(reader.getNamespacePrefix(i));
+			if (prefix.isEmpty()) {
+				writer.writeDefaultNamespace(nullToEmpty(reader.getNamespaceURI(i)));
+			} else {
+				writer.writeNamespace(prefix, nullToEmpty(reader.getNamespaceURI(i)));
+			}
+		}
+		for (int i = 0; i < reader.getAttributeCount(); i++) {
+			String namespace = nullToEmpty(reader.getAttributeNamespace(i));
+			if (namespace.isEmpty()) {
+				writer.writeAttribute(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+			} else {
+				String prefix = nullToEmpty(reader.getAttributePrefix(i));
+				if (prefix.isEmpty() && XMLConstants.XML_NS_URI.equals(namespace)) {
+					prefix = XMLConstants.XML_NS_PREFIX;
+				}
+				writer.writeAttribute(prefix, namespace, reader.getAttributeLocalName(i),
+						reader.getAttributeValue(i));
+			}
+		}
+	}
+
+	/**
+	 * Puts the spooled content back into the inline complex data of a copy
+	 * of the reduced document, e.g. to echo or to store the request. The
+	 * content is held in memory.
+	 *
+	 * @param reduced
+	 *            the document returned by {@link #parse(InputStream)}
+	 * @param spools
+	 *            the spooled complex data by the position of the input
+	 * @return a copy of the request including the inline complex data
+	 */
+	public static ExecuteDocument restore(ExecuteDocument reduced, Map<Integer, ComplexDataSpool> spools)
+			throws IOException, XmlException {
+		ExecuteDocument restored = (ExecuteDocument) reduced.copy();
+		if (spools.isEmpty() || !restored.getExecute().isSetDataInputs()) {
+			return restored;
+		}
+		InputType[] inputs = restored.getExecute().getDataInputs().getInputArray();
+		for (Map.Entry<Integer, ComplexDataSpool> spool : spools.entrySet()) {
+			int index = spool.getKey();
+			if (index < inputs.length && inputs[index].isSetData() && inputs[index].getData().isSetComplexData()) {
+				restore(inputs[index].getData().getComplexData(), spool.getValue());
+			}
+		}
+		return restored;
+	}
+
+	private static void restore(ComplexDataType complexData, ComplexDataSpool spool) throws IOException,
+			XmlException {
+		InputStream in = spool.openStream();
+		XmlCursor target = complexData.newCursor();
+		try {
+			target.toEndToken();
+			if (spool.isXML()) {
+				XmlCursor source = XmlObject.Factory.parse(in).newCursor();
+				try {
+					if (source.toFirstChild()) {
+						source.copyXml(target);
+					}
+				} finally {
+					source.dispose();
+				}
+			} else {
+				target.insertChars(IOUtils.toString(in, "UTF-8"));
+			}
+		} finally {
+			target.dispose();
+			in.close();
+		}
+	}
+
+	private static String nullToEmpty(String s) {
+		return s == null ? "" : s;
+	}
+
+	/**
+	 * @return the spooled complex data by the position of the input in the
+	 *         request
+	 */
+	public Map<Integer, ComplexDataSpool> getSpools() {
+		return Collections.unmodifiableMap(spools);
+	}
+
+	/**
+	 * Deletes all spill files of this spooler.
+	 */
+	public void dispose() {
+		for (ComplexDataSpool spool : spools.values()) {
+			spool.dispose();
+		}
+		spools.clear();
+	}
+}
@@ -31,6 +31,7 @@ package org.n52.wps.server.request;
 import java.io.BufferedWriter;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
@@ -38,6 +39,7 @@ import java.math.BigInteger;
 import java.net.URLDecoder;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -66,6 +68,7 @@ import org.apache.commons.io.IOUtils;
 import org.apache.xmlbeans.XmlException;
 import org.apache.xmlbeans.XmlObject;
 import org.apache.xmlbeans.XmlOptions;
+import org.n52.wps.commons.WPSConfig;
 import org.n52.wps.commons.context.ExecutionContext;
 import org.n52.wps.commons.context.ExecutionContextFactory;
 import org.n52.wps.io.data.IComplexData;
@@ -80,6 +83,7 @@ import org.n52.wps.server.observerpattern.ISubject;
 import org.n52.wps.server.response.ExecuteResponse;
 import org.n52.wps.server.response.ExecuteResponseBuilder;
 import org.n52.wps.server.response.Response;
+import org.n52.wps.server.response.StatusPersister;
 import org.n52.wps.util.XMLBeansHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -95,6 +99,11 @@ public class ExecuteRequest extends Request implements IObserver {
 	private ExecuteDocument execDom;
 	private Map<String, IData> returnResults;
 	private ExecuteResponseBuilder execRespType;
+	private Map<Integer, ComplexDataSpool> complexDataSpools = Collections.emptyMap();
+	// the data inputs including spooled inline data, if they are echoed in the response
+	private DataInputsType restoredDataInputs;
+	private ExecutionContext executionContext;
+	private StatusPersister.Job statusJob;
 	
 	
 
@@ -130,6 +139,52 @@ public class ExecuteRequest extends Request implements IObserver {
         storeRequest(execDom);
 	}
 
+	/**
+	 * Creates an ExecuteRequest based on a stream (HTTP_POST). No DOM of the
+	 * request is built; the content of inline complex data is spooled by an
+	 * {@link ExecuteDocumentSpooler} and parsed from the spool once the
+	 * request is executed.
+	 * 
+	 * @param is
+	 *            The clients submission
+	 * @throws ExceptionReport
+	 */
+	public ExecuteRequest(InputStream is) throws ExceptionReport {
+		super((Document) null);
+		ExecuteDocumentSpooler spooler = new ExecuteDocumentSpooler();
+		this.execDom = spooler.parse(is);
+		this.complexDataSpools = spooler.getSpools();
+		ExecuteDocument restoredDom;
+		try {
+			// validate the client input
+			validate();
+
+			// the stored and echoed request include the spooled inline data
+			restoredDom = complexDataSpools.isEmpty() ? execDom : ExecuteDocumentSpooler.restore(execDom,
+					complexDataSpools);
+			if (new Boolean(WPSConfig.getInstance().getWPSConfig().getServer().getIncludeDataInputsInResponse())) {
+				restoredDataInputs = restoredDom.getExecute().getDataInputs();
+			}
+
+			// create an initial response
+			execRespType = new ExecuteResponseBuilder(this);
+		} catch (IOException e) {
+			disposeComplexDataSpools();
+			throw new ExceptionReport("Error while reading post data", ExceptionReport.NO_APPLICABLE_CODE, e);
+		} catch (XmlException e) {
+			disposeComplexDataSpools();
+			throw new ExceptionReport("Error while parsing post data", ExceptionReport.INVALID_PARAMETER_VALUE, e);
+		} catch (ExceptionReport e) {
+			disposeComplexDataSpools();
+			throw e;
+		} catch (RuntimeException e) {
+			disposeComplexDataSpools();
+			throw e;
+		}
+
+		storeRequest(restoredDom);
+	}
+
 	/*
 	 * Creates an ExecuteRequest based on a Map (HTTP_GET). NOTE: Parameters are
 	 * treated as non case sensitive. @param ciMap The client input @throws
@@ -636,16 +691,9 @@ public class ExecuteRequest extends Request implements IObserver {
 	public Response call() throws ExceptionReport {
         IAlgorithm algorithm = null;
         Map<String, List<IData>> inputMap = null;
+        boolean succeeded = false;
 		try {
-			ExecutionContext context;
-			if (getExecute().isSetResponseForm()) {
-				context = getExecute().getResponseForm().isSetRawDataOutput() ?
-	                    new ExecutionContext(getExecute().getResponseForm().getRawDataOutput()) :
-	                    new ExecutionContext(Arrays.asList(getExecute().getResponseForm().getResponseDocument().getOutputArray()));
-			}
-			else {
-				context = new ExecutionContext();
-			}
+			ExecutionContext context = getExecutionContext();
 	
 				// register so that any function that calls ExecuteContextFactory.getContext() gets the instance registered with this thread
 			ExecutionContextFactory.registerContext(context);
@@ -659,7 +707,8 @@ public class ExecuteRequest extends Request implements IObserver {
 			if( getExecute().getDataInputs()!=null){
 				inputs = getExecute().getDataInputs().getInputArray();
 			}
-			InputHandler parser = new InputHandler.Builder(inputs, getAlgorithmIdentifier()).build();
+			InputHandler parser = new InputHandler.Builder(inputs, getAlgorithmIdentifier())
+					.complexDataSpools(complexDataSpools).build();
 			
 			// we got so far:
 			// get the algorithm, and run it with the clients input
@@ -692,6 +741,7 @@ public class ExecuteRequest extends Request implements IObserver {
                 updateStatusError(errorMessage);
             } else {
                 updateStatusSuccess();
+                succeeded = true;
             }
 		} catch(Throwable e) {
             String errorMessage = null;
@@ -721,6 +771,13 @@ public class ExecuteRequest extends Request implements IObserver {
             if (algorithm instanceof ISubject) {
                 ((ISubject)algorithm).removeObserver(this);
             }
+            if (succeeded) {
+                // only instances that ran without errors are handed back for reuse
+                RepositoryManager.getInstance().releaseAlgorithm(getAlgorithmIdentifier(), algorithm);
+            } else {
+                RepositoryManager.getInstance().discardAlgorithm(algorithm);
+            }
+            disposeComplexDataSpools();
             if (inputMap != null) {
                 for(List<IData> l : inputMap.values()) {
                     for (IData d : l) {
@@ -736,6 +793,10 @@ public class ExecuteRequest extends Request implements IObserver {
                         ((IComplexData)d).dispose();
                     }
                 }
+            }
+            if (isStoreResponse()) {
+                // the outputs are stored, synchronous responses are written by the RequestHandler
+                disposeExecutionContext();
             }
 		}
 		
@@ -744,6 +805,54 @@ public class ExecuteRequest extends Request implements IObserver {
 	}
     
 
+	/**
+	 * @return the context of the execution, providing its scratch space
+	 */
+	public synchronized ExecutionContext getExecutionContext() {
+		if (executionContext == null) {
+			if (getExecute().isSetResponseForm()) {
+				executionContext = getExecute().getResponseForm().isSetRawDataOutput() ?
+	                    new ExecutionContext(getAlgorithmIdentifier(), Arrays.asList(getExecute().getResponseForm().getRawDataOutput())) :
+	                    new ExecutionContext(getAlgorithmIdentifier(), Arrays.asList(getExecute().getResponseForm().getResponseDocument().getOutputArray()));
+			}
+			else {
+				executionContext = new ExecutionContext(getAlgorithmIdentifier(), null);
+			}
+		}
+		return executionContext;
+	}
+
+	/**
+	 * Removes the scratch space of the execution. Called when the outputs
+	 * are stored or written to the client.
+	 */
+	public synchronized void disposeExecutionContext() {
+		if (executionContext != null) {
+			executionContext.dispose();
+		}
+	}
+
+	/**
+	 * @return the data inputs of the request as sent by the client, i.e.
+	 *         including the content of spooled inline complex data
+	 */
+	public DataInputsType getDataInputs() {
+		if (restoredDataInputs != null) {
+			return restoredDataInputs;
+		}
+		return getExecute().getDataInputs();
+	}
+
+	/**
+	 * Deletes the spill files of streamed inline complex data. Called after
+	 * the execution and if the request is rejected before execution.
+	 */
+	public void disposeComplexDataSpools() {
+		for (ComplexDataSpool spool : complexDataSpools.values()) {
+			spool.dispose();
+		}
+	}
+
 	/**
 	 * Gets the identifier of the algorithm the client requested
 	 * 
@@ -810,35 +919,40 @@ public class ExecuteRequest extends Request implements IObserver {
 	
 	public void update(ISubject subject) {
 		Object state = subject.getState();
-		LOGGER.info("Update received from Subject, state changed to : " + state);
+		LOGGER.debug("Update received from Subject, state changed to : {}", state);
+		if (!isStoreResponse()) {
+			// progress is only visible in a stored response
+			return;
+		}
 		StatusType status = StatusType.Factory.newInstance();
 		
-		int percentage = 0;
+		int percentage = -1;
 		if (state instanceof Integer) {
 			percentage = (Integer) state;
 			status.addNewProcessStarted().setPercentCompleted(percentage);
 		}else if(state instanceof String){
 			status.addNewProcessStarted().setStringValue((String)state);
 		}
-		updateStatus(status);
+		getStatusJob().progress(status, percentage);
 	}
     
 	public void updateStatusAccepted() {
 		StatusType status = StatusType.Factory.newInstance();
 		status.setProcessAccepted("Process Accepted");
-		updateStatus(status);
+		// the client may ask for the stored response as soon as it is accepted
+		updateStatus(status, false, true);
 	}
 	
 	public void updateStatusStarted() {
         StatusType status = StatusType.Factory.newInstance();
         status.addNewProcessStarted().setPercentCompleted(0);
-        updateStatus(status);
+        updateStatus(status, false, false);
     }
 	
     public void updateStatusSuccess() {
         StatusType status = StatusType.Factory.newInstance();
         status.setProcessSucceeded("Process successful");
-        updateStatus(status);
+        updateStatus(status, true, false);
     }	
     
     public void updateStatusError(String errorMessage) {
@@ -849,29 +963,56 @@ public class ExecuteRequest extends Request implements IObserver {
 		ExceptionType excType = excRep.addNewException();
 		excType.addNewExceptionText().setStringValue(errorMessage);
 		excType.setExceptionCode(ExceptionReport.NO_APPLICABLE_CODE);
-		updateStatus(status);
+		updateStatus(status, true, false);
 	}
 	
-	private void updateStatus(StatusType status) {
-		getExecuteResponseBuilder().setStatus(status);
+	private void updateStatus(StatusType status, boolean terminal, boolean await) {
         try {
-            getExecuteResponseBuilder().update();
             if (isStoreResponse()) {
-                ExecuteResponse executeResponse = new ExecuteResponse(this);
-                InputStream is = null;
-                try {
-                    is = executeResponse.getAsStream();
-                    DatabaseFactory.getDatabase().storeResponse(
-                            getUniqueId().toString(), is);
-                } finally {
-                    IOUtils.closeQuietly(is);
-                }
+                getStatusJob().transition(status, terminal, await);
+            } else {
+                serializeStatus(status);
             }
         } catch (ExceptionReport e) {
             LOGGER.error("Update of process status failed.", e);
             throw new RuntimeException(e);
         }
 	}
+	
+	private synchronized StatusPersister.Job getStatusJob() {
+		if (statusJob == null) {
+			statusJob = StatusPersister.getInstance().newJob(getUniqueId().toString(),
+					new StatusPersister.Source() {
+						public byte[] serialize(StatusType status) throws ExceptionReport {
+							return serializeStatus(status);
+						}
+					});
+		}
+		return statusJob;
+	}
+	
+	/**
+	 * Sets the status of the response.
+	 * 
+	 * @return the serialized response if it is stored, otherwise
+	 *         <code>null</code>
+	 */
+	private synchronized byte[] serializeStatus(StatusType status) throws ExceptionReport {
+		getExecuteResponseBuilder().setStatus(status);
+		getExecuteResponseBuilder().update();
+		if (!isStoreResponse()) {
+			return null;
+		}
+		InputStream is = null;
+		try {
+			is = new ExecuteResponse(this).getAsStream();
+			return IOUtils.toByteArray(is);
+		} catch (IOException e) {
+			throw new ExceptionReport("Could not serialize the status", ExceptionReport.NO_APPLICABLE_CODE, e);
+		} finally {
+			IOUtils.closeQuietly(is);
+		}
+	}
     
     private void storeRequest(ExecuteDocument executeDocument) {
         InputStream is = null;
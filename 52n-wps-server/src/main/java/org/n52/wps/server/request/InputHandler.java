@@ -32,12 +32,16 @@ import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactoryConfigurationError;
@@ -54,8 +58,11 @@ import net.opengis.wps.x100.InputType;
 import net.opengis.wps.x100.ProcessDescriptionType;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.n52.wps.commons.XMLUtil;
+import org.n52.wps.commons.context.ExecutionContextFactory;
+import org.n52.wps.commons.context.ScratchSpace;
 import org.n52.wps.io.BasicXMLTypeFactory;
 import org.n52.wps.io.IOHandler;
 import org.n52.wps.io.IParser;
@@ -74,6 +81,7 @@ import org.n52.wps.server.RepositoryManager;
 import org.n52.wps.server.handler.DataInputInterceptors;
 import org.n52.wps.server.handler.DataInputInterceptors.DataInputInterceptorImplementations;
 import org.n52.wps.server.handler.DataInputInterceptors.InterceptorInstance;
+import org.n52.wps.server.request.strategy.ReferenceCache;
 import org.n52.wps.server.request.strategy.ReferenceInputStream;
 import org.n52.wps.server.request.strategy.ReferenceStrategyRegister;
 import org.slf4j.Logger;
@@ -99,6 +107,7 @@ public class InputHandler {
         public static class Builder {
             protected InputType[] inputs;
             protected String algorithmIdentifier = null;
+            protected Map<Integer, ComplexDataSpool> complexDataSpools = new HashMap<Integer, ComplexDataSpool>();
 
             public Builder(InputType[] inputs, String algorithmIdentifier) {
                 this.inputs = inputs;
@@ -115,6 +124,15 @@ public class InputHandler {
                 return this;
             }
 
+            /**
+             * @param val the spooled inline complex data by input position,
+             *        see {@link ExecuteDocumentSpooler}
+             */
+            public Builder complexDataSpools(Map<Integer, ComplexDataSpool> val) {
+                complexDataSpools = val == null ? new HashMap<Integer, ComplexDataSpool>() : val;
+                return this;
+            }
+
             public InputHandler build() throws ExceptionReport {
                 return new InputHandler(this);
             }
@@ -140,7 +158,51 @@ public class InputHandler {
 
 		Map<String, InterceptorInstance> inputInterceptors = resolveInputInterceptors(algorithmIdentifier);
 
-		for (InputType input : builder.inputs) {
+		// start fetching all references at once, they are parsed as soon as they arrive
+		ReferencePrefetcher prefetcher = null;
+		Map<Integer, Future<IData>> prefetchedReferences = new HashMap<Integer, Future<IData>>();
+		if (countReferences(builder.inputs, inputInterceptors) > 1) {
+			prefetcher = ReferencePrefetcher.create();
+			for (int i = 0; i < builder.inputs.length; i++) {
+				final InputType input = builder.inputs[i];
+				if (isPrefetchable(input, inputInterceptors)) {
+					prefetchedReferences.put(i, prefetcher.submit(new Callable<IData>() {
+						public IData call() throws ExceptionReport {
+							return fetchComplexValueReference(input);
+						}
+					}));
+				}
+			}
+		}
+
+		try {
+			handleInputs(builder, inputInterceptors, prefetcher, prefetchedReferences);
+		} finally {
+			if (prefetcher != null) {
+				prefetcher.cancel();
+			}
+		}
+	}
+
+	private static boolean isPrefetchable(InputType input, Map<String, InterceptorInstance> inputInterceptors) {
+		return input.getData() == null && input.getReference() != null
+				&& !inputInterceptors.containsKey(input.getIdentifier().getStringValue().trim());
+	}
+
+	private static int countReferences(InputType[] inputs, Map<String, InterceptorInstance> inputInterceptors) {
+		int count = 0;
+		for (InputType input : inputs) {
+			if (isPrefetchable(input, inputInterceptors)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private void handleInputs(Builder builder, Map<String, InterceptorInstance> inputInterceptors,
+			ReferencePrefetcher prefetcher, Map<Integer, Future<IData>> prefetchedReferences) throws ExceptionReport {
+		for (int i = 0; i < builder.inputs.length; i++) {
+			InputType input = builder.inputs[i];
 			String inputId = input.getIdentifier().getStringValue().trim();
 			if (inputInterceptors.containsKey(inputId)) {
 				InterceptorInstance interceptor = inputInterceptors.get(inputId);
@@ -154,7 +216,7 @@ public class InputHandler {
 
 			if(input.getData() != null) {
 				if(input.getData().getComplexData() != null) {
-					handleComplexData(input, inputId);
+					handleComplexData(input, inputId, builder.complexDataSpools.get(i));
 				}
 				else if(input.getData().getLiteralData() != null) {
 					handleLiteralData(input);
@@ -164,7 +226,12 @@ public class InputHandler {
 				}
 			}
 			else if(input.getReference() != null) {
-				handleComplexValueReference(input);
+				Future<IData> prefetched = prefetchedReferences.get(i);
+				if (prefetched != null) {
+					addReferenceData(input, prefetcher.await(prefetched));
+				} else {
+					handleComplexValueReference(input);
+				}
 			}
 			else {
 				throw new ExceptionReport("Error while accessing the inputValue: " + inputId,
@@ -278,7 +345,19 @@ public class InputHandler {
          * @throws ExceptionReport If error occured while parsing XML
 	 */
 	 protected void handleComplexData(InputType input, String inputId) throws ExceptionReport{
-		String complexValue;
+		handleComplexData(input, inputId, null);
+	}
+
+	/**
+	 * Handles the complexValue. If the request was streamed, the content of
+	 * the complexValue is read from the spool instead of the DOM.
+	 * @param input The client input
+	 * @param inputId
+	 * @param spool The spooled content or <code>null</code>
+	 * @throws ExceptionReport If error occured while parsing the data
+	 */
+	protected void handleComplexData(InputType input, String inputId, ComplexDataSpool spool) throws ExceptionReport{
+		String complexValue = null;
 		InputDescriptionType inputReferenceDesc;
 		ComplexDataType data;
 		Node complexValueNode;
@@ -302,8 +381,10 @@ public class InputHandler {
                 dataMimeType = data.getMimeType();
                 dataEncoding = data.getEncoding();
 
-                complexValueNode =  input.getData().getComplexData().getDomNode();
-                complexValue = getComplexValueNodeString(complexValueNode);
+                if (spool == null) {
+                    complexValueNode =  input.getData().getComplexData().getDomNode();
+                    complexValue = getComplexValueNodeString(complexValueNode);
+                }
 
                 //select parser
 		//1. mimeType set?
@@ -515,7 +596,9 @@ public class InputHandler {
                     throw new ExceptionReport("Error. No applicable parser found for " + formatSchema + "," + dataMimeType + "," + formatEncoding, ExceptionReport.NO_APPLICABLE_CODE);
 		}
 
-		IData collection = parseComplexValue(formatEncoding, complexValue, dataMimeType, formatSchema, parser);
+		IData collection = spool == null
+				? parseComplexValue(formatEncoding, complexValue, dataMimeType, formatSchema, parser)
+				: parseComplexValue(formatEncoding, spool, dataMimeType, formatSchema, parser);
 
 		//enable maxoccurs of parameters with the same name.
                 List<IData> list = new ArrayList<IData>();
@@ -585,13 +668,38 @@ public class InputHandler {
                 return idata;
          }
 
+         /**
+          * Parses spooled inline data directly from the spool, without
+          * materializing it as String.
+          */
+         protected IData parseComplexValue(String formatEncoding, ComplexDataSpool spool, String dataMimeType, String formatSchema, IParser parser) throws ExceptionReport {
+             InputStream stream = null;
+             try {
+                 stream = spool.openStream();
+                 if (StringUtils.isBlank(formatEncoding) || formatEncoding.equalsIgnoreCase(IOHandler.DEFAULT_ENCODING)) {
+                     return parser.parse(stream, dataMimeType, formatSchema);
+                 } else if (formatEncoding.equalsIgnoreCase(IOHandler.ENCODING_BASE64)) {
+                     return parser.parseBase64(stream, dataMimeType, formatSchema);
+                 } else {
+                     throw new ExceptionReport("Unable to generate encoding " + formatEncoding, ExceptionReport.NO_APPLICABLE_CODE);
+                 }
+             } catch (IOException e) {
+                 throw new ExceptionReport("Error occured, while reading inline data", ExceptionReport.NO_APPLICABLE_CODE, e);
+             } catch (RuntimeException e) {
+                 throw new ExceptionReport("Error occured, while parsing inline data", ExceptionReport.NO_APPLICABLE_CODE, e);
+             } finally {
+                 IOUtils.closeQuietly(stream);
+             }
+         }
+
     //TODO-- Needs testing
     protected IData getBase64EncodedData(String complexValue, IParser parser, String dataMimeType, String formatSchema) throws ExceptionReport {
         File f = null;
         String complexValueCopy = complexValue.toString();
 
         try {
-            f = File.createTempFile("wps" + UUID.randomUUID(), "tmp");
+            ScratchSpace scratchSpace = ExecutionContextFactory.getContext().getScratchSpace();
+            f = scratchSpace.createTempFile("wps" + UUID.randomUUID(), "tmp");
 
             if (complexValueCopy.startsWith("<xml-fragment")) {
                 int startIndex = complexValueCopy.indexOf(">");
@@ -601,7 +709,12 @@ public class InputHandler {
                 complexValueCopy = complexValueCopy.substring(0, endIndex);
             }
 
-            FileUtils.write(f, complexValueCopy);
+            OutputStream outputStream = scratchSpace.openOutputStream(f);
+            try {
+                IOUtils.write(complexValueCopy, outputStream);
+            } finally {
+                outputStream.close();
+            }
 
             return parser.parseBase64(new FileInputStream(f), dataMimeType, formatSchema);
 
@@ -769,10 +882,44 @@ public class InputHandler {
 	 * @throws ExceptionReport If the input (as url) is invalid, or there is an error while parsing the XML.
 	 */
 	private void handleComplexValueReference(InputType input) throws ExceptionReport{
-		String inputID = input.getIdentifier().getStringValue();
+		addReferenceData(input, fetchComplexValueReference(input));
+	}
 
+	/**
+	 * Fetches and parses a referenced input. Does not modify the parsed input
+	 * data, so it can be called from {@link ReferencePrefetcher} threads.
+	 * @param input The client input
+	 * @return the parsed input
+	 * @throws ExceptionReport If the input (as url) is invalid, or there is an error while parsing the XML.
+	 */
+	IData fetchComplexValueReference(InputType input) throws ExceptionReport{
 		ReferenceStrategyRegister register = ReferenceStrategyRegister.getInstance();
 		ReferenceInputStream stream = register.resolveReference(input);
+		try {
+			return parseComplexValueReference(input, stream);
+		} finally {
+			// releases the (pooled) connection
+			IOUtils.closeQuietly(stream);
+		}
+	}
+
+	private void addReferenceData(InputType input, IData parsedInputData) {
+		String inputID = input.getIdentifier().getStringValue();
+		//enable maxxoccurs of parameters with the same name.
+		if(inputData.containsKey(inputID)) {
+			List<IData> list = inputData.get(inputID);
+			list.add(parsedInputData);
+			inputData.put(inputID, list);
+		}
+		else {
+			List<IData> list = new ArrayList<IData>();
+			list.add(parsedInputData);
+			inputData.put(inputID, list);
+		}
+	}
+
+	private IData parseComplexValueReference(InputType input, ReferenceInputStream stream) throws ExceptionReport{
+		String inputID = input.getIdentifier().getStringValue();
 
 		String dataURLString = input.getReference().getHref();
 		//dataURLString = URLDecoder.decode(dataURLString);
@@ -1196,21 +1343,17 @@ public class InputHandler {
 
 
 
-			IData parsedInputData = parser.parse(stream, mimeType, schema);
-
-			//enable maxxoccurs of parameters with the same name.
-			if(inputData.containsKey(inputID)) {
-				List<IData> list = inputData.get(inputID);
-				list.add(parsedInputData);
-				inputData.put(inputID, list);
+			// immutable inputs parsed from unchanged cached content are shared
+			ReferenceCache cache = ReferenceCache.getInstance();
+			String format = parser.getClass().getName() + "|" + mimeType + "|" + schema + "|" + encoding;
+			IData cachedData = cache.getParsedData(stream, format);
+			if (cachedData != null) {
+				LOGGER.debug("Using cached input parsed from " + dataURLString);
+				return cachedData;
 			}
-			else {
-				List<IData> list = new ArrayList<IData>();
-				list.add(parsedInputData);
-				inputData.put(inputID, list);
-			}
-
-
+			IData parsedData = parser.parse(stream, mimeType, schema);
+			cache.putParsedData(stream, format, parsedData);
+			return parsedData;
 	}
 
 	/**
@@ -0,0 +1,262 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.request;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.n52.wps.commons.PropertyUtil;
+import org.n52.wps.commons.WPSConfig;
+import org.n52.wps.commons.context.ExecutionContext;
+import org.n52.wps.commons.context.ExecutionContextFactory;
+import org.n52.wps.server.ExceptionReport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Fetches the referenced inputs of a single Execute request concurrently.
+ * The tasks of all requests share one bounded I/O executor; each request runs
+ * at most <code>maxConcurrent</code> of its tasks at the same time, further
+ * tasks are started as earlier ones complete. The {@link ExecutionContext} of
+ * the submitting thread is registered in the executing thread.
+ *
+ * The executor is configured using the following <code>Server</code>
+ * properties of the wps_config.xml (each can be overridden by a system
+ * property prefixed with <code>org.n52.wps.server.</code>):
+ * <ul>
+ * <li><code>reference.prefetch.threads</code>: I/O threads shared by all
+ * requests</li>
+ * <li><code>reference.prefetch.maxPerRequest</code>: concurrent fetches of a
+ * single request</li>
+ * </ul>
+ */
+public class ReferencePrefetcher {
+
+	private static Logger LOGGER = LoggerFactory.getLogger(ReferencePrefetcher.class);
+
+	private final static String KEY_SERVER_ROOT = "org.n52.wps.server";
+	private final static String KEY_THREADS = "reference.prefetch.threads";
+	private final static String KEY_MAX_PER_REQUEST = "reference.prefetch.maxPerRequest";
+
+	private final static int DEFAULT_THREADS = 16;
+	private final static int DEFAULT_MAX_PER_REQUEST = 4;
+
+	private static ExecutorService sharedExecutor;
+
+	private static int sharedMaxPerRequest;
+
+	/**
+	 * @return a prefetcher for a single request using the shared executor
+	 */
+	public synchronized static ReferencePrefetcher create() {
+		if (sharedExecutor == null) {
+			configure();
+			WPSConfig.getInstance().addPropertyChangeListener(WPSConfig.WPSCONFIG_PROPERTY_EVENT_NAME,
+					new PropertyChangeListener() {
+						public void propertyChange(PropertyChangeEvent event) {
+							LOGGER.info("Received Property Change Event: {}", event.getPropertyName());
+							reInitialize();
+						}
+					});
+		}
+		return new ReferencePrefetcher(sharedExecutor, sharedMaxPerRequest);
+	}
+
+	private synchronized static void reInitialize() {
+		ExecutorService old = sharedExecutor;
+		configure();
+		if (old != null) {
+			// fetches already started are completed by the old executor
+			old.shutdown();
+		}
+	}
+
+	private static void configure() {
+		PropertyUtil propertyUtil = new PropertyUtil(WPSConfig.getInstance().getWPSConfig().getServer()
+				.getPropertyArray(), KEY_SERVER_ROOT);
+		int threads = Math.max(1, (int) propertyUtil.extractLong(KEY_THREADS, DEFAULT_THREADS));
+		sharedMaxPerRequest = Math.max(1, (int) propertyUtil.extractLong(KEY_MAX_PER_REQUEST,
+				DEFAULT_MAX_PER_REQUEST));
+		sharedExecutor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+				.setNameFormat("WPS-reference-prefetch-%d").setDaemon(true).build());
+		LOGGER.info("Prefetching references with {} threads, at most {} per request", threads,
+				sharedMaxPerRequest);
+	}
+
+	private final Executor executor;
+
+	private final int maxConcurrent;
+
+	private final ExecutionContext context;
+
+	private final Deque<PrefetchTask<?>> pending = new ArrayDeque<PrefetchTask<?>>();
+
+	private final List<PrefetchTask<?>> tasks = new ArrayList<PrefetchTask<?>>();
+
+	private int running = 0;
+
+	/**
+	 * @param executor
+	 *            the executor running the fetches
+	 * @param maxConcurrent
+	 *            the maximum number of fetches running at the same time
+	 */
+	public ReferencePrefetcher(Executor executor, int maxConcurrent) {
+		this.executor = executor;
+		this.maxConcurrent = maxConcurrent;
+		this.context = ExecutionContextFactory.getContext(false);
+	}
+
+	/**
+	 * Submits a fetch. It is started immediately if less than
+	 * <code>maxConcurrent</code> fetches of this prefetcher are running.
+	 *
+	 * @param task
+	 *            the fetch
+	 * @return the pending result
+	 */
+	public <T> Future<T> submit(Callable<T> task) {
+		PrefetchTask<T> prefetchTask = new PrefetchTask<T>(task);
+		synchronized (this) {
+			tasks.add(prefetchTask);
+			if (running >= maxConcurrent) {
+				pending.add(prefetchTask);
+				return prefetchTask;
+			}
+			running++;
+		}
+		start(prefetchTask);
+		return prefetchTask;
+	}
+
+	private void start(PrefetchTask<?> task) {
+		task.started = true;
+		try {
+			executor.execute(task);
+		} catch (RejectedExecutionException e) {
+			// the executor was replaced after a configuration change
+			LOGGER.debug("Prefetch rejected, fetching in the calling thread.");
+			task.run();
+		}
+	}
+
+	private void onDone() {
+		PrefetchTask<?> next;
+		synchronized (this) {
+			next = pending.poll();
+			if (next == null) {
+				running--;
+				return;
+			}
+		}
+		start(next);
+	}
+
+	/**
+	 * Waits for a fetch submitted to this prefetcher.
+	 *
+	 * @param future
+	 *            the pending result
+	 * @return the result
+	 * @throws ExceptionReport
+	 *             if the fetch failed or the waiting thread was interrupted
+	 */
+	public <T> T await(Future<T> future) throws ExceptionReport {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof ExceptionReport) {
+				throw (ExceptionReport) e.getCause();
+			}
+			throw new ExceptionReport("Error while fetching referenced input", ExceptionReport.NO_APPLICABLE_CODE,
+					e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ExceptionReport("Interrupted while fetching referenced input",
+					ExceptionReport.NO_APPLICABLE_CODE, e);
+		}
+	}
+
+	/**
+	 * Cancels all fetches that did not complete yet.
+	 */
+	public void cancel() {
+		List<PrefetchTask<?>> toCancel;
+		synchronized (this) {
+			pending.clear();
+			toCancel = new ArrayList<PrefetchTask<?>>(tasks);
+		}
+		for (PrefetchTask<?> task : toCancel) {
+			task.cancel(true);
+		}
+	}
+
+	private class PrefetchTask<T> extends FutureTask<T> {
+
+		private volatile boolean started = false;
+
+		PrefetchTask(final Callable<T> callable) {
+			super(new Callable<T>() {
+				public T call() throws Exception {
+					if (context == null) {
+						return callable.call();
+					}
+					ExecutionContextFactory.registerContext(context);
+					try {
+						return callable.call();
+					} finally {
+						ExecutionContextFactory.unregisterContext();
+					}
+				}
+			});
+		}
+
+		@Override
+		protected void done() {
+			// cancelled tasks that were still pending never got a slot
+			if (started) {
+				onDone();
+			}
+		}
+	}
+}
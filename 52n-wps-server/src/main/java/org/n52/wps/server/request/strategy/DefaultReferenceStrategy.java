@@ -32,19 +32,14 @@ import java.io.IOException;
 import java.io.StringWriter;
 import java.net.MalformedURLException;
 
+import net.opengis.wps.x100.InputReferenceType;
 import net.opengis.wps.x100.InputType;
 
 import org.apache.commons.io.IOUtils;
-import org.apache.http.Header;
 import org.apache.http.HttpEntity;
-import org.apache.http.HttpHost;
-import org.apache.http.HttpResponse;
-import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.DecompressingHttpClient;
-import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.message.BasicHeader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -59,14 +54,8 @@ import org.n52.wps.server.ExceptionReport;
  */
 public class DefaultReferenceStrategy implements IReferenceStrategy{
 	
-	// TODO: follow HTTP redirects with LaxRedirectStrategy
-	
 	Logger logger = LoggerFactory.getLogger(DefaultReferenceStrategy.class);
 	
-	//TODO: get proxy from config
-	//static final HttpHost proxy = new HttpHost("127.0.0.1", 8080, "http");
-	static final HttpHost proxy = null;
-	
 	@Override
 	public boolean isApplicable(InputType input) {
 		// TODO Auto-generated method stub
@@ -89,23 +78,29 @@ public class DefaultReferenceStrategy implements IReferenceStrategy{
 				
 				// but Body reference into a String
 				StringWriter writer = new StringWriter();
-				IOUtils.copy(httpGet(bodyHref, null), writer);
+				ReferenceInputStream bodyStream = httpGet(ReferenceCache.createKey(bodyHref, null, null, null, null),
+						bodyHref, null);
+				try {
+					IOUtils.copy(bodyStream, writer);
+				} finally {
+					IOUtils.closeQuietly(bodyStream);
+				}
 				String body = writer.toString();
 				
 				// trigger POST request
-				return httpPost(href, body, mimeType);
+				return httpPost(createKey(input, body), href, body, mimeType);
 				
 			}
 			
 			// Handle POST with inline message
 			else if (input.getReference().isSetBody()) {
 				String body = input.getReference().getBody().toString();
-				return httpPost(href, body, mimeType);
+				return httpPost(createKey(input, body), href, body, mimeType);
 			}
 			
 			// Handle get request
 			else {
-				return httpGet(href, mimeType);
+				return httpGet(createKey(input, null), href, mimeType);
 			}
 			
 			
@@ -126,34 +121,29 @@ public class DefaultReferenceStrategy implements IReferenceStrategy{
 		}
 	}
 	
+	private static String createKey(InputType input, String body) {
+		InputReferenceType reference = input.getReference();
+		return ReferenceCache.createKey(reference.getHref(), body, reference.getMimeType(), reference.getSchema(),
+				reference.getEncoding());
+	}
+
 	/**
 	 * Make a GET request using mimeType and href
-	 * 
-	 * TODO: add support for autoretry, proxy
 	 */
-	private ReferenceInputStream httpGet(final String dataURLString, final String mimeType) throws IOException {
-		HttpClient backend = new DefaultHttpClient();
-		DecompressingHttpClient httpclient = new DecompressingHttpClient(backend);
-		
+	private ReferenceInputStream httpGet(final String key, final String dataURLString, final String mimeType) throws IOException {
 		HttpGet httpget = new HttpGet(dataURLString);
 		
 		if (mimeType != null){
 			httpget.addHeader(new BasicHeader("Content-type", mimeType));
 		}
 		        
-		return processResponse(httpclient.execute(httpget));
+		return ReferenceCache.getInstance().fetch(ReferenceHttpClient.getInstance(), key, httpget);
 	}
 	
 	/**
 	 * Make a POST request using mimeType and href
-	 * 
-	 * TODO: add support for autoretry, proxy
 	 */
-	private ReferenceInputStream httpPost(final String dataURLString, final String body, final String mimeType) throws IOException {
-		HttpClient backend = new DefaultHttpClient();
-		
-		DecompressingHttpClient httpclient = new DecompressingHttpClient(backend);
-		
+	private ReferenceInputStream httpPost(final String key, final String dataURLString, final String body, final String mimeType) throws IOException {
 		HttpPost httppost = new HttpPost(dataURLString);
 		
 		if (mimeType != null){
@@ -164,20 +154,6 @@ public class DefaultReferenceStrategy implements IReferenceStrategy{
 		HttpEntity postEntity = new StringEntity(body);
 		httppost.setEntity(postEntity);
 		
-		return processResponse(httpclient.execute(httppost));
+		return ReferenceCache.getInstance().fetch(ReferenceHttpClient.getInstance(), key, httppost);
 	}
-
-    private ReferenceInputStream processResponse(HttpResponse response) throws IOException {
-        
-        HttpEntity entity = response.getEntity();
-        Header header;
-        
-        header = entity.getContentType();
-        String mimeType = header == null ? null : header.getValue();
-        
-        header = entity.getContentEncoding();
-        String encoding = header == null ? null : header.getValue();
-        
-        return new ReferenceInputStream(entity.getContent(), mimeType, encoding);
-    }
 }
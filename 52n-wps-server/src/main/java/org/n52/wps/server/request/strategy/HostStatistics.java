@@ -0,0 +1,117 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.request.strategy;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the references fetched from a single host by the
+ * {@link ReferenceHttpClient}.
+ */
+public class HostStatistics {
+
+	private final String host;
+
+	private final AtomicLong requests = new AtomicLong();
+
+	private final AtomicLong failures = new AtomicLong();
+
+	private final AtomicLong retries = new AtomicLong();
+
+	private final AtomicLong bytes = new AtomicLong();
+
+	private final AtomicLong latencyNanos = new AtomicLong();
+
+	HostStatistics(String host) {
+		this.host = host;
+	}
+
+	public String getHost() {
+		return host;
+	}
+
+	/**
+	 * @return the number of requests including retries
+	 */
+	public long getRequests() {
+		return requests.get();
+	}
+
+	/**
+	 * @return the number of requests that failed with an I/O error or a server
+	 *         error status
+	 */
+	public long getFailures() {
+		return failures.get();
+	}
+
+	public long getRetries() {
+		return retries.get();
+	}
+
+	/**
+	 * @return the number of (decompressed) response bytes read
+	 */
+	public long getBytes() {
+		return bytes.get();
+	}
+
+	/**
+	 * @return the average time until the response headers were received
+	 */
+	public long getAverageLatencyMillis() {
+		long count = requests.get();
+		return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(latencyNanos.get() / count);
+	}
+
+	void onResponse(long nanos) {
+		requests.incrementAndGet();
+		latencyNanos.addAndGet(nanos);
+	}
+
+	void onFailure(long nanos) {
+		onResponse(nanos);
+		failures.incrementAndGet();
+	}
+
+	void onRetry() {
+		retries.incrementAndGet();
+	}
+
+	void onRead(long count) {
+		bytes.addAndGet(count);
+	}
+
+	@Override
+	public String toString() {
+		return host + "[requests=" + getRequests() + ", failures=" + getFailures() + ", retries=" + getRetries()
+				+ ", bytes=" + getBytes() + ", averageLatency=" + getAverageLatencyMillis() + "ms]";
+	}
+}
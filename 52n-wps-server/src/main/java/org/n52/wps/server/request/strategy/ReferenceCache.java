@@ -0,0 +1,569 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.request.strategy;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.util.EntityUtils;
+import org.n52.wps.PropertyDocument.Property;
+import org.n52.wps.commons.PropertyUtil;
+import org.n52.wps.commons.WPSConfig;
+import org.n52.wps.io.data.IComplexData;
+import org.n52.wps.io.data.ICopyableData;
+import org.n52.wps.io.data.IData;
+import org.n52.wps.io.data.IScratchSpaceData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches referenced inputs, so that workflows calling several processes with
+ * the same reference fetch and parse it only once. Entries are addressed by
+ * the href, the request body and the mimeType, schema and encoding of the
+ * reference (see {@link #createKey(String, String, String, String, String)}).
+ *
+ * The cache has two tiers:
+ * <ul>
+ * <li>a disk tier for the raw content of responses carrying an ETag or a
+ * Last-Modified header. Cached content is always revalidated with a
+ * conditional request and only served if the server answers 304 (Not
+ * Modified).</li>
+ * <li>an optional memory tier for parsed inputs, which are reused while the
+ * content they were parsed from is unchanged. Algorithms may modify their
+ * inputs and executions dispose them, so each execution gets a copy of a
+ * complex input (see {@link ICopyableData}); complex inputs that can not be
+ * copied are never kept. Inputs backed by the scratch space of the execution
+ * that parsed them (see {@link IScratchSpaceData}) are never kept either, as
+ * their files are deleted with that execution.</li>
+ * </ul>
+ * Both tiers are bounded and evict the least recently used entries.
+ *
+ * The cache is configured using the following <code>Server</code>
+ * properties of the wps_config.xml (each can be overridden by a system
+ * property prefixed with <code>org.n52.wps.server.</code>):
+ * <ul>
+ * <li><code>reference.cache.disk.maxSize</code>: bytes on disk, 0 disables the
+ * cache</li>
+ * <li><code>reference.cache.directory</code>: directory of the disk tier,
+ * defaults to <code>wps-reference-cache</code> in the temporary directory</li>
+ * <li><code>reference.cache.memory.maxEntries</code>: parsed inputs kept in
+ * memory, 0 disables the memory tier</li>
+ * <li><code>reference.cache.memory.bindings</code>: comma separated class
+ * names of the bindings kept in memory</li>
+ * </ul>
+ */
+public class ReferenceCache {
+
+	private static Logger LOGGER = LoggerFactory.getLogger(ReferenceCache.class);
+
+	private final static String KEY_SERVER_ROOT = "org.n52.wps.server";
+	private final static String KEY_DISK_MAX_SIZE = "reference.cache.disk.maxSize";
+	private final static String KEY_DIRECTORY = "reference.cache.directory";
+	private final static String KEY_MEMORY_MAX_ENTRIES = "reference.cache.memory.maxEntries";
+	private final static String KEY_MEMORY_BINDINGS = "reference.cache.memory.bindings";
+
+	private final static long DEFAULT_DISK_MAX_SIZE = 256 * 1024 * 1024;
+	private final static String DEFAULT_DIRECTORY = "wps-reference-cache";
+	private final static long DEFAULT_MEMORY_MAX_ENTRIES = 0;
+	private final static String DEFAULT_MEMORY_BINDINGS = "";
+
+	private final static String FILE_PREFIX = "reference-";
+	private final static String FILE_SUFFIX = ".cache";
+
+	private final static String HEADER_ETAG = "ETag";
+	private final static String HEADER_LAST_MODIFIED = "Last-Modified";
+	private final static String HEADER_IF_NONE_MATCH = "If-None-Match";
+	private final static String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+	private final static String HEADER_CACHE_CONTROL = "Cache-Control";
+
+	private static ReferenceCache instance;
+
+	public synchronized static ReferenceCache getInstance() {
+		if (instance == null) {
+			instance = new ReferenceCache(WPSConfig.getInstance().getWPSConfig().getServer().getPropertyArray());
+			WPSConfig.getInstance().addPropertyChangeListener(WPSConfig.WPSCONFIG_PROPERTY_EVENT_NAME,
+					new PropertyChangeListener() {
+						public void propertyChange(PropertyChangeEvent event) {
+							LOGGER.info("Received Property Change Event: {}", event.getPropertyName());
+							reInitialize();
+						}
+					});
+		}
+		return instance;
+	}
+
+	private synchronized static void reInitialize() {
+		ReferenceCache old = instance;
+		if (old != null) {
+			old.clear();
+		}
+		instance = new ReferenceCache(WPSConfig.getInstance().getWPSConfig().getServer().getPropertyArray());
+	}
+
+	private final File directory;
+
+	private final long maxDiskSize;
+
+	private final int maxMemoryEntries;
+
+	private final Set<String> memoryBindings = new HashSet<String>();
+
+	private final LinkedHashMap<String, DiskEntry> diskEntries = new LinkedHashMap<String, DiskEntry>(16, 0.75f, true);
+
+	private long diskSize = 0;
+
+	private final LinkedHashMap<String, IData> memoryEntries;
+
+	private final AtomicLong diskHits = new AtomicLong();
+
+	private final AtomicLong diskMisses = new AtomicLong();
+
+	private final AtomicLong memoryHits = new AtomicLong();
+
+	private final AtomicLong memoryMisses = new AtomicLong();
+
+	private final AtomicLong evictions = new AtomicLong();
+
+	protected ReferenceCache(Property[] properties) {
+		PropertyUtil propertyUtil = new PropertyUtil(properties, KEY_SERVER_ROOT);
+
+		String directoryName = propertyUtil.extractString(KEY_DIRECTORY, null);
+		if (directoryName == null || directoryName.trim().isEmpty()) {
+			directory = new File(System.getProperty("java.io.tmpdir"), DEFAULT_DIRECTORY);
+		} else {
+			directory = new File(directoryName.trim());
+		}
+		long configuredDiskSize = propertyUtil.extractLong(KEY_DISK_MAX_SIZE, DEFAULT_DISK_MAX_SIZE);
+		if (configuredDiskSize > 0 && !directory.isDirectory() && !directory.mkdirs()) {
+			LOGGER.warn("Could not create the reference cache directory {}, caching disabled", directory);
+			configuredDiskSize = 0;
+		}
+		maxDiskSize = configuredDiskSize;
+		if (maxDiskSize > 0) {
+			deleteStaleFiles();
+		}
+
+		maxMemoryEntries = (int) propertyUtil.extractLong(KEY_MEMORY_MAX_ENTRIES, DEFAULT_MEMORY_MAX_ENTRIES);
+		memoryEntries = new LinkedHashMap<String, IData>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, IData> eldest) {
+				if (size() > maxMemoryEntries) {
+					evictions.incrementAndGet();
+					return true;
+				}
+				return false;
+			}
+		};
+		for (String binding : propertyUtil.extractString(KEY_MEMORY_BINDINGS, DEFAULT_MEMORY_BINDINGS).split(",")) {
+			if (!binding.trim().isEmpty()) {
+				memoryBindings.add(binding.trim());
+			}
+		}
+
+		LOGGER.info("Caching references in {} (at most {} bytes), {} parsed inputs in memory", directory,
+				maxDiskSize, maxMemoryEntries);
+	}
+
+	private void deleteStaleFiles() {
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			if (file.getName().startsWith(FILE_PREFIX) && file.getName().endsWith(FILE_SUFFIX) && !file.delete()) {
+				LOGGER.debug("Could not delete stale cache file {}", file);
+			}
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if the disk tier is enabled
+	 */
+	public boolean isEnabled() {
+		return maxDiskSize > 0;
+	}
+
+	/**
+	 * Creates the key addressing the content of a reference.
+	 *
+	 * @param href
+	 *            the referenced URL
+	 * @param body
+	 *            the body POSTed to the URL or <code>null</code>
+	 * @param mimeType
+	 *            the mimeType of the reference or <code>null</code>
+	 * @param schema
+	 *            the schema of the reference or <code>null</code>
+	 * @param encoding
+	 *            the encoding of the reference or <code>null</code>
+	 * @return the key
+	 */
+	public static String createKey(String href, String body, String mimeType, String schema, String encoding) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			for (String value : new String[] { href, body, mimeType, schema, encoding }) {
+				// separates the values and distinguishes null from empty values
+				digest.update(value == null ? (byte) 0 : (byte) 1);
+				if (value != null) {
+					digest.update(value.getBytes("UTF-8"));
+				}
+			}
+			StringBuilder key = new StringBuilder();
+			for (byte b : digest.digest()) {
+				key.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+			}
+			return key.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Fetches the content of a reference using the cached content if the
+	 * server reports it as not modified.
+	 *
+	 * @param client
+	 *            the client executing the request
+	 * @param key
+	 *            the key of the reference
+	 * @param request
+	 *            the request fetching the reference
+	 * @return the content, which has to be closed
+	 * @throws IOException
+	 *             if the request fails or the response has no content
+	 */
+	public ReferenceInputStream fetch(ReferenceHttpClient client, String key, HttpUriRequest request)
+			throws IOException {
+		if (!isEnabled()) {
+			return client.fetch(request);
+		}
+		DiskEntry entry = getDiskEntry(key);
+		if (entry != null) {
+			if (entry.etag != null) {
+				request.setHeader(HEADER_IF_NONE_MATCH, entry.etag);
+			}
+			if (entry.lastModified != null) {
+				request.setHeader(HEADER_IF_MODIFIED_SINCE, entry.lastModified);
+			}
+		}
+		HttpResponse response = client.execute(request);
+		int status = response.getStatusLine().getStatusCode();
+		if (entry != null && status == HttpStatus.SC_NOT_MODIFIED) {
+			EntityUtils.consumeQuietly(response.getEntity());
+			try {
+				InputStream content = new FileInputStream(entry.file);
+				diskHits.incrementAndGet();
+				LOGGER.debug("Using cached content of {}", request.getURI());
+				return new CachedReferenceInputStream(content, entry.mimeType, entry.encoding, entry.getContentKey());
+			} catch (FileNotFoundException e) {
+				// evicted in the meantime
+				remove(entry);
+				request.removeHeaders(HEADER_IF_NONE_MATCH);
+				request.removeHeaders(HEADER_IF_MODIFIED_SINCE);
+				return fetch(client, key, request);
+			}
+		}
+		diskMisses.incrementAndGet();
+
+		HttpEntity httpEntity = response.getEntity();
+		if (httpEntity == null) {
+			throw new IOException("No content received from " + request.getURI() + ", status: "
+					+ response.getStatusLine());
+		}
+		String mimeType = getHeaderValue(httpEntity.getContentType());
+		String encoding = getHeaderValue(httpEntity.getContentEncoding());
+		String etag = getHeaderValue(response.getFirstHeader(HEADER_ETAG));
+		String lastModified = getHeaderValue(response.getFirstHeader(HEADER_LAST_MODIFIED));
+		String cacheControl = getHeaderValue(response.getFirstHeader(HEADER_CACHE_CONTROL));
+
+		if (entry != null) {
+			remove(entry);
+		}
+		if (status != HttpStatus.SC_OK || (etag == null && lastModified == null)
+				|| (cacheControl != null && cacheControl.toLowerCase().contains("no-store"))) {
+			// cannot be revalidated
+			return new ReferenceInputStream(httpEntity.getContent(), mimeType, encoding);
+		}
+
+		File file = File.createTempFile(FILE_PREFIX, FILE_SUFFIX, directory);
+		InputStream in = httpEntity.getContent();
+		OutputStream out = null;
+		long size;
+		try {
+			out = new FileOutputStream(file);
+			size = IOUtils.copyLarge(in, out);
+			out.close();
+		} catch (IOException e) {
+			IOUtils.closeQuietly(out);
+			delete(file);
+			throw e;
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+		DiskEntry stored = new DiskEntry(key, file, size, mimeType, encoding, etag, lastModified);
+		// opened before it can be evicted
+		InputStream content = new FileInputStream(file);
+		put(stored);
+		return new CachedReferenceInputStream(content, mimeType, encoding, stored.getContentKey());
+	}
+
+	private static String getHeaderValue(Header header) {
+		return header == null ? null : header.getValue();
+	}
+
+	private synchronized DiskEntry getDiskEntry(String key) {
+		return diskEntries.get(key);
+	}
+
+	private synchronized void put(DiskEntry entry) {
+		DiskEntry old = diskEntries.put(entry.key, entry);
+		if (old != null) {
+			diskSize -= old.size;
+			delete(old.file);
+		}
+		diskSize += entry.size;
+		Iterator<DiskEntry> eldest = diskEntries.values().iterator();
+		while (diskSize > maxDiskSize && eldest.hasNext()) {
+			DiskEntry evicted = eldest.next();
+			eldest.remove();
+			diskSize -= evicted.size;
+			delete(evicted.file);
+			evictions.incrementAndGet();
+		}
+	}
+
+	private synchronized void remove(DiskEntry entry) {
+		if (diskEntries.get(entry.key) == entry) {
+			diskEntries.remove(entry.key);
+			diskSize -= entry.size;
+			delete(entry.file);
+		}
+	}
+
+	private static void delete(File file) {
+		// content still being read is deleted on exit on platforms that lock open files
+		if (!file.delete() && file.exists()) {
+			file.deleteOnExit();
+		}
+	}
+
+	/**
+	 * Looks up an input parsed from cached content.
+	 *
+	 * @param stream
+	 *            the content of the reference
+	 * @param format
+	 *            identifies the parser, mimeType, schema and encoding used to
+	 *            parse the content
+	 * @return a copy of the parsed input for the execution or
+	 *         <code>null</code>
+	 */
+	public IData getParsedData(ReferenceInputStream stream, String format) {
+		if (maxMemoryEntries <= 0 || !(stream instanceof CachedReferenceInputStream)) {
+			return null;
+		}
+		IData data;
+		synchronized (memoryEntries) {
+			data = memoryEntries.get(getMemoryKey(stream, format));
+		}
+		if (data == null) {
+			memoryMisses.incrementAndGet();
+			return null;
+		}
+		memoryHits.incrementAndGet();
+		if (data instanceof ICopyableData) {
+			return ((ICopyableData) data).copy();
+		}
+		return data;
+	}
+
+	/**
+	 * Keeps a copy of an input parsed from cached content in memory, if its
+	 * binding is one of the configured bindings, it can be copied and it is
+	 * not backed by the scratch space of the execution.
+	 *
+	 * @param stream
+	 *            the content of the reference
+	 * @param format
+	 *            identifies the parser, mimeType, schema and encoding used to
+	 *            parse the content
+	 * @param data
+	 *            the parsed input
+	 */
+	public void putParsedData(ReferenceInputStream stream, String format, IData data) {
+		if (maxMemoryEntries <= 0 || !(stream instanceof CachedReferenceInputStream) || data == null
+				|| !memoryBindings.contains(data.getClass().getName())) {
+			return;
+		}
+		if (data instanceof IScratchSpaceData && ((IScratchSpaceData) data).isBackedByScratchSpace()) {
+			LOGGER.debug("Not keeping {} backed by the scratch space of the execution in memory", data.getClass());
+			return;
+		}
+		IData copy = data;
+		if (data instanceof ICopyableData) {
+			try {
+				copy = ((ICopyableData) data).copy();
+			} catch (UnsupportedOperationException e) {
+				LOGGER.debug("Not keeping {} in memory: {}", data.getClass(), e.getMessage());
+				return;
+			}
+		} else if (data instanceof IComplexData) {
+			LOGGER.warn("Not keeping {} in memory, it can not be copied for each execution", data.getClass());
+			return;
+		}
+		synchronized (memoryEntries) {
+			memoryEntries.put(getMemoryKey(stream, format), copy);
+		}
+	}
+
+	private static String getMemoryKey(ReferenceInputStream stream, String format) {
+		return ((CachedReferenceInputStream) stream).getContentKey() + "\n" + format;
+	}
+
+	/**
+	 * Removes all entries.
+	 */
+	public void clear() {
+		synchronized (this) {
+			for (DiskEntry entry : diskEntries.values()) {
+				delete(entry.file);
+			}
+			diskEntries.clear();
+			diskSize = 0;
+		}
+		synchronized (memoryEntries) {
+			memoryEntries.clear();
+		}
+	}
+
+	/**
+	 * @return the number of references served from disk
+	 */
+	public long getDiskHits() {
+		return diskHits.get();
+	}
+
+	/**
+	 * @return the number of references fetched from their server
+	 */
+	public long getDiskMisses() {
+		return diskMisses.get();
+	}
+
+	/**
+	 * @return the number of parsed inputs served from memory
+	 */
+	public long getMemoryHits() {
+		return memoryHits.get();
+	}
+
+	public long getMemoryMisses() {
+		return memoryMisses.get();
+	}
+
+	/**
+	 * @return the number of entries evicted from either tier
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	/**
+	 * @return the bytes currently cached on disk
+	 */
+	public synchronized long getDiskSize() {
+		return diskSize;
+	}
+
+	@Override
+	public String toString() {
+		return "ReferenceCache[diskHits=" + getDiskHits() + ", diskMisses=" + getDiskMisses() + ", memoryHits="
+				+ getMemoryHits() + ", memoryMisses=" + getMemoryMisses() + ", evictions=" + getEvictions()
+				+ ", diskSize=" + getDiskSize() + "]";
+	}
+
+	private static class DiskEntry {
+
+		private final String key;
+
+		private final File file;
+
+		private final long size;
+
+		private final String mimeType;
+
+		private final String encoding;
+
+		private final String etag;
+
+		private final String lastModified;
+
+		DiskEntry(String key, File file, long size, String mimeType, String encoding, String etag,
+				String lastModified) {
+			this.key = key;
+			this.file = file;
+			this.size = size;
+			this.mimeType = mimeType;
+			this.encoding = encoding;
+			this.etag = etag;
+			this.lastModified = lastModified;
+		}
+
+		String getContentKey() {
+			return key + "\n" + etag + "\n" + lastModified;
+		}
+	}
+}
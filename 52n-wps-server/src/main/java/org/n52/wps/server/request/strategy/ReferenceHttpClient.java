@@ -0,0 +1,456 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.request.strategy;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.params.ConnRoutePNames;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.impl.client.DecompressingHttpClient;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
+import org.apache.http.impl.client.LaxRedirectStrategy;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.util.EntityUtils;
+import org.n52.wps.PropertyDocument.Property;
+import org.n52.wps.commons.PropertyUtil;
+import org.n52.wps.commons.WPSConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A shared, pooling HTTP client to fetch referenced inputs. Connections are
+ * kept alive and reused per route, requests are retried with exponential
+ * backoff on I/O errors and on 502, 503 and 504 responses, and bytes and
+ * latency are recorded per host (see {@link #getHostStatistics()}).
+ * {@link IReferenceStrategy} implementations should use
+ * {@link #fetch(HttpUriRequest)} or {@link #execute(HttpUriRequest)} instead
+ * of creating their own clients.
+ *
+ * The client is configured using the following <code>Server</code>
+ * properties of the wps_config.xml (each can be overridden by a system
+ * property prefixed with <code>org.n52.wps.server.</code>):
+ * <ul>
+ * <li><code>reference.http.maxConnections</code>: pooled connections in total</li>
+ * <li><code>reference.http.maxConnectionsPerRoute</code>: pooled connections per
+ * host</li>
+ * <li><code>reference.http.route.&lt;host[:port]&gt;.maxConnections</code>:
+ * pooled connections for a single host</li>
+ * <li><code>reference.http.connectTimeout</code>: ISO 8601 period</li>
+ * <li><code>reference.http.socketTimeout</code>: ISO 8601 period</li>
+ * <li><code>reference.http.retries</code>: retries of a failed request</li>
+ * <li><code>reference.http.retryBackoff</code>: ISO 8601 period before the
+ * first retry, doubled for every further retry</li>
+ * <li><code>reference.http.proxy</code>: proxy as <code>host:port</code></li>
+ * </ul>
+ */
+public class ReferenceHttpClient {
+
+	private static Logger LOGGER = LoggerFactory.getLogger(ReferenceHttpClient.class);
+
+	private final static String KEY_SERVER_ROOT = "org.n52.wps.server";
+	private final static String KEY_MAX_CONNECTIONS = "reference.http.maxConnections";
+	private final static String KEY_MAX_CONNECTIONS_PER_ROUTE = "reference.http.maxConnectionsPerRoute";
+	private final static String KEY_ROUTE_PREFIX = "reference.http.route.";
+	private final static String KEY_ROUTE_MAX_CONNECTIONS = ".maxConnections";
+	private final static String KEY_CONNECT_TIMEOUT = "reference.http.connectTimeout";
+	private final static String KEY_SOCKET_TIMEOUT = "reference.http.socketTimeout";
+	private final static String KEY_RETRIES = "reference.http.retries";
+	private final static String KEY_RETRY_BACKOFF = "reference.http.retryBackoff";
+	private final static String KEY_PROXY = "reference.http.proxy";
+
+	private final static int DEFAULT_MAX_CONNECTIONS = 200;
+	private final static int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 20;
+	private final static long DEFAULT_CONNECT_TIMEOUT = 10000;
+	private final static long DEFAULT_SOCKET_TIMEOUT = 60000;
+	private final static int DEFAULT_RETRIES = 3;
+	private final static long DEFAULT_RETRY_BACKOFF = 500;
+	private final static long MAX_RETRY_BACKOFF = 30000;
+	private final static long RETIRE_CHECK_INTERVAL = 1000;
+	private final static long MAX_RETIRE_DELAY = 3600000;
+
+	private static final ScheduledExecutorService RETIREMENTS = Executors
+			.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "wps-reference-http-retire");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	private static ReferenceHttpClient instance;
+
+	public synchronized static ReferenceHttpClient getInstance() {
+		if (instance == null) {
+			instance = new ReferenceHttpClient(WPSConfig.getInstance().getWPSConfig().getServer()
+					.getPropertyArray());
+			WPSConfig.getInstance().addPropertyChangeListener(WPSConfig.WPSCONFIG_PROPERTY_EVENT_NAME,
+					new PropertyChangeListener() {
+						public void propertyChange(PropertyChangeEvent event) {
+							LOGGER.info("Received Property Change Event: {}", event.getPropertyName());
+							reInitialize();
+						}
+					});
+		}
+		return instance;
+	}
+
+	private synchronized static void reInitialize() {
+		ReferenceHttpClient old = instance;
+		instance = new ReferenceHttpClient(WPSConfig.getInstance().getWPSConfig().getServer().getPropertyArray());
+		if (old != null) {
+			instance.hostStatistics.putAll(old.hostStatistics);
+			old.retire();
+		}
+	}
+
+	private final PoolingClientConnectionManager connectionManager;
+
+	private final HttpClient httpClient;
+
+	private final int retries;
+
+	private final long retryBackoff;
+
+	private final ConcurrentMap<String, HostStatistics> hostStatistics = new ConcurrentHashMap<String, HostStatistics>();
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	private volatile boolean shutdown;
+
+	protected ReferenceHttpClient(Property[] properties) {
+		PropertyUtil propertyUtil = new PropertyUtil(properties, KEY_SERVER_ROOT);
+
+		connectionManager = new PoolingClientConnectionManager();
+		connectionManager.setMaxTotal((int) propertyUtil.extractLong(KEY_MAX_CONNECTIONS, DEFAULT_MAX_CONNECTIONS));
+		connectionManager.setDefaultMaxPerRoute((int) propertyUtil.extractLong(KEY_MAX_CONNECTIONS_PER_ROUTE,
+				DEFAULT_MAX_CONNECTIONS_PER_ROUTE));
+		configureRoutes(propertyUtil, properties);
+
+		DefaultHttpClient backend = new DefaultHttpClient(connectionManager);
+		HttpConnectionParams.setConnectionTimeout(backend.getParams(),
+				(int) propertyUtil.extractPeriodAsMillis(KEY_CONNECT_TIMEOUT, DEFAULT_CONNECT_TIMEOUT));
+		HttpConnectionParams.setSoTimeout(backend.getParams(),
+				(int) propertyUtil.extractPeriodAsMillis(KEY_SOCKET_TIMEOUT, DEFAULT_SOCKET_TIMEOUT));
+		String proxy = propertyUtil.extractString(KEY_PROXY, null);
+		if (proxy != null && !proxy.trim().isEmpty()) {
+			backend.getParams().setParameter(ConnRoutePNames.DEFAULT_PROXY, parseHost(proxy.trim(), "http"));
+		}
+		// retries are done in execute(), with backoff
+		backend.setHttpRequestRetryHandler(new DefaultHttpRequestRetryHandler(0, false));
+		backend.setRedirectStrategy(new LaxRedirectStrategy());
+		httpClient = new DecompressingHttpClient(backend);
+
+		retries = (int) propertyUtil.extractLong(KEY_RETRIES, DEFAULT_RETRIES);
+		retryBackoff = propertyUtil.extractPeriodAsMillis(KEY_RETRY_BACKOFF, DEFAULT_RETRY_BACKOFF);
+	}
+
+	private void configureRoutes(PropertyUtil propertyUtil, Property[] properties) {
+		if (properties == null) {
+			return;
+		}
+		for (Property property : properties) {
+			String name = property.getName();
+			if (name == null || !name.startsWith(KEY_ROUTE_PREFIX) || !name.endsWith(KEY_ROUTE_MAX_CONNECTIONS)) {
+				continue;
+			}
+			String host = name.substring(KEY_ROUTE_PREFIX.length(), name.length() - KEY_ROUTE_MAX_CONNECTIONS.length());
+			if (host.isEmpty()) {
+				continue;
+			}
+			int max = (int) propertyUtil.extractLong(name, DEFAULT_MAX_CONNECTIONS_PER_ROUTE);
+			HttpHost http = parseHost(host, "http");
+			HttpHost https = parseHost(host, "https");
+			if (http.getPort() < 0) {
+				// the route of a request may carry the explicit default port
+				connectionManager.setMaxPerRoute(new HttpRoute(new HttpHost(http.getHostName(), 80, "http")), max);
+				connectionManager.setMaxPerRoute(new HttpRoute(new HttpHost(https.getHostName(), 443, "https")), max);
+			}
+			connectionManager.setMaxPerRoute(new HttpRoute(http), max);
+			connectionManager.setMaxPerRoute(new HttpRoute(https), max);
+		}
+	}
+
+	private static HttpHost parseHost(String hostAndPort, String scheme) {
+		int colon = hostAndPort.lastIndexOf(':');
+		if (colon > 0) {
+			try {
+				return new HttpHost(hostAndPort.substring(0, colon), Integer.parseInt(hostAndPort.substring(colon + 1)),
+						scheme);
+			} catch (NumberFormatException e) {
+				LOGGER.warn("Invalid port in {}", hostAndPort);
+			}
+		}
+		return new HttpHost(hostAndPort, -1, scheme);
+	}
+
+	/**
+	 * @return the pooled client, without retries and statistics
+	 */
+	public HttpClient getHttpClient() {
+		return httpClient;
+	}
+
+	/**
+	 * Executes the request, retrying it on I/O errors and on 502, 503 and 504
+	 * responses as long as its entity is repeatable. The content of the
+	 * returned response is counted in the statistics of the host; it has to be
+	 * consumed or closed to release the connection.
+	 *
+	 * @param request
+	 *            the request
+	 * @return the response
+	 * @throws IOException
+	 *             if the request still fails after the last retry
+	 */
+	public HttpResponse execute(HttpUriRequest request) throws IOException {
+		inFlight.incrementAndGet();
+		try {
+			return executeWithRetries(request);
+		} finally {
+			// from here on the connection is counted as leased until the response is consumed
+			inFlight.decrementAndGet();
+		}
+	}
+
+	private HttpResponse executeWithRetries(HttpUriRequest request) throws IOException {
+		HostStatistics statistics = getStatistics(request);
+		for (int attempt = 0;; attempt++) {
+			long start = System.nanoTime();
+			HttpResponse response;
+			try {
+				response = httpClient.execute(request);
+			} catch (IOException e) {
+				statistics.onFailure(System.nanoTime() - start);
+				if (attempt >= retries || !isRepeatable(request)) {
+					throw e;
+				}
+				LOGGER.debug("Retrying {} after {}", request.getURI(), e.toString());
+				backoff(statistics, attempt, request);
+				continue;
+			}
+			int status = response.getStatusLine().getStatusCode();
+			if (isRetryable(status)) {
+				statistics.onFailure(System.nanoTime() - start);
+				if (attempt < retries && isRepeatable(request)) {
+					LOGGER.debug("Retrying {} after status {}", request.getURI(), status);
+					EntityUtils.consumeQuietly(response.getEntity());
+					backoff(statistics, attempt, request);
+					continue;
+				}
+			} else {
+				statistics.onResponse(System.nanoTime() - start);
+			}
+			HttpEntity entity = response.getEntity();
+			if (entity != null) {
+				response.setEntity(new CountingEntity(entity, statistics));
+			}
+			return response;
+		}
+	}
+
+	/**
+	 * Executes the request (see {@link #execute(HttpUriRequest)}) and returns
+	 * its content.
+	 *
+	 * @param request
+	 *            the request
+	 * @return the content of the response, which has to be closed
+	 * @throws IOException
+	 *             if the request fails or the response has no content
+	 */
+	public ReferenceInputStream fetch(HttpUriRequest request) throws IOException {
+		HttpResponse response = execute(request);
+		HttpEntity entity = response.getEntity();
+		if (entity == null) {
+			throw new IOException("No content received from " + request.getURI() + ", status: "
+					+ response.getStatusLine());
+		}
+		Header header;
+
+		header = entity.getContentType();
+		String mimeType = header == null ? null : header.getValue();
+
+		header = entity.getContentEncoding();
+		String encoding = header == null ? null : header.getValue();
+
+		return new ReferenceInputStream(entity.getContent(), mimeType, encoding);
+	}
+
+	/**
+	 * @return the statistics by host, sorted by host name
+	 */
+	public Map<String, HostStatistics> getHostStatistics() {
+		return Collections.unmodifiableMap(new TreeMap<String, HostStatistics>(hostStatistics));
+	}
+
+	private HostStatistics getStatistics(HttpUriRequest request) {
+		String host = request.getURI().getHost();
+		if (host == null) {
+			host = "unknown";
+		} else if (request.getURI().getPort() >= 0) {
+			host = host + ":" + request.getURI().getPort();
+		}
+		HostStatistics statistics = hostStatistics.get(host);
+		if (statistics == null) {
+			HostStatistics created = new HostStatistics(host);
+			statistics = hostStatistics.putIfAbsent(host, created);
+			if (statistics == null) {
+				statistics = created;
+			}
+		}
+		return statistics;
+	}
+
+	private static boolean isRetryable(int status) {
+		return status == HttpStatus.SC_BAD_GATEWAY || status == HttpStatus.SC_SERVICE_UNAVAILABLE
+				|| status == HttpStatus.SC_GATEWAY_TIMEOUT;
+	}
+
+	private static boolean isRepeatable(HttpUriRequest request) {
+		if (request instanceof HttpEntityEnclosingRequest) {
+			HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+			return entity == null || entity.isRepeatable();
+		}
+		return true;
+	}
+
+	private void backoff(HostStatistics statistics, int attempt, HttpUriRequest request) throws IOException {
+		statistics.onRetry();
+		long delay = Math.min(retryBackoff << Math.min(attempt, 16), MAX_RETRY_BACKOFF);
+		try {
+			Thread.sleep(delay);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting to retry " + request.getURI());
+		}
+	}
+
+	public void shutdown() {
+		shutdown = true;
+		connectionManager.shutdown();
+	}
+
+	boolean isShutdown() {
+		return shutdown;
+	}
+
+	/**
+	 * Shuts the client down once no request is executed and no connection is
+	 * leased anymore, i.e. the responses of all requests executed before were
+	 * consumed or closed. Idle connections are closed right away. A client
+	 * whose connections are still leased after {@link #MAX_RETIRE_DELAY} is
+	 * shut down anyway.
+	 */
+	void retire() {
+		final long deadline = System.currentTimeMillis() + MAX_RETIRE_DELAY;
+		RETIREMENTS.execute(new Runnable() {
+			public void run() {
+				connectionManager.closeIdleConnections(0, TimeUnit.MILLISECONDS);
+				int leased = connectionManager.getTotalStats().getLeased();
+				if (inFlight.get() == 0 && leased == 0) {
+					LOGGER.debug("Shutting down retired client");
+					shutdown();
+				} else if (System.currentTimeMillis() >= deadline) {
+					LOGGER.warn("Shutting down retired client with {} connections still leased", leased);
+					shutdown();
+				} else {
+					RETIREMENTS.schedule(this, RETIRE_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+				}
+			}
+		});
+	}
+
+	private static class CountingEntity extends HttpEntityWrapper {
+
+		private final HostStatistics statistics;
+
+		CountingEntity(HttpEntity entity, HostStatistics statistics) {
+			super(entity);
+			this.statistics = statistics;
+		}
+
+		@Override
+		public InputStream getContent() throws IOException {
+			return new CountingInputStream(super.getContent(), statistics);
+		}
+	}
+
+	private static class CountingInputStream extends FilterInputStream {
+
+		private final HostStatistics statistics;
+
+		CountingInputStream(InputStream in, HostStatistics statistics) {
+			super(in);
+			this.statistics = statistics;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b != -1) {
+				statistics.onRead(1);
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int read = super.read(b, off, len);
+			if (read > 0) {
+				statistics.onRead(read);
+			}
+			return read;
+		}
+	}
+}
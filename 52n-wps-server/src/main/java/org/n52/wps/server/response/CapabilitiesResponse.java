@@ -28,14 +28,13 @@
  */
 package org.n52.wps.server.response;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 
-import org.apache.xmlbeans.XmlException;
-import org.n52.wps.server.CapabilitiesConfiguration;
 import org.n52.wps.server.ExceptionReport;
 import org.n52.wps.server.request.CapabilitiesRequest;
-import org.n52.wps.util.XMLBeansHelper;
 
 /**
  * A Response to the Request "GetCapabilities"
@@ -43,26 +42,31 @@ import org.n52.wps.util.XMLBeansHelper;
  */
 public class CapabilitiesResponse extends Response {
 
+	private final ResponseCache.Entry entry;
+
 	/**
 	 * Serves the Request with a Response
 	 * @param request The GetCapabilities request
+	 * @param entry The serialized capabilities
 	 */
-	public CapabilitiesResponse(CapabilitiesRequest request){
+	public CapabilitiesResponse(CapabilitiesRequest request, ResponseCache.Entry entry){
 		super(request);
+		this.entry = entry;
 	}
 	
 	/**
-	 * Save this Response to an OutputStream
-	 * @param os The OutputStream to save this Response to
-	 * @throws ExceptionReport
+	 * @return the serialized capabilities and their validators
 	 */
+	public ResponseCache.Entry getCacheEntry() {
+		return entry;
+	}
+	
 	public InputStream getAsStream() throws ExceptionReport{
-		try {
-			return CapabilitiesConfiguration.getInstance().newInputStream(XMLBeansHelper.getXmlOptions());
-		} catch (IOException e) {
-			throw new ExceptionReport("Exception occured while generating response", ExceptionReport.NO_APPLICABLE_CODE, e);
-		} catch (XmlException e) {
-			throw new ExceptionReport("Exception occured while generating response", ExceptionReport.NO_APPLICABLE_CODE, e);
-		}
+		return new ByteArrayInputStream(entry.getContent());
+	}
+	
+	@Override
+	public void writeTo(OutputStream outputStream) throws ExceptionReport, IOException {
+		outputStream.write(entry.getContent());
 	}
 }
@@ -28,28 +28,38 @@
  */
 package org.n52.wps.server.response;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
-
-import net.opengis.wps.x100.ProcessDescriptionsDocument;
+import java.io.OutputStream;
 
 import org.n52.wps.server.ExceptionReport;
 import org.n52.wps.server.request.DescribeProcessRequest;
-import org.n52.wps.util.XMLBeansHelper;
 
 
 public class DescribeProcessResponse extends Response{
 
-	public DescribeProcessResponse(DescribeProcessRequest request){
+	private final ResponseCache.Entry entry;
+
+	public DescribeProcessResponse(DescribeProcessRequest request, ResponseCache.Entry entry){
 		super(request);
+		this.entry = entry;
+	}
+	
+	/**
+	 * @return the serialized process descriptions and their validators
+	 */
+	public ResponseCache.Entry getCacheEntry() {
+		return entry;
 	}
 	
     @Override
 	public InputStream getAsStream() throws ExceptionReport{
-		try {
-			return ((ProcessDescriptionsDocument)request.getAttachedResult()).newInputStream(XMLBeansHelper.getXmlOptions());
-		}
-		catch(Exception e) {
-			throw new ExceptionReport("Exception occured while writing response document", ExceptionReport.NO_APPLICABLE_CODE, e);
-		}
+		return new ByteArrayInputStream(entry.getContent());
+	}
+	
+	@Override
+	public void writeTo(OutputStream outputStream) throws ExceptionReport, IOException {
+		outputStream.write(entry.getContent());
 	}
-}
\ No newline at end of file
+}
@@ -28,7 +28,10 @@
  */
 package org.n52.wps.server.response;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+
 import org.n52.wps.server.ExceptionReport;
 import org.n52.wps.server.request.ExecuteRequest;
 
@@ -45,6 +48,11 @@ public class ExecuteResponse extends Response {
 	public InputStream getAsStream() throws ExceptionReport{
 		return this.builder.getAsStream();
 	}
+
+    @Override
+	public void writeTo(OutputStream outputStream) throws ExceptionReport, IOException {
+		this.builder.writeTo(outputStream);
+	}
 	
 	public ExecuteResponseBuilder getExecuteResponseBuilder(){
 		return builder;
@@ -28,7 +28,9 @@
  */
 package org.n52.wps.server.response;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Calendar;
 
 import javax.xml.XMLConstants;
@@ -115,7 +117,7 @@ public class ExecuteResponseBuilder {
 			// the response only include dataInputs, if the property is set to true;
 			//if(Boolean.getBoolean(WPSConfiguration.getInstance().getProperty(WebProcessingService.PROPERTY_NAME_INCLUDE_DATAINPUTS_IN_RESPONSE))) {
 			if(new Boolean(WPSConfig.getInstance().getWPSConfig().getServer().getIncludeDataInputsInResponse())){
-				dataInputs = request.getExecute().getDataInputs();
+				dataInputs = request.getDataInputs();
 				responseElem.setDataInputs(dataInputs);
 			}
 			responseElem.addNewProcessOutputs();
@@ -358,11 +360,7 @@ public class ExecuteResponseBuilder {
 		if(request.isRawData() && rawDataHandler != null) {
 			return rawDataHandler.getAsStream();
 		}
-		if(request.isStoreResponse()) {
-			String id = request.getUniqueId().toString();
-			String statusLocation = DatabaseFactory.getDatabase().generateRetrieveResultURL(id);
-			doc.getExecuteResponse().setStatusLocation(statusLocation);
-		}
+		setStatusLocation();
 		try {
 			return doc.newInputStream(XMLBeansHelper.getXmlOptions());
 		}
@@ -371,6 +369,27 @@ public class ExecuteResponseBuilder {
 		}
 	}
 
+	/**
+	 * Writes the response to the stream. Raw complex data is written by the
+	 * generator directly.
+	 */
+	public void writeTo(OutputStream outputStream) throws ExceptionReport, IOException {
+		if(request.isRawData() && rawDataHandler != null) {
+			rawDataHandler.writeTo(outputStream);
+			return;
+		}
+		setStatusLocation();
+		doc.save(outputStream, XMLBeansHelper.getXmlOptions());
+	}
+
+	private void setStatusLocation() {
+		if(request.isStoreResponse()) {
+			String id = request.getUniqueId().toString();
+			String statusLocation = DatabaseFactory.getDatabase().generateRetrieveResultURL(id);
+			doc.getExecuteResponse().setStatusLocation(statusLocation);
+		}
+	}
+
 	public void setStatus(StatusType status) {
 		//workaround, should be generated either at the creation of the document or when the process has been finished.
 		status.setCreationTime(creationTime);
@@ -0,0 +1,122 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.response;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.commons.io.IOUtils;
+import org.n52.wps.commons.context.ExecutionContext;
+import org.n52.wps.commons.context.ExecutionContextFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Provides the output of a generator as an <code>InputStream</code> for
+ * consumers that pull their data (e.g.
+ * {@link org.n52.wps.server.database.IDatabase#storeComplexValue}). The
+ * generator writes to the pipe in a separate thread, so the output is not
+ * spooled to a temporary file. The generator runs in the execution context of
+ * the caller. A failure of the generator is reported by the stream when it
+ * reaches its end.
+ */
+class GeneratorPipe extends PipedInputStream {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+			.setNameFormat("WPS-generator-%d").setDaemon(true).build());
+
+	private volatile IOException failure;
+
+	private GeneratorPipe() {
+		super(BUFFER_SIZE);
+	}
+
+	interface Source {
+
+		void writeTo(OutputStream outputStream) throws IOException;
+
+	}
+
+	static GeneratorPipe start(final Source source) throws IOException {
+		final GeneratorPipe pipe = new GeneratorPipe();
+		final PipedOutputStream outputStream = new PipedOutputStream(pipe);
+		final ExecutionContext context = ExecutionContextFactory.getContext(false);
+		EXECUTOR.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (context != null) {
+					ExecutionContextFactory.registerContext(context);
+				}
+				try {
+					source.writeTo(outputStream);
+				} catch (IOException e) {
+					pipe.failure = e;
+				} catch (RuntimeException e) {
+					pipe.failure = new IOException("Error while generating Complex Data out of the process result", e);
+				} finally {
+					IOUtils.closeQuietly(outputStream);
+					if (context != null) {
+						ExecutionContextFactory.unregisterContext();
+					}
+				}
+			}
+		});
+		return pipe;
+	}
+
+	@Override
+	public synchronized int read() throws IOException {
+		int read = super.read();
+		if (read < 0) {
+			checkFailure();
+		}
+		return read;
+	}
+
+	@Override
+	public synchronized int read(byte[] b, int off, int len) throws IOException {
+		int read = super.read(b, off, len);
+		if (read < 0) {
+			checkFailure();
+		}
+		return read;
+	}
+
+	private void checkFailure() throws IOException {
+		if (failure != null) {
+			throw failure;
+		}
+	}
+}
@@ -28,6 +28,7 @@
  */
 package org.n52.wps.server.response;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.math.BigInteger;
@@ -56,7 +57,6 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 
 import org.n52.wps.io.BasicXMLTypeFactory;
-import org.n52.wps.io.IOHandler;
 import org.n52.wps.io.data.IBBOXData;
 import org.n52.wps.io.data.IData;
 import org.n52.wps.io.data.binding.literal.AbstractLiteralDataBinding;
@@ -118,29 +118,18 @@ public class OutputDataItem extends ResponseData {
 			//
 			// in case encoding is
 			//
-			InputStream stream = null;
-			if (encoding == null || encoding.equals("") || encoding.equalsIgnoreCase(IOHandler.DEFAULT_ENCODING)){
-				stream = generator.generateStream(super.obj, mimeType, schema);
-			}
-
-			// in case encoding is base64 create a new text node
-			// and parse the generator's result into it
-			else if (encoding.equalsIgnoreCase(IOHandler.ENCODING_BASE64)){
-				stream = generator.generateBase64Stream(super.obj, mimeType, schema);
-			}
-			else {
-				throw new ExceptionReport("Unable to generate encoding " + encoding, ExceptionReport.NO_APPLICABLE_CODE);
-			}
+			// the data is embedded in the response document anyway, so it
+			// is generated in memory
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			writeComplexData(baos, isBase64Encoding());
 			complexData = output.addNewData().addNewComplexData();
 			if(mimeType.contains("xml") || mimeType.contains("XML")){
+				InputStream stream = new ByteArrayInputStream(baos.toByteArray());
 				complexData.set(XmlObject.Factory.parse(stream));
 				stream.close();
 			}else{
 				DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
 				Document document = builder.newDocument();
-				ByteArrayOutputStream baos = new ByteArrayOutputStream();
-				IOUtils.copy(stream, baos);
-				stream.close();
 				String text = baos.toString();
 				baos.close();
 				Node dataNode = document.createTextNode(text);
@@ -194,7 +183,7 @@ public class OutputDataItem extends ResponseData {
 	public void updateResponseAsReference(ExecuteResponseDocument res, String reqID, String mimeType) throws ExceptionReport {
 		prepareGenerator();
 		OutputDataType output = prepareOutput(res);
-		InputStream stream;
+		InputStream stream = null;
 
 		OutputReferenceType outReference = output.addNewReference();
 		if (schema != null) {
@@ -209,26 +198,24 @@ public class OutputDataItem extends ResponseData {
 		IDatabase db = DatabaseFactory.getDatabase();
 		String storeID = reqID + "" + id;
 
+		String storeReference;
 		try {
-			if (encoding == null || encoding.equals("") || encoding.equalsIgnoreCase(IOHandler.DEFAULT_ENCODING)){
-				stream = generator.generateStream(super.obj, mimeType, schema);
-			}
-
-			// in case encoding is base64
-			else if (encoding.equalsIgnoreCase(IOHandler.ENCODING_BASE64)){
-				stream = generator.generateBase64Stream(super.obj, mimeType, schema);
-			}
-
-			else {
-				throw new ExceptionReport("Unable to generate encoding " + encoding, ExceptionReport.NO_APPLICABLE_CODE);
-			}
+			// the generator writes to the store while it reads the stream
+			stream = openComplexDataStream(isBase64Encoding());
+			storeReference = db.storeComplexValue(storeID, stream, COMPLEX_DATA_TYPE, mimeType);
 		}
 		catch (IOException e){
 			LOGGER.error(e.getMessage(), e);
 			throw new ExceptionReport("Error while generating Complex Data out of the process result", ExceptionReport.NO_APPLICABLE_CODE, e);
 		}
+		catch (RuntimeException e){
+			LOGGER.error(e.getMessage(), e);
+			throw new ExceptionReport("Error while generating Complex Data out of the process result", ExceptionReport.NO_APPLICABLE_CODE, e);
+		}
+		finally {
+			IOUtils.closeQuietly(stream);
+		}
 
-		String storeReference = db.storeComplexValue(storeID, stream, COMPLEX_DATA_TYPE, mimeType);
 		storeReference = storeReference.replace("#", "%23");
 		outReference.setHref(storeReference);
 		// MSS:  05-02-2009 changed default output type to text/xml to be certain that the calling application doesn't
@@ -31,10 +31,10 @@ package org.n52.wps.server.response;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 
 import net.opengis.wps.x100.ProcessDescriptionType;
 
-import org.n52.wps.io.IOHandler;
 import org.n52.wps.io.data.IBBOXData;
 import org.n52.wps.io.data.IComplexData;
 import org.n52.wps.io.data.IData;
@@ -72,45 +72,55 @@ public class RawData extends ResponseData {
 
     public InputStream getAsStream() throws ExceptionReport {
         try {
-            if(obj instanceof ILiteralData){
-                return new ByteArrayInputStream(String.valueOf(obj.getPayload()).getBytes(Charsets.UTF_8));
-            }
-            if(obj instanceof IBBOXData){
-                IBBOXData bbox  = (IBBOXData) obj;
-                StringBuilder builder = new StringBuilder();
-
-                builder.append("<wps:BoundingBoxData");
-                appendAttr(builder, "xmlns:ows", XMLBeansHelper.NS_OWS_1_1);
-                appendAttr(builder, "xmlns:wps", XMLBeansHelper.NS_WPS_1_0_0);
-                if (bbox.getCRS() != null) {
-                    appendAttr(builder, "crs", escape(bbox.getCRS()));
-                }
-                appendAttr(builder, "dimensions", bbox.getDimension());
-                builder.append(">");
-                builder.append("\n\t");
-                builder.append("<ows:LowerCorner>");
-                SPACE_JOINER.appendTo(builder, Doubles.asList(bbox.getLowerCorner()));
-                builder.append("</ows:LowerCorner>");
-                builder.append("\n\t");
-                builder.append("<ows:UpperCorner>");
-                SPACE_JOINER.appendTo(builder, Doubles.asList(bbox.getUpperCorner()));
-                builder.append("</ows:UpperCorner>");
-                builder.append("\n");
-                builder.append("</wps:BoundingBoxData>");
-                return new ByteArrayInputStream(builder.toString().getBytes(Charsets.UTF_8));
-            }
-            //complexdata
-            if(encoding == null || "".equals(encoding) || encoding.equalsIgnoreCase(IOHandler.DEFAULT_ENCODING)){
-                return generator.generateStream(obj, mimeType, schema);
-            }
-            else if(encoding.equalsIgnoreCase(IOHandler.ENCODING_BASE64)){
-                return generator.generateBase64Stream(obj, mimeType, schema);
-
+            if(obj instanceof ILiteralData || obj instanceof IBBOXData){
+                return new ByteArrayInputStream(getSimpleDataAsBytes());
             }
+            //complexdata, generated while the stream is read
+            return openComplexDataStream(isBase64Encoding());
         } catch (IOException e) {
             throw new ExceptionReport("Error while generating Complex Data out of the process result", ExceptionReport.NO_APPLICABLE_CODE, e);
         }
-        throw new ExceptionReport("Could not determine encoding. Use default (=not set) or base64", ExceptionReport.NO_APPLICABLE_CODE);
+    }
+
+    /**
+     * Writes the data to the stream. Complex data is written by the generator
+     * directly, without an intermediate stream.
+     */
+    public void writeTo(OutputStream outputStream) throws ExceptionReport, IOException {
+        if(obj instanceof ILiteralData || obj instanceof IBBOXData){
+            outputStream.write(getSimpleDataAsBytes());
+            return;
+        }
+        //complexdata
+        writeComplexData(outputStream, isBase64Encoding());
+    }
+
+    private byte[] getSimpleDataAsBytes() {
+        if(obj instanceof ILiteralData){
+            return String.valueOf(obj.getPayload()).getBytes(Charsets.UTF_8);
+        }
+        IBBOXData bbox  = (IBBOXData) obj;
+        StringBuilder builder = new StringBuilder();
+
+        builder.append("<wps:BoundingBoxData");
+        appendAttr(builder, "xmlns:ows", XMLBeansHelper.NS_OWS_1_1);
+        appendAttr(builder, "xmlns:wps", XMLBeansHelper.NS_WPS_1_0_0);
+        if (bbox.getCRS() != null) {
+            appendAttr(builder, "crs", escape(bbox.getCRS()));
+        }
+        appendAttr(builder, "dimensions", bbox.getDimension());
+        builder.append(">");
+        builder.append("\n\t");
+        builder.append("<ows:LowerCorner>");
+        SPACE_JOINER.appendTo(builder, Doubles.asList(bbox.getLowerCorner()));
+        builder.append("</ows:LowerCorner>");
+        builder.append("\n\t");
+        builder.append("<ows:UpperCorner>");
+        SPACE_JOINER.appendTo(builder, Doubles.asList(bbox.getUpperCorner()));
+        builder.append("</ows:UpperCorner>");
+        builder.append("\n");
+        builder.append("</wps:BoundingBoxData>");
+        return builder.toString().getBytes(Charsets.UTF_8);
     }
 
     private StringBuilder appendAttr(StringBuilder builder, String key, Object value) {
@@ -28,9 +28,12 @@
  */
 package org.n52.wps.server.response;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.UUID;
 
+import org.apache.commons.io.IOUtils;
 import org.n52.wps.server.ExceptionReport;
 import org.n52.wps.server.request.Request;
 
@@ -53,6 +56,19 @@ abstract public class Response {
 	
 	public abstract InputStream getAsStream() throws ExceptionReport;
 	
+	/**
+	 * Writes the response to the stream, by default by copying
+	 * {@link #getAsStream()}.
+	 */
+	public void writeTo(OutputStream outputStream) throws ExceptionReport, IOException {
+		InputStream is = getAsStream();
+		try {
+			IOUtils.copy(is, outputStream);
+		} finally {
+			is.close();
+		}
+	}
+	
 	public Request getRequest(){
 		return request;
 	}
@@ -0,0 +1,304 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.response;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import org.n52.wps.PropertyDocument.Property;
+import org.n52.wps.commons.PropertyUtil;
+import org.n52.wps.commons.WPSConfig;
+import org.n52.wps.server.ExceptionReport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches the serialized GetCapabilities and DescribeProcess responses, which
+ * only change when the configuration or the available processes change.
+ * Entries are addressed by the operation, the language and the requested
+ * process set; each entry holds the plain and the gzipped bytes of the
+ * document together with its ETag and Last-Modified validators. The gzipped
+ * bytes and the ETag are computed on first use, so responses that are not
+ * cached (see {@link Entry#isCached()}) are served without that overhead.
+ *
+ * All entries are dropped on a property change event of the
+ * {@link WPSConfig} and whenever the repositories are reloaded (see
+ * {@link #invalidate()}). A response loaded concurrently to an invalidation
+ * is served, but not cached.
+ *
+ * The cache is configured using the following <code>Server</code> property
+ * of the wps_config.xml (it can be overridden by a system property prefixed
+ * with <code>org.n52.wps.server.</code>):
+ * <ul>
+ * <li><code>response.cache.maxEntries</code>: cached responses, the least
+ * recently used are evicted, 0 disables the cache</li>
+ * </ul>
+ */
+public class ResponseCache {
+
+	private static Logger LOGGER = LoggerFactory.getLogger(ResponseCache.class);
+
+	private final static String KEY_SERVER_ROOT = "org.n52.wps.server";
+	private final static String KEY_MAX_ENTRIES = "response.cache.maxEntries";
+
+	private final static long DEFAULT_MAX_ENTRIES = 64;
+
+	private static ResponseCache instance;
+
+	public synchronized static ResponseCache getInstance() {
+		if (instance == null) {
+			instance = new ResponseCache(WPSConfig.getInstance().getWPSConfig().getServer().getPropertyArray());
+			WPSConfig.getInstance().addPropertyChangeListener(WPSConfig.WPSCONFIG_PROPERTY_EVENT_NAME,
+					new PropertyChangeListener() {
+						public void propertyChange(PropertyChangeEvent event) {
+							LOGGER.info("Received Property Change Event: {}", event.getPropertyName());
+							reInitialize();
+						}
+					});
+		}
+		return instance;
+	}
+
+	private synchronized static void reInitialize() {
+		ResponseCache old = instance;
+		if (old != null) {
+			old.invalidate();
+		}
+		instance = new ResponseCache(WPSConfig.getInstance().getWPSConfig().getServer().getPropertyArray());
+	}
+
+	private final int maxEntries;
+
+	private final LinkedHashMap<String, Entry> entries;
+
+	// incremented by invalidate(), responses loaded in an older generation are not cached
+	private long generation = 0;
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	protected ResponseCache(Property[] properties) {
+		PropertyUtil propertyUtil = new PropertyUtil(properties, KEY_SERVER_ROOT);
+		maxEntries = (int) Math.max(0, propertyUtil.extractLong(KEY_MAX_ENTRIES, DEFAULT_MAX_ENTRIES));
+		entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, ResponseCache.Entry> eldest) {
+				return size() > maxEntries;
+			}
+		};
+		LOGGER.info("Caching at most {} GetCapabilities and DescribeProcess responses", maxEntries);
+	}
+
+	/**
+	 * @return <code>true</code> if responses are cached
+	 */
+	public boolean isEnabled() {
+		return maxEntries > 0;
+	}
+
+	/**
+	 * Returns the cached response or loads and caches it.
+	 *
+	 * @param key
+	 *            addresses the response, i.e. the operation, the language and
+	 *            the process set
+	 * @param loader
+	 *            serializes the response on a cache miss
+	 * @return the response
+	 * @throws ExceptionReport
+	 *             if the loader fails, failures are not cached
+	 */
+	public Entry get(String key, Loader loader) throws ExceptionReport {
+		long loadedGeneration;
+		synchronized (entries) {
+			Entry entry = entries.get(key);
+			if (entry != null) {
+				hits.incrementAndGet();
+				return entry;
+			}
+			loadedGeneration = generation;
+		}
+		misses.incrementAndGet();
+		byte[] content = loader.load();
+		if (isEnabled()) {
+			synchronized (entries) {
+				if (loadedGeneration == generation) {
+					Entry entry = new Entry(content, true);
+					entries.put(key, entry);
+					return entry;
+				}
+			}
+		}
+		return new Entry(content);
+	}
+
+	/**
+	 * Drops all cached responses. Has to be called whenever the processes
+	 * offered by the service change.
+	 */
+	public void invalidate() {
+		synchronized (entries) {
+			generation++;
+			entries.clear();
+		}
+		LOGGER.debug("Invalidated cached responses");
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Serializes a response on a cache miss.
+	 */
+	public interface Loader {
+
+		byte[] load() throws ExceptionReport;
+	}
+
+	/**
+	 * A serialized response and its validators.
+	 */
+	public static class Entry {
+
+		private final byte[] content;
+
+		private final boolean cached;
+
+		private final long lastModified;
+
+		// computed on first use, a concurrent computation yields the same value
+		private volatile byte[] gzippedContent;
+
+		private volatile String eTag;
+
+		/**
+		 * Creates an entry for a response that is not cached.
+		 */
+		public Entry(byte[] content) {
+			this(content, false);
+		}
+
+		Entry(byte[] content, boolean cached) {
+			this.content = content;
+			this.cached = cached;
+			// HTTP dates have a precision of seconds
+			this.lastModified = System.currentTimeMillis() / 1000 * 1000;
+		}
+
+		public byte[] getContent() {
+			return content;
+		}
+
+		/**
+		 * @return <code>true</code> if the response is kept by the cache, so
+		 *         that clients can revalidate it
+		 */
+		public boolean isCached() {
+			return cached;
+		}
+
+		public byte[] getGzippedContent() {
+			byte[] gzipped = gzippedContent;
+			if (gzipped == null) {
+				gzipped = gzip(content);
+				gzippedContent = gzipped;
+			}
+			return gzipped;
+		}
+
+		/**
+		 * @return the strong ETag of the plain content, derived from the
+		 *         content so that it survives invalidations not changing it
+		 */
+		public String getETag() {
+			String tag = eTag;
+			if (tag == null) {
+				tag = "\"" + digest(content) + "\"";
+				eTag = tag;
+			}
+			return tag;
+		}
+
+		/**
+		 * @return the ETag of the gzipped content
+		 */
+		public String getGzippedETag() {
+			String tag = getETag();
+			return tag.substring(0, tag.length() - 1) + "-gzip\"";
+		}
+
+		public long getLastModified() {
+			return lastModified;
+		}
+
+		private static byte[] gzip(byte[] content) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length / 4 + 64);
+			try {
+				GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+				gzip.write(content);
+				gzip.close();
+			} catch (IOException e) {
+				// not thrown by a ByteArrayOutputStream
+				throw new IllegalStateException(e);
+			}
+			return bytes.toByteArray();
+		}
+
+		private static String digest(byte[] content) {
+			try {
+				byte[] digest = MessageDigest.getInstance("SHA-1").digest(content);
+				StringBuilder hex = new StringBuilder(digest.length * 2);
+				for (byte b : digest) {
+					hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+				}
+				return hex.toString();
+			} catch (NoSuchAlgorithmException e) {
+				// SHA-1 is supported by every Java platform
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+}
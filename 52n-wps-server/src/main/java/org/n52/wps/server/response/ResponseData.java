@@ -28,6 +28,9 @@
  */
 package org.n52.wps.server.response;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -37,8 +40,11 @@ import net.opengis.wps.x100.ProcessDescriptionType;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.apache.commons.io.IOUtils;
 import org.n52.wps.io.GeneratorFactory;
 import org.n52.wps.io.IGenerator;
+import org.n52.wps.io.IOHandler;
+import org.n52.wps.io.IStreamingGenerator;
 import org.n52.wps.io.data.IData;
 import org.n52.wps.server.ExceptionReport;
 import org.n52.wps.server.RepositoryManager;
@@ -353,6 +359,59 @@ public abstract class ResponseData {
 			throw new ExceptionReport("Could not find an appropriate generator based on given mimetype/schema/encoding for output", ExceptionReport.NO_APPLICABLE_CODE);
 		}
 	}
+
+	/**
+	 * @return <code>true</code> if the complex data is to be encoded in Base64
+	 * @throws ExceptionReport
+	 *             if the encoding is not supported
+	 */
+	protected boolean isBase64Encoding() throws ExceptionReport {
+		if (encoding == null || encoding.equals("") || encoding.equalsIgnoreCase(IOHandler.DEFAULT_ENCODING)) {
+			return false;
+		}
+		if (encoding.equalsIgnoreCase(IOHandler.ENCODING_BASE64)) {
+			return true;
+		}
+		throw new ExceptionReport("Unable to generate encoding " + encoding, ExceptionReport.NO_APPLICABLE_CODE);
+	}
+
+	/**
+	 * @return the complex data, generated while the stream is read
+	 */
+	protected InputStream openComplexDataStream(final boolean base64) throws IOException {
+		return GeneratorPipe.start(new GeneratorPipe.Source() {
+			@Override
+			public void writeTo(OutputStream outputStream) throws IOException {
+				writeComplexData(outputStream, base64);
+			}
+		});
+	}
+
+	/**
+	 * Writes the complex data using the generator. Generators not implementing
+	 * {@link IStreamingGenerator} are adapted by copying their stream.
+	 */
+	protected void writeComplexData(OutputStream outputStream, boolean base64) throws IOException {
+		if (generator instanceof IStreamingGenerator) {
+			IStreamingGenerator streamingGenerator = (IStreamingGenerator) generator;
+			if (base64) {
+				streamingGenerator.writeBase64To(obj, outputStream, mimeType, schema);
+			} else {
+				streamingGenerator.writeTo(obj, outputStream, mimeType, schema);
+			}
+			return;
+		}
+		InputStream stream = base64 ? generator.generateBase64Stream(obj, mimeType, schema)
+				: generator.generateStream(obj, mimeType, schema);
+		if (stream == null) {
+			return;
+		}
+		try {
+			IOUtils.copy(stream, outputStream);
+		} finally {
+			stream.close();
+		}
+	}
 	
 }
 
@@ -0,0 +1,349 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.response;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.opengis.wps.x100.StatusType;
+
+import org.n52.wps.PropertyDocument.Property;
+import org.n52.wps.commons.PropertyUtil;
+import org.n52.wps.commons.WPSConfig;
+import org.n52.wps.server.ExceptionReport;
+import org.n52.wps.server.database.DatabaseFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stores the status documents of executions with a stored response. Progress
+ * updates are coalesced per execution: a progress document is only written if
+ * the minimum interval has passed since the last write of the execution or the
+ * percentage advanced by the minimum delta, otherwise the latest progress is
+ * written when the interval has passed. State transitions (accepted, started,
+ * succeeded, failed) are always written.
+ * 
+ * The documents are written in order by a background writer, so the
+ * execution never waits for the database. Progress documents are serialized
+ * by the writer as well, state transition documents are serialized by the
+ * caller as they may contain the outputs.
+ * 
+ * The persister is configured using the following <code>Server</code>
+ * properties of the wps_config.xml (they can be overridden by system
+ * properties prefixed with <code>org.n52.wps.server.</code>):
+ * <ul>
+ * <li><code>status.minInterval</code>: ISO 8601 period between two progress
+ * documents of an execution, PT0S writes every progress update</li>
+ * <li><code>status.minPercentDelta</code>: percentage advance that is
+ * written regardless of the interval, 0 disables this</li>
+ * </ul>
+ */
+public class StatusPersister {
+
+	private static Logger LOGGER = LoggerFactory.getLogger(StatusPersister.class);
+
+	private final static String KEY_SERVER_ROOT = "org.n52.wps.server";
+	private final static String KEY_MIN_INTERVAL = "status.minInterval";
+	private final static String KEY_MIN_PERCENT_DELTA = "status.minPercentDelta";
+
+	private final static long DEFAULT_MIN_INTERVAL_MILLIS = 1000;
+	private final static long DEFAULT_MIN_PERCENT_DELTA = 5;
+	private final static long IDLE_SECONDS = 60;
+
+	private static StatusPersister instance;
+
+	public synchronized static StatusPersister getInstance() {
+		if (instance == null) {
+			instance = new StatusPersister(WPSConfig.getInstance().getWPSConfig().getServer().getPropertyArray(),
+					new DatabaseStore());
+			WPSConfig.getInstance().addPropertyChangeListener(WPSConfig.WPSCONFIG_PROPERTY_EVENT_NAME,
+					new PropertyChangeListener() {
+						public void propertyChange(PropertyChangeEvent event) {
+							LOGGER.info("Received Property Change Event: {}", event.getPropertyName());
+							reInitialize();
+						}
+					});
+		}
+		return instance;
+	}
+
+	private synchronized static void reInitialize() {
+		// running executions keep the persister they started with, its writer ends when idle
+		instance = new StatusPersister(WPSConfig.getInstance().getWPSConfig().getServer().getPropertyArray(),
+				new DatabaseStore());
+	}
+
+	private final long minIntervalNanos;
+
+	private final int minPercentDelta;
+
+	private final Store store;
+
+	// a single thread writes the documents in the order they were submitted
+	private final ScheduledThreadPoolExecutor writer;
+
+	private final AtomicLong written = new AtomicLong();
+
+	private final AtomicLong coalesced = new AtomicLong();
+
+	protected StatusPersister(Property[] properties, Store store) {
+		PropertyUtil propertyUtil = new PropertyUtil(properties, KEY_SERVER_ROOT);
+		minIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0,
+				propertyUtil.extractPeriodAsMillis(KEY_MIN_INTERVAL, DEFAULT_MIN_INTERVAL_MILLIS)));
+		minPercentDelta = (int) Math.max(0, propertyUtil.extractLong(KEY_MIN_PERCENT_DELTA, DEFAULT_MIN_PERCENT_DELTA));
+		this.store = store;
+		writer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "wps-status-writer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		writer.setKeepAliveTime(IDLE_SECONDS, TimeUnit.SECONDS);
+		writer.allowCoreThreadTimeOut(true);
+		LOGGER.info("Writing progress documents at most every {} ms or {} percent",
+				TimeUnit.NANOSECONDS.toMillis(minIntervalNanos), minPercentDelta);
+	}
+
+	/**
+	 * @param id
+	 *            the id of the stored response
+	 * @param source
+	 *            serializes the status documents of the execution
+	 * @return the status updates of an execution
+	 */
+	public Job newJob(String id, Source source) {
+		return new Job(id, source);
+	}
+
+	/**
+	 * @return the number of status documents written
+	 */
+	public long getWritten() {
+		return written.get();
+	}
+
+	/**
+	 * @return the number of progress updates that were superseded before they
+	 *         were written
+	 */
+	public long getCoalesced() {
+		return coalesced.get();
+	}
+
+	/**
+	 * Serializes the status document of an execution.
+	 */
+	public interface Source {
+
+		byte[] serialize(StatusType status) throws ExceptionReport;
+	}
+
+	/**
+	 * Stores a status document.
+	 */
+	public interface Store {
+
+		void store(String id, byte[] document);
+	}
+
+	private static class DatabaseStore implements Store {
+
+		public void store(String id, byte[] document) {
+			DatabaseFactory.getDatabase().storeResponse(id, new ByteArrayInputStream(document));
+		}
+	}
+
+	/**
+	 * The status updates of a single execution.
+	 */
+	public class Job {
+
+		private final String id;
+
+		private final Source source;
+
+		// progress not yet written, replaced by newer progress
+		private StatusType pending;
+
+		private int pendingPercent = -1;
+
+		private boolean writeScheduled = false;
+
+		private ScheduledFuture<?> delayedWrite;
+
+		private long lastWriteNanos;
+
+		private int lastPercent = -1;
+
+		// set on success or failure, later progress is dropped
+		private boolean terminated = false;
+
+		private final Runnable progressWrite = new Runnable() {
+			public void run() {
+				writeProgress();
+			}
+		};
+
+		Job(String id, Source source) {
+			this.id = id;
+			this.source = source;
+			this.lastWriteNanos = System.nanoTime() - minIntervalNanos;
+		}
+
+		/**
+		 * Records a progress update, it is written later or superseded by a
+		 * newer one. Does not block.
+		 * 
+		 * @param percent
+		 *            the completed percentage or -1 if unknown
+		 */
+		public synchronized void progress(StatusType status, int percent) {
+			if (terminated) {
+				return;
+			}
+			if (pending != null) {
+				coalesced.incrementAndGet();
+			}
+			pending = status;
+			pendingPercent = percent;
+			boolean advanced = minPercentDelta > 0 && percent >= 0 && lastPercent >= 0
+					&& Math.abs(percent - lastPercent) >= minPercentDelta;
+			long delay = lastWriteNanos + minIntervalNanos - System.nanoTime();
+			if (writeScheduled) {
+				if (advanced && delayedWrite != null && delayedWrite.cancel(false)) {
+					delayedWrite = null;
+					submit(progressWrite);
+				}
+				// otherwise the scheduled write takes the latest progress
+				return;
+			}
+			writeScheduled = true;
+			if (delay <= 0 || advanced) {
+				submit(progressWrite);
+			} else {
+				delayedWrite = schedule(progressWrite, delay);
+			}
+		}
+
+		/**
+		 * Writes a state transition. Pending progress is dropped; if the
+		 * state is final, later progress is ignored. The document is
+		 * serialized by the calling thread.
+		 * 
+		 * @param terminal
+		 *            <code>true</code> for success or failure
+		 * @param await
+		 *            <code>true</code> to wait until the document is stored
+		 */
+		public void transition(StatusType status, boolean terminal, boolean await) throws ExceptionReport {
+			final byte[] document;
+			synchronized (this) {
+				if (pending != null) {
+					coalesced.incrementAndGet();
+					pending = null;
+				}
+				if (delayedWrite != null) {
+					delayedWrite.cancel(false);
+					delayedWrite = null;
+					writeScheduled = false;
+				}
+				terminated = terminated || terminal;
+				document = source.serialize(status);
+				lastWriteNanos = System.nanoTime();
+			}
+			Future<?> write = submit(new Runnable() {
+				public void run() {
+					write(document);
+				}
+			});
+			if (await) {
+				try {
+					write.get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} catch (ExecutionException e) {
+					throw new ExceptionReport("Could not store the status of " + id, ExceptionReport.NO_APPLICABLE_CODE,
+							e.getCause());
+				}
+			}
+		}
+
+		private void writeProgress() {
+			byte[] document;
+			synchronized (this) {
+				writeScheduled = false;
+				delayedWrite = null;
+				if (terminated || pending == null) {
+					return;
+				}
+				try {
+					document = source.serialize(pending);
+				} catch (ExceptionReport e) {
+					LOGGER.error("Could not serialize the status of " + id, e);
+					return;
+				} finally {
+					pending = null;
+				}
+				lastPercent = pendingPercent;
+				lastWriteNanos = System.nanoTime();
+			}
+			write(document);
+		}
+
+		private void write(byte[] document) {
+			if (document == null) {
+				return;
+			}
+			try {
+				store.store(id, document);
+				written.incrementAndGet();
+			} catch (RuntimeException e) {
+				LOGGER.error("Could not store the status of " + id, e);
+				throw e;
+			}
+		}
+
+		private Future<?> submit(Runnable task) {
+			return writer.submit(task);
+		}
+
+		private ScheduledFuture<?> schedule(Runnable task, long delayNanos) {
+			return writer.schedule(task, delayNanos, TimeUnit.NANOSECONDS);
+		}
+	}
+}
@@ -0,0 +1,157 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.opengis.wps.x100.ProcessDescriptionType;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class AlgorithmIndexTest {
+
+	private CountingRepository first;
+
+	private CountingRepository second;
+
+	private RepositoryManager.AlgorithmIndex index;
+
+	private AlgorithmLookupStatistics statistics;
+
+	@Before
+	public void setUp() {
+		first = new CountingRepository("a", "shared");
+		second = new CountingRepository("b", "shared");
+		index = new RepositoryManager.AlgorithmIndex(Arrays.<IAlgorithmRepository> asList(first, second));
+		statistics = new AlgorithmLookupStatistics();
+	}
+
+	@Test
+	public void testIndexedLookupAsksNoRepository() {
+		assertSame(second, index.lookup("b", statistics));
+		assertEquals(0, first.containsCalls);
+		assertEquals(0, second.containsCalls);
+		assertEquals(1, statistics.getLookups());
+		assertEquals(0, statistics.getIndexMisses());
+		assertEquals(3, index.size());
+	}
+
+	@Test
+	public void testFirstRepositoryWins() {
+		assertSame(first, index.lookup("shared", statistics));
+	}
+
+	@Test
+	public void testUnknownAlgorithm() {
+		assertNull(index.lookup("unknown", statistics));
+		assertNull(index.lookup(null, statistics));
+		assertEquals(1, statistics.getNotFound());
+		assertEquals(1, statistics.getIndexMisses());
+		// the miss is remembered
+		assertNull(index.lookup("unknown", statistics));
+		assertEquals(1, first.containsCalls);
+		assertEquals(1, second.containsCalls);
+		assertEquals(2, statistics.getNotFound());
+		assertEquals(1, statistics.getIndexMisses());
+	}
+
+	@Test
+	public void testAlgorithmAddedAfterMissExpired() {
+		index = new RepositoryManager.AlgorithmIndex(Arrays.<IAlgorithmRepository> asList(first, second), 0,
+				TimeUnit.MILLISECONDS);
+		assertNull(index.lookup("added", statistics));
+		second.names.add("added");
+		assertSame(second, index.lookup("added", statistics));
+	}
+
+	@Test
+	public void testAlgorithmAddedAfterIndexing() {
+		second.names.add("added");
+		assertSame(second, index.lookup("added", statistics));
+		assertEquals(1, statistics.getIndexMisses());
+		first.containsCalls = 0;
+		assertSame(second, index.lookup("added", statistics));
+		assertEquals(0, first.containsCalls);
+		assertEquals(1, statistics.getIndexMisses());
+	}
+
+	@Test
+	public void testAlgorithmMovedAfterIndexing() {
+		first.names.remove("shared");
+		// trusted until evicted
+		assertSame(first, index.lookup("shared", statistics));
+		assertTrue(index.evict("shared", first));
+		assertSame(second, index.lookup("shared", statistics));
+		first.names.remove("a");
+		assertTrue(index.evict("a", first));
+		assertNull(index.lookup("a", statistics));
+		assertEquals(2, statistics.getIndexMisses());
+	}
+
+	private static class CountingRepository implements IAlgorithmRepository {
+
+		private final List<String> names;
+
+		private int containsCalls = 0;
+
+		CountingRepository(String... names) {
+			this.names = new ArrayList<String>(Arrays.asList(names));
+		}
+
+		public Collection<String> getAlgorithmNames() {
+			return new ArrayList<String>(names);
+		}
+
+		public IAlgorithm getAlgorithm(String processID) {
+			return null;
+		}
+
+		public ProcessDescriptionType getProcessDescription(String processID) {
+			return null;
+		}
+
+		public boolean containsAlgorithm(String processID) {
+			containsCalls++;
+			return names.contains(processID);
+		}
+
+		public void shutdown() {
+		}
+	}
+}
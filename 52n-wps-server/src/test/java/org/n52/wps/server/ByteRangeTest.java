@@ -0,0 +1,85 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class ByteRangeTest {
+
+	@Test
+	public void testClosedRange() {
+		ByteRange range = ByteRange.parse("bytes=0-499", 1000);
+		assertEquals(0, range.getStart());
+		assertEquals(499, range.getEnd());
+		assertEquals(500, range.getLength());
+		assertEquals("bytes 0-499/1000", range.toContentRange(1000));
+	}
+
+	@Test
+	public void testOpenRange() {
+		ByteRange range = ByteRange.parse("bytes=900-", 1000);
+		assertEquals(900, range.getStart());
+		assertEquals(999, range.getEnd());
+	}
+
+	@Test
+	public void testEndBeyondLength() {
+		ByteRange range = ByteRange.parse("bytes=500-5000", 1000);
+		assertEquals(500, range.getStart());
+		assertEquals(999, range.getEnd());
+	}
+
+	@Test
+	public void testSuffixRange() {
+		ByteRange range = ByteRange.parse("bytes=-100", 1000);
+		assertEquals(900, range.getStart());
+		assertEquals(100, range.getLength());
+		assertEquals(0, ByteRange.parse("bytes=-5000", 1000).getStart());
+	}
+
+	@Test
+	public void testUnsatisfiable() {
+		assertSame(ByteRange.UNSATISFIABLE, ByteRange.parse("bytes=1000-", 1000));
+		assertSame(ByteRange.UNSATISFIABLE, ByteRange.parse("bytes=-0", 1000));
+		assertEquals("bytes */1000", ByteRange.UNSATISFIABLE.toContentRange(1000));
+	}
+
+	@Test
+	public void testFullContent() {
+		assertNull(ByteRange.parse(null, 1000));
+		assertNull(ByteRange.parse("bytes=0-10,20-30", 1000));
+		assertNull(ByteRange.parse("bytes=10-5", 1000));
+		assertNull(ByteRange.parse("bytes=a-b", 1000));
+		assertNull(ByteRange.parse("items=0-10", 1000));
+	}
+}
@@ -0,0 +1,181 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import net.opengis.wps.x100.ProcessDescriptionType;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.n52.wps.io.data.IData;
+
+public class RepositoryLeasesTest {
+
+	private RepositoryLeases leases;
+
+	private IAlgorithmRepository old;
+
+	private IAlgorithmRepository current;
+
+	@Before
+	public void setUp() {
+		leases = new RepositoryLeases(1, TimeUnit.HOURS);
+		old = new StubRepository();
+		current = new StubRepository();
+	}
+
+	@Test
+	public void testRetiredRepositoryIsDrainedOnceReleased() {
+		IAlgorithm algorithm = new StubAlgorithm();
+		leases.borrowed(algorithm, old);
+		leases.borrowed(new StubAlgorithm(), current);
+		leases.retire(Arrays.asList(old));
+		assertTrue(leases.hasRetired());
+		assertTrue(leases.drain().isEmpty());
+
+		assertSame(old, leases.released(algorithm));
+		assertEquals(Arrays.asList(old), leases.drain());
+		assertFalse(leases.hasRetired());
+		assertTrue(leases.drain().isEmpty());
+	}
+
+	@Test
+	public void testUnusedRepositoryIsDrainedAtOnce() {
+		leases.retire(Arrays.asList(old));
+		assertEquals(Arrays.asList(old), leases.drain());
+	}
+
+	@Test
+	public void testInstanceHandedOutTwice() {
+		IAlgorithm algorithm = new StubAlgorithm();
+		leases.borrowed(algorithm, old);
+		leases.borrowed(algorithm, old);
+		leases.retire(Arrays.asList(old));
+
+		assertSame(old, leases.released(algorithm));
+		assertTrue(leases.drain().isEmpty());
+		assertSame(old, leases.released(algorithm));
+		assertEquals(Arrays.asList(old), leases.drain());
+		assertNull(leases.released(algorithm));
+	}
+
+	@Test
+	public void testRetiredRepositoryIsDrainedAfterMaximumDelay() {
+		leases = new RepositoryLeases(0, TimeUnit.MILLISECONDS);
+		leases.borrowed(new StubAlgorithm(), old);
+		leases.retire(Arrays.asList(old));
+		assertEquals(Arrays.asList(old), leases.drain());
+	}
+
+	@Test
+	public void testCollectedInstanceIsForgotten() throws InterruptedException {
+		leases.borrowed(new StubAlgorithm(), old);
+		leases.retire(Arrays.asList(old));
+		List<IAlgorithmRepository> drained = Collections.emptyList();
+		for (int attempt = 0; attempt < 50 && drained.isEmpty(); attempt++) {
+			System.gc();
+			Thread.sleep(20);
+			drained = leases.drain();
+		}
+		assertEquals(Arrays.asList(old), drained);
+	}
+
+	@Test
+	public void testDrainAll() {
+		leases.borrowed(new StubAlgorithm(), old);
+		leases.retire(Arrays.asList(old));
+		assertEquals(Arrays.asList(old), leases.drainAll());
+		assertFalse(leases.hasRetired());
+	}
+
+	private static class StubAlgorithm implements IAlgorithm {
+
+		public Map<String, IData> run(Map<String, List<IData>> inputData) {
+			return null;
+		}
+
+		public List<String> getErrors() {
+			return null;
+		}
+
+		public ProcessDescriptionType getDescription() {
+			return null;
+		}
+
+		public String getWellKnownName() {
+			return null;
+		}
+
+		public boolean processDescriptionIsValid() {
+			return true;
+		}
+
+		public Class<?> getInputDataType(String id) {
+			return null;
+		}
+
+		public Class<?> getOutputDataType(String id) {
+			return null;
+		}
+	}
+
+	private static class StubRepository implements IAlgorithmRepository {
+
+		public Collection<String> getAlgorithmNames() {
+			return Collections.emptyList();
+		}
+
+		public IAlgorithm getAlgorithm(String processID) {
+			return null;
+		}
+
+		public ProcessDescriptionType getProcessDescription(String processID) {
+			return null;
+		}
+
+		public boolean containsAlgorithm(String processID) {
+			return false;
+		}
+
+		public void shutdown() {
+		}
+	}
+}
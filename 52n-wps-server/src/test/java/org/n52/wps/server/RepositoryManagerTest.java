@@ -0,0 +1,229 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import net.opengis.wps.x100.ProcessDescriptionType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.n52.wps.AlgorithmRepositoryListDocument.AlgorithmRepositoryList;
+import org.n52.wps.PropertyDocument.Property;
+import org.n52.wps.RepositoryDocument.Repository;
+import org.n52.wps.commons.WPSConfig;
+import org.n52.wps.io.data.IData;
+
+public class RepositoryManagerTest {
+
+	private AlgorithmRepositoryList originalRepositories;
+
+	private Repository secondConfiguration;
+
+	private RepositoryManager manager;
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		WPSConfig.forceInitialization("src/test/resources/org/n52/wps/io/test/inputhandler/generator/wps_config.xml");
+	}
+
+	@Before
+	public void setUp() {
+		AlgorithmRepositoryList repositories = WPSConfig.getInstance().getWPSConfig().getAlgorithmRepositoryList();
+		originalRepositories = (AlgorithmRepositoryList) repositories.copy();
+		for (Repository repository : repositories.getRepositoryArray()) {
+			repository.setActive(false);
+		}
+		addRepository(repositories, FirstRepository.class);
+		secondConfiguration = addRepository(repositories, SecondRepository.class);
+		TestRepository.CREATED.clear();
+		manager = new RepositoryManager();
+	}
+
+	@After
+	public void tearDown() {
+		manager.shutdown();
+		WPSConfig.getInstance().getWPSConfig().getAlgorithmRepositoryList().set(originalRepositories);
+	}
+
+	@Test
+	public void testUnchangedRepositoriesAreKept() {
+		assertEquals(2, TestRepository.CREATED.size());
+		IAlgorithmRepository first = manager.getRepositoryForAlgorithm("first");
+
+		manager.loadAllRepositories(false);
+		assertEquals(2, TestRepository.CREATED.size());
+		assertSame(first, manager.getRepositoryForAlgorithm("first"));
+		assertFalse(TestRepository.CREATED.get(0).shutdown);
+	}
+
+	@Test
+	public void testChangedRepositoryIsReplaced() {
+		IAlgorithmRepository first = manager.getRepositoryForAlgorithm("first");
+		TestRepository second = (TestRepository) manager.getRepositoryForAlgorithm("second");
+
+		Property property = secondConfiguration.addNewProperty();
+		property.setName("changed");
+		property.setActive(true);
+		property.setStringValue("true");
+		manager.loadAllRepositories(false);
+
+		assertEquals(3, TestRepository.CREATED.size());
+		assertSame(first, manager.getRepositoryForAlgorithm("first"));
+		assertNotSame(second, manager.getRepositoryForAlgorithm("second"));
+		// none of its algorithms was in use
+		assertTrue(second.shutdown);
+		assertFalse(((TestRepository) first).shutdown);
+	}
+
+	@Test
+	public void testReplacedRepositoryIsShutDownOnceItsAlgorithmIsReleased() throws InterruptedException {
+		TestRepository first = (TestRepository) manager.getRepositoryForAlgorithm("first");
+		IAlgorithm algorithm = manager.getAlgorithm("first");
+
+		manager.loadAllRepositories(true);
+		assertEquals(4, TestRepository.CREATED.size());
+		assertNotSame(first, manager.getRepositoryForAlgorithm("first"));
+		assertFalse(first.shutdown);
+		assertTrue(TestRepository.CREATED.get(1).shutdown);
+
+		manager.releaseAlgorithm("first", algorithm);
+		// handed back to the repository it came from
+		assertEquals(Collections.singletonList(algorithm), first.released);
+		for (int i = 0; i < 100 && !first.shutdown; i++) {
+			Thread.sleep(50);
+		}
+		assertTrue(first.shutdown);
+	}
+
+	private static Repository addRepository(AlgorithmRepositoryList repositories, Class<?> repositoryClass) {
+		Repository repository = repositories.addNewRepository();
+		repository.setName(repositoryClass.getSimpleName());
+		repository.setClassName(repositoryClass.getName());
+		repository.setActive(true);
+		return repository;
+	}
+
+	public static class FirstRepository extends TestRepository {
+
+		public FirstRepository() {
+			super("first");
+		}
+	}
+
+	public static class SecondRepository extends TestRepository {
+
+		public SecondRepository() {
+			super("second");
+		}
+	}
+
+	static class TestRepository implements IPooledAlgorithmRepository {
+
+		static final List<TestRepository> CREATED = Collections.synchronizedList(new ArrayList<TestRepository>());
+
+		private final String algorithmName;
+
+		private final List<IAlgorithm> released = new ArrayList<IAlgorithm>();
+
+		private volatile boolean shutdown = false;
+
+		TestRepository(String algorithmName) {
+			this.algorithmName = algorithmName;
+			CREATED.add(this);
+		}
+
+		public Collection<String> getAlgorithmNames() {
+			return Collections.singletonList(algorithmName);
+		}
+
+		public IAlgorithm getAlgorithm(String processID) {
+			return new TestAlgorithm();
+		}
+
+		public void releaseAlgorithm(String processID, IAlgorithm algorithm) {
+			released.add(algorithm);
+		}
+
+		public ProcessDescriptionType getProcessDescription(String processID) {
+			return null;
+		}
+
+		public boolean containsAlgorithm(String processID) {
+			return algorithmName.equals(processID);
+		}
+
+		public void shutdown() {
+			shutdown = true;
+		}
+	}
+
+	private static class TestAlgorithm implements IAlgorithm {
+
+		public Map<String, IData> run(Map<String, List<IData>> inputData) {
+			return Collections.emptyMap();
+		}
+
+		public List<String> getErrors() {
+			return Collections.emptyList();
+		}
+
+		public ProcessDescriptionType getDescription() {
+			return null;
+		}
+
+		public String getWellKnownName() {
+			return null;
+		}
+
+		public boolean processDescriptionIsValid() {
+			return true;
+		}
+
+		public Class<?> getInputDataType(String id) {
+			return null;
+		}
+
+		public Class<?> getOutputDataType(String id) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,191 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.handler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class WeightedFairExecutorTest {
+
+	private WeightedFairExecutor executor;
+
+	@After
+	public void tearDown() throws InterruptedException {
+		if (executor != null) {
+			executor.shutdown();
+			executor.awaitTermination(10, TimeUnit.SECONDS);
+		}
+	}
+
+	@Test
+	public void testWeightedDispatchOrder() throws Exception {
+		ExecutionLane a = new ExecutionLane("a", 2, 0, 100);
+		ExecutionLane b = new ExecutionLane("b", 1, 0, 100);
+		executor = new WeightedFairExecutor("test", 1, new ExecutionLane("default", 1, 0, 100),
+				Arrays.asList(a, b));
+
+		// block the single worker until both lanes are backlogged
+		CountDownLatch gate = new CountDownLatch(1);
+		executor.submit("default", new Blocking(gate));
+
+		List<String> order = Collections.synchronizedList(new ArrayList<String>());
+		List<Future<String>> futures = new ArrayList<Future<String>>();
+		for (int i = 0; i < 6; i++) {
+			futures.add(executor.submit("a", new Recording("a", order)));
+			futures.add(executor.submit("b", new Recording("b", order)));
+		}
+		assertEquals(6, a.getQueueDepth());
+		gate.countDown();
+		for (Future<String> future : futures) {
+			future.get(10, TimeUnit.SECONDS);
+		}
+
+		int countA = 0;
+		for (String lane : order.subList(0, 6)) {
+			if (lane.equals("a")) {
+				countA++;
+			}
+		}
+		assertEquals(4, countA);
+		assertEquals(6, a.getCompleted());
+		assertEquals(0, b.getQueueDepth());
+	}
+
+	@Test
+	public void testLaneCapacity() throws Exception {
+		ExecutionLane small = new ExecutionLane("small", 1, 0, 1);
+		ExecutionLane defaultLane = new ExecutionLane("default", 1, 0, 10);
+		executor = new WeightedFairExecutor("test", 1, defaultLane, Arrays.asList(small));
+
+		CountDownLatch gate = new CountDownLatch(1);
+		executor.submit("default", new Blocking(gate));
+		executor.submit("small", new Recording("small", new ArrayList<String>()));
+		try {
+			executor.submit("small", new Recording("small", new ArrayList<String>()));
+			fail("lane capacity exceeded");
+		} catch (RejectedExecutionException e) {
+			assertEquals(1, small.getRejected());
+		}
+		// other lanes still accept tasks
+		Future<String> other = executor.submit("unknown", new Recording("default", new ArrayList<String>()));
+		gate.countDown();
+		assertEquals("default", other.get(10, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testCancelledTasksFreeLaneCapacity() throws Exception {
+		ExecutionLane small = new ExecutionLane("small", 1, 0, 1);
+		executor = new WeightedFairExecutor("test", 1, new ExecutionLane("default", 1, 0, 10),
+				Arrays.asList(small));
+
+		CountDownLatch gate = new CountDownLatch(1);
+		executor.submit("default", new Blocking(gate));
+		Future<String> cancelled = executor.submit("small", new Recording("small", new ArrayList<String>()));
+		assertTrue(cancelled.cancel(false));
+		assertEquals(0, small.getQueueDepth());
+
+		Future<String> accepted = executor.submit("small", new Recording("small", new ArrayList<String>()));
+		gate.countDown();
+		assertEquals("small", accepted.get(10, TimeUnit.SECONDS));
+		assertEquals(0, small.getRejected());
+	}
+
+	@Test
+	public void testMaxConcurrent() throws Exception {
+		ExecutionLane limited = new ExecutionLane("limited", 1, 1, 10);
+		executor = new WeightedFairExecutor("test", 4, new ExecutionLane("default", 1, 0, 10),
+				Arrays.asList(limited));
+
+		final AtomicInteger concurrent = new AtomicInteger();
+		final AtomicInteger maximum = new AtomicInteger();
+		List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+		for (int i = 0; i < 8; i++) {
+			futures.add(executor.submit("limited", new Callable<Integer>() {
+				public Integer call() throws Exception {
+					int current = concurrent.incrementAndGet();
+					maximum.set(Math.max(maximum.get(), current));
+					Thread.sleep(10);
+					concurrent.decrementAndGet();
+					return current;
+				}
+			}));
+		}
+		for (Future<Integer> future : futures) {
+			future.get(10, TimeUnit.SECONDS);
+		}
+		assertEquals(1, maximum.get());
+		assertTrue(limited.getAverageRunMillis() > 0);
+	}
+
+	private static class Blocking implements Callable<String> {
+
+		private final CountDownLatch gate;
+
+		Blocking(CountDownLatch gate) {
+			this.gate = gate;
+		}
+
+		public String call() throws Exception {
+			gate.await();
+			return "blocking";
+		}
+	}
+
+	private static class Recording implements Callable<String> {
+
+		private final String lane;
+
+		private final List<String> order;
+
+		Recording(String lane, List<String> order) {
+			this.lane = lane;
+			this.order = order;
+		}
+
+		public String call() {
+			order.add(lane);
+			return lane;
+		}
+	}
+}
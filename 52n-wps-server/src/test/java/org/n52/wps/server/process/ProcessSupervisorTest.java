@@ -0,0 +1,174 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.process;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.n52.wps.server.ExceptionReport;
+
+public class ProcessSupervisorTest {
+
+	private static final String KEY_PREFIX = "org.n52.wps.server.process.test.";
+
+	private ProcessSupervisor supervisor;
+
+	@Before
+	public void setUp() {
+		Assume.assumeTrue(new File("/bin/sh").canExecute());
+		System.setProperty(KEY_PREFIX + "maxConcurrent", "1");
+		System.setProperty(KEY_PREFIX + "queueTimeout", "PT0.2S");
+		System.setProperty(KEY_PREFIX + "timeout", "PT2S");
+		supervisor = new ProcessSupervisor(null);
+	}
+
+	@After
+	public void tearDown() {
+		for (String key : Arrays.asList("maxConcurrent", "queueTimeout", "timeout", "maxCpuSeconds")) {
+			System.clearProperty(KEY_PREFIX + key);
+		}
+	}
+
+	private ProcessResult shell(String script) throws ExceptionReport, IOException {
+		return supervisor.execute("test", new ProcessBuilder("/bin/sh", "-c", script));
+	}
+
+	@Test
+	public void testOutputAndExitValue() throws ExceptionReport, IOException {
+		ProcessResult result = shell("echo out; echo err >&2; exit 3");
+		assertEquals(3, result.getExitValue());
+		assertEquals("out\n", result.getOutput());
+		assertEquals("err\n", result.getErrorOutput());
+		assertFalse(result.isTimedOut());
+		assertFalse(result.isSuccessful());
+		assertEquals(1, supervisor.getMetrics("test").getFailed());
+	}
+
+	@Test
+	public void testLargeOutputIsDrained() throws ExceptionReport, IOException {
+		// fills the pipes, the process would block if they were not read
+		ProcessResult result = shell("i=0; while [ $i -lt 20000 ]; do echo 0123456789; echo 0123456789 >&2; i=$((i+1)); done");
+		assertTrue(result.isSuccessful());
+		assertEquals(ProcessSupervisor.MAX_CAPTURED_CHARS, result.getOutput().length(), 11);
+		assertTrue(result.getErrorOutput().endsWith("0123456789\n"));
+	}
+
+	@Test
+	public void testTimeout() throws ExceptionReport, IOException {
+		long start = System.currentTimeMillis();
+		ProcessResult result = shell("exec sleep 30");
+		assertTrue(result.isTimedOut());
+		assertFalse(result.isSuccessful());
+		assertTrue(System.currentTimeMillis() - start < 20000);
+		assertEquals(1, supervisor.getMetrics("test").getTimedOut());
+	}
+
+	@Test
+	public void testBusyBackendRejects() throws Exception {
+		final CountDownLatch running = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		Thread holder = new Thread() {
+			@Override
+			public void run() {
+				try {
+					supervisor.execute("test", new ProcessSupervisor.Execution<Void>() {
+						public Void execute(long timeoutMillis) throws IOException {
+							running.countDown();
+							try {
+								release.await(10, TimeUnit.SECONDS);
+							} catch (InterruptedException e) {
+								Thread.currentThread().interrupt();
+							}
+							return null;
+						}
+					});
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		};
+		holder.start();
+		assertTrue(running.await(10, TimeUnit.SECONDS));
+		try {
+			shell("exit 0");
+			fail("ExceptionReport expected");
+		} catch (ExceptionReport e) {
+			assertTrue(e.getMessage().contains("busy"));
+		} finally {
+			release.countDown();
+			holder.join();
+		}
+		assertTrue(shell("exit 0").isSuccessful());
+
+		ProcessMetrics metrics = supervisor.getMetrics("test");
+		assertEquals(1, metrics.getRejected());
+		assertEquals(2, metrics.getStarted());
+		assertEquals(2, metrics.getSucceeded());
+		assertEquals(0, metrics.getRunning());
+	}
+
+	@Test
+	public void testExecutionIsGivenTheTimeout() throws ExceptionReport, IOException {
+		long timeout = supervisor.execute("test", new ProcessSupervisor.Execution<Long>() {
+			public Long execute(long timeoutMillis) {
+				return timeoutMillis;
+			}
+		});
+		assertEquals(2000, timeout);
+		assertEquals(0, supervisor.getTimeoutMillis("unconfigured"));
+	}
+
+	@Test
+	public void testLimitsAreApplied() throws ExceptionReport, IOException {
+		System.setProperty(KEY_PREFIX + "maxCpuSeconds", "7");
+		supervisor = new ProcessSupervisor(null);
+		ProcessResult result = supervisor.execute("test", new ProcessBuilder("/bin/sh", "-c", "ulimit -t; echo \"$0\"",
+				"arg0"));
+		assertEquals("7\narg0\n", result.getOutput());
+	}
+
+	@Test
+	public void testTokenize() {
+		assertEquals(Arrays.asList("python", "script.py", "-f", "in.txt"),
+				ProcessSupervisor.tokenize(" python  script.py\t-f in.txt"));
+		assertTrue(ProcessSupervisor.tokenize("").isEmpty());
+	}
+}
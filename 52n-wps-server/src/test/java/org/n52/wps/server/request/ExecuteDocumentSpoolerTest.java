@@ -0,0 +1,164 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.request;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+
+import javax.xml.namespace.QName;
+
+import net.opengis.wps.x100.ComplexDataType;
+import net.opengis.wps.x100.ExecuteDocument;
+import net.opengis.wps.x100.InputType;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.xmlbeans.XmlCursor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ExecuteDocumentSpoolerTest {
+
+	private static final String REQUEST = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+			+ "<wps:Execute service=\"WPS\" version=\"1.0.0\" xmlns:wps=\"http://www.opengis.net/wps/1.0.0\""
+			+ " xmlns:ows=\"http://www.opengis.net/ows/1.1\" xmlns:gml=\"http://www.opengis.net/gml\">"
+			+ "<ows:Identifier>test</ows:Identifier>"
+			+ "<wps:DataInputs>"
+			+ "<wps:Input><ows:Identifier>literal</ows:Identifier>"
+			+ "<wps:Data><wps:LiteralData>42</wps:LiteralData></wps:Data></wps:Input>"
+			+ "<wps:Input><ows:Identifier>xml</ows:Identifier>"
+			+ "<wps:Data><wps:ComplexData mimeType=\"text/xml\">"
+			+ "<gml:Point srsName=\"EPSG:4326\"><gml:pos>1 &amp; 2</gml:pos></gml:Point>"
+			+ "</wps:ComplexData></wps:Data></wps:Input>"
+			+ "<wps:Input><ows:Identifier>base64</ows:Identifier>"
+			+ "<wps:Data><wps:ComplexData mimeType=\"image/tiff\" encoding=\"base64\">"
+			+ "<![CDATA[SGVsbG8gV29ybGQ=]]></wps:ComplexData></wps:Data></wps:Input>"
+			+ "</wps:DataInputs></wps:Execute>";
+
+	private File directory;
+
+	@Before
+	public void setUp() throws Exception {
+		directory = File.createTempFile("spooler", "test");
+		directory.delete();
+		directory.mkdirs();
+	}
+
+	@After
+	public void tearDown() {
+		FileUtils.deleteQuietly(directory);
+	}
+
+	@Test
+	public void testSpoolInMemory() throws Exception {
+		ExecuteDocumentSpooler spooler = new ExecuteDocumentSpooler(1 << 20, directory);
+		ByteArrayOutputStream reduced = new ByteArrayOutputStream();
+		spooler.spool(new ByteArrayInputStream(REQUEST.getBytes("UTF-8")), reduced);
+
+		String document = reduced.toString("UTF-8");
+		assertTrue(document.contains("<wps:LiteralData>42</wps:LiteralData>"));
+		assertFalse(document.contains("gml:Point"));
+		assertFalse(document.contains("SGVsbG8gV29ybGQ="));
+
+		assertNull(spooler.getSpools().get(0));
+		ComplexDataSpool xml = spooler.getSpools().get(1);
+		assertTrue(xml.isXML());
+		assertTrue(xml.isInMemory());
+		String fragment = read(xml);
+		assertTrue(fragment.startsWith("<gml:Point"));
+		assertTrue(fragment.contains("xmlns:gml=\"http://www.opengis.net/gml\""));
+		assertTrue(fragment.contains("<gml:pos>1 &amp; 2</gml:pos>"));
+
+		ComplexDataSpool base64 = spooler.getSpools().get(2);
+		assertFalse(base64.isXML());
+		assertEquals("SGVsbG8gV29ybGQ=", read(base64));
+	}
+
+	@Test
+	public void testSpoolToFile() throws Exception {
+		ExecuteDocumentSpooler spooler = new ExecuteDocumentSpooler(8, directory);
+		spooler.spool(new ByteArrayInputStream(REQUEST.getBytes("UTF-8")), new ByteArrayOutputStream());
+
+		ComplexDataSpool base64 = spooler.getSpools().get(2);
+		assertFalse(base64.isInMemory());
+		assertEquals("SGVsbG8gV29ybGQ=", read(base64));
+		assertEquals(2, directory.list().length);
+
+		spooler.dispose();
+		assertEquals(0, directory.list().length);
+	}
+
+	@Test
+	public void testRestore() throws Exception {
+		ExecuteDocumentSpooler spooler = new ExecuteDocumentSpooler(8, directory);
+		ExecuteDocument reduced = spooler.parse(new ByteArrayInputStream(REQUEST.getBytes("UTF-8")));
+		ExecuteDocument restored = ExecuteDocumentSpooler.restore(reduced, spooler.getSpools());
+
+		InputType[] inputs = restored.getExecute().getDataInputs().getInputArray();
+		assertEquals("42", inputs[0].getData().getLiteralData().getStringValue());
+		ComplexDataType xml = inputs[1].getData().getComplexData();
+		assertEquals("text/xml", xml.getMimeType());
+		XmlCursor cursor = xml.newCursor();
+		assertTrue(cursor.toFirstChild());
+		assertEquals(new QName("http://www.opengis.net/gml", "Point"), cursor.getName());
+		assertEquals("1 & 2", cursor.getTextValue());
+		cursor.dispose();
+		assertEquals("SGVsbG8gV29ybGQ=", inputs[2].getData().getComplexData().newCursor().getTextValue());
+
+		// the reduced document is unchanged
+		assertEquals("", reduced.getExecute().getDataInputs().getInputArray(2).getData().getComplexData()
+				.newCursor().getTextValue());
+		spooler.dispose();
+	}
+
+	@Test
+	public void testSchemaInstanceNamespaceIsDeclared() throws Exception {
+		ExecuteDocumentSpooler spooler = new ExecuteDocumentSpooler(1 << 20, directory);
+		spooler.spool(new ByteArrayInputStream(REQUEST.getBytes("UTF-8")), new ByteArrayOutputStream());
+		assertTrue(read(spooler.getSpools().get(1)).contains(
+				"xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\""));
+	}
+
+	private static String read(ComplexDataSpool spool) throws Exception {
+		InputStream in = spool.openStream();
+		try {
+			return IOUtils.toString(in, "UTF-8");
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,148 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.request;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.n52.wps.server.ExceptionReport;
+
+public class ReferencePrefetcherTest {
+
+	private ExecutorService executor;
+
+	@Before
+	public void setUp() {
+		executor = Executors.newFixedThreadPool(8);
+	}
+
+	@After
+	public void tearDown() throws InterruptedException {
+		executor.shutdownNow();
+		executor.awaitTermination(10, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void testConcurrencyIsCappedPerRequest() throws Exception {
+		ReferencePrefetcher prefetcher = new ReferencePrefetcher(executor, 3);
+		final AtomicInteger concurrent = new AtomicInteger();
+		final AtomicInteger maximum = new AtomicInteger();
+		List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+		for (int i = 0; i < 12; i++) {
+			final int index = i;
+			futures.add(prefetcher.submit(new Callable<Integer>() {
+				public Integer call() throws Exception {
+					int current = concurrent.incrementAndGet();
+					synchronized (maximum) {
+						maximum.set(Math.max(maximum.get(), current));
+					}
+					Thread.sleep(20);
+					concurrent.decrementAndGet();
+					return index;
+				}
+			}));
+		}
+		for (int i = 0; i < futures.size(); i++) {
+			assertEquals(Integer.valueOf(i), prefetcher.await(futures.get(i)));
+		}
+		assertEquals(3, maximum.get());
+	}
+
+	@Test
+	public void testFetchesRunConcurrently() throws Exception {
+		ReferencePrefetcher prefetcher = new ReferencePrefetcher(executor, 4);
+		final CountDownLatch allStarted = new CountDownLatch(4);
+		List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+		for (int i = 0; i < 4; i++) {
+			futures.add(prefetcher.submit(new Callable<Boolean>() {
+				public Boolean call() throws Exception {
+					allStarted.countDown();
+					return allStarted.await(10, TimeUnit.SECONDS);
+				}
+			}));
+		}
+		for (Future<Boolean> future : futures) {
+			assertTrue(prefetcher.await(future));
+		}
+	}
+
+	@Test
+	public void testExceptionReportIsPropagated() throws Exception {
+		ReferencePrefetcher prefetcher = new ReferencePrefetcher(executor, 2);
+		final ExceptionReport report = new ExceptionReport("unreachable", ExceptionReport.INVALID_PARAMETER_VALUE);
+		Future<Object> future = prefetcher.submit(new Callable<Object>() {
+			public Object call() throws Exception {
+				throw report;
+			}
+		});
+		try {
+			prefetcher.await(future);
+			fail("ExceptionReport expected");
+		} catch (ExceptionReport e) {
+			assertSame(report, e);
+		}
+	}
+
+	@Test
+	public void testCancelPendingFetches() throws Exception {
+		ReferencePrefetcher prefetcher = new ReferencePrefetcher(executor, 1);
+		final CountDownLatch gate = new CountDownLatch(1);
+		Future<Object> running = prefetcher.submit(new Callable<Object>() {
+			public Object call() throws Exception {
+				gate.await();
+				return null;
+			}
+		});
+		Future<Object> pending = prefetcher.submit(new Callable<Object>() {
+			public Object call() throws Exception {
+				fail("cancelled fetch started");
+				return null;
+			}
+		});
+		prefetcher.cancel();
+		gate.countDown();
+		assertTrue(running.isCancelled());
+		assertTrue(pending.isCancelled());
+	}
+}
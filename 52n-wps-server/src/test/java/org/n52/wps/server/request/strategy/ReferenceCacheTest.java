@@ -0,0 +1,322 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.request.strategy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.HttpGet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.n52.wps.io.data.IComplexData;
+import org.n52.wps.io.data.ICopyableData;
+import org.n52.wps.io.data.IData;
+import org.n52.wps.io.data.IScratchSpaceData;
+import org.n52.wps.io.data.binding.literal.LiteralStringBinding;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class ReferenceCacheTest {
+
+	private static final String KEY_ROOT = "org.n52.wps.server.reference.cache.";
+
+	private HttpServer server;
+
+	private ReferenceHttpClient client;
+
+	private ReferenceCache cache;
+
+	private File directory;
+
+	private volatile String content = "<data>version 1</data>";
+
+	private volatile String etag = "\"v1\"";
+
+	private final AtomicInteger notModified = new AtomicInteger();
+
+	@Before
+	public void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/data", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				String currentETag = etag;
+				if (currentETag != null && currentETag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+					notModified.incrementAndGet();
+					exchange.getResponseHeaders().add("ETag", currentETag);
+					exchange.sendResponseHeaders(304, -1);
+				} else {
+					byte[] bytes = content.getBytes("UTF-8");
+					exchange.getResponseHeaders().add("Content-Type", "text/xml");
+					if (currentETag != null) {
+						exchange.getResponseHeaders().add("ETag", currentETag);
+					}
+					exchange.sendResponseHeaders(200, bytes.length);
+					OutputStream out = exchange.getResponseBody();
+					out.write(bytes);
+					out.close();
+				}
+				exchange.close();
+			}
+		});
+		server.start();
+		client = new ReferenceHttpClient(null);
+
+		directory = new File(System.getProperty("java.io.tmpdir"), "wps-reference-cache-test-" + System.nanoTime());
+		System.setProperty(KEY_ROOT + "directory", directory.getAbsolutePath());
+		System.setProperty(KEY_ROOT + "disk.maxSize", "1024");
+		System.setProperty(KEY_ROOT + "memory.maxEntries", "10");
+		System.setProperty(KEY_ROOT + "memory.bindings", LiteralStringBinding.class.getName() + ","
+				+ ScratchSpaceBinding.class.getName() + "," + ComplexBinding.class.getName());
+		cache = new ReferenceCache(null);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		System.clearProperty(KEY_ROOT + "directory");
+		System.clearProperty(KEY_ROOT + "disk.maxSize");
+		System.clearProperty(KEY_ROOT + "memory.maxEntries");
+		System.clearProperty(KEY_ROOT + "memory.bindings");
+		cache.clear();
+		client.shutdown();
+		server.stop(0);
+		FileUtils.deleteDirectory(directory);
+	}
+
+	@Test
+	public void testCreateKey() {
+		String key = ReferenceCache.createKey("http://localhost/data", null, "text/xml", null, null);
+		assertEquals(key, ReferenceCache.createKey("http://localhost/data", null, "text/xml", null, null));
+		assertFalse(key.equals(ReferenceCache.createKey("http://localhost/data", "", "text/xml", null, null)));
+		assertFalse(key.equals(ReferenceCache.createKey("http://localhost/data", null, "text/xml", "", null)));
+		assertFalse(key.equals(ReferenceCache.createKey("http://localhost/data", null, null, null, null)));
+	}
+
+	@Test
+	public void testUnmodifiedContentIsServedFromDisk() throws IOException {
+		assertEquals("<data>version 1</data>", fetch());
+		assertEquals("<data>version 1</data>", fetch());
+		assertEquals(1, notModified.get());
+		assertEquals(1, cache.getDiskHits());
+		assertEquals(1, cache.getDiskMisses());
+
+		content = "<data>version 2</data>";
+		etag = "\"v2\"";
+		assertEquals("<data>version 2</data>", fetch());
+		assertEquals(1, cache.getDiskHits());
+		assertEquals(2, cache.getDiskMisses());
+		assertEquals(content.length(), cache.getDiskSize());
+	}
+
+	@Test
+	public void testContentWithoutValidatorIsNotCached() throws IOException {
+		etag = null;
+		ReferenceInputStream stream = cache.fetch(client, key(), new HttpGet(getURL()));
+		try {
+			assertFalse(stream instanceof CachedReferenceInputStream);
+			assertEquals(content, IOUtils.toString(stream));
+		} finally {
+			stream.close();
+		}
+		assertEquals(0, cache.getDiskSize());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedContentIsEvicted() throws IOException {
+		content = new String(new char[600]).replace('\0', 'x');
+		fetch();
+		ReferenceInputStream stream = cache.fetch(client, ReferenceCache.createKey(getURL(), "other", null, null,
+				null), new HttpGet(getURL()));
+		stream.close();
+		assertEquals(1, cache.getEvictions());
+		assertEquals(600, cache.getDiskSize());
+		fetch();
+		assertEquals(0, cache.getDiskHits());
+	}
+
+	@Test
+	public void testParsedDataIsKeptInMemory() throws IOException {
+		ReferenceInputStream stream = cache.fetch(client, key(), new HttpGet(getURL()));
+		try {
+			assertTrue(stream instanceof CachedReferenceInputStream);
+			assertNull(cache.getParsedData(stream, "parser"));
+			cache.putParsedData(stream, "parser", new LiteralStringBinding(IOUtils.toString(stream)));
+		} finally {
+			stream.close();
+		}
+		stream = cache.fetch(client, key(), new HttpGet(getURL()));
+		try {
+			IData data = cache.getParsedData(stream, "parser");
+			assertEquals(content, data.getPayload());
+			assertSame(data, cache.getParsedData(stream, "parser"));
+			assertNull(cache.getParsedData(stream, "other parser"));
+		} finally {
+			stream.close();
+		}
+		assertEquals(2, cache.getMemoryHits());
+	}
+
+	@Test
+	public void testScratchSpaceDataIsNotKeptInMemory() throws IOException {
+		ReferenceInputStream stream = cache.fetch(client, key(), new HttpGet(getURL()));
+		try {
+			cache.putParsedData(stream, "scratch", new ScratchSpaceBinding(true));
+			cache.putParsedData(stream, "memory", new ScratchSpaceBinding(false));
+		} finally {
+			stream.close();
+		}
+		stream = cache.fetch(client, key(), new HttpGet(getURL()));
+		try {
+			assertNull(cache.getParsedData(stream, "scratch"));
+			assertTrue(cache.getParsedData(stream, "memory") instanceof ScratchSpaceBinding);
+		} finally {
+			stream.close();
+		}
+	}
+
+	@Test
+	public void testEachExecutionGetsItsOwnCopy() throws IOException {
+		ScratchSpaceBinding parsed = new ScratchSpaceBinding(false);
+		ReferenceInputStream stream = cache.fetch(client, key(), new HttpGet(getURL()));
+		try {
+			cache.putParsedData(stream, "parser", parsed);
+		} finally {
+			stream.close();
+		}
+		stream = cache.fetch(client, key(), new HttpGet(getURL()));
+		try {
+			ScratchSpaceBinding first = (ScratchSpaceBinding) cache.getParsedData(stream, "parser");
+			first.dispose();
+			ScratchSpaceBinding second = (ScratchSpaceBinding) cache.getParsedData(stream, "parser");
+			assertNotSame(parsed, first);
+			assertNotSame(first, second);
+			assertFalse(parsed.disposed);
+			assertFalse(second.disposed);
+		} finally {
+			stream.close();
+		}
+	}
+
+	@Test
+	public void testComplexDataThatCanNotBeCopiedIsNotKept() throws IOException {
+		ReferenceInputStream stream = cache.fetch(client, key(), new HttpGet(getURL()));
+		try {
+			cache.putParsedData(stream, "parser", new ComplexBinding());
+		} finally {
+			stream.close();
+		}
+		stream = cache.fetch(client, key(), new HttpGet(getURL()));
+		try {
+			assertNull(cache.getParsedData(stream, "parser"));
+		} finally {
+			stream.close();
+		}
+	}
+
+	private String fetch() throws IOException {
+		ReferenceInputStream stream = cache.fetch(client, key(), new HttpGet(getURL()));
+		try {
+			assertEquals("text/xml", stream.getMimeType());
+			return IOUtils.toString(stream);
+		} finally {
+			stream.close();
+		}
+	}
+
+	private String key() {
+		return ReferenceCache.createKey(getURL(), null, null, null, null);
+	}
+
+	private String getURL() {
+		return "http://localhost:" + server.getAddress().getPort() + "/data";
+	}
+
+	public static class ScratchSpaceBinding implements IScratchSpaceData, ICopyableData {
+
+		private static final long serialVersionUID = 1L;
+
+		private final boolean backedByScratchSpace;
+
+		private boolean disposed = false;
+
+		ScratchSpaceBinding(boolean backedByScratchSpace) {
+			this.backedByScratchSpace = backedByScratchSpace;
+		}
+
+		public boolean isBackedByScratchSpace() {
+			return backedByScratchSpace;
+		}
+
+		public Object getPayload() {
+			return null;
+		}
+
+		public Class<?> getSupportedClass() {
+			return Object.class;
+		}
+
+		public ScratchSpaceBinding copy() {
+			return new ScratchSpaceBinding(backedByScratchSpace);
+		}
+
+		public void dispose() {
+			disposed = true;
+		}
+	}
+
+	public static class ComplexBinding implements IComplexData {
+
+		private static final long serialVersionUID = 1L;
+
+		public Object getPayload() {
+			return null;
+		}
+
+		public Class<?> getSupportedClass() {
+			return Object.class;
+		}
+
+		public void dispose() {
+		}
+	}
+}
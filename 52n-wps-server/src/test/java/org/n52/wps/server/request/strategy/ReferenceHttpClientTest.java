@@ -0,0 +1,145 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.request.strategy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.HttpGet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class ReferenceHttpClientTest {
+
+	private static final byte[] CONTENT = "<data>referenced</data>".getBytes();
+
+	private HttpServer server;
+
+	private ReferenceHttpClient client;
+
+	private final AtomicInteger unavailable = new AtomicInteger();
+
+	@Before
+	public void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/data", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				if (unavailable.getAndDecrement() > 0) {
+					exchange.sendResponseHeaders(503, -1);
+				} else {
+					exchange.getResponseHeaders().add("Content-Type", "text/xml");
+					exchange.sendResponseHeaders(200, CONTENT.length);
+					OutputStream out = exchange.getResponseBody();
+					out.write(CONTENT);
+					out.close();
+				}
+				exchange.close();
+			}
+		});
+		server.start();
+		System.setProperty("org.n52.wps.server.reference.http.retryBackoff", "PT0.01S");
+		client = new ReferenceHttpClient(null);
+	}
+
+	@After
+	public void tearDown() {
+		System.clearProperty("org.n52.wps.server.reference.http.retryBackoff");
+		client.shutdown();
+		server.stop(0);
+	}
+
+	@Test
+	public void testFetchReusesConnectionsAndCountsBytes() throws IOException {
+		for (int i = 0; i < 3; i++) {
+			ReferenceInputStream stream = client.fetch(new HttpGet(getURL()));
+			try {
+				assertEquals(new String(CONTENT), IOUtils.toString(stream));
+				assertEquals("text/xml", stream.getMimeType());
+			} finally {
+				stream.close();
+			}
+		}
+		HostStatistics statistics = client.getHostStatistics().get(getHost());
+		assertEquals(3, statistics.getRequests());
+		assertEquals(0, statistics.getFailures());
+		assertEquals(3 * CONTENT.length, statistics.getBytes());
+	}
+
+	@Test
+	public void testRetryOnServiceUnavailable() throws IOException {
+		unavailable.set(2);
+		ReferenceInputStream stream = client.fetch(new HttpGet(getURL()));
+		try {
+			assertEquals(new String(CONTENT), IOUtils.toString(stream));
+		} finally {
+			stream.close();
+		}
+		HostStatistics statistics = client.getHostStatistics().get(getHost());
+		assertEquals(3, statistics.getRequests());
+		assertEquals(2, statistics.getFailures());
+		assertEquals(2, statistics.getRetries());
+	}
+
+	@Test
+	public void testRetiredClientIsShutDownOnceResponsesAreReleased() throws Exception {
+		ReferenceInputStream stream = client.fetch(new HttpGet(getURL()));
+		client.retire();
+		Thread.sleep(1500);
+		assertFalse(client.isShutdown());
+		try {
+			assertEquals(new String(CONTENT), IOUtils.toString(stream));
+		} finally {
+			stream.close();
+		}
+		for (int i = 0; i < 50 && !client.isShutdown(); i++) {
+			Thread.sleep(100);
+		}
+		assertTrue(client.isShutdown());
+	}
+
+	private String getHost() {
+		return "localhost:" + server.getAddress().getPort();
+	}
+
+	private String getURL() {
+		return "http://" + getHost() + "/data";
+	}
+}
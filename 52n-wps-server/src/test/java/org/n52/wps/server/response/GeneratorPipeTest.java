@@ -0,0 +1,101 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.response;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+public class GeneratorPipeTest {
+
+	@Test
+	public void testContentIsPiped() throws IOException {
+		final byte[] content = new byte[1024 * 1024];
+		new Random(42).nextBytes(content);
+		InputStream stream = GeneratorPipe.start(new GeneratorPipe.Source() {
+			@Override
+			public void writeTo(OutputStream outputStream) throws IOException {
+				// larger than the buffer of the pipe
+				for (int i = 0; i < content.length; i += 1000) {
+					outputStream.write(content, i, Math.min(1000, content.length - i));
+				}
+			}
+		});
+		try {
+			assertArrayEquals(content, IOUtils.toByteArray(stream));
+		} finally {
+			stream.close();
+		}
+	}
+
+	@Test
+	public void testFailureIsReportedAtEnd() throws IOException {
+		InputStream stream = GeneratorPipe.start(new GeneratorPipe.Source() {
+			@Override
+			public void writeTo(OutputStream outputStream) throws IOException {
+				outputStream.write("partial".getBytes("UTF-8"));
+				throw new IOException("generator failed");
+			}
+		});
+		try {
+			IOUtils.toByteArray(stream);
+			fail("truncated output not reported");
+		} catch (IOException e) {
+			assertEquals("generator failed", e.getMessage());
+		} finally {
+			stream.close();
+		}
+	}
+
+	@Test
+	public void testRuntimeExceptionIsReported() throws IOException {
+		InputStream stream = GeneratorPipe.start(new GeneratorPipe.Source() {
+			@Override
+			public void writeTo(OutputStream outputStream) throws IOException {
+				throw new IllegalStateException("no data");
+			}
+		});
+		try {
+			IOUtils.toByteArray(stream);
+			fail("failure not reported");
+		} catch (IOException e) {
+			assertEquals(IllegalStateException.class, e.getCause().getClass());
+		} finally {
+			stream.close();
+		}
+	}
+}
@@ -28,14 +28,17 @@
  */
 package org.n52.wps.server.response;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
 import net.opengis.wps.x100.ProcessDescriptionType;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.xmlbeans.XmlException;
 import org.apache.xmlbeans.XmlObject;
 import org.junit.Before;
@@ -102,6 +105,25 @@ public class RawDataTest {
 		}
     }
 
+    @Test
+    public void testBBoxRawDataWriteTo(){
+
+        IData envelope = new BoundingBoxData(
+                   new double[] { 46, 102 },
+                   new double[] { 47, 103 }, "EPSG:4326");
+
+    	try {
+			RawData bboxRawData = new RawData(envelope, "BBOXOutputData", null, null, null, identifier, processDescription);
+
+			ByteArrayOutputStream os = new ByteArrayOutputStream();
+			bboxRawData.writeTo(os);
+
+			assertArrayEquals(IOUtils.toByteArray(bboxRawData.getAsStream()), os.toByteArray());
+		} catch (Exception e) {
+			fail(e.getMessage());
+		}
+    }
+
     @Test
     public void testBBoxRawDataOutput(){
 
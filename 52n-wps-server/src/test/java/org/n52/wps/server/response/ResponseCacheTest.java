@@ -0,0 +1,170 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.response;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.n52.wps.server.ExceptionReport;
+
+public class ResponseCacheTest {
+
+	private static final String KEY_MAX_ENTRIES = "org.n52.wps.server.response.cache.maxEntries";
+
+	private ResponseCache cache;
+
+	private final AtomicInteger loads = new AtomicInteger();
+
+	@Before
+	public void setUp() {
+		System.setProperty(KEY_MAX_ENTRIES, "2");
+		cache = new ResponseCache(null);
+	}
+
+	@After
+	public void tearDown() {
+		System.clearProperty(KEY_MAX_ENTRIES);
+	}
+
+	private ResponseCache.Loader loader(final String content) {
+		return new ResponseCache.Loader() {
+			public byte[] load() throws ExceptionReport {
+				loads.incrementAndGet();
+				try {
+					return content.getBytes("UTF-8");
+				} catch (IOException e) {
+					throw new ExceptionReport("Unsupported encoding", ExceptionReport.NO_APPLICABLE_CODE, e);
+				}
+			}
+		};
+	}
+
+	@Test
+	public void testResponseIsLoadedOnce() throws ExceptionReport {
+		ResponseCache.Entry first = cache.get("DescribeProcess;en-US;all", loader("<all/>"));
+		ResponseCache.Entry second = cache.get("DescribeProcess;en-US;all", loader("<all/>"));
+		assertSame(first, second);
+		assertTrue(first.isCached());
+		assertEquals(1, loads.get());
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+
+	@Test
+	public void testEntryContentAndValidators() throws ExceptionReport, IOException {
+		ResponseCache.Entry entry = cache.get("GetCapabilities;en-US", loader("<Capabilities/>"));
+		assertArrayEquals("<Capabilities/>".getBytes("UTF-8"), entry.getContent());
+		byte[] unzipped = IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(entry.getGzippedContent())));
+		assertArrayEquals(entry.getContent(), unzipped);
+
+		assertTrue(entry.getETag().startsWith("\"") && entry.getETag().endsWith("\""));
+		assertFalse(entry.getETag().equals(entry.getGzippedETag()));
+		assertEquals(0, entry.getLastModified() % 1000);
+
+		// the ETag depends on the content only
+		assertEquals(entry.getETag(), new ResponseCache.Entry(entry.getContent()).getETag());
+		assertFalse(entry.getETag().equals(new ResponseCache.Entry("<Other/>".getBytes("UTF-8")).getETag()));
+	}
+
+	@Test
+	public void testInvalidate() throws ExceptionReport {
+		cache.get("DescribeProcess;en-US;a", loader("<a/>"));
+		cache.invalidate();
+		cache.get("DescribeProcess;en-US;a", loader("<a/>"));
+		assertEquals(2, loads.get());
+	}
+
+	@Test
+	public void testResponseLoadedDuringInvalidationIsNotCached() throws ExceptionReport {
+		ResponseCache.Entry entry = cache.get("DescribeProcess;en-US;a", new ResponseCache.Loader() {
+			public byte[] load() throws ExceptionReport {
+				loads.incrementAndGet();
+				cache.invalidate();
+				return new byte[0];
+			}
+		});
+		assertFalse(entry.isCached());
+		cache.get("DescribeProcess;en-US;a", loader("<a/>"));
+		assertEquals(2, loads.get());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedIsEvicted() throws ExceptionReport {
+		cache.get("a", loader("<a/>"));
+		cache.get("b", loader("<b/>"));
+		cache.get("a", loader("<a/>"));
+		cache.get("c", loader("<c/>"));
+		assertEquals(3, loads.get());
+		cache.get("a", loader("<a/>"));
+		assertEquals(3, loads.get());
+		cache.get("b", loader("<b/>"));
+		assertEquals(4, loads.get());
+	}
+
+	@Test
+	public void testFailuresAreNotCached() throws ExceptionReport {
+		try {
+			cache.get("DescribeProcess;en-US;unknown", new ResponseCache.Loader() {
+				public byte[] load() throws ExceptionReport {
+					loads.incrementAndGet();
+					throw new ExceptionReport("Algorithm does not exist: unknown",
+							ExceptionReport.INVALID_PARAMETER_VALUE, "identifier");
+				}
+			});
+			fail("ExceptionReport expected");
+		} catch (ExceptionReport e) {
+			assertEquals("Algorithm does not exist: unknown", e.getMessage());
+		}
+		cache.get("DescribeProcess;en-US;unknown", loader("<unknown/>"));
+		assertEquals(2, loads.get());
+	}
+
+	@Test
+	public void testDisabledCache() throws ExceptionReport {
+		System.setProperty(KEY_MAX_ENTRIES, "0");
+		cache = new ResponseCache(null);
+		assertFalse(cache.isEnabled());
+		assertFalse(cache.get("a", loader("<a/>")).isCached());
+		cache.get("a", loader("<a/>"));
+		assertEquals(2, loads.get());
+	}
+}
@@ -0,0 +1,137 @@
+/**
+ * ﻿Copyright (C) 2007 - 2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.response;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import net.opengis.wps.x100.StatusType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.n52.wps.server.ExceptionReport;
+
+public class StatusPersisterTest {
+
+	private static final String KEY_MIN_INTERVAL = "org.n52.wps.server.status.minInterval";
+
+	private static final String KEY_MIN_PERCENT_DELTA = "org.n52.wps.server.status.minPercentDelta";
+
+	private final List<String> stored = Collections.synchronizedList(new ArrayList<String>());
+
+	private StatusPersister persister;
+
+	private StatusPersister.Job job;
+
+	@Before
+	public void setUp() {
+		System.setProperty(KEY_MIN_INTERVAL, "PT0.3S");
+		System.setProperty(KEY_MIN_PERCENT_DELTA, "10");
+		persister = new StatusPersister(null, new StatusPersister.Store() {
+			public void store(String id, byte[] document) {
+				stored.add(id + ":" + new String(document));
+			}
+		});
+		job = persister.newJob("job", new StatusPersister.Source() {
+			public byte[] serialize(StatusType status) throws ExceptionReport {
+				return status.toString().getBytes();
+			}
+		});
+	}
+
+	@After
+	public void tearDown() {
+		System.clearProperty(KEY_MIN_INTERVAL);
+		System.clearProperty(KEY_MIN_PERCENT_DELTA);
+	}
+
+	private static StatusType progress(int percent) {
+		StatusType status = StatusType.Factory.newInstance();
+		status.addNewProcessStarted().setPercentCompleted(percent);
+		return status;
+	}
+
+	private static StatusType succeeded() {
+		StatusType status = StatusType.Factory.newInstance();
+		status.setProcessSucceeded("Process successful");
+		return status;
+	}
+
+	private void awaitWritten(long count) throws InterruptedException {
+		long end = System.currentTimeMillis() + 5000;
+		while (persister.getWritten() < count && System.currentTimeMillis() < end) {
+			Thread.sleep(10);
+		}
+	}
+
+	@Test
+	public void testProgressIsCoalesced() throws InterruptedException {
+		for (int i = 0; i < 1000; i++) {
+			// less than the percentage delta between two writes
+			job.progress(progress(i / 200), i / 200);
+		}
+		awaitWritten(1);
+		Thread.sleep(500);
+		// the first update is written at once unless the writer is slower than the loop
+		assertTrue(persister.getWritten() <= 2);
+		assertEquals(1000, persister.getWritten() + persister.getCoalesced());
+		// the latest progress is written after the interval
+		assertEquals("job:" + progress(4), stored.get(stored.size() - 1));
+	}
+
+	@Test
+	public void testPercentageDeltaIsWrittenImmediately() throws InterruptedException {
+		job.progress(progress(0), 0);
+		awaitWritten(1);
+		long start = System.nanoTime();
+		job.progress(progress(50), 50);
+		awaitWritten(2);
+		assertTrue(System.nanoTime() - start < 250000000L);
+		assertEquals("job:" + progress(50), stored.get(1));
+	}
+
+	@Test
+	public void testTransitionsAreWrittenInOrder() throws ExceptionReport, InterruptedException {
+		job.transition(progress(0), false, true);
+		assertEquals(1, persister.getWritten());
+		job.progress(progress(1), 1);
+		job.progress(progress(2), 2);
+		job.transition(succeeded(), true, false);
+		job.progress(progress(3), 3);
+		awaitWritten(2);
+		Thread.sleep(500);
+		assertEquals(2, persister.getWritten());
+		assertEquals("job:" + succeeded(), stored.get(1));
+	}
+}